@@ -0,0 +1,149 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small measurement harness for the benchmark drivers. Every workload is run
+ * a number of warmup iterations before the timed iterations, so that the
+ * numbers reported are for JIT-compiled code.
+ */
+public abstract class Benchmark {
+	public static int warmupIterations = Integer.getInteger("bench.warmup", 5);
+	public static int measureIterations = Integer.getInteger("bench.iterations", 10);
+
+	/**
+	 * A single workload to be measured
+	 */
+	public static abstract class Workload {
+		public final String name;
+
+		public Workload(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Prepares the state for the next run. This is not part of the
+		 * measured time.
+		 */
+		public void setup() throws Exception {
+		}
+
+		/**
+		 * Runs the workload once
+		 * 
+		 * @return a value derived from the work done, so that it cannot be
+		 *         optimized away
+		 */
+		public abstract long run() throws Exception;
+	}
+
+	/**
+	 * Timing summary of a measured workload
+	 */
+	public static class Result {
+		public final String name;
+		public final long bestNanos, totalNanos;
+		public final int iterations;
+
+		public Result(String name, long bestNanos, long totalNanos, int iterations) {
+			this.name = name;
+			this.bestNanos = bestNanos;
+			this.totalNanos = totalNanos;
+			this.iterations = iterations;
+		}
+
+		public double averageNanos() {
+			return (double) totalNanos / iterations;
+		}
+	}
+
+	static long blackhole;
+
+	/**
+	 * Warms up and then measures a workload
+	 * 
+	 * @param workload
+	 * @return Result
+	 */
+	public static Result measure(Workload workload) throws Exception {
+		for (int i = 0; i < warmupIterations; i++) {
+			workload.setup();
+			blackhole += workload.run();
+		}
+
+		long best = Long.MAX_VALUE, total = 0;
+		for (int i = 0; i < measureIterations; i++) {
+			workload.setup();
+			long start = System.nanoTime();
+			blackhole += workload.run();
+			long elapsed = System.nanoTime() - start;
+			best = Math.min(best, elapsed);
+			total += elapsed;
+		}
+		return new Result(workload.name, best, total, measureIterations);
+	}
+
+	/**
+	 * Returns the directory of the tests corpus, relative to the class path
+	 * like the tester drivers do
+	 */
+	public static File corpusDirectory(String name) {
+		return new File(System.getProperty("java.class.path") + "/../tests/" + name);
+	}
+
+	/**
+	 * Returns the miniJava sources in a directory, in a stable order
+	 */
+	public static List<File> sourceFiles(File dir) {
+		List<File> files = new ArrayList<File>();
+		File[] list = dir.listFiles();
+		if (list == null)
+			return files;
+		java.util.Arrays.sort(list);
+		for (File f : list) {
+			if (f.getName().endsWith(".java") || f.getName().endsWith(".mjava"))
+				files.add(f);
+		}
+		return files;
+	}
+
+	public static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] block = new byte[8192];
+			int n;
+			while ((n = in.read(block)) > 0)
+				out.write(block, 0, n);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Concatenates the given files, repeating them until at least minBytes
+	 * have been produced
+	 */
+	public static byte[] concatenate(List<File> files, int minBytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (files.isEmpty())
+			return out.toByteArray();
+		List<byte[]> contents = new ArrayList<byte[]>();
+		for (File f : files)
+			contents.add(readFile(f));
+		while (out.size() < minBytes) {
+			for (byte[] c : contents) {
+				out.write(c, 0, c.length);
+				out.write('\n');
+			}
+		}
+		return out.toByteArray();
+	}
+}
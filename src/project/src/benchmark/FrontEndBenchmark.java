@@ -0,0 +1,281 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import mJAM.CodeStore;
+import mJAM.Machine;
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.CodeGenerator.ASTGenerateCode;
+import miniJava.ContextualAnalyzer.ASTAnalyze;
+import miniJava.ContextualAnalyzer.ASTIdentifyMembers;
+import miniJava.ContextualAnalyzer.ASTReplaceReference;
+import miniJava.ContextualAnalyzer.ASTTypeCheck;
+import miniJava.ContextualAnalyzer.IdentificationTable;
+import miniJava.SyntacticAnalyzer.ArrayCharSource;
+import miniJava.SyntacticAnalyzer.CompactParser;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.SyntacticAnalyzer.SyntaxErrorException;
+import miniJava.SyntacticAnalyzer.TokenStream;
+import miniJava.SyntacticAnalyzer.TokenType;
+import tester.RandProgGen;
+
+/**
+ * Benchmarks each front end phase in isolation: Scanner.nextToken,
+ * Parser.parseProgram, CompactParser.parseProgram,
+ * ASTIdentifyMembers.createIdentificationTable, ASTTypeCheck.typeCheck and
+ * ASTGenerateCode.visitPackage. The input of a phase is prepared in the
+ * workload's setup, outside the measured time.
+ * Contextual analysis as a whole is measured both as the three passes and
+ * as the single traversal of ASTAnalyze, and type checking also in parallel.
+ *
+ * The inputs are generated from fixed seeds, so every run measures the same
+ * programs: grammar-random programs from RandProgGen at several sizes for the
+ * scanner and parser, and well-typed programs from ProgramGenerator for all
+ * phases. Code generation is left out for programs that do not fit in the
+ * mJAM code store.
+ *
+ * Usage: java [-Dbench.warmup=n] [-Dbench.iterations=n] [-Dbench.threads=n] benchmark.FrontEndBenchmark
+ */
+public class FrontEndBenchmark {
+	static final long SEED = Long.getLong("bench.seed", 520);
+
+	// for parallel type checking, with -Dbench.threads threads, one per
+	// processor by default
+	static final ForkJoinPool pool = new ForkJoinPool(Integer.getInteger("bench.threads", Runtime.getRuntime()
+			.availableProcessors()));
+
+	/**
+	 * A named benchmark input
+	 */
+	static class Input {
+		final String name;
+		final char[] source;
+		final boolean typed;
+
+		Input(String name, String source, boolean typed) {
+			this.name = name;
+			this.source = source.toCharArray();
+			this.typed = typed;
+		}
+	}
+
+	/**
+	 * Concatenates RandProgGen programs until minBytes is reached. Programs
+	 * that do not parse (e.g. because an identifier came out as a keyword)
+	 * are skipped.
+	 */
+	static String randomProgram(long seed, int minBytes) {
+		StringBuilder program = new StringBuilder();
+		while (program.length() < minBytes) {
+			String s = RandProgGen.generate(seed++, 10000);
+			try {
+				new Parser(new ArrayCharSource(s)).parseProgram();
+				program.append(s).append('\n');
+			} catch (SyntaxErrorException e) {
+			}
+		}
+		return program.toString();
+	}
+
+	static TokenStream tokenize(Input input) {
+		return new Scanner(new ArrayCharSource(input.source)).tokenize();
+	}
+
+	static Package parse(Input input) throws SyntaxErrorException {
+		return new Parser(tokenize(input)).parseProgram();
+	}
+
+	/**
+	 * State of a program after the analysis phases
+	 */
+	static class Analyzed {
+		Package ast;
+		IdentificationTable table;
+		MethodDecl mainMethod;
+
+		Analyzed(Input input, boolean typeCheck) throws SyntaxErrorException {
+			ast = parse(input);
+			table = new ASTIdentifyMembers().createIdentificationTable(ast);
+			new ASTReplaceReference().visitPackage(ast, table);
+			if (typeCheck)
+				mainMethod = new ASTTypeCheck(table).typeCheck(ast);
+		}
+	}
+
+	/**
+	 * Checks whether code generation for the input stays inside the code
+	 * store, whose overflow is reported on System.out and then fails
+	 */
+	static boolean fitsCodeStore(Input input) throws SyntaxErrorException {
+		Analyzed a = new Analyzed(input, true);
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		try {
+			CodeStore code = new CodeStore();
+			new ASTGenerateCode(code).visitPackage(a.ast, a.mainMethod);
+			return code.CT < Machine.PB;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return false;
+		} finally {
+			System.setOut(stdout);
+		}
+	}
+
+	static List<Benchmark.Workload> workloads(final Input input) throws SyntaxErrorException {
+		List<Benchmark.Workload> workloads = new ArrayList<Benchmark.Workload>();
+
+		workloads.add(new Benchmark.Workload("Scanner.nextToken") {
+			@Override
+			public long run() throws Exception {
+				Scanner scanner = new Scanner(new ArrayCharSource(input.source));
+				long count = 0;
+				while (scanner.nextToken().type != TokenType.EOT)
+					count++;
+				return count;
+			}
+		});
+
+		final TokenStream tokens = tokenize(input);
+		workloads.add(new Benchmark.Workload("Parser.parseProgram") {
+			@Override
+			public long run() throws Exception {
+				return new Parser(tokens).parseProgram().classDeclList.size();
+			}
+		});
+
+		workloads.add(new Benchmark.Workload("CompactParser.parseProgram") {
+			@Override
+			public long run() throws Exception {
+				return new CompactParser(tokens).parseProgram().size();
+			}
+		});
+
+		if (!input.typed)
+			return workloads;
+
+		workloads.add(new Benchmark.Workload("createIdentificationTable") {
+			Package ast;
+
+			@Override
+			public void setup() throws Exception {
+				ast = parse(input);
+			}
+
+			@Override
+			public long run() throws Exception {
+				new ASTIdentifyMembers().createIdentificationTable(ast);
+				return ast.classDeclList.size();
+			}
+		});
+
+		workloads.add(new Benchmark.Workload("ASTTypeCheck.typeCheck") {
+			Analyzed a;
+
+			@Override
+			public void setup() throws Exception {
+				a = new Analyzed(input, false);
+			}
+
+			@Override
+			public long run() throws Exception {
+				return new ASTTypeCheck(a.table).typeCheck(a.ast).parameterDeclList.size();
+			}
+		});
+
+		workloads.add(new Benchmark.Workload("typeCheck, parallel") {
+			Analyzed a;
+
+			@Override
+			public void setup() throws Exception {
+				a = new Analyzed(input, false);
+			}
+
+			@Override
+			public long run() throws Exception {
+				return new ASTTypeCheck(a.table).typeCheck(a.ast, pool).parameterDeclList.size();
+			}
+		});
+
+		workloads.add(new Benchmark.Workload("analysis, three passes") {
+			Package ast;
+
+			@Override
+			public void setup() throws Exception {
+				ast = parse(input);
+			}
+
+			@Override
+			public long run() throws Exception {
+				IdentificationTable table = new ASTIdentifyMembers().createIdentificationTable(ast);
+				new ASTReplaceReference().visitPackage(ast, table);
+				return new ASTTypeCheck(table).typeCheck(ast).parameterDeclList.size();
+			}
+		});
+
+		workloads.add(new Benchmark.Workload("ASTAnalyze.analyze") {
+			Package ast;
+
+			@Override
+			public void setup() throws Exception {
+				ast = parse(input);
+			}
+
+			@Override
+			public long run() throws Exception {
+				return new ASTAnalyze().analyze(ast).parameterDeclList.size();
+			}
+		});
+
+		if (fitsCodeStore(input)) {
+			workloads.add(new Benchmark.Workload("ASTGenerateCode.visitPackage") {
+				Analyzed a;
+				CodeStore code = new CodeStore();
+
+				@Override
+				public void setup() throws Exception {
+					a = new Analyzed(input, true);
+				}
+
+				@Override
+				public long run() throws Exception {
+					new ASTGenerateCode(code).visitPackage(a.ast, a.mainMethod);
+					return code.CT;
+				}
+			});
+		}
+		return workloads;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<Input> inputs = new ArrayList<Input>();
+		inputs.add(new Input("random-4K", randomProgram(SEED, 4 * 1024), false));
+		inputs.add(new Input("random-64K", randomProgram(SEED, 64 * 1024), false));
+		inputs.add(new Input("random-1M", randomProgram(SEED, 1024 * 1024), false));
+		inputs.add(new Input("typed-1x2", ProgramGenerator.generate(1, 2), true));
+		inputs.add(new Input("typed-2x4", ProgramGenerator.generate(2, 4), true));
+		inputs.add(new Input("typed-8x8", ProgramGenerator.generate(8, 8), true));
+		inputs.add(new Input("typed-64x8", ProgramGenerator.generate(64, 8), true));
+
+		System.out.println("java " + System.getProperty("java.version") + ", seed " + SEED + ", "
+				+ Benchmark.warmupIterations + " warmup + " + Benchmark.measureIterations + " measured iterations");
+		System.out.println(String.format("%-12s %9s  %-30s %12s %12s", "input", "bytes", "benchmark", "best us",
+				"avg us"));
+		for (Input input : inputs) {
+			for (Benchmark.Workload w : workloads(input)) {
+				Benchmark.Result r = Benchmark.measure(w);
+				System.out.println(String.format("%-12s %9d  %-30s %12.1f %12.1f", input.name, input.source.length,
+						r.name, r.bestNanos / 1e3, r.averageNanos() / 1e3));
+			}
+		}
+	}
+}
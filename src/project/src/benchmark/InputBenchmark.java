@@ -0,0 +1,172 @@
+package benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import mJAM.CodeStore;
+import mJAM.Interpreter;
+import mJAM.Machine;
+import mJAM.Machine.Op;
+import mJAM.Machine.Prim;
+import mJAM.Machine.Reg;
+import mJAM.ProgramInput;
+import mJAM.ProgramOutput;
+
+/**
+ * Measures how fast the mJAM interpreter ingests integers with getint. miniJava
+ * has no input statements, so the program is emitted directly into a code
+ * store: it reads integers until eof and prints their sum modulo a prime. The
+ * input is a fixed stream of random integers, read from memory in place
+ * (ProgramInput.fromBytes) and through a stream. The integers are also
+ * parsed by ProgramInput.readInt alone, and for reference the way the
+ * interpreter did before it buffered its input, one System.in.read() per
+ * byte.
+ *
+ * Usage: java [-Dbench.warmup=n] [-Dbench.iterations=n] [-Dbench.ints=n] benchmark.InputBenchmark
+ */
+public class InputBenchmark {
+	static final int INTS = Integer.getInteger("bench.ints", 1000000);
+	static final int MODULUS = 1000003;
+
+	/**
+	 * Emits the program summing the input
+	 */
+	static CodeStore emitProgram() {
+		CodeStore code = new CodeStore();
+		code.emit(Op.LOADL, 0); // 0[SB] value
+		code.emit(Op.LOADL, 0); // 1[SB] sum
+		int loop = code.nextInstrAddr();
+		code.emit(Op.LOADA, Reg.SB, 0);
+		code.emit(Prim.getint);
+		code.emit(Op.LOAD, 1, Reg.SB, 1);
+		code.emit(Op.LOAD, 1, Reg.SB, 0);
+		code.emit(Prim.add);
+		code.emit(Op.LOADL, MODULUS);
+		code.emit(Prim.mod);
+		code.emit(Op.STORE, 1, Reg.SB, 1);
+		code.emit(Prim.eof);
+		code.emit(Op.JUMPIF, Machine.falseRep, Reg.CB, loop);
+		code.emit(Op.LOAD, 1, Reg.SB, 1);
+		code.emit(Prim.putint);
+		code.emit(Op.HALT, 0, 0, 0);
+		return code;
+	}
+
+	/**
+	 * The input, and the sum the program must print
+	 */
+	static byte[] input;
+	static long expected;
+
+	static void generateInput() {
+		Random random = new Random(520);
+		StringBuilder s = new StringBuilder();
+		long sum = 0;
+		for (int i = 0; i < INTS; i++) {
+			int v = random.nextInt(2000001) - 1000000;
+			sum = (sum + v) % MODULUS;
+			s.append(v).append(i % 10 == 9 ? '\n' : ' ');
+		}
+		input = s.toString().getBytes();
+		expected = sum;
+	}
+
+	static Benchmark.Workload interpreted(String name, final boolean inPlace) {
+		return new Benchmark.Workload(name) {
+			Interpreter interpreter = new Interpreter(emitProgram());
+			StringBuilder output;
+
+			@Override
+			public void setup() throws Exception {
+				output = new StringBuilder();
+				interpreter.setOutput(new ProgramOutput(output));
+				interpreter.setInput(inPlace ? ProgramInput.fromBytes(input) : new ProgramInput(
+						new ByteArrayInputStream(input)));
+			}
+
+			@Override
+			public long run() throws Exception {
+				if (!interpreter.run())
+					throw new IllegalStateException(name + " did not halt normally");
+				if (Long.parseLong(output.toString()) != expected)
+					throw new IllegalStateException(name + " printed " + output + ", expected " + expected);
+				return interpreter.instructionCount();
+			}
+		};
+	}
+
+	static Benchmark.Workload parser() {
+		return new Benchmark.Workload("ProgramInput.readInt") {
+			@Override
+			public long run() throws Exception {
+				ProgramInput in = ProgramInput.fromBytes(input);
+				long sum = 0;
+				do {
+					sum = (sum + in.readInt()) % MODULUS;
+				} while (in.last() != -1);
+				if (sum != expected)
+					throw new IllegalStateException("readInt gave " + sum + ", expected " + expected);
+				return sum;
+			}
+		};
+	}
+
+	/**
+	 * Interpreter.readInt as it was, reading System.in one byte at a time
+	 */
+	static Benchmark.Workload unbuffered() {
+		return new Benchmark.Workload("System.in.read() per byte") {
+			InputStream in;
+
+			@Override
+			public void setup() throws Exception {
+				in = new BufferedInputStream(new ByteArrayInputStream(input));
+			}
+
+			@Override
+			public long run() throws Exception {
+				long sum = 0;
+				int currentChar = 0;
+				while (currentChar != -1) {
+					int temp = 0;
+					int sign = 1;
+					do {
+						currentChar = in.read();
+					} while (Character.isWhitespace((char) currentChar));
+					if ((currentChar == '-') || (currentChar == '+'))
+						do {
+							sign = (currentChar == '-') ? -1 : 1;
+							currentChar = in.read();
+						} while ((currentChar == '-') || currentChar == '+');
+					if (Character.isDigit((char) currentChar))
+						do {
+							temp = temp * 10 + (currentChar - '0');
+							currentChar = in.read();
+						} while (Character.isDigit((char) currentChar));
+					sum = (sum + sign * temp) % MODULUS;
+				}
+				if (sum != expected)
+					throw new IllegalStateException("unbuffered parse gave " + sum + ", expected " + expected);
+				return sum;
+			}
+		};
+	}
+
+	public static void main(String[] args) throws Exception {
+		generateInput();
+		Benchmark.Workload[] workloads = { interpreted("getint, input in memory", true),
+				interpreted("getint, input from a stream", false), parser(), unbuffered() };
+
+		System.out.println("java " + System.getProperty("java.version") + ", " + INTS + " integers ("
+				+ input.length + " bytes), " + Benchmark.warmupIterations + " warmup + "
+				+ Benchmark.measureIterations + " measured iterations");
+		System.out.println(String.format("%-30s %10s %14s %12s", "workload", "best ms", "Mints/s (best)", "MB/s"));
+		for (Benchmark.Workload w : workloads) {
+			Benchmark.Result r = Benchmark.measure(w);
+			System.out.println(String.format("%-30s %10.2f %14.2f %12.1f", w.name, r.bestNanos / 1e6, INTS
+					/ (r.bestNanos / 1e3), input.length / (r.bestNanos / 1e3)));
+		}
+	}
+}
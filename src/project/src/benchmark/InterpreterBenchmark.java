@@ -0,0 +1,208 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import mJAM.Interpreter;
+import miniJava.CompilerSession;
+import miniJava.SyntacticAnalyzer.ArrayCharSource;
+
+/**
+ * Measures the mJAM interpreter on small miniJava programs that each stress
+ * one part of the instruction set: arithmetic loops, recursive calls, array
+ * access, field access through an object reference and program output of
+ * numbers and of strings (into a discarding System.out). Programs are compiled
+ * with a CompilerSession before every run, outside the measured time.
+ * Results are given in instructions per second and ns per instruction, from
+ * the interpreter's executed instruction count. Each
+ * workload is measured with superinstruction fusion off and on; the fused
+ * column counts the executed instructions that ran inside a superinstruction.
+ *
+ * Usage: java [-Dbench.warmup=n] [-Dbench.iterations=n] benchmark.InterpreterBenchmark
+ */
+public class InterpreterBenchmark {
+	static final String ARITHMETIC = "class Main {\n"
+			+ "    public static void main(String[] args) {\n"
+			+ "        int i = 0;\n"
+			+ "        int s = 0;\n"
+			+ "        while (i < 200000) {\n"
+			+ "            s = s + i * 3 - i / 7;\n"
+			+ "            if (s > 1000000) s = s - 1000000;\n"
+			+ "            i = i + 1;\n"
+			+ "        }\n"
+			+ "        System.out.println(s);\n"
+			+ "    }\n"
+			+ "}\n";
+
+	static final String RECURSION = "class Main {\n"
+			+ "    public static void main(String[] args) {\n"
+			+ "        Rec r = new Rec();\n"
+			+ "        int t = r.fib(22);\n"
+			+ "        int i = 0;\n"
+			+ "        while (i < 200) {\n"
+			+ "            t = t + r.down(100);\n"
+			+ "            i = i + 1;\n"
+			+ "        }\n"
+			+ "        System.out.println(t);\n"
+			+ "    }\n"
+			+ "}\n"
+			+ "class Rec {\n"
+			+ "    int fib(int n) {\n"
+			+ "        int r = n;\n"
+			+ "        if (n > 1) r = fib(n - 1) + fib(n - 2);\n"
+			+ "        return r;\n"
+			+ "    }\n"
+			+ "    int down(int n) {\n"
+			+ "        int r = 0;\n"
+			+ "        if (n > 0) r = 1 + down(n - 1);\n"
+			+ "        return r;\n"
+			+ "    }\n"
+			+ "}\n";
+
+	static final String ARRAYS = "class Main {\n"
+			+ "    public static void main(String[] args) {\n"
+			+ "        int[] a = new int[256];\n"
+			+ "        int s = 0;\n"
+			+ "        int k = 0;\n"
+			+ "        while (k < 200) {\n"
+			+ "            int i = 0;\n"
+			+ "            while (i < a.length) {\n"
+			+ "                a[i] = a[i] + i;\n"
+			+ "                i = i + 1;\n"
+			+ "            }\n"
+			+ "            s = s + a[k] - a[255 - k];\n"
+			+ "            k = k + 1;\n"
+			+ "        }\n"
+			+ "        System.out.println(s);\n"
+			+ "    }\n"
+			+ "}\n";
+
+	static final String FIELDS = "class Main {\n"
+			+ "    public static void main(String[] args) {\n"
+			+ "        Point p = new Point();\n"
+			+ "        Point q = new Point();\n"
+			+ "        int i = 0;\n"
+			+ "        while (i < 100000) {\n"
+			+ "            p.x = p.x + 1;\n"
+			+ "            p.y = p.x - q.y;\n"
+			+ "            q.y = q.x + p.y / 2;\n"
+			+ "            q.x = i;\n"
+			+ "            i = i + 1;\n"
+			+ "        }\n"
+			+ "        System.out.println(p.y + q.y);\n"
+			+ "    }\n"
+			+ "}\n"
+			+ "class Point {\n"
+			+ "    int x;\n"
+			+ "    int y;\n"
+			+ "}\n";
+
+	static final String OUTPUT = "class Main {\n"
+			+ "    public static void main(String[] args) {\n"
+			+ "        int i = 0;\n"
+			+ "        while (i < 100000) {\n"
+			+ "            System.out.println(i * 7919);\n"
+			+ "            i = i + 1;\n"
+			+ "        }\n"
+			+ "    }\n"
+			+ "}\n";
+
+	static final String STRINGS = "class Main {\n"
+			+ "    public static void main(String[] args) {\n"
+			+ "        int i = 0;\n"
+			+ "        while (i < 20000) {\n"
+			+ "            System.out.println(\"The quick brown fox jumps over the lazy dog\");\n"
+			+ "            i = i + 1;\n"
+			+ "        }\n"
+			+ "    }\n"
+			+ "}\n";
+
+	static final PrintStream discard = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+	});
+
+	/**
+	 * Compiles a program, returning an interpreter for its code
+	 */
+	static Interpreter compile(String source) {
+		CompilerSession.Result result = new CompilerSession().compile(new ArrayCharSource(source));
+		if (!result.succeeded())
+			throw new IllegalArgumentException("benchmark program does not compile: " + result.errors);
+		return new Interpreter(result.code);
+	}
+
+	/**
+	 * Runs one of the programs
+	 */
+	static class Program extends Benchmark.Workload {
+		final String source;
+		Interpreter interpreter;
+
+		Program(String name, String source) {
+			super(name);
+			this.source = source;
+		}
+
+		@Override
+		public void setup() throws Exception {
+			interpreter = compile(source);
+		}
+
+		@Override
+		public long run() throws Exception {
+			if (!interpreter.run())
+				throw new IllegalStateException(name + " did not halt normally");
+			return interpreter.instructionCount();
+		}
+	}
+
+	static String lastLine(String output) {
+		String s = output.trim();
+		return s.substring(s.lastIndexOf('\n') + 1).trim();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Program[] workloads = { new Program("arithmetic loop", ARITHMETIC),
+				new Program("recursion (CALL/RETURN)", RECURSION), new Program("arrays (arrayref/arrayupd)", ARRAYS),
+				new Program("fields (fieldref/fieldupd)", FIELDS), new Program("output (putint/puteol)", OUTPUT),
+				new Program("output (putstr)", STRINGS) };
+
+		PrintStream stdout = System.out;
+		System.out.println("java " + System.getProperty("java.version") + ", " + Benchmark.warmupIterations
+				+ " warmup + " + Benchmark.measureIterations + " measured iterations");
+		System.out.println(String.format("%-28s %-6s %12s %10s %10s %10s %12s %12s", "workload", "fusion",
+				"instructions", "fused", "output", "best ms", "MIPS (best)", "ns/instr"));
+		boolean fusion = Interpreter.fusion;
+		try {
+			for (Program w : workloads) {
+				for (boolean on : new boolean[] { false, true }) {
+					Interpreter.fusion = on;
+
+					// One run to check the program and record its output
+					ByteArrayOutputStream output = new ByteArrayOutputStream();
+					System.setOut(new PrintStream(output));
+					w.setup();
+					w.run();
+					long instructions = w.interpreter.instructionCount();
+					long fused = w.interpreter.fusedCount();
+
+					System.setOut(discard);
+					Benchmark.Result r;
+					try {
+						r = Benchmark.measure(w);
+					} finally {
+						System.setOut(stdout);
+					}
+					System.out.println(String.format("%-28s %-6s %12d %10d %10s %10.2f %12.1f %12.2f", w.name,
+							on ? "on" : "off", instructions, fused, lastLine(output.toString()), r.bestNanos / 1e6,
+							instructions / (r.bestNanos / 1e3), r.bestNanos / (double) instructions));
+				}
+			}
+		} finally {
+			Interpreter.fusion = fusion;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.SyntacticAnalyzer.ScannerException;
+import miniJava.SyntacticAnalyzer.Token;
+import miniJava.SyntacticAnalyzer.TokenType;
+
+/**
+ * Compares classifying token spellings by scanning TokenType.values() (the
+ * way Token used to) against TokenType.lookup. The spellings are the
+ * identifiers, keywords and operators of the tests/1 corpus.
+ * 
+ * Usage: java benchmark.KeywordBenchmark [file ...]
+ */
+public class KeywordBenchmark {
+	static final int ROUNDS = 20;
+
+	static TokenType linearScan(String spelling) {
+		for (TokenType t : TokenType.values()) {
+			if (t.spelling != null && (t.spelling.compareTo(spelling) == 0))
+				return t;
+		}
+		return TokenType.IDENTIFIER;
+	}
+
+	static TokenType perfectHash(String spelling) {
+		TokenType t = TokenType.lookup(spelling);
+		return (t == null) ? TokenType.IDENTIFIER : t;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<File> files = new ArrayList<File>();
+		if (args.length > 0) {
+			for (String a : args)
+				files.add(new File(a));
+		} else {
+			files = Benchmark.sourceFiles(Benchmark.corpusDirectory("1"));
+		}
+
+		// Collect the spellings the Scanner would have classified
+		List<String> stream = new ArrayList<String>();
+		for (File f : files) {
+			Scanner scanner = new Scanner(new FileInputStream(f));
+			try {
+				for (Token t = scanner.nextToken(); t.type != TokenType.EOT; t = scanner.nextToken()) {
+					if (t.type != TokenType.NUMBER && t.type != TokenType.STRING)
+						stream.add(t.spelling);
+				}
+			} catch (ScannerException e) {
+				// Keep the tokens read up to the lexical error
+			}
+		}
+		final String[] spellings = stream.toArray(new String[stream.size()]);
+
+		for (String s : spellings) {
+			if (linearScan(s) != perfectHash(s))
+				throw new IllegalStateException("Classification differs for " + s);
+		}
+
+		Benchmark.Workload[] workloads = { new Benchmark.Workload("TokenType.values() scan") {
+			@Override
+			public long run() {
+				long sum = 0;
+				for (int r = 0; r < ROUNDS; r++)
+					for (String s : spellings)
+						sum += linearScan(s).ordinal();
+				return sum;
+			}
+		}, new Benchmark.Workload("TokenType.lookup") {
+			@Override
+			public long run() {
+				long sum = 0;
+				for (int r = 0; r < ROUNDS; r++)
+					for (String s : spellings)
+						sum += perfectHash(s).ordinal();
+				return sum;
+			}
+		} };
+
+		System.out.println("Classifying " + spellings.length + " spellings from " + files.size() + " files");
+		for (Benchmark.Workload w : workloads) {
+			Benchmark.Result r = Benchmark.measure(w);
+			double tokens = (double) spellings.length * ROUNDS;
+			System.out.println(String.format("%-28s %8.2f ns/token (best) %8.2f ns/token (avg)", r.name,
+					r.bestNanos / tokens, r.averageNanos() / tokens));
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.AbstractSyntaxTrees.CompactAST;
+import miniJava.SyntacticAnalyzer.ArrayCharSource;
+import miniJava.SyntacticAnalyzer.CompactParser;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.SyntacticAnalyzer.SyntaxErrorException;
+import miniJava.SyntacticAnalyzer.TokenStream;
+import miniJava.SyntacticAnalyzer.TokenType;
+
+/**
+ * Measures the heap allocated by the front end, per token, using the JVM's
+ * per-thread allocation counter. It compares scanning into one Token per
+ * lexeme against scanning into a packed TokenStream, and reports what the
+ * Parser allocates on top of the stream, and the CompactParser, with and
+ * without building AST objects from its CompactAST. It then reports the heap
+ * kept by each form of the tree. The input is the parseable files of tests/1
+ * (or the files given as arguments) concatenated into one program.
+ *
+ * Usage: java benchmark.ParseAllocationBenchmark [file ...]
+ */
+public class ParseAllocationBenchmark {
+	static final int INPUT_SIZE = Integer.getInteger("bench.bytes", 1024 * 1024);
+
+	static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	// a tree being measured, kept reachable until it is
+	static Object held;
+
+	static long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return the heap in use after collecting garbage
+	 */
+	static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static char[] toChars(byte[] bytes) {
+		char[] chars = new char[bytes.length];
+		for (int i = 0; i < bytes.length; i++)
+			chars[i] = (char) (bytes[i] & 0xff);
+		return chars;
+	}
+
+	static List<File> parseableFiles(List<File> files) throws Exception {
+		List<File> result = new ArrayList<File>();
+		for (File f : files) {
+			try {
+				new Parser(new ArrayCharSource(toChars(Benchmark.readFile(f)))).parseProgram();
+				result.add(f);
+			} catch (SyntaxErrorException e) {
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Runs a workload once to warm up and then reports the bytes allocated by
+	 * a second run
+	 */
+	static long allocation(Benchmark.Workload w) throws Exception {
+		w.run();
+		long before = allocatedBytes();
+		Benchmark.blackhole += w.run();
+		return allocatedBytes() - before;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<File> files;
+		if (args.length > 0) {
+			files = new ArrayList<File>();
+			for (String a : args)
+				files.add(new File(a));
+		} else {
+			files = Benchmark.sourceFiles(Benchmark.corpusDirectory("1"));
+		}
+		files = parseableFiles(files);
+		final char[] chars = toChars(Benchmark.concatenate(files, INPUT_SIZE));
+		long tokens = new Scanner(new ArrayCharSource(chars)).tokenize().size();
+
+		Benchmark.Workload[] workloads = { new Benchmark.Workload("Scanner.nextToken") {
+			@Override
+			public long run() throws Exception {
+				Scanner scanner = new Scanner(new ArrayCharSource(chars));
+				long count = 0;
+				while (scanner.nextToken().type != TokenType.EOT)
+					count++;
+				return count;
+			}
+		}, new Benchmark.Workload("Scanner.tokenize") {
+			@Override
+			public long run() throws Exception {
+				return new Scanner(new ArrayCharSource(chars)).tokenize().size();
+			}
+		}, new Benchmark.Workload("tokenize + parseProgram") {
+			@Override
+			public long run() throws Exception {
+				TokenStream stream = new Scanner(new ArrayCharSource(chars)).tokenize();
+				return new Parser(stream).parseProgram().classDeclList.size();
+			}
+		}, new Benchmark.Workload("tokenize + CompactParser") {
+			@Override
+			public long run() throws Exception {
+				TokenStream stream = new Scanner(new ArrayCharSource(chars)).tokenize();
+				return new CompactParser(stream).parseProgram().size();
+			}
+		}, new Benchmark.Workload("... + CompactAST.tree") {
+			@Override
+			public long run() throws Exception {
+				TokenStream stream = new Scanner(new ArrayCharSource(chars)).tokenize();
+				return new CompactParser(stream).parseProgram().tree().classDeclList.size();
+			}
+		} };
+
+		System.out.println("Allocation for " + chars.length + " bytes from " + files.size() + " files, " + tokens
+				+ " tokens");
+		for (Benchmark.Workload w : workloads) {
+			long bytes = allocation(w);
+			System.out.println(String.format("%-28s %10d bytes %8.1f bytes/token", w.name, bytes,
+					(double) bytes / tokens));
+		}
+
+		TokenStream stream = new Scanner(new ArrayCharSource(chars)).tokenize();
+		long before = usedHeap();
+		held = new Parser(stream).parseProgram();
+		long treeBytes = usedHeap() - before;
+		held = null;
+		before = usedHeap();
+		CompactAST compact = new CompactParser(stream).parseProgram();
+		held = compact;
+		long compactBytes = usedHeap() - before;
+		held = null;
+		System.out.println(String.format("Retained: AST objects %d bytes, CompactAST %d bytes (%d nodes, %d in arrays)",
+				treeBytes, compactBytes, compact.size(), compact.bytes()));
+	}
+}
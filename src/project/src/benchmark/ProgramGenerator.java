@@ -0,0 +1,83 @@
+package benchmark;
+
+/**
+ * Generates well-typed miniJava programs of a chosen size, so that the
+ * contextual analysis and code generation phases can be measured on inputs
+ * that get through them. RandProgGen only follows the grammar, so its
+ * programs rarely survive identification.
+ *
+ * A program has a chain of classes C0 .. Cn-1, each with a few fields and
+ * methods mixing loops, conditionals, arrays and calls along the chain, and
+ * a main class that links the chain and prints the result.
+ */
+public class ProgramGenerator {
+	private StringBuilder out = new StringBuilder();
+
+	public static String generate(int classes, int methodsPerClass) {
+		ProgramGenerator g = new ProgramGenerator();
+		g.mainClass(methodsPerClass);
+		for (int k = 0; k < classes; k++)
+			g.chainClass(k, classes, methodsPerClass);
+		return g.out.toString();
+	}
+
+	private void line(String s) {
+		out.append(s).append('\n');
+	}
+
+	private void mainClass(int methodsPerClass) {
+		line("class Main {");
+		line("    public static void main(String[] args) {");
+		line("        C0 c = new C0();");
+		line("        c.link();");
+		line("        System.out.println(c.m" + (methodsPerClass - 1) + "(3, 10));");
+		line("        System.out.println(\"done\");");
+		line("    }");
+		line("}");
+	}
+
+	private void chainClass(int k, int classes, int methodsPerClass) {
+		boolean last = (k == classes - 1);
+		line("class C" + k + " {");
+		line("    int value;");
+		line("    int[] data;");
+		if (!last)
+			line("    C" + (k + 1) + " next;");
+		line("");
+		line("    void link() {");
+		line("        value = " + k + ";");
+		if (!last) {
+			line("        next = new C" + (k + 1) + "();");
+			line("        next.link();");
+		}
+		line("    }");
+		for (int j = 0; j < methodsPerClass; j++)
+			method(j, last);
+		line("}");
+	}
+
+	private void method(int j, boolean last) {
+		line("");
+		line("    int m" + j + "(int a, int b) {");
+		line("        int s = a;");
+		line("        int i = 0;");
+		line("        while (i < b) {");
+		line("            if (i / 2 * 2 == i && s > 0) {");
+		line("                s = s + i * 3 - value;");
+		line("            } else {");
+		line("                s = s - 1;");
+		line("            }");
+		line("            i = i + 1;");
+		line("        }");
+		line("        boolean small = s < 100 || !(s == b);");
+		if (j > 0)
+			line("        if (small) s = s + this.m" + (j - 1) + "(a, b - 1);");
+		if (!last)
+			line("        s = s + next.m" + j + "(a + 1, b / 2);");
+		line("        data = new int[4];");
+		line("        data[0] = s;");
+		line("        value = data[0] + data.length;");
+		line("        return s;");
+		line("    }");
+	}
+}
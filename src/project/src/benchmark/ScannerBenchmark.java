@@ -0,0 +1,128 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.SyntacticAnalyzer.ArrayCharSource;
+import miniJava.SyntacticAnalyzer.BufferedCharSource;
+import miniJava.SyntacticAnalyzer.CharSource;
+import miniJava.SyntacticAnalyzer.MappedCharSource;
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.SyntacticAnalyzer.ScannerException;
+import miniJava.SyntacticAnalyzer.TokenType;
+
+/**
+ * Measures lexing throughput in MB/s for each CharSource. The input is the
+ * tests/1 corpus (or the files given as arguments) concatenated to a few MB.
+ * Files with lexical errors are left out of the input.
+ * 
+ * Usage: java benchmark.ScannerBenchmark [file ...]
+ */
+public class ScannerBenchmark {
+	static final int INPUT_SIZE = Integer.getInteger("bench.bytes", 4 * 1024 * 1024);
+
+	/**
+	 * The behaviour before CharSource existed: one call into the stream per
+	 * character
+	 */
+	static class UnbufferedCharSource implements CharSource {
+		private InputStream in;
+
+		UnbufferedCharSource(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return in.read();
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	static long lex(CharSource source) throws IOException, ScannerException {
+		Scanner scanner = new Scanner(source);
+		long count = 0;
+		while (scanner.nextToken().type != TokenType.EOT)
+			count++;
+		source.close();
+		return count;
+	}
+
+	/**
+	 * Drops the files that cannot be scanned, since the Scanner stops at the
+	 * first lexical error
+	 */
+	static List<File> lexableFiles(List<File> files) throws IOException {
+		List<File> result = new ArrayList<File>();
+		for (File f : files) {
+			try {
+				lex(new BufferedCharSource(new FileInputStream(f)));
+				result.add(f);
+			} catch (ScannerException e) {
+			}
+		}
+		return result;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<File> files;
+		if (args.length > 0) {
+			files = new ArrayList<File>();
+			for (String a : args)
+				files.add(new File(a));
+		} else {
+			files = Benchmark.sourceFiles(Benchmark.corpusDirectory("1"));
+		}
+		files = lexableFiles(files);
+
+		final byte[] input = Benchmark.concatenate(files, INPUT_SIZE);
+		final char[] chars = new char[input.length];
+		for (int i = 0; i < input.length; i++)
+			chars[i] = (char) (input[i] & 0xff);
+
+		final File inputFile = File.createTempFile("scanner-bench", ".mjava");
+		inputFile.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(inputFile);
+		out.write(input);
+		out.close();
+
+		Benchmark.Workload[] workloads = { new Benchmark.Workload("unbuffered stream (before)") {
+			@Override
+			public long run() throws Exception {
+				return lex(new UnbufferedCharSource(new FileInputStream(inputFile)));
+			}
+		}, new Benchmark.Workload("BufferedCharSource") {
+			@Override
+			public long run() throws Exception {
+				return lex(new BufferedCharSource(new FileInputStream(inputFile)));
+			}
+		}, new Benchmark.Workload("MappedCharSource") {
+			@Override
+			public long run() throws Exception {
+				return lex(new MappedCharSource(inputFile.getPath()));
+			}
+		}, new Benchmark.Workload("ArrayCharSource") {
+			@Override
+			public long run() throws Exception {
+				return lex(new ArrayCharSource(chars));
+			}
+		} };
+
+		System.out.println("Lexing " + input.length + " bytes from " + files.size() + " files");
+		for (Benchmark.Workload w : workloads) {
+			Benchmark.Result r = Benchmark.measure(w);
+			double mb = input.length / (1024.0 * 1024.0);
+			System.out.println(String.format("%-28s %8.1f MB/s (best) %8.1f MB/s (avg)", r.name,
+					mb / (r.bestNanos / 1e9), mb / (r.averageNanos() / 1e9)));
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.AbstractSyntaxTrees.Identifier;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.AbstractSyntaxTrees.VarDecl;
+import miniJava.ContextualAnalyzer.ASTIdentifyMembers;
+import miniJava.ContextualAnalyzer.ASTReplaceReference;
+import miniJava.ContextualAnalyzer.IdentificationTable;
+import miniJava.SyntacticAnalyzer.ArrayCharSource;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.SyntaxErrorException;
+
+/**
+ * Benchmarks name resolution in deeply nested scopes, where every use of an
+ * identifier declared further out has to get past the scopes in between.
+ *
+ * "identify" runs ASTIdentifyMembers and ASTReplaceReference, which resolve
+ * the names of the program, on programs whose methods nest a BlockStmt per
+ * level, each declaring a local and using the locals, parameter, field and
+ * class of the levels outside it. "table" drives an IdentificationTable
+ * directly: it opens the same number of scopes with a declaration in each,
+ * resolves every name from the innermost scope and closes them again.
+ *
+ * Usage: java [-Dbench.warmup=n] [-Dbench.iterations=n] benchmark.ScopeBenchmark
+ */
+public class ScopeBenchmark {
+	static final int[] DEPTHS = { 4, 16, 64, 256 };
+
+	/**
+	 * Generates a program with methods of the given nesting depth
+	 */
+	static String nestedProgram(int depth, int methods) {
+		StringBuilder out = new StringBuilder();
+		out.append("class Main {\n");
+		out.append("    public static void main(String[] args) {\n");
+		out.append("        Nest n = new Nest();\n");
+		out.append("        System.out.println(n.m0(1));\n");
+		out.append("    }\n");
+		out.append("}\n");
+		out.append("class Nest {\n");
+		out.append("    int f;\n");
+		for (int m = 0; m < methods; m++) {
+			out.append("    int m" + m + "(int p) {\n");
+			out.append("        int v0 = p + f;\n");
+			for (int d = 1; d < depth; d++) {
+				out.append("{\n");
+				out.append("int v" + d + " = v" + (d - 1) + " + v" + (d / 2) + " + v0 + p + f;\n");
+				out.append("Nest n" + d + " = this;\n");
+			}
+			out.append("f = v" + (depth - 1) + ";\n");
+			for (int d = 1; d < depth; d++)
+				out.append("}\n");
+			out.append("        return f;\n");
+			out.append("    }\n");
+		}
+		out.append("}\n");
+		return out.toString();
+	}
+
+	static List<Benchmark.Workload> workloads(final int depth) throws SyntaxErrorException {
+		List<Benchmark.Workload> workloads = new ArrayList<Benchmark.Workload>();
+		final char[] source = nestedProgram(depth, 16).toCharArray();
+
+		workloads.add(new Benchmark.Workload("identify") {
+			Package ast;
+
+			@Override
+			public void setup() throws Exception {
+				ast = new Parser(new ArrayCharSource(source)).parseProgram();
+			}
+
+			@Override
+			public long run() throws Exception {
+				IdentificationTable table = new ASTIdentifyMembers().createIdentificationTable(ast);
+				new ASTReplaceReference().visitPackage(ast, table);
+				return ast.classDeclList.size();
+			}
+		});
+
+		final VarDecl[] locals = new VarDecl[depth];
+		for (int d = 0; d < depth; d++)
+			locals[d] = new VarDecl(null, new Identifier("v" + d, null), null);
+		workloads.add(new Benchmark.Workload("table") {
+			@Override
+			public long run() throws Exception {
+				IdentificationTable table = new IdentificationTable();
+				long found = 0;
+				for (int repeat = 0; repeat < 100; repeat++) {
+					table.openScope();
+					table.openScope();
+					for (int d = 0; d < depth; d++) {
+						table.openScope();
+						table.set(locals[d]);
+					}
+					for (int d = 0; d < depth; d++) {
+						if (table.get(locals[d].id.spelling) != null)
+							found++;
+						found += table.getScope("String");
+					}
+					for (int d = 0; d < depth + 2; d++)
+						table.closeScope();
+				}
+				return found;
+			}
+		});
+		return workloads;
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.out.println("java " + System.getProperty("java.version") + ", " + Benchmark.warmupIterations
+				+ " warmup + " + Benchmark.measureIterations + " measured iterations");
+		System.out.println(String.format("%-8s  %-12s %12s %12s", "depth", "benchmark", "best us", "avg us"));
+		for (int depth : DEPTHS) {
+			for (Benchmark.Workload w : workloads(depth)) {
+				Benchmark.Result r = Benchmark.measure(w);
+				System.out.println(String.format("%-8d  %-12s %12.1f %12.1f", depth, r.name, r.bestNanos / 1e3,
+						r.averageNanos() / 1e3));
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Code store of an mJAM program
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import mJAM.Machine.Op;
+import mJAM.Machine.Prim;
+import mJAM.Machine.Reg;
+
+/**
+ * Holds the instructions CB..CT-1 of one program while it is generated,
+ * written, read and run. Each compilation can fill a store of its own, so
+ * that programs generated at the same time do not share one; the static
+ * emit methods of Machine fill the store returned by Machine.codeStore().
+ *
+ * Constants such as strings are kept with the code in the data segment
+ * data[0..DT-1], which the interpreter copies to SB before it runs the
+ * program, and which the code addresses as d[SB].
+ */
+public class CodeStore {
+
+	public final Instruction[] code = new Instruction[Machine.PB];
+	public int CT = Machine.CB;
+
+	public int[] data = new int[0];
+	public int DT = 0;
+
+	// addresses of the string constants in the data segment
+	private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+	public void initCodeGen() {
+		CT = Machine.CB;
+		DT = 0;
+		strings.clear();
+	}
+
+	/**
+	 * Places an instruction, with the given fields, into the next position in the code store
+	 * @param op - operation
+	 * @param n - length
+	 * @param r - register
+	 * @param d - displacement
+	 */
+	public void emit(Op op, int n, Reg r, Prim d) {
+		emit(op.ordinal(), n, r.ordinal(), d.ordinal());
+	}
+
+	/**
+	 * emit operation with single literal argument (n,r not used).  These are
+	 * operations like LOADL 44 and PUSH 3
+	 */
+	public void emit(Op op, int d) {
+		emit(op.ordinal(), 0, 0, d);
+	}
+
+	/**
+	 * emit "call primitive operation" (operation built-in to mJAM).  This
+	 * generates  CALL primitiveop[PB]
+	 */
+	public void emit(Prim d) {
+		emit(Op.CALL.ordinal(), 0, Reg.PB.ordinal(), d.ordinal());
+	}
+
+	/**
+	 * emit operations without arguments.  These are operations like
+	 * LOADI and STOREI
+	 */
+	public void emit(Op op) {
+		emit(op, 0, 0, 0);
+	}
+
+	/**
+	 * emit operation with register r and integer displacement.  These are
+	 * operations like JUMP 25[CB] and LOAD 6[LB]
+	 */
+	public void emit(Op op, Reg r, int d) {
+		emit(op.ordinal(), 0, r.ordinal(), d);
+	}
+
+	/**
+	 * emit operation with n field, and register r and integer displacement.  These are
+	 * operations like JUMPIF (1) 25[CB]
+	 */
+	public void emit(Op op, int n, Reg r, int d) {
+		emit(op.ordinal(), n, r.ordinal(), d);
+	}
+
+	/**
+	 * emit operation with integer n, r, d.  These are operations
+	 * like RETURN (1) 3  and HALT (4) 0
+	 */
+	public void emit(Op op, int n, int r, int d) {
+		emit(op.ordinal(), n, r, d);
+	}
+
+	/**
+	 * helper operation for emit using integer values
+	 */
+	private void emit(int op, int n, int r, int d) {
+		if (n > 255) {
+			System.out.println("length of operand can't exceed 255 words");
+			n = 255; // to allow code generation to continue
+		}
+		if (CT >= Machine.PB)
+			System.out.println("mJAM: code segment capacity exceeded");
+
+		Instruction nextInstr = new Instruction(op, n, r, d);
+		code[CT] = nextInstr;
+		CT = CT + 1;
+	}
+
+	/**
+	 * Places a string constant in the data segment, laid out like an array
+	 * made by newarr (-2, number of elements, elements), once for each
+	 * distinct string
+	 * @param s - the string
+	 * @return address (relative to SB) of the elements of the array
+	 */
+	public int stringConstant(String s) {
+		Integer addr = strings.get(s);
+		if (addr == null) {
+			addr = DT + 2;
+			reserveData(s.length() + 2);
+			data[DT++] = -2;
+			data[DT++] = s.length();
+			for (int i = 0; i < s.length(); i++)
+				data[DT++] = s.charAt(i);
+			strings.put(s, addr);
+		}
+		return addr;
+	}
+
+	/**
+	 * Makes room for the given number of words after DT in the data segment
+	 */
+	void reserveData(int words) {
+		if (DT + words > data.length) {
+			int[] grown = new int[Math.max(DT + words, 2 * data.length)];
+			System.arraycopy(data, 0, grown, 0, DT);
+			data = grown;
+		}
+	}
+
+	/**
+	 * @return address (relative to CB) of next instruction to be generated
+	 */
+	public int nextInstrAddr() {
+		return CT;
+	}
+
+	/**
+	 * Update the displacement component of the (JUMP or CALL) instruction at addr
+	 * @param addr
+	 * @param displacement
+	 */
+	public void patch(int addr, int displacement) {
+		if (addr < 0 || addr >= CT) {
+			System.out.println("patch:  address of instruction to be patched is out of range");
+			return;
+		}
+		if (displacement < 0 || displacement > CT) {
+			System.out.println("patch:  target address of patch is out of range");
+			return;
+		}
+		code[addr].d = displacement;
+	}
+}
@@ -23,9 +23,18 @@ public class Disassembler {
 	private FileWriter asmOut;
 	private boolean error = false;
 	private Map<Integer, String> addrToLabel;
+	private CodeStore store;
 
 	public Disassembler(String objectFileName) {
+		this(objectFileName, Machine.codeStore());
+	}
+
+	/**
+	 * @param store  the code store the object file is read into
+	 */
+	public Disassembler(String objectFileName, CodeStore store) {
 		this.objectFileName = objectFileName;
+		this.store = store;
 	}
 
 	/**
@@ -74,6 +83,27 @@ public class Disassembler {
 		asmWrite(String.format("%-8s",prim.toString()));
 	}
 		
+	/**
+	 * Writes the characters of an array in the data segment as a quoted
+	 * string, escaping quotes and characters that are not printable.
+	 * @param data    the data segment.
+	 * @param start   the address of the first element.
+	 * @param length  the number of elements.
+	 */
+	private void writeString(int[] data, int start, int length) {
+		StringBuilder s = new StringBuilder("\"");
+		for (int i = start; i < start + length; i++) {
+			int c = data[i];
+			if (c == '"' || c == '\\')
+				s.append('\\').append((char) c);
+			else if (c >= ' ' && c < 127)
+				s.append((char) c);
+			else
+				s.append(String.format("\\u%04x", c & 0xffff));
+		}
+		asmWrite(s.append('"').toString());
+	}
+		
 	/**
 	 * Writes the given instruction in assembly-code format.
 	 * @param instr   the instruction to display.
@@ -192,8 +222,8 @@ public class Disassembler {
 
 		// collect all addresses that may be the target of a jump instruction
 		SortedSet<Integer> targets = new TreeSet<Integer>();
-		for (int addr = Machine.CB; addr < Machine.CT; addr++) {
-			Instruction inst = Machine.code[addr];
+		for (int addr = Machine.CB; addr < store.CT; addr++) {
+			Instruction inst = store.code[addr];
 			Machine.Op op = Machine.intToOp[inst.op];
 			switch (op) {
 			case CALL:
@@ -220,7 +250,7 @@ public class Disassembler {
 		}
 
 		// disassemble each instruction
-		for (int addr = Machine.CB; addr < Machine.CT; addr++) {
+		for (int addr = Machine.CB; addr < store.CT; addr++) {
 			
 			// generate instruction address
 			asmWrite(String.format("%3d  ", addr));
@@ -232,12 +262,20 @@ public class Disassembler {
 				asmWrite("       ");
 
 			// instruction
-			writeInstruction(Machine.code[addr]);
+			writeInstruction(store.code[addr]);
 
 			// newline 
 			asmWrite("\n");
 		}
 
+		// string constants in the data segment, at the address of their
+		// elements relative to SB
+		for (int addr = 0; addr + 1 < store.DT; addr += store.data[addr + 1] + 2) {
+			asmWrite(String.format("%3d  ", addr + 2) + "[SB]   ");
+			writeString(store.data, addr + 2, store.data[addr + 1]);
+			asmWrite("\n");
+		}
+
 		// close output file
 		try {
 			asmOut.close();
@@ -268,7 +306,7 @@ public class Disassembler {
 	 * @return true if error encountered else false
 	 */
 	public boolean disassemble() {
-		ObjectFile objectFile = new ObjectFile(objectFileName);
+		ObjectFile objectFile = new ObjectFile(objectFileName, store);
 
 		// read object file into code store
 		if (objectFile.read()) {
@@ -0,0 +1,274 @@
+/**
+ * Allocates and collects the mJAM heap
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * The heap grows down from HB to HT. Every block starts with two header
+ * words followed by its contents, and the address handed to the program is
+ * that of the contents:
+ *
+ *   class object addr (-1), number of fields    objects (newobj)
+ *   -2, number of elements                      arrays (newarr)
+ *   -5, number of words                         alloc
+ *   -3, number of words                         free blocks
+ *
+ * and a single word -4 fills a one word gap. This makes the heap walkable
+ * from HT to HB.
+ *
+ * The heap is collected by mark-sweep before it grows into the last
+ * sixteenth of the data store above the stack, which is kept free so that
+ * the stack can still grow when the newest blocks, which are at HT, are
+ * live. Blocks may use that reserve when a collection does not free enough
+ * or when less than the reserve was allocated since the last one. mJAM
+ * words are not typed, so the collector is conservative: any word on the
+ * stack between SB and ST, the OB register, or any word in a live block
+ * that equals the contents address of a block keeps that block alive.
+ * Blocks are never moved, since an integer that happens to look like an
+ * address must not change. Dead blocks are coalesced into free blocks;
+ * free blocks at HT are given back to the space between the stack and the
+ * heap, and the others are used for allocation (in address order, once
+ * each) until the next collection.
+ */
+final class Heap {
+  final static int
+    arrayTag = -2, freeTag = -3, fillerTag = -4, allocTag = -5;
+
+  // collection can be turned off with -Dmjam.gc=false, so that the heap
+  // only grows as it did before
+  static boolean enabled = !"false".equals(System.getProperty("mjam.gc"));
+
+  // the machine whose data store this heap is in
+  private final Interpreter vm;
+
+  // number of words above the stack that blocks are only taken from after
+  // a collection, or 0 if collection is off
+  int reserve;
+
+  // free blocks found by the last collection: start and size in words,
+  // including the header
+  int[] freeStart = new int[16], freeSize = new int[16];
+  int freeCount, freeNext;
+
+  // HT after the last collection, and the words since taken from free
+  // blocks, which together give the words allocated since
+  private int lastHT;
+  private long freeAllocated;
+
+  // statistics of the current run
+  long collections, pauseNanos, maxPauseNanos, reclaimedWords;
+
+  // bitmaps over the data store, and the mark stack
+  private long[] starts = new long[0], marks = new long[0];
+  private int[] markStack = new int[256];
+
+  Heap(Interpreter vm) {
+    this.vm = vm;
+  }
+
+  /**
+   * Forgets the free blocks and statistics of the previous run
+   */
+  void reset() {
+    reserve = enabled ? vm.HB / 16 : 0;
+    lastHT = vm.HB;
+    freeAllocated = 0;
+    freeCount = freeNext = 0;
+    collections = pauseNanos = maxPauseNanos = reclaimedWords = 0;
+  }
+
+  /**
+   * @return true if allocation has to go through allocate, false if the
+   * next block may simply be taken below HT
+   */
+  boolean hasFreeBlocks() {
+    return freeNext < freeCount;
+  }
+
+  /**
+   * Reserves a block of size words, including the header, collecting the
+   * heap if it reaches the reserve. The caller writes the header.
+   * @return the address of the block, or -1 if the data store is full
+   */
+  int allocate(int size) {
+    int block = allocateFree(size);
+    if (block >= 0)
+      return block;
+    int room = vm.HT - vm.ST - size;
+    if (enabled && (room < 0 || (room < reserve && allocatedSinceCollection() >= reserve))) {
+      collect();
+      block = allocateFree(size);
+      if (block >= 0)
+        return block;
+    }
+    if (vm.HT - vm.ST >= size) {
+      vm.HT = vm.HT - size;
+      return vm.HT;
+    }
+    return -1;
+  }
+
+  private long allocatedSinceCollection() {
+    return lastHT - vm.HT + freeAllocated;
+  }
+
+  // Takes the block from the top of the next free block that is large
+  // enough, leaving the rest free. Blocks that are passed over wait for the
+  // next collection.
+  private int allocateFree(int size) {
+    int[] data = vm.data;
+    while (freeNext < freeCount) {
+      int start = freeStart[freeNext], rest = freeSize[freeNext] - size;
+      if (rest >= 0) {
+        freeAllocated += size;
+        if (rest >= 2) {
+          data[start] = freeTag;
+          data[start + 1] = rest - 2;
+          freeSize[freeNext] = rest;
+        } else {
+          if (rest == 1)
+            data[start] = fillerTag;
+          freeNext++;
+        }
+        return start + rest;
+      }
+      freeNext++;
+    }
+    freeCount = freeNext = 0;
+    return -1;
+  }
+
+  /**
+   * Collects the heap, updating HT and the free blocks
+   */
+  void collect() {
+    long startTime = System.nanoTime();
+    int[] data = vm.data;
+    int ht = vm.HT, hb = vm.HB;
+
+    // contents addresses range over HT + 2 .. HB
+    int words = (hb - ht + 1 + 63) >> 6;
+    if (starts.length < words) {
+      starts = new long[words];
+      marks = new long[words];
+    } else {
+      Arrays.fill(starts, 0, words, 0);
+      Arrays.fill(marks, 0, words, 0);
+    }
+
+    for (int p = ht; p < hb; ) {
+      int tag = data[p];
+      if (tag == fillerTag) {
+        p++;
+        continue;
+      }
+      if (tag != freeTag)
+        set(starts, p + 2 - ht);
+      p += data[p + 1] + 2;
+    }
+
+    // mark from the roots
+    int top = 0;
+    for (int addr = Interpreter.SB; addr <= vm.ST; addr++) {
+      int v = (addr < vm.ST) ? data[addr] : vm.OB;
+      top = markCandidate(v, ht, hb, top);
+    }
+    while (top > 0) {
+      int object = markStack[--top];
+      int end = object + data[object - 1];
+      for (int addr = object; addr < end; addr++)
+        top = markCandidate(data[addr], ht, hb, top);
+    }
+
+    // sweep, coalescing dead and free blocks
+    freeCount = freeNext = 0;
+    int newHT = ht;
+    int runStart = -1;
+    for (int p = ht; p <= hb; ) {
+      boolean live = false;
+      int size = 0;
+      if (p < hb) {
+        int tag = data[p];
+        if (tag == fillerTag) {
+          size = 1;
+        } else {
+          size = data[p + 1] + 2;
+          if (tag != freeTag) {
+            live = get(marks, p + 2 - ht);
+            if (!live)
+              reclaimedWords += size;
+          }
+        }
+      }
+      if ((live || p == hb) && runStart >= 0) {
+        if (runStart == newHT)
+          newHT = p;
+        else
+          addFree(data, runStart, p - runStart);
+        runStart = -1;
+      } else if (!live && p < hb && runStart < 0) {
+        runStart = p;
+      }
+      if (p == hb)
+        break;
+      p += size;
+    }
+    vm.HT = newHT;
+    lastHT = newHT;
+    freeAllocated = 0;
+
+    long pause = System.nanoTime() - startTime;
+    collections++;
+    pauseNanos += pause;
+    maxPauseNanos = Math.max(maxPauseNanos, pause);
+  }
+
+  private int markCandidate(int v, int ht, int hb, int top) {
+    if (v < ht + 2 || v > hb)
+      return top;
+    int bit = v - ht;
+    if (!get(starts, bit) || get(marks, bit))
+      return top;
+    set(marks, bit);
+    if (top == markStack.length)
+      markStack = Arrays.copyOf(markStack, 2 * top);
+    markStack[top] = v;
+    return top + 1;
+  }
+
+  private void addFree(int[] data, int start, int size) {
+    if (size == 1) {
+      data[start] = fillerTag;
+      return;
+    }
+    data[start] = freeTag;
+    data[start + 1] = size - 2;
+    if (freeCount == freeStart.length) {
+      freeStart = Arrays.copyOf(freeStart, 2 * freeCount);
+      freeSize = Arrays.copyOf(freeSize, 2 * freeCount);
+    }
+    freeStart[freeCount] = start;
+    freeSize[freeCount] = size;
+    freeCount++;
+  }
+
+  private static boolean get(long[] bits, int i) {
+    return (bits[i >> 6] & (1L << i)) != 0;
+  }
+
+  private static void set(long[] bits, int i) {
+    bits[i >> 6] |= 1L << i;
+  }
+
+  /**
+   * Writes the collector statistics of the last run
+   */
+  void showStatistics(PrintStream out) {
+    out.println(String.format("*** GC: %d collections, %.3f ms total pause, %.3f ms max pause, %d bytes reclaimed",
+        collections, pauseNanos / 1e6, maxPauseNanos / 1e6, 4 * reclaimedWords));
+  }
+}
@@ -11,17 +11,84 @@ package mJAM;
 public class Interpreter {
 
 // DATA STORE
-  static int[] data = new int[1024];
+  // The stack grows up from SB and the heap down from HB, so the whole data
+  // store is allocated up front. Its size in words is 1024 unless set with
+  // setDataStoreSize. The command lines of the interpreter and the compiler
+  // set it from -Xmjam-mem=<size> (e.g. -Xmjam-mem=64M) or -Dmjam.mem=<size>.
+  final static int DEFAULT_DATA_STORE_SIZE = 1024;
+
+  int[] data;
 
 // DATA STORE REGISTERS AND OTHER REGISTERS
   final static int
     CB = 0,
-    SB = 0,
-    HB = 1024;  // = upper bound of data array + 1
+    SB = 0;
+
+  int
+    HB;  // = upper bound of data array + 1
 
-  static int
+  int
     CT, CP, ST, HT, LB, OB, status, temp;
 
+  // PROGRAM OUTPUT
+  // put, putint and puteol write to a buffer that goes to System.out unless
+  // another output is set with setOutput (or -Xmjam-out=<file>)
+  ProgramOutput output = new ProgramOutput();
+
+  /**
+   * Sets where program output goes, null for System.out
+   */
+  public void setOutput(ProgramOutput out) {
+    output = (out == null) ? new ProgramOutput() : out;
+  }
+
+  public ProgramOutput getOutput() {
+    return output;
+  }
+
+  // PROGRAM INPUT
+  // get, getint and geteol read through a buffer from System.in unless
+  // another input is set with setInput (or -Xmjam-in=<file>)
+  ProgramInput input = new ProgramInput();
+
+  /**
+   * Sets where program input comes from, null for System.in
+   */
+  public void setInput(ProgramInput in) {
+    input = (in == null) ? new ProgramInput() : in;
+  }
+
+  public ProgramInput getInput() {
+    return input;
+  }
+
+  // whether interpret writes collector statistics to System.err, set with
+  // -Dmjam.gc.stats=true or -Xmjam-gc-stats
+  public boolean gcStatistics = Boolean.getBoolean("mjam.gc.stats");
+
+  // CODE STORE AND HEAP
+  // the program run by this interpreter, and the heap in its data store
+  final CodeStore code;
+  final Heap heap = new Heap(this);
+
+  /**
+   * An interpreter of the program in the code store that the static emit
+   * methods of Machine fill
+   */
+  public Interpreter() {
+    this(Machine.codeStore());
+  }
+
+  /**
+   * An interpreter of the program in the given code store. Interpreters do
+   * not share any machine state, data store or program input and output, so
+   * several can run programs at the same time.
+   */
+  public Interpreter(CodeStore code) {
+    this.code = code;
+    setDataStoreSize(DEFAULT_DATA_STORE_SIZE);
+  }
+
   // status values
   final static int
     running = 0, halted = 1, failedDataStoreFull = 2, failedInvalidCodeAddress = 3,
@@ -29,11 +96,15 @@ public class Interpreter {
     failedIOError = 7, failedArrayIndex = 8, failedNullPointer = 9, 
     failedMethodIndex = 10;
 
-  static long
+  long
     accumulator;
 
+  // number of instructions executed since the program was started
+  long
+    executed;
 
-static int content (int r) {
+
+int content (int r) {
     // Returns the current content of register r,
 	Machine.Reg reg = Machine.intToReg[r];
     switch (reg) {
@@ -65,21 +136,85 @@ static int content (int r) {
   }
 
 
+// DATA STORE SIZE
+
+  /**
+   * Replaces the data store with one of the given number of words, which
+   * moves HB to the new upper bound. Takes effect from the next run.
+   * @param words size of the data store, at least 1
+   */
+  public void setDataStoreSize(int words) {
+    if (words < 1)
+      throw new IllegalArgumentException("data store size must be positive: " + words);
+    if (data == null || words != data.length)
+      data = new int[words];
+    HB = words;
+  }
+
+  /**
+   * @return the size of the data store in words
+   */
+  public int dataStoreSize() {
+    return data.length;
+  }
+
+  /**
+   * Parses a data store size in words, with an optional K (1024) or
+   * M (1024 * 1024) suffix, e.g. "4096", "256K" or "64M".
+   */
+  public static int parseSize(String s) {
+    long unit = 1;
+    String digits = s.trim();
+    if (digits.endsWith("K") || digits.endsWith("k")) {
+      unit = 1024;
+    } else if (digits.endsWith("M") || digits.endsWith("m")) {
+      unit = 1024 * 1024;
+    }
+    if (unit > 1)
+      digits = digits.substring(0, digits.length() - 1);
+    long words;
+    try {
+      words = Math.multiplyExact(Long.parseLong(digits), unit);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid data store size: " + s);
+    } catch (ArithmeticException e) {
+      // too large for a long
+      throw new IllegalArgumentException("invalid data store size: " + s);
+    }
+    if (words < 1 || words > Integer.MAX_VALUE - 8)
+      throw new IllegalArgumentException("invalid data store size: " + s);
+    return (int) words;
+  }
+
+  /**
+   * @return the data store size set with -Dmjam.mem=<size>, or 0 if there is
+   *         none
+   * @throws IllegalArgumentException if the size is not valid
+   */
+  public static int dataStoreSizeProperty() {
+    String size = System.getProperty("mjam.mem");
+    return (size == null) ? 0 : parseSize(size);
+  }
+
 // PROGRAM STATUS
 
-  static void dump() {
+  void dump() {
     // Writes a summary of the machine state.
     int addr, dynamicLink;
+    // Addresses take 4 digits in the default store; wider stores shift the
+    // columns right
+    int width = Math.max(6, String.valueOf(HB - 1).length() + 2);
+    String margin = rightPad(width, "") + "      ";
     System.out.println ("");
     System.out.println ("At instruction " + CP + ", state of mJAM data store and registers is:");
     System.out.println ("");
     if (HT == HB)
-      System.out.println("            |--------|          (heap is empty)");
+      System.out.println(margin + "|--------|          (heap is empty)");
     else {
-      System.out.println("      HB--> ");
-      System.out.println("            |--------|");
+      System.out.println(rightPad(width, "") + "HB--> ");
+      System.out.println(margin + "|--------|");
       for (addr = HB - 1; addr >= HT; addr--) {
-        System.out.print(rightPad(6,addr + ":"));
+        System.out.print(rightPad(width,addr + ":"));
         if (addr == OB)
           System.out.print("OB--> ");
         else if (addr == HT)
@@ -88,18 +223,18 @@ static int content (int r) {
           System.out.print("      ");
         System.out.println("|" + leftPad(8,String.valueOf(data[addr])) + "|");
       }
-      System.out.println("            |--------|");
+      System.out.println(margin + "|--------|");
     }
-    System.out.println("            |////////|");
-    System.out.println("            |////////|");
+    System.out.println(margin + "|////////|");
+    System.out.println(margin + "|////////|");
     if (ST == SB)
-      System.out.println("            |--------|          (stack is empty)");
+      System.out.println(margin + "|--------|          (stack is empty)");
     else {
       dynamicLink = LB;
-      System.out.println("      ST--> |////////|");
-      System.out.println("            |--------|");
+      System.out.println(rightPad(width, "") + "ST--> |////////|");
+      System.out.println(margin + "|--------|");
       for (addr = ST - 1; addr >= SB; addr--) {
-        System.out.print(rightPad(6,addr + ": "));
+        System.out.print(rightPad(width,addr + ": "));
         if (addr == SB)
           System.out.print("SB--> ");
         else if (addr == LB) 
@@ -116,7 +251,7 @@ static int content (int r) {
           System.out.print("|" + leftPad(8,String.valueOf(data[addr])) + "|");
         System.out.println ("");
         if (addr == dynamicLink) {
-          System.out.println("            |--------|");
+          System.out.println(margin + "|--------|");
           dynamicLink = data[addr + 1];
         }
       }
@@ -132,12 +267,13 @@ static int content (int r) {
   }
       
   private static String rightPad(int len, String s) {
-      int aLen = Math.max(len, s.length());
-      String r = s + "        ";
-      return r.substring(0,aLen);
+      StringBuffer buf = new StringBuffer(s);
+      while (buf.length() < len)
+        buf.append(' ');
+      return buf.toString();
   }   
 
-  static void showStatus () {
+  void showStatus () {
     // Writes an indication of whether and why the program has terminated.
     System.out.println ("");
     System.out.print("*** ");
@@ -183,15 +319,18 @@ static int content (int r) {
 
 // INTERPRETATION
 
-  static void checkSpace (int spaceNeeded) {
+  boolean checkSpace (int spaceNeeded) {
     // Signals failure if there is not enough space to expand the stack or
-    // heap by spaceNeeded.
+    // heap by spaceNeeded, and returns whether there is.
 
-    if (HT - ST < spaceNeeded)
+    if (HT - ST < spaceNeeded) {
       status = failedDataStoreFull;
+      return false;
+    }
+    return true;
   }
     
-  static boolean nullRef (int addr) {
+  boolean nullRef (int addr) {
     // tests if addr is null (represented by 0), and sets status to halt if so
       if (addr != Machine.nullRep)
 	  return false;
@@ -204,7 +343,7 @@ static int content (int r) {
     return (datum == Machine.trueRep);
   }
 
-  static int overflowChecked (long datum) {
+  int overflowChecked (long datum) {
     // Signals failure if the datum is too large to fit into a single word,
     // otherwise returns the datum as a single word.
 
@@ -220,32 +359,15 @@ static int content (int r) {
     return b ? Machine.trueRep : Machine.falseRep;
   }
 
-  static int currentChar;
-
-  static int readInt() throws java.io.IOException {
-    int temp = 0;
-    int sign = 1;
-
-    do {
-      currentChar = System.in.read();
-    } while (Character.isWhitespace((char) currentChar));
+  int currentChar;
 
-    if ((currentChar == '-') || (currentChar == '+'))
-      do {
-        sign = (currentChar == '-') ? -1 : 1;
-        currentChar = System.in.read();
-      } while ((currentChar == '-')  || currentChar == '+');
-
-    if (Character.isDigit((char) currentChar))
-      do {
-        temp = temp * 10 + (currentChar - '0');
-        currentChar = System.in.read();
-      } while (Character.isDigit((char) currentChar));
-
-    return sign * temp;
+  int readInt() throws java.io.IOException {
+    int value = input.readInt();
+    currentChar = input.last();
+    return value;
   }
 
-  static void callPrimitive (int id) {
+  void callPrimitive (int id) {
     // Invokes the given primitive routine.
 
     int addr, size, index;
@@ -341,8 +463,9 @@ static int content (int r) {
       case get:
         ST = ST - 1;
         addr = data[ST];
+        flushOutput();  // e.g. a prompt
         try {
-          currentChar = System.in.read();
+          currentChar = input.read();
         } catch (java.io.IOException s) {
           status = failedIOError;
         }
@@ -351,21 +474,33 @@ static int content (int r) {
       case put:
         ST = ST - 1;
         ch = (char) data[ST];
-        System.out.print(ch);
+        try {
+          output.put(ch);
+        } catch (java.io.IOException s) {
+          status = failedIOError;
+        }
         break;
       case geteol:
+        flushOutput();
         try {
-          while ((currentChar = System.in.read()) != '\n');
+          do {
+            currentChar = input.read();
+          } while (currentChar != '\n' && currentChar != -1);
         } catch (java.io.IOException s) {
           status = failedIOError;
         }
         break;
       case puteol:
-        System.out.println ("");
+        try {
+          output.putEol();
+        } catch (java.io.IOException s) {
+          status = failedIOError;
+        }
         break;
       case getint:
         ST = ST - 1;
         addr = data[ST];
+        flushOutput();
         try {
           accumulator = readInt();
         } catch (java.io.IOException s) {
@@ -376,40 +511,64 @@ static int content (int r) {
       case putint:
         ST = ST - 1;
         accumulator = data[ST];
-        System.out.print(accumulator);
+        try {
+          output.putInt((int) accumulator);
+        } catch (java.io.IOException s) {
+          status = failedIOError;
+        }
         break;
       case alloc:
+	// ..., number of words  ==> ..., addr of block
         size = data[ST - 1];
-        checkSpace(size);
-        HT = HT - size;
-        data[ST - 1] = HT;
+        if (size < 0) {
+          status = failedArrayIndex;
+          break;
+        }
+        addr = heap.allocate(size + 2);  // the block gets a header too
+        if (addr < 0) {
+          status = failedDataStoreFull;
+          break;                  // leave the heap as it was for dump
+        }
+        data[addr] = Heap.allocTag;
+        data[addr + 1] = size;
+        data[ST - 1] = addr + 2;
         break;
       case dispose:
-        ST = ST - 1; // no action taken at present
+        ST = ST - 1; // no action taken, the block is collected when unreachable
         break;
       case newobj:
 	// ..., class obj addr, number of fields  ==> ..., new obj addr
         size = data[ST-1] + 2;    // number of fields + 2
-        checkSpace(size);
-        HT = HT - size;           // reserve space
-        data[HT] = data[ST - 2];  // set class object addr
-        data[HT + 1] = size - 2;  // set size of object
-        data[ST - 2] = HT + 2;    // addr of new object instance returned on stack
+        addr = heap.allocate(size);  // reserve space, collecting if full
+        if (addr < 0) {
+          status = failedDataStoreFull;
+          break;
+        }
+        data[addr] = data[ST - 2];  // set class object addr
+        data[addr + 1] = size - 2;  // set size of object
+        data[ST - 2] = addr + 2;    // addr of new object instance returned on stack
         ST = ST - 1;              // effect of pop 2 args, push 1 result
         for (int i = 2; i < size; i++) {
-            data[HT + i] = 0;     // zero all fields
+            data[addr + i] = 0;     // zero all fields
         }
         break;
      case newarr: 
 	// ..., number of elements  ==> ..., new int[] addr
         size = data[ST-1] + 2;    // array elements + #elts + tag
-        checkSpace(size);
-        HT = HT - size;
-        data[HT] = -2;           // tag for array
-        data[HT + 1] = size -2;  // size of array
-        data[ST - 1] = HT + 2;   // addr of array instance returned on stack
+        if (size < 2) {
+          status = failedArrayIndex;  // negative length
+          break;
+        }
+        addr = heap.allocate(size);
+        if (addr < 0) {
+          status = failedDataStoreFull;
+          break;
+        }
+        data[addr] = Heap.arrayTag;  // tag for array
+        data[addr + 1] = size -2;  // size of array
+        data[ST - 1] = addr + 2;   // addr of array instance returned on stack
         for (int i = 2; i < size; i++) {
-            data[HT + i] = 0;    // zero all elements
+            data[addr + i] = 0;    // zero all elements
         }
         break;
      case arrayref:
@@ -462,183 +621,1016 @@ static int content (int r) {
           data[addr + index] = data[ST - 1];  // TODO should guard for java index err
         ST = ST - 3;
         break;
+     case putstr:
+	// ..., array addr a  ==> ...
+	//  and writes the elements of a as characters
+        ST = ST - 1;
+        addr = data[ST];
+        if (nullRef(addr))
+          break;
+        if (data[addr - 2] != -2) {
+          status = failedArrayIndex;
+          break;
+        }
+        try {
+          output.putChars(data, addr, data[addr - 1]);
+        } catch (java.io.IOException s) {
+          status = failedIOError;
+        }
+        break;
     }
   }
 
-  static void interpretProgram() {
-    // Runs the program in code store.
+  // DECODED CODE STORE
+  // The code store is decoded before a run into parallel int arrays, with
+  // operands on the registers that are constant while an instruction runs
+  // (CB, CT, CP, PB, PT, SB, HB) resolved to absolute addresses, and calls of
+  // the common primitives turned into opcodes of their own.
+  int[] decodedOp = new int[0], decodedN = new int[0], decodedD = new int[0];
 
-    Instruction currentInstr;
-    int op, n, d, r;
-    int addr;
+  // decoded opcodes; OTHER instructions run through execute()
+  final static int
+    OTHER = 0,
+    LOAD_ABS = 1, LOAD_ST = 2, LOAD_LB = 3, LOAD_OB = 4,
+    LOADA_ST = 5, LOADA_LB = 6, LOADA_OB = 7, LOADI = 8, LOADL = 9,
+    STORE_ABS = 10, STORE_ST = 11, STORE_LB = 12, STORE_OB = 13, STOREI = 14,
+    CALL_ABS = 15, RETURN = 16, PUSH = 17, POP = 18,
+    JUMP_ABS = 19, JUMPI = 20, JUMPIF_ABS = 21,
+    P_ID = 22, P_NOT = 23, P_AND = 24, P_OR = 25, P_SUCC = 26, P_PRED = 27,
+    P_NEG = 28, P_ADD = 29, P_SUB = 30, P_MULT = 31, P_DIV = 32, P_MOD = 33,
+    P_LT = 34, P_LE = 35, P_GE = 36, P_GT = 37, P_EQ = 38, P_NE = 39,
+    P_NEWOBJ = 40, P_NEWARR = 41, P_ARRAYREF = 42, P_ARRAYUPD = 43,
+    P_FIELDREF = 44, P_FIELDUPD = 45, P_PUT = 46, P_PUTINT = 47, P_PUTEOL = 48,
+    P_GET = 49, P_GETINT = 50, P_EOL = 51, P_EOF = 52;
+
+  // SUPERINSTRUCTIONS
+  // Fusion is an optional stage, off unless -Dmjam.fusion=true is set.
+  // When fusion is on, the first instruction of a common sequence is
+  // replaced by a superinstruction that runs the whole sequence. The other
+  // instructions keep their own decoding, so jumps into the middle still
+  // work. A superinstruction first checks that none of its instructions would
+  // fail; if one would, it only runs the first, and the failure then happens
+  // at the same instruction and with the same state as without fusion.
+  public static boolean fusion = Boolean.getBoolean("mjam.fusion");
+
+  // superinstructions executed by the last run
+  long
+    fused;
+
+  final static int
+    F_LB_LOADL_ADD_STORE = 53,  // LOAD a[LB]; LOADL k; CALL add; STORE b[LB]
+    F_LB_LOADL_SUB_STORE = 54,  // LOAD a[LB]; LOADL k; CALL sub; STORE b[LB]
+    F_LB_LOADL_CMP_JUMPIF = 55, // LOAD a[LB]; LOADL k; CALL <cmp>; JUMPIF (n) t
+    F_CMP_JUMPIF = 56,          // CALL <cmp>; JUMPIF (n) t
+    F_LB_LOADL_FIELDREF = 57,   // LOAD a[LB]; LOADL k; CALL fieldref
+    F_OB_LOADL_FIELDREF = 58,   // LOADA a[OB]; LOADL k; CALL fieldref
+    F_LB_LB_ARRAYREF = 59,      // LOAD a[LB]; LOAD b[LB]; CALL arrayref
+    F_LB_LOADL = 60,            // LOAD a[LB]; LOADL k
+    F_LB_LB = 61;               // LOAD a[LB]; LOAD b[LB]
+
+  /**
+   * Tells if register r has a value fixed for the instruction at addr
+   */
+  static boolean isConstantRegister(int r) {
+    if (r < 0 || r >= Machine.intToReg.length)
+      return false;
+    switch (Machine.intToReg[r]) {
+      case ST:
+      case LB:
+      case HT:
+      case OB:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Value of a constant register while the instruction at addr executes
+   */
+  int constantRegister(int r, int addr) {
+    if (Machine.intToReg[r] == Machine.Reg.CP)
+      return addr;
+    return content(r);
+  }
+
+  static int decodePrimitive(Machine.Prim prim) {
+    switch (prim) {
+      case id:       return P_ID;
+      case not:      return P_NOT;
+      case and:      return P_AND;
+      case or:       return P_OR;
+      case succ:     return P_SUCC;
+      case pred:     return P_PRED;
+      case neg:      return P_NEG;
+      case add:      return P_ADD;
+      case sub:      return P_SUB;
+      case mult:     return P_MULT;
+      case div:      return P_DIV;
+      case mod:      return P_MOD;
+      case lt:       return P_LT;
+      case le:       return P_LE;
+      case ge:       return P_GE;
+      case gt:       return P_GT;
+      case eq:       return P_EQ;
+      case ne:       return P_NE;
+      case newobj:   return P_NEWOBJ;
+      case newarr:   return P_NEWARR;
+      case arrayref: return P_ARRAYREF;
+      case arrayupd: return P_ARRAYUPD;
+      case fieldref: return P_FIELDREF;
+      case fieldupd: return P_FIELDUPD;
+      case put:      return P_PUT;
+      case putint:   return P_PUTINT;
+      case puteol:   return P_PUTEOL;
+      case get:      return P_GET;
+      case getint:   return P_GETINT;
+      case eol:      return P_EOL;
+      case eof:      return P_EOF;
+      default:       return OTHER;  // geteol, putstr and the heap primitives
+    }
+  }
+
+  /**
+   * Decodes the code store CB..CT-1 into decodedOp, decodedN and decodedD.
+   * Anything that cannot be resolved ahead of time is decoded as OTHER.
+   */
+  void decode() {
+    if (decodedOp.length < CT) {
+      decodedOp = new int[CT];
+      decodedN = new int[CT];
+      decodedD = new int[CT];
+    }
+    for (int addr = CB; addr < CT; addr++) {
+      Instruction instr = code.code[addr];
+      int op = OTHER, n = instr.n, d = instr.d, r = instr.r;
+      boolean constant = isConstantRegister(r);
+      Machine.Reg reg = constant ? null : (r >= 0 && r < Machine.intToReg.length) ? Machine.intToReg[r] : null;
+
+      if (instr.op >= 0 && instr.op < Machine.intToOp.length) {
+        switch (Machine.intToOp[instr.op]) {
+          case LOAD:
+            if (constant) {
+              op = LOAD_ABS;
+              d = d + constantRegister(r, addr);
+            } else if (reg == Machine.Reg.ST)
+              op = LOAD_ST;
+            else if (reg == Machine.Reg.LB)
+              op = LOAD_LB;
+            else if (reg == Machine.Reg.OB)
+              op = LOAD_OB;
+            break;
+          case LOADA:
+            if (constant) {
+              // the address is a literal
+              op = LOADL;
+              d = d + constantRegister(r, addr);
+            } else if (reg == Machine.Reg.ST)
+              op = LOADA_ST;
+            else if (reg == Machine.Reg.LB)
+              op = LOADA_LB;
+            else if (reg == Machine.Reg.OB)
+              op = LOADA_OB;
+            break;
+          case LOADI:
+            op = LOADI;
+            break;
+          case LOADL:
+            op = LOADL;
+            break;
+          case STORE:
+            if (constant) {
+              op = STORE_ABS;
+              d = d + constantRegister(r, addr);
+            } else if (reg == Machine.Reg.ST)
+              op = STORE_ST;
+            else if (reg == Machine.Reg.LB)
+              op = STORE_LB;
+            else if (reg == Machine.Reg.OB)
+              op = STORE_OB;
+            break;
+          case STOREI:
+            op = STOREI;
+            break;
+          case CALL:
+            if (constant) {
+              int target = d + constantRegister(r, addr);
+              if (target < Machine.PB) {
+                op = CALL_ABS;
+                d = target;
+              } else if (target - Machine.PB < Machine.intToPrim.length) {
+                op = decodePrimitive(Machine.intToPrim[target - Machine.PB]);
+              }
+            }
+            break;
+          case RETURN:
+            op = RETURN;
+            break;
+          case PUSH:
+            op = PUSH;
+            break;
+          case POP:
+            op = POP;
+            break;
+          case JUMP:
+            if (constant) {
+              op = JUMP_ABS;
+              d = d + constantRegister(r, addr);
+            }
+            break;
+          case JUMPI:
+            op = JUMPI;
+            break;
+          case JUMPIF:
+            if (constant) {
+              op = JUMPIF_ABS;
+              d = d + constantRegister(r, addr);
+            }
+            break;
+          default:
+            break;
+        }
+      }
+      decodedOp[addr] = op;
+      decodedN[addr] = n;
+      decodedD[addr] = d;
+    }
+    if (fusion)
+      fuse();
+  }
+
+  static boolean isComparison(int op) {
+    return op >= P_LT && op <= P_NE;
+  }
+
+  /**
+   * Applies a decoded comparison primitive
+   */
+  static boolean compare(int op, int x, int y) {
+    switch (op) {
+      case P_LT: return x < y;
+      case P_LE: return x <= y;
+      case P_GE: return x >= y;
+      case P_GT: return x > y;
+      case P_EQ: return x == y;
+      default:   return x != y;
+    }
+  }
 
+  /**
+   * Replaces the first instruction of each recognized sequence in the
+   * decoded code store with a superinstruction, longest sequences first. The
+   * comparison of a fused compare-and-jump is kept in the n field, which its
+   * first instruction does not use.
+   */
+  void fuse() {
+    int[] ops = decodedOp;
+    for (int addr = CB; addr < CT; addr++) {
+      int op0 = ops[addr];
+      int op1 = (addr + 1 < CT) ? ops[addr + 1] : OTHER;
+      int op2 = (addr + 2 < CT) ? ops[addr + 2] : OTHER;
+      int op3 = (addr + 3 < CT) ? ops[addr + 3] : OTHER;
+
+      if (op0 == LOAD_LB && op1 == LOADL) {
+        if (op2 == P_ADD && op3 == STORE_LB)
+          ops[addr] = F_LB_LOADL_ADD_STORE;
+        else if (op2 == P_SUB && op3 == STORE_LB)
+          ops[addr] = F_LB_LOADL_SUB_STORE;
+        else if (isComparison(op2) && op3 == JUMPIF_ABS) {
+          ops[addr] = F_LB_LOADL_CMP_JUMPIF;
+          decodedN[addr] = op2;
+        } else if (op2 == P_FIELDREF)
+          ops[addr] = F_LB_LOADL_FIELDREF;
+        else
+          ops[addr] = F_LB_LOADL;
+      } else if (op0 == LOADA_OB && op1 == LOADL && op2 == P_FIELDREF) {
+        ops[addr] = F_OB_LOADL_FIELDREF;
+      } else if (op0 == LOAD_LB && op1 == LOAD_LB) {
+        if (op2 == P_ARRAYREF)
+          ops[addr] = F_LB_LB_ARRAYREF;
+        else
+          ops[addr] = F_LB_LB;
+      } else if (isComparison(op0) && op1 == JUMPIF_ABS) {
+        ops[addr] = F_CMP_JUMPIF;
+        decodedN[addr] = op0;
+      }
+    }
+  }
+
+  void interpretProgram() {
+    // Runs the program in code store, and writes out what is left of its
+    // output when it stops (also on an internal error).
+    try {
+      runProgram();
+    } finally {
+      flushOutput();
+    }
+  }
+
+  /**
+   * Writes the buffered program output; a failure to do so stops a program
+   * that has halted with an IO error.
+   */
+  void flushOutput() {
+    try {
+      output.flush();
+    } catch (java.io.IOException s) {
+      if (status == running || status == halted)
+        status = failedIOError;
+    }
+  }
+
+  private void runProgram() {
     // Initialize registers ...
     ST = SB;
     HT = HB;
     LB = SB;
     CP = CB;
+    heap.reset();
     OB = -1;   // invalid instance addr
-    CT = Machine.CT;
+    CT = code.CT;
     status = running;
+    decode();
+
+    // The data segment of the program goes at the bottom of the stack, below
+    // the frame of main, and stays there for the whole run.
+    if (code.DT > HT - ST) {
+      status = failedDataStoreFull;
+      executed = fused = 0;
+      return;
+    }
+    System.arraycopy(code.data, 0, data, SB, code.DT);
+    ST = SB + code.DT;
+
+    final int[] data = this.data;
+    final ProgramOutput out = output;
+    final int[] ops = decodedOp, ns = decodedN, ds = decodedD;
+    final int ct = CT;
+    int cp = CP, st = ST, lb = LB, ob = OB, ht = HT;
+    int addr, index, size, d, x, y;
+    long count = 0, fusedCount = 0;
+    long result;
+
+    // The registers are kept in locals and written back to the fields
+    // only around execute(), which runs the instructions that were not
+    // decoded, and when the program stops.
     do {
-      // Fetch instruction ...
-      currentInstr = Machine.code[CP];
-      // Decode instruction ...
-      op = currentInstr.op;
-      r = currentInstr.r;
-      n = currentInstr.n;
-      d = currentInstr.d;
-      // Execute instruction ...
-      
-      Machine.Op operation = Machine.intToOp[op];
-      switch (operation) {
-        case LOAD:
-          addr = d + content(r);
-          checkSpace(1);
-          data[ST] = data[addr];
-          ST = ST + 1;
-          CP = CP + 1;
+      d = ds[cp];
+      switch (ops[cp]) {
+        // superinstructions; each falls back to its first instruction
+        case F_LB_LOADL_ADD_STORE:
+        case F_LB_LOADL_SUB_STORE:
+          x = data[d + lb];
+          y = ds[cp + 1];
+          result = (ops[cp] == F_LB_LOADL_ADD_STORE) ? (long) x + y : (long) x - y;
+          if (ht - st >= 2 && result >= Machine.minintRep && result <= Machine.maxintRep) {
+            data[st] = (int) result;
+            data[st + 1] = y;
+            data[ds[cp + 3] + lb] = (int) result;
+            cp += 4;
+            count += 3;
+            fusedCount++;
+            break;
+          }
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = x;
+          cp++;
           break;
-        case LOADA:
-          addr = d + content(r);
-          checkSpace(1);
-          data[ST] = addr;
-          ST = ST + 1;
-          CP = CP + 1;
+        case F_LB_LOADL_CMP_JUMPIF:
+          if (ht - st >= 2) {
+            y = ds[cp + 1];
+            index = toInt(compare(ns[cp], data[d + lb], y));
+            data[st] = index;
+            data[st + 1] = y;
+            cp = (index == ns[cp + 3]) ? ds[cp + 3] : cp + 4;
+            count += 3;
+            fusedCount++;
+            break;
+          }
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = data[d + lb];
+          cp++;
+          break;
+        case F_CMP_JUMPIF:
+          index = toInt(compare(ns[cp], data[st - 2], data[st - 1]));
+          data[st - 2] = index;
+          st -= 2;
+          cp = (index == ns[cp + 1]) ? ds[cp + 1] : cp + 2;
+          count++;
+          fusedCount++;
+          break;
+        case F_LB_LOADL_FIELDREF:
+        case F_OB_LOADL_FIELDREF:
+          addr = (ops[cp] == F_LB_LOADL_FIELDREF) ? data[d + lb] : d + ob;
+          if (ht - st >= 2) {
+            // push both operands, in order, before fieldref reads memory
+            index = ds[cp + 1];
+            data[st] = addr;
+            data[st + 1] = index;
+            if (addr != Machine.nullRep && index >= 0 && index < data[addr - 1]) {
+              data[st] = data[addr + index];
+              st++;
+              cp += 3;
+              count += 2;
+              fusedCount++;
+              break;
+            }
+            st++;
+            cp++;
+            break;
+          }
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = addr;
+          cp++;
+          break;
+        case F_LB_LB_ARRAYREF:
+          addr = data[d + lb];
+          if (ht - st >= 2) {
+            // push both operands, in order, before arrayref reads memory
+            data[st] = addr;
+            index = data[ds[cp + 1] + lb];
+            data[st + 1] = index;
+            if (addr != Machine.nullRep && data[addr - 2] == -2 && index >= 0 && index < data[addr - 1]) {
+              data[st] = data[addr + index];
+              st++;
+              cp += 3;
+              count += 2;
+              fusedCount++;
+              break;
+            }
+            st++;
+            cp++;
+            break;
+          }
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = addr;
+          cp++;
+          break;
+        case F_LB_LOADL:
+          if (ht - st >= 2) {
+            data[st] = data[d + lb];
+            data[st + 1] = ds[cp + 1];
+            st += 2;
+            cp += 2;
+            count++;
+            fusedCount++;
+            break;
+          }
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = data[d + lb];
+          cp++;
+          break;
+        case F_LB_LB:
+          if (ht - st >= 2) {
+            data[st] = data[d + lb];
+            data[st + 1] = data[ds[cp + 1] + lb];
+            st += 2;
+            cp += 2;
+            count++;
+            fusedCount++;
+            break;
+          }
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = data[d + lb];
+          cp++;
+          break;
+
+        case LOAD_ABS:
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = data[d];
+          cp++;
+          break;
+        case LOAD_ST:
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st] = data[d + st];
+          st++;
+          cp++;
+          break;
+        case LOAD_LB:
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = data[d + lb];
+          cp++;
+          break;
+        case LOAD_OB:
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = data[d + ob];
+          cp++;
+          break;
+        case LOADA_ST:
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st] = d + st;
+          st++;
+          cp++;
+          break;
+        case LOADA_LB:
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = d + lb;
+          cp++;
+          break;
+        case LOADA_OB:
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = d + ob;
+          cp++;
           break;
         case LOADI:
-          ST = ST - 1;
-          addr = data[ST];
-          checkSpace(1);
-          data[ST] = data[addr];
-          ST = ST + 1;
-          CP = CP + 1;
+          addr = data[st - 1];
+          if (ht - (st - 1) < 1) status = failedDataStoreFull;
+          data[st - 1] = data[addr];
+          cp++;
           break;
         case LOADL:
-          checkSpace(1);
-          data[ST] = d;
-          ST = ST + 1;
-          CP = CP + 1;
+          if (ht - st < 1) status = failedDataStoreFull;
+          data[st++] = d;
+          cp++;
           break;
-        case STORE:
-          addr = d + content(r);
-          ST = ST - 1;
-          data[addr] = data[ST];
-          CP = CP + 1;
+        case STORE_ABS:
+          data[d] = data[--st];
+          cp++;
+          break;
+        case STORE_ST:
+          addr = d + st;
+          st--;
+          data[addr] = data[st];
+          cp++;
+          break;
+        case STORE_LB:
+          data[d + lb] = data[--st];
+          cp++;
+          break;
+        case STORE_OB:
+          data[d + ob] = data[--st];
+          cp++;
           break;
         case STOREI:
-          ST = ST - 1;
-          addr = data[ST];
-          ST = ST - 1;
-          data[addr] = data[ST];
-          CP = CP + 1;
+          addr = data[st - 1];
+          data[addr] = data[st - 2];
+          st -= 2;
+          cp++;
           break;
-      case CALL:  
-          addr = d + content(r);
-          if (addr >= Machine.PB) {
-        	// primitives are static methods and have no object base on the stack
-            callPrimitive(addr - Machine.PB);
-            CP = CP + 1;
-          } 
-          else {  
-        	 // non-primitives are called as instance methods with the object base at stack top
-            checkSpace(2);
-            temp = data[ST - 1];   // new object base
-            data[ST - 1] = OB;     // save caller OB in callee AR
-            data[ST] = LB;         // save caller LB in callee AR (dynamic link)
-            data[ST + 1] = CP + 1; // save caller return address in callee AR
-            OB = temp;             // set callee OB, LB, ST
-            LB = ST - 1;
-            ST = ST + 2;
-            CP = addr;             // execution continues at addr specified in CALL inst
-          }
+        case CALL_ABS:
+          if (ht - st < 2) status = failedDataStoreFull;
+          addr = data[st - 1];   // new object base
+          data[st - 1] = ob;     // save caller OB in callee AR
+          data[st] = lb;         // save caller LB in callee AR (dynamic link)
+          data[st + 1] = cp + 1; // save caller return address in callee AR
+          ob = addr;
+          lb = st - 1;
+          st = st + 2;
+          cp = d;
           break;
-      case CALLI:  
-    	  // stack: ... object base, code addr
-          ST = ST - 2;
-          temp = data[ST];
-          addr = data[ST + 1];
-          if (addr >= Machine.PB) {
-        	  // can't call primitive indirectly
-        	  status = failedInvalidInstruction;
-          } 
-          else {
-            checkSpace(3);
-            data[ST] = OB;
-            data[ST + 1] = LB; // dynamic link
-            data[ST + 2] = CP + 1; // return address
-            OB = temp;
-            LB = ST;
-            ST = ST + 3;
-            CP = addr;
-          }
+        case RETURN:  // d = number of method args, n = size of result (0 or 1)
+          index = ns[cp];
+          addr = lb - d;
+          ob = data[lb];
+          cp = data[lb + 2];
+          lb = data[lb + 1];
+          st = st - index;
+          if (index == 1)
+            data[addr] = data[st];
+          else if (index != 0)
+            status = failedInvalidInstruction;
+          st = addr + index;
           break;
-      case RETURN:  // d = number of method args, n = size of result (0 or 1)
-          addr = LB - d;
-          OB = data[LB];
-          CP = data[LB + 2];
-          LB = data[LB + 1];
-          ST = ST - n;
-          if (n == 1)
-              data[addr] = data[ST];
-          else if (n != 0)
-              status = failedInvalidInstruction;
-          ST = addr + n;
-          break;
-      case CALLD: // dynamic method dispatch of method with index n (origin 0) 
-    	  // stack: ... object base
-          // preserve args and build the new AR in their place
-          addr = data[ST - 1];   // new object base
-          ST = ST - 1;
-          checkSpace(3);
-          data[ST] = OB;
-          data[ST + 1] = LB;
-          data[ST + 2] = CP + 1;
-          OB = addr;
-          LB = ST;
-          ST = ST + 3;  
-          addr = data[OB - 2];  // class object addr
-          if (n >= data[addr + 1] || n < 0)
-        	  status = failedMethodIndex;
+        case PUSH:
+          if (ht - st < d) status = failedDataStoreFull;
+          st = st + d;
+          cp++;
+          break;
+        case POP:
+          st = st - d;
+          cp++;
+          break;
+        case JUMP_ABS:
+          cp = d;
+          break;
+        case JUMPI:
+          cp = data[--st];
+          break;
+        case JUMPIF_ABS:
+          if (data[--st] == ns[cp])
+            cp = d;
           else
-        	  CP = data[addr + 2 + n];
+            cp++;
           break;
-      case PUSH: // push d elements on stack
-          checkSpace(d);
-          ST = ST + d;
-          CP = CP + 1;
+
+        // primitives
+        case P_ID:
+          cp++;
           break;
-      case POP: // pop d elements off stack
-          ST = ST - d;
-          CP = CP + 1;
+        case P_NOT:
+          data[st - 1] = toInt(!isTrue(data[st - 1]));
+          cp++;
           break;
-      case JUMP:
-          CP = d + content(r);
+        case P_AND:
+          st--;
+          data[st - 1] = toInt(isTrue(data[st - 1]) & isTrue(data[st]));
+          cp++;
+          break;
+        case P_OR:
+          st--;
+          data[st - 1] = toInt(isTrue(data[st - 1]) | isTrue(data[st]));
+          cp++;
           break;
-      case JUMPI:
-          ST = ST - 1;
-          CP = data[ST];
+        case P_SUCC:
+          data[st - 1] = overflowChecked(data[st - 1] + 1);
+          cp++;
           break;
-      case JUMPIF:
-          ST = ST - 1;
-          if (data[ST] == n)
-            CP = d + content(r);
+        case P_PRED:
+          data[st - 1] = overflowChecked(data[st - 1] - 1);
+          cp++;
+          break;
+        case P_NEG:
+          data[st - 1] = overflowChecked(-data[st - 1]);
+          cp++;
+          break;
+        case P_ADD:
+          st--;
+          data[st - 1] = overflowChecked((long) data[st - 1] + data[st]);
+          cp++;
+          break;
+        case P_SUB:
+          st--;
+          data[st - 1] = overflowChecked((long) data[st - 1] - data[st]);
+          cp++;
+          break;
+        case P_MULT:
+          st--;
+          data[st - 1] = overflowChecked((long) data[st - 1] * data[st]);
+          cp++;
+          break;
+        case P_DIV:
+          st--;
+          if (data[st] != 0)
+            data[st - 1] = (int) ((long) data[st - 1] / data[st]);
           else
-            CP = CP + 1;
+            status = failedZeroDivide;
+          cp++;
           break;
-      case HALT:
-          if (n > 0) {
-              // halt n > 0 --> snapshot machine state and continue execution
-              dump();
-              CP = CP + 1;
-          }
+        case P_MOD:
+          st--;
+          if (data[st] != 0)
+            data[st - 1] = (int) ((long) data[st - 1] % data[st]);
           else
-              status = halted;
+            status = failedZeroDivide;
+          cp++;
+          break;
+        case P_LT:
+          st--;
+          data[st - 1] = toInt(data[st - 1] < data[st]);
+          cp++;
+          break;
+        case P_LE:
+          st--;
+          data[st - 1] = toInt(data[st - 1] <= data[st]);
+          cp++;
+          break;
+        case P_GE:
+          st--;
+          data[st - 1] = toInt(data[st - 1] >= data[st]);
+          cp++;
+          break;
+        case P_GT:
+          st--;
+          data[st - 1] = toInt(data[st - 1] > data[st]);
+          cp++;
+          break;
+        case P_EQ:
+          st--;
+          data[st - 1] = toInt(data[st - 1] == data[st]);
+          cp++;
+          break;
+        case P_NE:
+          st--;
+          data[st - 1] = toInt(data[st - 1] != data[st]);
+          cp++;
+          break;
+        case P_PUT:
+          st--;
+          try {
+            out.put((char) data[st]);
+          } catch (java.io.IOException e) {
+            status = failedIOError;
+          }
+          cp++;
+          break;
+        case P_PUTINT:
+          st--;
+          try {
+            out.putInt(data[st]);
+          } catch (java.io.IOException e) {
+            status = failedIOError;
+          }
+          cp++;
+          break;
+        case P_PUTEOL:
+          try {
+            out.putEol();
+          } catch (java.io.IOException e) {
+            status = failedIOError;
+          }
+          cp++;
+          break;
+        case P_GET:
+          st--;
+          addr = data[st];
+          flushOutput();
+          try {
+            currentChar = input.read();
+          } catch (java.io.IOException e) {
+            status = failedIOError;
+          }
+          data[addr] = currentChar;
+          cp++;
+          break;
+        case P_GETINT:
+          st--;
+          addr = data[st];
+          flushOutput();
+          try {
+            accumulator = readInt();
+          } catch (java.io.IOException e) {
+            status = failedIOError;
+          }
+          data[addr] = (int) accumulator;
+          cp++;
+          break;
+        case P_EOL:
+          data[st] = toInt(currentChar == '\n');
+          st++;
+          cp++;
+          break;
+        case P_EOF:
+          data[st] = toInt(currentChar == -1);
+          st++;
+          cp++;
+          break;
+        case P_NEWOBJ:
+          size = data[st - 1] + 2;
+          if (ht - st - size < heap.reserve || heap.hasFreeBlocks()) {
+            // collect or reuse a free block
+            CP = cp; ST = st; LB = lb; OB = ob; HT = ht;
+            execute(code.code[cp]);
+            cp = CP; st = ST; lb = LB; ob = OB; ht = HT;
+          } else {
+            ht = ht - size;
+            data[ht] = data[st - 2];
+            data[ht + 1] = size - 2;
+            data[st - 2] = ht + 2;
+            st--;
+            for (int i = 2; i < size; i++)
+              data[ht + i] = 0;
+            cp++;
+          }
+          break;
+        case P_NEWARR:
+          size = data[st - 1] + 2;
+          if (ht - st - size < heap.reserve || size < 2 || heap.hasFreeBlocks()) {
+            CP = cp; ST = st; LB = lb; OB = ob; HT = ht;
+            execute(code.code[cp]);
+            cp = CP; st = ST; lb = LB; ob = OB; ht = HT;
+          } else {
+            ht = ht - size;
+            data[ht] = Heap.arrayTag;
+            data[ht + 1] = size - 2;
+            data[st - 1] = ht + 2;
+            for (int i = 2; i < size; i++)
+              data[ht + i] = 0;
+            cp++;
+          }
+          break;
+        case P_ARRAYREF:
+          addr = data[st - 2];
+          if (addr == Machine.nullRep) {
+            status = failedNullPointer;
+          } else {
+            index = data[st - 1];
+            if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1])
+              status = failedArrayIndex;
+            else
+              data[st - 2] = data[addr + index];
+            st--;
+          }
+          cp++;
+          break;
+        case P_ARRAYUPD:
+          addr = data[st - 3];
+          if (addr == Machine.nullRep) {
+            status = failedNullPointer;
+          } else {
+            index = data[st - 2];
+            if (data[addr - 2] != -2 || index < 0 || index >= data[addr - 1])
+              status = failedArrayIndex;
+            else
+              data[addr + index] = data[st - 1];
+            st -= 3;
+          }
+          cp++;
+          break;
+        case P_FIELDREF:
+          addr = data[st - 2];
+          if (addr == Machine.nullRep) {
+            status = failedNullPointer;
+          } else {
+            index = data[st - 1];
+            if (index < 0 || index >= data[addr - 1])
+              status = failedArrayIndex;
+            else
+              data[st - 2] = data[addr + index];
+            st--;
+          }
+          cp++;
+          break;
+        case P_FIELDUPD:
+          addr = data[st - 3];
+          if (addr == Machine.nullRep) {
+            status = failedNullPointer;
+          } else {
+            index = data[st - 2];
+            if (index < 0 || index >= data[addr - 1])
+              status = failedArrayIndex;
+            else
+              data[addr + index] = data[st - 1];
+            st -= 3;
+          }
+          cp++;
+          break;
+        default:
+          // everything else runs on the registers in the fields
+          CP = cp; ST = st; LB = lb; OB = ob; HT = ht;
+          execute(code.code[cp]);
+          cp = CP; st = ST; lb = LB; ob = OB; ht = HT;
           break;
       }
-      if ((CP < CB) || (CP >= CT))
+      count++;
+      if ((cp < CB) || (cp >= ct))
         status = failedInvalidCodeAddress;
     } while (status == running);
+
+    CP = cp; ST = st; LB = lb; OB = ob; HT = ht;
+    executed = count;
+    fused = fusedCount;
+  }
+
+  /**
+   * Executes a single instruction on the registers in the fields
+   */
+  void execute(Instruction currentInstr) {
+    int op, n, d, r;
+    int addr;
+
+    // Decode instruction ...
+    op = currentInstr.op;
+    r = currentInstr.r;
+    n = currentInstr.n;
+    d = currentInstr.d;
+    // Execute instruction ...
+
+    Machine.Op operation = Machine.intToOp[op];
+    switch (operation) {
+      case LOAD:
+        addr = d + content(r);
+        checkSpace(1);
+        data[ST] = data[addr];
+        ST = ST + 1;
+        CP = CP + 1;
+        break;
+      case LOADA:
+        addr = d + content(r);
+        checkSpace(1);
+        data[ST] = addr;
+        ST = ST + 1;
+        CP = CP + 1;
+        break;
+      case LOADI:
+        ST = ST - 1;
+        addr = data[ST];
+        checkSpace(1);
+        data[ST] = data[addr];
+        ST = ST + 1;
+        CP = CP + 1;
+        break;
+      case LOADL:
+        checkSpace(1);
+        data[ST] = d;
+        ST = ST + 1;
+        CP = CP + 1;
+        break;
+      case STORE:
+        addr = d + content(r);
+        ST = ST - 1;
+        data[addr] = data[ST];
+        CP = CP + 1;
+        break;
+      case STOREI:
+        ST = ST - 1;
+        addr = data[ST];
+        ST = ST - 1;
+        data[addr] = data[ST];
+        CP = CP + 1;
+        break;
+    case CALL:  
+        addr = d + content(r);
+        if (addr >= Machine.PB) {
+      	// primitives are static methods and have no object base on the stack
+          callPrimitive(addr - Machine.PB);
+          CP = CP + 1;
+        } 
+        else {  
+      	 // non-primitives are called as instance methods with the object base at stack top
+          checkSpace(2);
+          temp = data[ST - 1];   // new object base
+          data[ST - 1] = OB;     // save caller OB in callee AR
+          data[ST] = LB;         // save caller LB in callee AR (dynamic link)
+          data[ST + 1] = CP + 1; // save caller return address in callee AR
+          OB = temp;             // set callee OB, LB, ST
+          LB = ST - 1;
+          ST = ST + 2;
+          CP = addr;             // execution continues at addr specified in CALL inst
+        }
+        break;
+    case CALLI:  
+  	  // stack: ... object base, code addr
+        ST = ST - 2;
+        temp = data[ST];
+        addr = data[ST + 1];
+        if (addr >= Machine.PB) {
+      	  // can't call primitive indirectly
+      	  status = failedInvalidInstruction;
+        } 
+        else {
+          checkSpace(3);
+          data[ST] = OB;
+          data[ST + 1] = LB; // dynamic link
+          data[ST + 2] = CP + 1; // return address
+          OB = temp;
+          LB = ST;
+          ST = ST + 3;
+          CP = addr;
+        }
+        break;
+    case RETURN:  // d = number of method args, n = size of result (0 or 1)
+        addr = LB - d;
+        OB = data[LB];
+        CP = data[LB + 2];
+        LB = data[LB + 1];
+        ST = ST - n;
+        if (n == 1)
+            data[addr] = data[ST];
+        else if (n != 0)
+            status = failedInvalidInstruction;
+        ST = addr + n;
+        break;
+    case CALLD: // dynamic method dispatch of method with index n (origin 0) 
+  	  // stack: ... object base
+        // preserve args and build the new AR in their place
+        addr = data[ST - 1];   // new object base
+        ST = ST - 1;
+        checkSpace(3);
+        data[ST] = OB;
+        data[ST + 1] = LB;
+        data[ST + 2] = CP + 1;
+        OB = addr;
+        LB = ST;
+        ST = ST + 3;  
+        addr = data[OB - 2];  // class object addr
+        if (n >= data[addr + 1] || n < 0)
+      	  status = failedMethodIndex;
+        else
+      	  CP = data[addr + 2 + n];
+        break;
+    case PUSH: // push d elements on stack
+        checkSpace(d);
+        ST = ST + d;
+        CP = CP + 1;
+        break;
+    case POP: // pop d elements off stack
+        ST = ST - d;
+        CP = CP + 1;
+        break;
+    case JUMP:
+        CP = d + content(r);
+        break;
+    case JUMPI:
+        ST = ST - 1;
+        CP = data[ST];
+        break;
+    case JUMPIF:
+        ST = ST - 1;
+        if (data[ST] == n)
+          CP = d + content(r);
+        else
+          CP = CP + 1;
+        break;
+    case HALT:
+        if (n > 0) {
+            // halt n > 0 --> snapshot machine state and continue execution
+            dump();
+            CP = CP + 1;
+        }
+        else
+            status = halted;
+        break;
+    }
   }
 
 
@@ -647,23 +1639,123 @@ static int content (int r) {
   public static void main(String[] args) {
     System.out.println("********** mJAM Interpreter (Version 1.1) **********");
 
-    String objectFileName;
-    if (args.length == 1)
-      objectFileName = args[0];
-    else
-      objectFileName = "obj.mJAM";
+    Interpreter interpreter = new Interpreter();
+    String objectFileName = "obj.mJAM";
+    try {
+      int size = dataStoreSizeProperty();
+      if (size > 0)
+        interpreter.setDataStoreSize(size);
+    } catch (IllegalArgumentException e) {
+      System.out.println("-Dmjam.mem: " + e.getMessage());
+      usage();
+    }
+    for (String arg : args) {
+      if (arg.startsWith("-Xmjam-mem=")) {
+        try {
+          interpreter.setDataStoreSize(parseSize(arg.substring("-Xmjam-mem=".length())));
+        } catch (IllegalArgumentException e) {
+          System.out.println(e.getMessage());
+          usage();
+        }
+      } else if (arg.equals("-Xmjam-gc-stats"))
+        interpreter.gcStatistics = true;
+      else if (arg.startsWith("-Xmjam-in=")) {
+        try {
+          interpreter.setInput(ProgramInput.fromFile(arg.substring("-Xmjam-in=".length())));
+        } catch (java.io.IOException e) {
+          System.out.println("Unable to read program input from " + arg.substring("-Xmjam-in=".length()));
+          return;
+        }
+      } else if (arg.startsWith("-Xmjam-out=")) {
+        try {
+          interpreter.setOutput(ProgramOutput.toFile(arg.substring("-Xmjam-out=".length())));
+        } catch (java.io.IOException e) {
+          System.out.println("Unable to write program output to " + arg.substring("-Xmjam-out=".length()));
+          return;
+        }
+      } else
+        objectFileName = arg;
+    }
     
-    interpret(objectFileName);
+    interpreter.interpret(objectFileName);
+    try {
+      interpreter.input.close();
+      interpreter.output.close();
+    } catch (java.io.IOException e) {
+      System.out.println("Error closing program input or output");
+    }
+  }
+
+  private static void usage() {
+    System.out.println("Usage: java mJAM.Interpreter [-Xmjam-mem=<words>[K|M]] [-Xmjam-gc-stats] [-Xmjam-in=<file>] [-Xmjam-out=<file>] [<object file>]");
+    System.exit(4);
   }
   
-  public static void interpret(String objectFileName) {
+  public void interpret(String objectFileName) {
 	 
-    ObjectFile objectFile = new ObjectFile(objectFileName);
+    ObjectFile objectFile = new ObjectFile(objectFileName, code);
     if (objectFile.read()) {
     	System.out.println("Unable to load object file " + objectFileName);
     	return;
     }
     interpretProgram();
     showStatus();
+    if (gcStatistics)
+      heap.showStatistics(System.err);
+  }
+
+  /**
+   * Runs the program left in the code store by the code generator, without
+   * an object file and without reporting the status.
+   * @return true if the program halted normally
+   */
+  public boolean run() {
+    interpretProgram();
+    return status == halted;
+  }
+
+  /**
+   * @return the status the last run stopped with: halted (1) if it halted
+   * normally, else the failure shown by showStatus
+   */
+  public int runStatus() {
+    return status;
+  }
+
+  /**
+   * @return the number of instructions executed by the last run
+   */
+  public long instructionCount() {
+    return executed;
+  }
+
+  /**
+   * @return the number of superinstructions executed by the last run; each
+   * stands for two to four of the instructions counted by instructionCount
+   */
+  public long fusedCount() {
+    return fused;
+  }
+
+  /**
+   * @return the number of heap collections in the last run
+   */
+  public long collections() {
+    return heap.collections;
+  }
+
+  /**
+   * @return the total time spent collecting the heap in the last run
+   */
+  public long gcPauseNanos() {
+    return heap.pauseNanos;
+  }
+
+  /**
+   * @return the number of bytes (4 per word) of dead blocks reclaimed in
+   * the last run
+   */
+  public long reclaimedBytes() {
+    return 4 * heap.reclaimedWords;
   }
 }
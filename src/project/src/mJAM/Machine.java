@@ -87,7 +87,8 @@ public final class Machine {
 	    arrayref,
 	    arrayupd,
 	    fieldref,
-	    fieldupd;
+	    fieldupd,
+	    putstr;
 	}
 	public static Prim [] intToPrim = Prim.values();
 
@@ -105,11 +106,20 @@ public final class Machine {
   public final static int PT = PB + Prim.values().length;  // code space reserved for primitives
 
   // CODE STORE
-  public static Instruction[] code = new Instruction[PB];
-  public static int CT = CB;
-  
+  // The static emit methods fill a store shared by the whole process;
+  // compilations that may run at the same time each generate into a
+  // CodeStore of their own.
+  private static final CodeStore store = new CodeStore();
+
+  /**
+   * @return the store filled by the static emit methods
+   */
+  public static CodeStore codeStore() {
+	  return store;
+  }
+
   public static void initCodeGen() {
-	  CT = CB;
+	  store.initCodeGen();
   }
   
  /**
@@ -120,7 +130,7 @@ public final class Machine {
    * @param d - displacement
    */
 public static void emit(Op op, int n, Reg r, Prim d) {
-	  emit(op.ordinal(), n, r.ordinal(), d.ordinal());
+	  store.emit(op, n, r, d);
   }
 
 /**
@@ -128,7 +138,7 @@ public static void emit(Op op, int n, Reg r, Prim d) {
  * operations like LOADL 44 and PUSH 3
  */
 public static void emit(Op op, int d) {
-	  emit(op.ordinal(), 0, 0, d);
+	  store.emit(op, d);
 }
   
   /**
@@ -136,7 +146,7 @@ public static void emit(Op op, int d) {
    * generates  CALL primitiveop[PB]
    */
   public static void emit(Prim d) {
-	  emit(Op.CALL.ordinal(), 0, Machine.Reg.PB.ordinal(), d.ordinal());
+	  store.emit(d);
   }
   
   /**
@@ -144,7 +154,7 @@ public static void emit(Op op, int d) {
    * LOADI and STOREI
    */
   public static void emit(Op op) {
-	  emit(op, 0, 0, 0);
+	  store.emit(op);
   }
   
   /**
@@ -152,7 +162,7 @@ public static void emit(Op op, int d) {
    * operations like JUMP 25[CB] and LOAD 6[LB]
    */
   public static void emit(Op op, Reg r, int d) {
-	  emit(op.ordinal(), 0, r.ordinal(), d);
+	  store.emit(op, r, d);
   }
   
   /**
@@ -160,7 +170,7 @@ public static void emit(Op op, int d) {
    * operations like JUMPIF (1) 25[CB]
    */
   public static void emit(Op op, int n, Reg r, int d) {
-	  emit(op.ordinal(), n, r.ordinal(), d);
+	  store.emit(op, n, r, d);
   }
   
   /**
@@ -168,30 +178,14 @@ public static void emit(Op op, int d) {
    * like RETURN (1) 3  and HALT (4) 0
    */
   public static void emit(Op op, int n, int r, int d) {
-	  emit(op.ordinal(), n, r, d);
-  }
-  
-  /**
-   * helper operation for emit using integer values
-   */
-private static void emit (int op, int n, int r, int d) {
-    if (n > 255) {
-        System.out.println("length of operand can't exceed 255 words");
-        n = 255; // to allow code generation to continue
-    }
-    if (CT >= Machine.PB)
-        System.out.println("mJAM: code segment capacity exceeded");
-    
-    Instruction nextInstr = new Instruction(op, n, r, d);
-        Machine.code[CT] = nextInstr;
-        CT = CT + 1;
+	  store.emit(op, n, r, d);
   }
 
 /**
  * @return address (relative to CB) of next instruction to be generated
  */
 public static int nextInstrAddr() {
-	return CT;
+	return store.nextInstrAddr();
 }
 
 /**
@@ -200,16 +194,7 @@ public static int nextInstrAddr() {
  * @param displacement
  */
 public static void patch(int addr, int displacement) {
-	if (addr < 0 || addr >= CT) {
-		System.out.println("patch:  address of instruction to be patched is out of range");
-		return;
-	}
-	if (displacement < 0 || displacement > CT) {
-		System.out.println("patch:  target address of patch is out of range");
-		return;
-	}
-	Machine.code[addr].d = displacement;
-	return;
+	store.patch(addr, displacement);
 }
 
 // DATA REPRESENTATION
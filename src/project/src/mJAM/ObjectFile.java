@@ -11,12 +11,25 @@ import java.io.FileOutputStream;
 import java.io.DataOutputStream;
 
 public class ObjectFile {
+
+	// op of the record that follows the instructions when the program has a
+	// data segment; its d is the number of words of data after it
+	static final int DATA_SEGMENT = -1;
 	
 	String objectFileName;
+	CodeStore store;
 
 	public ObjectFile(String objectFileName) {
+		this(objectFileName, Machine.codeStore());
+	}
+
+	/**
+	 * @param store  the code store written from or read into
+	 */
+	public ObjectFile(String objectFileName, CodeStore store) {
 		super();
 		this.objectFileName = objectFileName;
+		this.store = store;
 	}
 	
 	/**
@@ -29,13 +42,21 @@ public class ObjectFile {
 		try {
 			FileOutputStream objectFile = new FileOutputStream(objectFileName);
 			DataOutputStream is = new DataOutputStream(objectFile);
-			for (int i = Machine.CB; i < Machine.CT; i++ ){
-				Instruction inst = Machine.code[i];
+			for (int i = Machine.CB; i < store.CT; i++ ){
+				Instruction inst = store.code[i];
 				is.writeInt(inst.op);
 				is.writeInt(inst.n);
 				is.writeInt(inst.r);
 				is.writeInt(inst.d);
 			}
+			if (store.DT > 0) {
+				is.writeInt(DATA_SEGMENT);
+				is.writeInt(0);
+				is.writeInt(0);
+				is.writeInt(store.DT);
+				for (int i = 0; i < store.DT; i++)
+					is.writeInt(store.data[i]);
+			}
 			objectFile.close();
 		}
 		catch (Exception e) {failed = true;}
@@ -52,14 +73,27 @@ public class ObjectFile {
 			FileInputStream objectFile = new FileInputStream(objectFileName);
 			DataInputStream is = new DataInputStream(objectFile);
 			
-			Machine.CT = Machine.CB;
-			while (is.available() > 0 && Machine.CT < Machine.PB){
+			store.CT = Machine.CB;
+			store.DT = 0;
+			// the data segment follows the code, however much code there is
+			while (is.available() > 0){
 				Instruction inst = new Instruction();
 				inst.op = is.readInt();
 				inst.n = is.readInt();
 				inst.r = is.readInt();
 				inst.d = is.readInt();
-				Machine.code[Machine.CT++] = inst;
+				if (inst.op == DATA_SEGMENT) {
+					store.reserveData(inst.d);
+					for (int i = 0; i < inst.d; i++)
+						store.data[store.DT++] = is.readInt();
+					break;
+				}
+				if (store.CT >= Machine.PB) {
+					System.out.println("mJAM: code segment capacity exceeded");
+					failed = true;
+					break;
+				}
+				store.code[store.CT++] = inst;
 			}
 			objectFile.close();
 		} catch (Exception e) {
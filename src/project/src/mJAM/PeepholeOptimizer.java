@@ -0,0 +1,155 @@
+/**
+ * Peephole optimizer of mJAM programs
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import mJAM.Machine.Op;
+import mJAM.Machine.Reg;
+
+/**
+ * Removes redundant instructions from the program in a code store, once it
+ * has been generated and its calls have been patched:
+ *
+ *   PUSH 0 and POP (n) 0, which do nothing
+ *   JUMP to the next instruction
+ *   LOAD (n) d[r]; STORE (n) d[r], with r LB or SB, which stores back what
+ *     it loaded, unless the STORE is the target of a jump
+ *
+ * and makes jumps to an unconditional JUMP go to its target at once. The
+ * code is compacted after each round, relocating the CB-relative addresses
+ * of CALL, JUMP, JUMPIF and LOADA; an address of a removed instruction
+ * moves to the instruction that followed it. Rounds are repeated until
+ * nothing changes. The data segment is not touched.
+ */
+public class PeepholeOptimizer {
+
+	private final CodeStore store;
+
+	/**
+	 * @param store  the code store whose program is optimized
+	 */
+	public PeepholeOptimizer(CodeStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Optimizes the program in the code store, setting CT
+	 * @return the number of instructions removed
+	 */
+	public int optimize() {
+		int before = store.CT;
+		boolean changed = true;
+		while (changed) {
+			boolean threaded = threadJumps();
+			boolean removed = removeRedundant();
+			changed = threaded || removed;
+		}
+		return before - store.CT;
+	}
+
+	private static boolean is(Instruction inst, Op op) {
+		return inst.op == op.ordinal();
+	}
+
+	/**
+	 * @return true if the d field of the instruction is an address in the code
+	 */
+	private static boolean isCodeAddress(Instruction inst) {
+		return inst.r == Reg.CB.ordinal()
+				&& (is(inst, Op.CALL) || is(inst, Op.JUMP) || is(inst, Op.JUMPIF) || is(inst, Op.LOADA));
+	}
+
+	private boolean isJump(int addr) {
+		return addr >= Machine.CB && addr < store.CT && is(store.code[addr], Op.JUMP)
+				&& store.code[addr].r == Reg.CB.ordinal();
+	}
+
+	/**
+	 * Makes JUMP and JUMPIF skip the JUMPs they lead to
+	 * @return true if any jump was changed
+	 */
+	private boolean threadJumps() {
+		Instruction[] code = store.code;
+		boolean changed = false;
+		for (int addr = Machine.CB; addr < store.CT; addr++) {
+			Instruction inst = code[addr];
+			if (inst.r != Reg.CB.ordinal() || !(is(inst, Op.JUMP) || is(inst, Op.JUMPIF)))
+				continue;
+			// a cycle of jumps is left after going round it once
+			int target = inst.d;
+			for (int steps = 0; isJump(target) && code[target].d != target && steps < store.CT; steps++)
+				target = code[target].d;
+			if (target != inst.d) {
+				inst.d = target;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Removes the redundant instructions and compacts the code
+	 * @return true if any instruction was removed
+	 */
+	private boolean removeRedundant() {
+		Instruction[] code = store.code;
+		int ct = store.CT;
+
+		boolean[] target = new boolean[ct + 1];
+		for (int addr = Machine.CB; addr < ct; addr++) {
+			Instruction inst = code[addr];
+			if (isCodeAddress(inst) && inst.d >= Machine.CB && inst.d <= ct)
+				target[inst.d] = true;
+		}
+
+		boolean[] remove = new boolean[ct];
+		boolean changed = false;
+		for (int addr = Machine.CB; addr < ct; addr++) {
+			Instruction inst = code[addr];
+			if ((is(inst, Op.PUSH) || is(inst, Op.POP)) && inst.d == 0) {
+				remove[addr] = true;
+			} else if (is(inst, Op.JUMP) && inst.r == Reg.CB.ordinal() && inst.d == addr + 1) {
+				remove[addr] = true;
+			} else if (is(inst, Op.LOAD) && addr + 1 < ct && !target[addr + 1] && storesBack(inst, code[addr + 1])) {
+				remove[addr] = remove[addr + 1] = true;
+				addr++;
+			} else {
+				continue;
+			}
+			changed = true;
+		}
+		if (!changed)
+			return false;
+
+		// newAddr[a] is where instruction a, or the one that follows it if
+		// it is removed, ends up
+		int[] newAddr = new int[ct + 1];
+		int next = Machine.CB;
+		for (int addr = Machine.CB; addr < ct; addr++) {
+			newAddr[addr] = next;
+			if (!remove[addr])
+				code[next++] = code[addr];
+		}
+		newAddr[ct] = next;
+		for (int addr = next; addr < ct; addr++)
+			code[addr] = null;
+		store.CT = next;
+
+		for (int addr = Machine.CB; addr < next; addr++) {
+			Instruction inst = code[addr];
+			if (isCodeAddress(inst) && inst.d >= Machine.CB && inst.d <= ct)
+				inst.d = newAddr[inst.d];
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if next stores the words that load loaded into the same
+	 * place, which does not move with the stack
+	 */
+	private static boolean storesBack(Instruction load, Instruction next) {
+		boolean fixed = load.r == Reg.LB.ordinal() || load.r == Reg.SB.ordinal();
+		return fixed && is(next, Op.STORE) && next.n == load.n && next.r == load.r && next.d == load.d;
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * Input channel of mJAM programs
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the bytes that a program gets with get, getint and geteol through
+ * a buffer. Without a source, the input comes from System.in as it is when
+ * the buffer is refilled. Reads return a byte (0 to 255) or -1 at the end,
+ * like System.in.read().
+ */
+public class ProgramInput {
+  public final static int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream source;
+  private final byte[] buffer;
+  private int position = 0, limit = 0;
+  private boolean ended = false;
+
+  // the character that ended the last readInt
+  private int last = -1;
+
+  /**
+   * Input from System.in
+   */
+  public ProgramInput() {
+    this(null);
+  }
+
+  /**
+   * @param source supplies the input, or null for System.in
+   */
+  public ProgramInput(InputStream source) {
+    this.source = source;
+    this.buffer = new byte[BUFFER_SIZE];
+  }
+
+  // Input held in memory is read in place, and ends with it
+  private ProgramInput(byte[] bytes, int offset, int length) {
+    this.source = null;
+    this.buffer = bytes;
+    this.position = offset;
+    this.limit = offset + length;
+    this.ended = true;
+  }
+
+  public static ProgramInput fromFile(String fileName) throws IOException {
+    return new ProgramInput(new FileInputStream(fileName));
+  }
+
+  public static ProgramInput fromBytes(byte[] bytes) {
+    return new ProgramInput(bytes, 0, bytes.length);
+  }
+
+  /**
+   * @return the next byte, or -1 at the end of the input
+   */
+  public int read() throws IOException {
+    if (position == limit && !fill())
+      return -1;
+    return buffer[position++] & 0xff;
+  }
+
+  private boolean fill() throws IOException {
+    if (ended)
+      return false;
+    InputStream in = (source == null) ? System.in : source;
+    int n = in.read(buffer, 0, buffer.length);
+    if (n <= 0) {
+      // System.in may get more input after an end of line is typed, so only
+      // an actual end of stream is final
+      ended = (n < 0 && source != null);
+      return false;
+    }
+    position = 0;
+    limit = n;
+    return true;
+  }
+
+  /**
+   * Reads an integer as Interpreter.readInt always has: whitespace is
+   * skipped, any number of signs may precede the digits (the last one
+   * counts), and the character after the number is consumed and can be
+   * found with last. Without digits the result is 0.
+   */
+  public int readInt() throws IOException {
+    int c;
+    do {
+      c = read();
+    } while (Character.isWhitespace((char) c));
+
+    int sign = 1;
+    while (c == '-' || c == '+') {
+      sign = (c == '-') ? -1 : 1;
+      c = read();
+    }
+
+    int value = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      // digits are taken straight from the buffer while it lasts
+      if (position < limit) {
+        c = buffer[position++] & 0xff;
+      } else {
+        c = read();
+      }
+    }
+    last = c;
+    return sign * value;
+  }
+
+  /**
+   * @return the character that ended the last readInt, -1 at the end
+   */
+  public int last() {
+    return last;
+  }
+
+  /**
+   * Closes the source, unless it is System.in
+   */
+  public void close() throws IOException {
+    if (source != null)
+      source.close();
+  }
+}
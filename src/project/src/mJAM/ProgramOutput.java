@@ -0,0 +1,170 @@
+/**
+ * Output channel of mJAM programs
+ * @version COMP 520 V2.2
+ */
+package mJAM;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Collects what a program writes with put, putint, puteol and putstr in a
+ * buffer, and passes it on to the sink when the buffer is full, when the
+ * program stops, and before the program reads input. Without a sink, the output
+ * goes to System.out as it is when the buffer is written.
+ */
+public class ProgramOutput {
+  public final static int BUFFER_SIZE = 64 * 1024;
+
+  private final static char[] lineSeparator = System.getProperty("line.separator").toCharArray();
+
+  private final Appendable sink;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int count = 0;
+
+  /**
+   * Output to System.out
+   */
+  public ProgramOutput() {
+    this(null);
+  }
+
+  /**
+   * @param sink receives the output, or null for System.out
+   */
+  public ProgramOutput(Appendable sink) {
+    this.sink = sink;
+  }
+
+  /**
+   * Output to a file, in the platform's default encoding
+   */
+  public static ProgramOutput toFile(String fileName) throws IOException {
+    return new ProgramOutput(new OutputStreamWriter(new FileOutputStream(fileName)));
+  }
+
+  /**
+   * Output into a byte buffer, in the platform's default encoding. Output
+   * that does not fit fails the program with an IO error.
+   */
+  public static ProgramOutput toByteBuffer(ByteBuffer bytes) {
+    return new ProgramOutput(new ByteBufferSink(bytes));
+  }
+
+  void put(char c) throws IOException {
+    if (count == buffer.length)
+      flush();
+    buffer[count++] = c;
+  }
+
+  void putInt(int n) throws IOException {
+    if (buffer.length - count < 11)
+      flush();
+    if (n == Integer.MIN_VALUE) {
+      String s = String.valueOf(n);
+      s.getChars(0, s.length(), buffer, count);
+      count += s.length();
+      return;
+    }
+    if (n < 0) {
+      buffer[count++] = '-';
+      n = -n;
+    }
+    int end = count + digits(n);
+    count = end;
+    do {
+      buffer[--end] = (char) ('0' + n % 10);
+      n = n / 10;
+    } while (n > 0);
+  }
+
+  private static int digits(int n) {
+    int d = 1;
+    while (n >= 10) {
+      n = n / 10;
+      d++;
+    }
+    return d;
+  }
+
+  /**
+   * Writes length words of data, from start, as characters
+   */
+  void putChars(int[] data, int start, int length) throws IOException {
+    while (length > 0) {
+      if (count == buffer.length)
+        flush();
+      int n = Math.min(length, buffer.length - count);
+      for (int i = 0; i < n; i++)
+        buffer[count + i] = (char) data[start + i];
+      count += n;
+      start += n;
+      length -= n;
+    }
+  }
+
+  void putEol() throws IOException {
+    for (char c : lineSeparator)
+      put(c);
+  }
+
+  /**
+   * Writes the buffered output to the sink
+   */
+  public void flush() throws IOException {
+    Appendable target = (sink == null) ? System.out : sink;
+    if (count > 0) {
+      int n = count;
+      count = 0;
+      target.append(CharBuffer.wrap(buffer, 0, n));
+    }
+    if (target instanceof Flushable)
+      ((Flushable) target).flush();
+  }
+
+  /**
+   * Flushes the output and closes the sink, unless it is System.out
+   */
+  public void close() throws IOException {
+    flush();
+    if (sink instanceof Closeable)
+      ((Closeable) sink).close();
+  }
+
+  /**
+   * Encodes the output into a byte buffer
+   */
+  private static class ByteBufferSink implements Appendable {
+    private final ByteBuffer bytes;
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    ByteBufferSink(ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    public Appendable append(CharSequence csq) throws IOException {
+      CoderResult result = encoder.encode(CharBuffer.wrap(csq), bytes, false);
+      if (result.isOverflow())
+        throw new IOException("program output does not fit in the buffer");
+      return this;
+    }
+
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+      return append(csq.subSequence(start, end));
+    }
+
+    public Appendable append(char c) throws IOException {
+      return append(String.valueOf(c));
+    }
+  }
+}
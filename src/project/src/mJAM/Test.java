@@ -149,7 +149,7 @@ public class Test
 		
 		/* run code */
 		System.out.println("Running code ... ");
-		Interpreter.interpret(objectCodeFileName);
+		new Interpreter().interpret(objectCodeFileName);
 
 		System.out.println("*** mJAM execution completed");
 	}
@@ -5,12 +5,16 @@
  */
 package miniJava.AbstractSyntaxTrees;
 
+import miniJava.PhaseProfiler;
 import miniJava.SyntacticAnalyzer.SourcePosition;
 
 public abstract class AST {
 
 	public AST(SourcePosition posn) {
 		this.posn = posn;
+		PhaseProfiler profiler = PhaseProfiler.current();
+		if (profiler != null)
+			profiler.nodeCreated();
 	}
 
 	public String toString() {
@@ -12,6 +12,9 @@ package miniJava.AbstractSyntaxTrees;
  * @version COMP 520 V2.2
  * 
  *          visitXXX( AST Node type XXX, prefix string for display of each line)
+ * 
+ *          Statements, expressions and references are visited by a
+ *          Traversal, so that a tree of any depth can be displayed.
  */
 public class ASTDisplay implements Visitor<String, Object> {
 
@@ -19,7 +22,7 @@ public class ASTDisplay implements Visitor<String, Object> {
 
 	public void showTree(AST ast) {
 		System.out.println("======= AST Display =========================");
-		ast.visit(this, "");
+		walk.visit(ast, "");
 		System.out.println("=============================================");
 	}
 
@@ -92,12 +95,12 @@ public class ASTDisplay implements Visitor<String, Object> {
 		StatementList sl = m.statementList;
 		show(arg, "  StmtList [" + sl.size() + "]");
 		for (Statement s : sl) {
-			s.visit(this, pfx);
+			walk.visit(s, pfx);
 		}
 
 		if (m.returnExp != null) {
 			show(indent(arg), "ReturnExp");
-			m.returnExp.visit(this, indent(indent(arg)));
+			walk.visit(m.returnExp, indent(indent(arg)));
 		}
 		return null;
 	}
@@ -150,89 +153,110 @@ public class ASTDisplay implements Visitor<String, Object> {
 
 	// Statements
 	public Object visitBlockStmt(BlockStmt stmt, String arg) {
-		show(arg, stmt);
-		StatementList sl = stmt.sl;
-		show(arg, "  StatementList [" + sl.size() + "]");
-		String pfx = arg + "  . ";
-		for (Statement s : sl) {
-			s.visit(this, pfx);
+		if (walk.step() == 0) {
+			show(arg, stmt);
+			StatementList sl = stmt.sl;
+			show(arg, "  StatementList [" + sl.size() + "]");
+			walk.pushAll(sl, arg + "  . ");
 		}
 		return null;
 	}
 
 	public Object visitVardeclStmt(VarDeclStmt stmt, String arg) {
-		show(arg, stmt);
-		stmt.varDecl.visit(this, indent(arg));
-		if (stmt.initExp != null)
-			stmt.initExp.visit(this, indent(arg));
+		if (walk.step() == 0) {
+			show(arg, stmt);
+			stmt.varDecl.visit(this, indent(arg));
+			if (stmt.initExp != null)
+				walk.push(stmt.initExp, indent(arg));
+		}
 		return null;
 	}
 
 	public Object visitAssignStmt(AssignStmt stmt, String arg) {
-		show(arg, stmt);
-		stmt.ref.visit(this, indent(arg));
-		stmt.val.visit(this, indent(arg));
+		if (walk.step() == 0) {
+			show(arg, stmt);
+			walk.push(stmt.ref, indent(arg));
+			walk.push(stmt.val, indent(arg));
+		}
 		return null;
 	}
 
 	public Object visitCallStmt(CallStmt stmt, String arg) {
-		show(arg, stmt);
-		stmt.methodRef.visit(this, indent(arg));
-		ExprList al = stmt.argList;
-		show(arg, "  ExprList [" + al.size() + "]");
-		String pfx = arg + "  . ";
-		for (Expression e : al) {
-			e.visit(this, pfx);
+		switch (walk.step()) {
+		case 0:
+			show(arg, stmt);
+			walk.push(stmt.methodRef, indent(arg));
+			break;
+
+		case 1:
+			ExprList al = stmt.argList;
+			show(arg, "  ExprList [" + al.size() + "]");
+			walk.pushAll(al, arg + "  . ");
+			break;
 		}
 		return null;
 	}
 
 	public Object visitIfStmt(IfStmt stmt, String arg) {
-		show(arg, stmt);
-		stmt.cond.visit(this, indent(arg));
-		stmt.thenStmt.visit(this, indent(arg));
-		if (stmt.elseStmt != null)
-			stmt.elseStmt.visit(this, indent(arg));
+		if (walk.step() == 0) {
+			show(arg, stmt);
+			walk.push(stmt.cond, indent(arg));
+			walk.push(stmt.thenStmt, indent(arg));
+			if (stmt.elseStmt != null)
+				walk.push(stmt.elseStmt, indent(arg));
+		}
 		return null;
 	}
 
 	public Object visitWhileStmt(WhileStmt stmt, String arg) {
-		show(arg, stmt);
-		stmt.cond.visit(this, indent(arg));
-		stmt.body.visit(this, indent(arg));
+		if (walk.step() == 0) {
+			show(arg, stmt);
+			walk.push(stmt.cond, indent(arg));
+			walk.push(stmt.body, indent(arg));
+		}
 		return null;
 	}
 
 	// Expressions
 	public Object visitUnaryExpr(UnaryExpr expr, String arg) {
-		show(arg, expr);
-		expr.operator.visit(this, indent(arg));
-		expr.expr.visit(this, indent(indent(arg)));
+		if (walk.step() == 0) {
+			show(arg, expr);
+			expr.operator.visit(this, indent(arg));
+			walk.push(expr.expr, indent(indent(arg)));
+		}
 		return null;
 	}
 
 	public Object visitBinaryExpr(BinaryExpr expr, String arg) {
-		show(arg, expr);
-		expr.operator.visit(this, indent(arg));
-		expr.left.visit(this, indent(indent(arg)));
-		expr.right.visit(this, indent(indent(arg)));
+		if (walk.step() == 0) {
+			show(arg, expr);
+			expr.operator.visit(this, indent(arg));
+			walk.push(expr.left, indent(indent(arg)));
+			walk.push(expr.right, indent(indent(arg)));
+		}
 		return null;
 	}
 
 	public Object visitRefExpr(RefExpr expr, String arg) {
-		show(arg, expr);
-		expr.ref.visit(this, indent(arg));
+		if (walk.step() == 0) {
+			show(arg, expr);
+			walk.push(expr.ref, indent(arg));
+		}
 		return null;
 	}
 
 	public Object visitCallExpr(CallExpr expr, String arg) {
-		show(arg, expr);
-		expr.functionRef.visit(this, indent(arg));
-		ExprList al = expr.argList;
-		show(arg, "  ExprList + [" + al.size() + "]");
-		String pfx = arg + "  . ";
-		for (Expression e : al) {
-			e.visit(this, pfx);
+		switch (walk.step()) {
+		case 0:
+			show(arg, expr);
+			walk.push(expr.functionRef, indent(arg));
+			break;
+
+		case 1:
+			ExprList al = expr.argList;
+			show(arg, "  ExprList + [" + al.size() + "]");
+			walk.pushAll(al, arg + "  . ");
+			break;
 		}
 		return null;
 	}
@@ -244,9 +268,11 @@ public class ASTDisplay implements Visitor<String, Object> {
 	}
 
 	public Object visitNewArrayExpr(NewArrayExpr expr, String arg) {
-		show(arg, expr);
-		expr.eltType.visit(this, indent(arg));
-		expr.sizeExpr.visit(this, indent(arg));
+		if (walk.step() == 0) {
+			show(arg, expr);
+			expr.eltType.visit(this, indent(arg));
+			walk.push(expr.sizeExpr, indent(arg));
+		}
 		return null;
 	}
 
@@ -279,9 +305,11 @@ public class ASTDisplay implements Visitor<String, Object> {
 	 * @return
 	 */
 	public Object visitDeRef(DeRef dr, String arg) {
-		show(arg, "DeRef");
-		dr.classReference.visit(this, indent(arg));
-		dr.memberReference.visit(this, indent(arg));
+		if (walk.step() == 0) {
+			show(arg, "DeRef");
+			walk.push(dr.classReference, indent(arg));
+			walk.push(dr.memberReference, indent(arg));
+		}
 
 		return null;
 	}
@@ -334,9 +362,11 @@ public class ASTDisplay implements Visitor<String, Object> {
 	}
 
 	public Object visitIndexedRef(IndexedRef ir, String arg) {
-		show(arg, "IndexedRef");
-		ir.ref.visit(this, indent(arg));
-		ir.indexExpr.visit(this, indent(arg));
+		if (walk.step() == 0) {
+			show(arg, "IndexedRef");
+			walk.push(ir.ref, indent(arg));
+			walk.push(ir.indexExpr, indent(arg));
+		}
 		return null;
 	}
 
@@ -371,4 +401,7 @@ public class ASTDisplay implements Visitor<String, Object> {
 		show(arg, "\"" + str.spelling + "\" " + str.toString());
 		return null;
 	}
+
+	// visits statements, expressions and references without recursing
+	private final Traversal<String, Object> walk = new Traversal<String, Object>(this);
 }
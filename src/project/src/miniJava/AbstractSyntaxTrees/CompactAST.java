@@ -0,0 +1,472 @@
+package miniJava.AbstractSyntaxTrees;
+
+import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SymbolTable;
+import miniJava.SyntacticAnalyzer.TokenType;
+
+/**
+ * The abstract syntax tree of a whole program, stored column-wise in
+ * primitive arrays instead of one object per node, as built by
+ * CompactParser. A node is an int: its kind, its source position packed into
+ * a long, and up to three int operands, which are child nodes, lists,
+ * spellings or flags as given for each Kind. A list is an offset into a
+ * separate int array holding its size followed by its items. Spellings are
+ * symbols of the scanner's SymbolTable, or encode the TokenType of a keyword
+ * or operator.
+ *
+ * The passes work on AST objects, so the tree is built from the arrays when
+ * it is first needed (tree() or visit()) and then kept.
+ */
+public class CompactAST {
+	/**
+	 * The kinds of nodes, with their operands
+	 */
+	public enum Kind {
+		PACKAGE, // class list
+		CLASS, // identifier, member list (FIELD and METHOD nodes)
+		FIELD, // PRIVATE | STATIC flags, type, identifier
+		METHOD, // FIELD node of the declarators, parameter list, BODY
+		BODY, // statement list, return expression or NONE
+		PARAMETER, // type, identifier
+		VAR, // type, identifier
+		BASE_TYPE, // TypeKind ordinal, spelling
+		CLASS_TYPE, // spelling
+		ARRAY_TYPE, // element type, spelling
+		BLOCK_STMT, // statement list
+		VARDECL_STMT, // VAR, initial expression
+		ASSIGN_STMT, // reference, expression
+		CALL_STMT, // reference, argument list
+		IF_STMT, // condition, then statement, else statement or NONE
+		WHILE_STMT, // condition, body
+		UNARY_EXPR, // OPERATOR, expression
+		BINARY_EXPR, // OPERATOR, left, right
+		REF_EXPR, // reference
+		CALL_EXPR, // reference, argument list
+		LITERAL_EXPR, // literal
+		NEW_OBJECT_EXPR, // CLASS_TYPE
+		NEW_ARRAY_EXPR, // element type, size expression
+		QUALIFIED_REF, // 1 if this relative, identifier list
+		INDEXED_REF, // reference, index expression
+		IDENTIFIER, // spelling
+		OPERATOR, // spelling
+		INT_LITERAL, // spelling
+		BOOLEAN_LITERAL, // spelling
+		STRING_LITERAL // spelling
+	}
+
+	private static final Kind[] KINDS = Kind.values();
+	private static final TokenType[] TOKEN_TYPES = TokenType.values();
+	private static final TypeKind[] TYPE_KINDS = TypeKind.values();
+
+	/**
+	 * An absent child, such as a missing else statement
+	 */
+	public static final int NONE = -1;
+
+	// Flags of a FIELD
+	public static final int PRIVATE = 1;
+	public static final int STATIC = 2;
+
+	// Nodes are kept in fixed-size chunks, as tokens are in TokenStream, but
+	// smaller ones, as a node takes more room than a token
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private byte[][] kinds = new byte[4][];
+	private long[][] positions = new long[4][];
+	private int[][] operands = new int[4][];
+	private int size;
+
+	private int[] lists = new int[256];
+	private int listsSize;
+
+	private final SymbolTable symbolTable;
+	private int root = NONE;
+	private Package tree;
+
+	// The position of the last node built, whose SourcePosition is reused
+	// while the following nodes are at the same place
+	private long lastPosition = -1;
+	private SourcePosition lastSourcePosition;
+
+	public CompactAST(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
+	}
+
+	/**
+	 * Packs a source position into a long
+	 */
+	public static long position(int line, int column) {
+		return ((long) line << 32) | (column & 0xffffffffL);
+	}
+
+	/**
+	 * @return the spelling operand for a keyword or operator
+	 */
+	public static int keyword(TokenType type) {
+		return -1 - type.ordinal();
+	}
+
+	/**
+	 * Appends a node
+	 *
+	 * @return the node
+	 */
+	public int add(Kind kind, long position, int a, int b, int c) {
+		int chunk = size >>> CHUNK_BITS;
+		int i = size & CHUNK_MASK;
+		if (i == 0) {
+			if (chunk == kinds.length) {
+				int capacity = chunk * 2;
+				kinds = java.util.Arrays.copyOf(kinds, capacity);
+				positions = java.util.Arrays.copyOf(positions, capacity);
+				operands = java.util.Arrays.copyOf(operands, capacity);
+			}
+			kinds[chunk] = new byte[CHUNK_SIZE];
+			positions[chunk] = new long[CHUNK_SIZE];
+			operands[chunk] = new int[3 * CHUNK_SIZE];
+		}
+		kinds[chunk][i] = (byte) kind.ordinal();
+		positions[chunk][i] = position;
+		operands[chunk][3 * i] = a;
+		operands[chunk][3 * i + 1] = b;
+		operands[chunk][3 * i + 2] = c;
+		return size++;
+	}
+
+	/**
+	 * Appends a list
+	 *
+	 * @param items
+	 *            array holding the items
+	 * @param from
+	 *            index of the first item
+	 * @param count
+	 *            number of items
+	 * @return the list
+	 */
+	public int addList(int[] items, int from, int count) {
+		if (listsSize + count + 1 > lists.length)
+			lists = java.util.Arrays.copyOf(lists, Math.max(lists.length * 2, listsSize + count + 1));
+		int list = listsSize;
+		lists[listsSize++] = count;
+		System.arraycopy(items, from, lists, listsSize, count);
+		listsSize += count;
+		return list;
+	}
+
+	public void setRoot(int root) {
+		this.root = root;
+	}
+
+	/**
+	 * @return the PACKAGE node
+	 */
+	public int root() {
+		return root;
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return size;
+	}
+
+	public Kind kind(int node) {
+		return KINDS[kinds[node >>> CHUNK_BITS][node & CHUNK_MASK]];
+	}
+
+	public long position(int node) {
+		return positions[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/**
+	 * @param node
+	 * @param k
+	 *            0, 1 or 2
+	 * @return operand k of the node
+	 */
+	public int operand(int node, int k) {
+		return operands[node >>> CHUNK_BITS][3 * (node & CHUNK_MASK) + k];
+	}
+
+	public int listSize(int list) {
+		return lists[list];
+	}
+
+	public int listItem(int list, int i) {
+		return lists[list + 1 + i];
+	}
+
+	/**
+	 * @return the string for a spelling operand
+	 */
+	public String spelling(int spelling) {
+		if (spelling >= 0)
+			return symbolTable.spelling(spelling);
+		TokenType type = TOKEN_TYPES[-1 - spelling];
+		return (type == TokenType.EOT) ? "" : type.spelling;
+	}
+
+	/**
+	 * @return how deep the statements, expressions and references of the
+	 *         program nest, which is about how deep building its AST objects
+	 *         and the passes over them recurse. A node is added after its
+	 *         children, so their heights are known when it is reached.
+	 */
+	public int height() {
+		int[] heights = new int[size];
+		int height = 0;
+		for (int node = 0; node < size; node++) {
+			int h;
+			switch (kind(node)) {
+			case BLOCK_STMT:
+				h = listHeight(heights, operand(node, 0));
+				break;
+			case CALL_STMT:
+			case CALL_EXPR:
+				h = Math.max(heights[operand(node, 0)], listHeight(heights, operand(node, 1)));
+				break;
+			case ASSIGN_STMT:
+			case WHILE_STMT:
+			case INDEXED_REF:
+				h = Math.max(heights[operand(node, 0)], heights[operand(node, 1)]);
+				break;
+			case IF_STMT:
+				h = Math.max(heights[operand(node, 0)], heights[operand(node, 1)]);
+				if (operand(node, 2) != NONE)
+					h = Math.max(h, heights[operand(node, 2)]);
+				break;
+			case VARDECL_STMT:
+			case UNARY_EXPR:
+			case NEW_ARRAY_EXPR:
+				h = heights[operand(node, 1)];
+				break;
+			case BINARY_EXPR:
+				h = Math.max(heights[operand(node, 1)], heights[operand(node, 2)]);
+				break;
+			case REF_EXPR:
+				h = heights[operand(node, 0)];
+				break;
+			default:
+				// declarations, types and leaves, which do not nest
+				h = 0;
+			}
+			heights[node] = h + 1;
+			height = Math.max(height, h + 1);
+		}
+		return height;
+	}
+
+	private int listHeight(int[] heights, int list) {
+		int height = 0;
+		for (int i = 0; i < listSize(list); i++)
+			height = Math.max(height, heights[listItem(list, i)]);
+		return height;
+	}
+
+	/**
+	 * @return the number of bytes taken by the arrays of the tree
+	 */
+	public long bytes() {
+		long chunks = (size + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+		return chunks * CHUNK_SIZE * (1 + 8 + 3 * 4) + 4L * lists.length;
+	}
+
+	/**
+	 * @return the program as AST objects, built on the first call
+	 */
+	public Package tree() {
+		if (tree == null)
+			tree = toPackage();
+		return tree;
+	}
+
+	/**
+	 * Runs a Visitor over the program, as Package.visit does. Every visit
+	 * goes to the same tree, since the passes leave their results in its
+	 * nodes (declarations, types and runtime entities) for the passes after
+	 * them.
+	 */
+	public <A, R> R visit(Visitor<A, R> v, A o) {
+		return tree().visit(v, o);
+	}
+
+	/**
+	 * Builds a new tree of AST objects, the same as Parser would have built
+	 */
+	public Package toPackage() {
+		ClassDeclList classes = new ClassDeclList();
+		int list = operand(root, 0);
+		for (int i = 0; i < listSize(list); i++)
+			classes.add(classDecl(listItem(list, i)));
+		return new Package(classes, posn(root));
+	}
+
+	private SourcePosition posn(int node) {
+		long position = position(node);
+		if (position != lastPosition) {
+			lastPosition = position;
+			lastSourcePosition = new SourcePosition((int) (position >>> 32), (int) position);
+		}
+		return lastSourcePosition;
+	}
+
+	private ClassDecl classDecl(int node) {
+		Identifier id = identifier(operand(node, 0));
+		FieldDeclList fields = new FieldDeclList();
+		MethodDeclList methods = new MethodDeclList();
+		int list = operand(node, 1);
+		for (int i = 0; i < listSize(list); i++) {
+			int member = listItem(list, i);
+			if (kind(member) == Kind.FIELD) {
+				fields.add(declarators(member));
+			} else {
+				FieldDecl md = declarators(operand(member, 0));
+				ParameterDeclList parameters = new ParameterDeclList();
+				int parameterList = operand(member, 1);
+				for (int p = 0; p < listSize(parameterList); p++) {
+					int parameter = listItem(parameterList, p);
+					Type type = type(operand(parameter, 0));
+					parameters.add(new ParameterDecl(type, identifier(operand(parameter, 1)), type.posn));
+				}
+				int body = operand(member, 2);
+				StatementList statements = statements(operand(body, 0));
+				methods.add(new MethodDecl(md, parameters, statements, expression(operand(body, 1)), md.posn));
+			}
+		}
+		return new ClassDecl(id, fields, methods, posn(node));
+	}
+
+	private FieldDecl declarators(int node) {
+		int flags = operand(node, 0);
+		SourcePosition posn = posn(node);
+		Type type = type(operand(node, 1));
+		return new FieldDecl((flags & PRIVATE) != 0, (flags & STATIC) != 0, type, identifier(operand(node, 2)), posn);
+	}
+
+	private Type type(int node) {
+		switch (kind(node)) {
+		case BASE_TYPE:
+			return new BaseType(TYPE_KINDS[operand(node, 0)], spelling(operand(node, 1)), posn(node));
+		case CLASS_TYPE:
+			return new ClassType(spelling(operand(node, 0)), posn(node));
+		case ARRAY_TYPE:
+			Type eltType = type(operand(node, 0));
+			return new ArrayType(eltType, spelling(operand(node, 1)), posn(node));
+		default:
+			throw new IllegalStateException(kind(node) + " is not a type");
+		}
+	}
+
+	private StatementList statements(int list) {
+		StatementList statements = new StatementList();
+		for (int i = 0; i < listSize(list); i++)
+			statements.add(statement(listItem(list, i)));
+		return statements;
+	}
+
+	private ExprList expressions(int list) {
+		ExprList expressions = new ExprList();
+		for (int i = 0; i < listSize(list); i++)
+			expressions.add(expression(listItem(list, i)));
+		return expressions;
+	}
+
+	private Statement statement(int node) {
+		if (node == NONE)
+			return null;
+		switch (kind(node)) {
+		case BLOCK_STMT:
+			return new BlockStmt(statements(operand(node, 0)), posn(node));
+		case VARDECL_STMT:
+			int var = operand(node, 0);
+			Type type = type(operand(var, 0));
+			VarDecl varDecl = new VarDecl(type, identifier(operand(var, 1)), posn(var));
+			return new VarDeclStmt(varDecl, expression(operand(node, 1)), posn(node));
+		case ASSIGN_STMT:
+			Reference ref = reference(operand(node, 0));
+			return new AssignStmt(ref, expression(operand(node, 1)), posn(node));
+		case CALL_STMT:
+			Reference methodRef = reference(operand(node, 0));
+			return new CallStmt(methodRef, expressions(operand(node, 1)), posn(node));
+		case IF_STMT:
+			Expression cond = expression(operand(node, 0));
+			Statement thenStmt = statement(operand(node, 1));
+			return new IfStmt(cond, thenStmt, statement(operand(node, 2)), posn(node));
+		case WHILE_STMT:
+			Expression whileCond = expression(operand(node, 0));
+			return new WhileStmt(whileCond, statement(operand(node, 1)), posn(node));
+		default:
+			throw new IllegalStateException(kind(node) + " is not a statement");
+		}
+	}
+
+	private Expression expression(int node) {
+		if (node == NONE)
+			return null;
+		switch (kind(node)) {
+		case UNARY_EXPR:
+			Operator unaryOp = operator(operand(node, 0));
+			return new UnaryExpr(unaryOp, expression(operand(node, 1)), posn(node));
+		case BINARY_EXPR:
+			Operator binaryOp = operator(operand(node, 0));
+			Expression left = expression(operand(node, 1));
+			return new BinaryExpr(binaryOp, left, expression(operand(node, 2)), posn(node));
+		case REF_EXPR:
+			return new RefExpr(reference(operand(node, 0)), posn(node));
+		case CALL_EXPR:
+			Reference functionRef = reference(operand(node, 0));
+			return new CallExpr(functionRef, expressions(operand(node, 1)), posn(node));
+		case LITERAL_EXPR:
+			return new LiteralExpr(literal(operand(node, 0)), posn(node));
+		case NEW_OBJECT_EXPR:
+			return new NewObjectExpr((ClassType) type(operand(node, 0)), posn(node));
+		case NEW_ARRAY_EXPR:
+			Type eltType = type(operand(node, 0));
+			return new NewArrayExpr(eltType, expression(operand(node, 1)), posn(node));
+		default:
+			throw new IllegalStateException(kind(node) + " is not an expression");
+		}
+	}
+
+	private Reference reference(int node) {
+		switch (kind(node)) {
+		case QUALIFIED_REF:
+			IdentifierList qualifiers = new IdentifierList();
+			int list = operand(node, 1);
+			for (int i = 0; i < listSize(list); i++)
+				qualifiers.add(identifier(listItem(list, i)));
+			return new QualifiedRef(operand(node, 0) != 0, qualifiers, posn(node));
+		case INDEXED_REF:
+			Reference ref = reference(operand(node, 0));
+			return new IndexedRef(ref, expression(operand(node, 1)), posn(node));
+		default:
+			throw new IllegalStateException(kind(node) + " is not a reference");
+		}
+	}
+
+	private Literal literal(int node) {
+		String spelling = spelling(operand(node, 0));
+		switch (kind(node)) {
+		case INT_LITERAL:
+			return new IntLiteral(spelling, posn(node));
+		case BOOLEAN_LITERAL:
+			return new BooleanLiteral(spelling, posn(node));
+		case STRING_LITERAL:
+			return new StringLiteral(spelling, posn(node));
+		default:
+			throw new IllegalStateException(kind(node) + " is not a literal");
+		}
+	}
+
+	private Identifier identifier(int node) {
+		return new Identifier(spelling(operand(node, 0)), posn(node));
+	}
+
+	private Operator operator(int node) {
+		return new Operator(spelling(operand(node, 0)), posn(node));
+	}
+}
@@ -6,7 +6,6 @@
 package miniJava.AbstractSyntaxTrees;
 
 import miniJava.SyntacticAnalyzer.SourcePosition;
-import miniJava.SyntacticAnalyzer.Token;
 import miniJava.SyntacticAnalyzer.TokenType;
 
 public class Operator extends Terminal {
@@ -14,7 +13,7 @@ public class Operator extends Terminal {
 	public TokenType operatorType;
 	public Operator(String s, SourcePosition posn) {
 		super(s, posn);
-		operatorType = (new Token(s, posn)).type;
+		operatorType = TokenType.lookup(s);
 	}
 
 	public <A, R> R visit(Visitor<A, R> v, A o) {
@@ -0,0 +1,226 @@
+package miniJava.AbstractSyntaxTrees;
+
+import java.util.Arrays;
+
+import miniJava.PhaseProfiler;
+
+/**
+ * Runs a Visitor over a tree without recursing on the Java stack, so that how
+ * deep the tree nests is limited by the heap only. A visit method run by a
+ * Traversal does not visit the children of its node itself. It pushes them
+ * and returns, and is called again, with the next step, once they are all
+ * visited:
+ *
+ * <pre>
+ * public Type visitUnaryExpr(UnaryExpr expr, Type arg) {
+ * 	if (walk.step() == 0) {
+ * 		walk.push(expr.expr, null);
+ * 		return null;
+ * 	}
+ * 	return walk.result(0);
+ * }
+ * </pre>
+ *
+ * A call that pushes nothing is the last one for its node, and what it
+ * returns is the result of the node. The children pushed in one call are
+ * visited in the order they were pushed, and their results are numbered from
+ * 0 across all the steps of the node. A traversal is started with visit.
+ * Nodes that are leaves, or that do not nest (e.g. declarations and types),
+ * need none and are visited directly.
+ *
+ * A traversal is slower than recursing, so the passes over the tree recurse,
+ * and their ASTDeep subclasses, which use one, visit only the programs that
+ * nest too deeply for the Java stack.
+ */
+public class Traversal<A, R> {
+	private final Visitor<A, R> visitor;
+
+	// the frames of the nodes being visited, innermost last
+	private AST[] nodes = new AST[16];
+	private Object[] args = new Object[16];
+	private int[] steps = new int[16];
+	// where the results of the children of a frame start
+	private int[] bases = new int[16];
+	private Object[] states = new Object[16];
+	private int depth = 0;
+
+	private Object[] results = new Object[16];
+	private int resultCount = 0;
+
+	// the frame whose visit method is running, and whether that call pushed
+	// a child or asked to be called again
+	private int current = -1;
+	private boolean resumed;
+
+	public Traversal(Visitor<A, R> visitor) {
+		this.visitor = visitor;
+	}
+
+	/**
+	 * Visits a node and everything under it
+	 *
+	 * @return the result of the node
+	 */
+	@SuppressWarnings("unchecked")
+	public R visit(AST node, A arg) {
+		int floor = depth;
+		int outerCurrent = current;
+		boolean outerResumed = resumed;
+		int outerResults = resultCount;
+		boolean completed = false;
+		pushFrame(node, arg);
+		try {
+			run(floor);
+			completed = true;
+		} finally {
+			current = outerCurrent;
+			resumed = outerResumed;
+			if (!completed) {
+				Arrays.fill(nodes, floor, depth, null);
+				Arrays.fill(args, floor, depth, null);
+				Arrays.fill(states, floor, depth, null);
+				Arrays.fill(results, outerResults, resultCount, null);
+				depth = floor;
+				resultCount = outerResults;
+			}
+		}
+		R result = (R) results[--resultCount];
+		results[resultCount] = null;
+		return result;
+	}
+
+	/**
+	 * Visits the frames above floor until none is left
+	 */
+	@SuppressWarnings("unchecked")
+	private void run(int floor) {
+		int visited = 0;
+		while (depth > floor) {
+			int frame = depth - 1;
+			if (steps[frame] == 0) {
+				bases[frame] = resultCount;
+				visited++;
+			}
+
+			current = frame;
+			resumed = false;
+			R result = dispatch(nodes[frame], (A) args[frame]);
+
+			if (resumed) {
+				steps[frame]++;
+				// the last pushed is on top, so reverse them to visit them in
+				// the order they were pushed
+				for (int i = frame + 1, j = depth - 1; i < j; i++, j--) {
+					AST node = nodes[i];
+					nodes[i] = nodes[j];
+					nodes[j] = node;
+					Object arg = args[i];
+					args[i] = args[j];
+					args[j] = arg;
+				}
+			} else {
+				depth = frame;
+				nodes[frame] = null;
+				args[frame] = null;
+				states[frame] = null;
+				int base = bases[frame];
+				while (resultCount > base)
+					results[--resultCount] = null;
+				pushResult(result);
+			}
+		}
+
+		PhaseProfiler profiler = PhaseProfiler.current();
+		if (profiler != null)
+			profiler.nodesVisited(visited);
+	}
+
+	/**
+	 * Calls the visit method of the visitor for the node. A subclass can send
+	 * some visits elsewhere.
+	 */
+	protected R dispatch(AST node, A arg) {
+		return node.visit(visitor, arg);
+	}
+
+	/**
+	 * @return how many times the visit method has already been called for
+	 *         the node it is visiting
+	 */
+	public int step() {
+		return steps[current];
+	}
+
+	/**
+	 * Visits a child of the node before the visit method is called again
+	 */
+	public void push(AST node, A arg) {
+		pushFrame(node, arg);
+		resumed = true;
+	}
+
+	/**
+	 * Visits the children in a list before the visit method is called again,
+	 * which it is even if the list is empty
+	 */
+	public void pushAll(Iterable<? extends AST> list, A arg) {
+		for (AST node : list)
+			pushFrame(node, arg);
+		resumed = true;
+	}
+
+	/**
+	 * Has the visit method called again without visiting a child first
+	 */
+	public void resume() {
+		resumed = true;
+	}
+
+	/**
+	 * @return the result of the i-th child visited for the node
+	 */
+	@SuppressWarnings("unchecked")
+	public R result(int i) {
+		return (R) results[bases[current] + i];
+	}
+
+	/**
+	 * @return how many children have been visited for the node
+	 */
+	public int resultCount() {
+		return resultCount - bases[current];
+	}
+
+	/**
+	 * Keeps a value for the next steps of the node
+	 */
+	public void save(Object state) {
+		states[current] = state;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T saved() {
+		return (T) states[current];
+	}
+
+	private void pushFrame(AST node, A arg) {
+		if (depth == nodes.length) {
+			int length = 2 * depth;
+			nodes = Arrays.copyOf(nodes, length);
+			args = Arrays.copyOf(args, length);
+			steps = Arrays.copyOf(steps, length);
+			bases = Arrays.copyOf(bases, length);
+			states = Arrays.copyOf(states, length);
+		}
+		nodes[depth] = node;
+		args[depth] = arg;
+		steps[depth] = 0;
+		depth++;
+	}
+
+	private void pushResult(Object result) {
+		if (resultCount == results.length)
+			results = Arrays.copyOf(results, 2 * resultCount);
+		results[resultCount++] = result;
+	}
+}
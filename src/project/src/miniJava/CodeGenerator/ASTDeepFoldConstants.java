@@ -0,0 +1,246 @@
+package miniJava.CodeGenerator;
+
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.AbstractSyntaxTrees.AssignStmt;
+import miniJava.AbstractSyntaxTrees.BinaryExpr;
+import miniJava.AbstractSyntaxTrees.BlockStmt;
+import miniJava.AbstractSyntaxTrees.CallExpr;
+import miniJava.AbstractSyntaxTrees.CallStmt;
+import miniJava.AbstractSyntaxTrees.DeRef;
+import miniJava.AbstractSyntaxTrees.ExprList;
+import miniJava.AbstractSyntaxTrees.Expression;
+import miniJava.AbstractSyntaxTrees.IfStmt;
+import miniJava.AbstractSyntaxTrees.IndexedRef;
+import miniJava.AbstractSyntaxTrees.NewArrayExpr;
+import miniJava.AbstractSyntaxTrees.RefExpr;
+import miniJava.AbstractSyntaxTrees.Reference;
+import miniJava.AbstractSyntaxTrees.Statement;
+import miniJava.AbstractSyntaxTrees.StatementList;
+import miniJava.AbstractSyntaxTrees.Traversal;
+import miniJava.AbstractSyntaxTrees.UnaryExpr;
+import miniJava.AbstractSyntaxTrees.VarDeclStmt;
+import miniJava.AbstractSyntaxTrees.WhileStmt;
+
+/**
+ * Folds the constants of a program whose statements or expressions nest too
+ * deeply to be visited recursively, by visiting them with a Traversal
+ */
+public class ASTDeepFoldConstants extends ASTFoldConstants {
+	@Override
+	AST visit(AST node, Object arg) {
+		return walk.visit(node, arg);
+	}
+
+	/**
+	 * @return the statements folded for the node from the i-th on, without
+	 *         those that do nothing
+	 */
+	private StatementList foldedStatements(int i) {
+		StatementList folded = new StatementList();
+		for (; i < walk.resultCount(); i++) {
+			Statement f = (Statement) walk.result(i);
+			if (f != null)
+				folded.add(f);
+		}
+		return folded;
+	}
+
+	/**
+	 * @return the expressions folded for the node from the i-th on
+	 */
+	private ExprList foldedArguments(int i) {
+		ExprList folded = new ExprList();
+		for (; i < walk.resultCount(); i++)
+			folded.add((Expression) walk.result(i));
+		return folded;
+	}
+
+	/**
+	 * Keeps a folded statement that has to stay a statement, such as the
+	 * branch of an if, replacing it by an empty block if it does nothing
+	 */
+	private Statement branch(AST folded, Statement stmt) {
+		return (folded != null) ? (Statement) folded : new BlockStmt(new StatementList(), stmt.posn);
+	}
+
+	@Override
+	public AST visitBlockStmt(BlockStmt stmt, Object arg) {
+		if (walk.step() == 0) {
+			walk.pushAll(stmt.sl, null);
+			return null;
+		}
+		stmt.sl = foldedStatements(0);
+		return stmt;
+	}
+
+	@Override
+	public AST visitVardeclStmt(VarDeclStmt stmt, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(stmt.initExp, null);
+			return null;
+		}
+		stmt.initExp = (Expression) walk.result(0);
+		return stmt;
+	}
+
+	@Override
+	public AST visitAssignStmt(AssignStmt stmt, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(stmt.ref, null);
+			walk.push(stmt.val, null);
+			return null;
+		}
+		stmt.ref = (Reference) walk.result(0);
+		stmt.val = (Expression) walk.result(1);
+		return stmt;
+	}
+
+	@Override
+	public AST visitCallStmt(CallStmt stmt, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(stmt.methodRef, null);
+			walk.pushAll(stmt.argList, null);
+			return null;
+		}
+		stmt.methodRef = (Reference) walk.result(0);
+		stmt.argList = foldedArguments(1);
+		return stmt;
+	}
+
+	@Override
+	public AST visitIfStmt(IfStmt stmt, Object arg) {
+		switch (walk.step()) {
+		case 0:
+			walk.push(stmt.cond, null);
+			return null;
+
+		case 1:
+			stmt.cond = (Expression) walk.result(0);
+			Boolean cond = booleanValue(stmt.cond);
+			if (cond != null) {
+				// replaced by the branch that is taken, once it is folded
+				removedStatements++;
+				if (cond)
+					walk.push(stmt.thenStmt, null);
+				else if (stmt.elseStmt != null)
+					walk.push(stmt.elseStmt, null);
+				return null;
+			}
+
+			walk.push(stmt.thenStmt, null);
+			if (stmt.elseStmt != null)
+				walk.push(stmt.elseStmt, null);
+			return null;
+
+		default:
+			if (booleanValue(stmt.cond) != null)
+				return walk.result(1);
+
+			stmt.thenStmt = branch(walk.result(1), stmt.thenStmt);
+			if (stmt.elseStmt != null)
+				stmt.elseStmt = branch(walk.result(2), stmt.elseStmt);
+			return stmt;
+		}
+	}
+
+	@Override
+	public AST visitWhileStmt(WhileStmt stmt, Object arg) {
+		switch (walk.step()) {
+		case 0:
+			walk.push(stmt.cond, null);
+			return null;
+
+		case 1:
+			stmt.cond = (Expression) walk.result(0);
+			if (Boolean.FALSE.equals(booleanValue(stmt.cond))) {
+				removedStatements++;
+				return null;
+			}
+
+			walk.push(stmt.body, null);
+			return null;
+
+		default:
+			stmt.body = branch(walk.result(1), stmt.body);
+			return stmt;
+		}
+	}
+
+	@Override
+	public AST visitUnaryExpr(UnaryExpr expr, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.expr, null);
+			return null;
+		}
+		expr.expr = (Expression) walk.result(0);
+		return foldOperator(expr);
+	}
+
+	@Override
+	public AST visitBinaryExpr(BinaryExpr expr, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.left, null);
+			walk.push(expr.right, null);
+			return null;
+		}
+		expr.left = (Expression) walk.result(0);
+		expr.right = (Expression) walk.result(1);
+		return foldOperator(expr);
+	}
+
+	@Override
+	public AST visitRefExpr(RefExpr expr, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.ref, null);
+			return null;
+		}
+		expr.ref = (Reference) walk.result(0);
+		return expr;
+	}
+
+	@Override
+	public AST visitCallExpr(CallExpr expr, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.functionRef, null);
+			walk.pushAll(expr.argList, null);
+			return null;
+		}
+		expr.functionRef = (Reference) walk.result(0);
+		expr.argList = foldedArguments(1);
+		return expr;
+	}
+
+	@Override
+	public AST visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.sizeExpr, null);
+			return null;
+		}
+		expr.sizeExpr = (Expression) walk.result(0);
+		return expr;
+	}
+
+	@Override
+	public AST visitDeRef(DeRef ref, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(ref.classReference, null);
+			return null;
+		}
+		ref.classReference = (Reference) walk.result(0);
+		return ref;
+	}
+
+	@Override
+	public AST visitIndexedRef(IndexedRef ref, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(ref.ref, null);
+			walk.push(ref.indexExpr, null);
+			return null;
+		}
+		ref.ref = (Reference) walk.result(0);
+		ref.indexExpr = (Expression) walk.result(1);
+		return ref;
+	}
+
+	private final Traversal<Object, AST> walk = new Traversal<Object, AST>(this);
+}
@@ -0,0 +1,422 @@
+package miniJava.CodeGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mJAM.CodeStore;
+import mJAM.Machine.Op;
+import mJAM.Machine.Prim;
+import mJAM.Machine.Reg;
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.AbstractSyntaxTrees.AssignStmt;
+import miniJava.AbstractSyntaxTrees.BinaryExpr;
+import miniJava.AbstractSyntaxTrees.BlockStmt;
+import miniJava.AbstractSyntaxTrees.BooleanLiteral;
+import miniJava.AbstractSyntaxTrees.CallExpr;
+import miniJava.AbstractSyntaxTrees.CallStmt;
+import miniJava.AbstractSyntaxTrees.DeRef;
+import miniJava.AbstractSyntaxTrees.Expression;
+import miniJava.AbstractSyntaxTrees.IfStmt;
+import miniJava.AbstractSyntaxTrees.IndexedRef;
+import miniJava.AbstractSyntaxTrees.LiteralExpr;
+import miniJava.AbstractSyntaxTrees.LocalRef;
+import miniJava.AbstractSyntaxTrees.MemberRef;
+import miniJava.AbstractSyntaxTrees.NewArrayExpr;
+import miniJava.AbstractSyntaxTrees.RefExpr;
+import miniJava.AbstractSyntaxTrees.Traversal;
+import miniJava.AbstractSyntaxTrees.UnaryExpr;
+import miniJava.AbstractSyntaxTrees.VarDeclStmt;
+import miniJava.AbstractSyntaxTrees.WhileStmt;
+import miniJava.SyntacticAnalyzer.TokenType;
+
+/**
+ * Generates code for a program whose statements or expressions nest too
+ * deeply to be visited recursively, by visiting them with a Traversal
+ */
+public class ASTDeepGenerateCode extends ASTGenerateCode {
+	public ASTDeepGenerateCode(CodeStore code) {
+		super(code);
+	}
+
+	@Override
+	Void visit(AST node, Object arg) {
+		return walk.visit(node, arg);
+	}
+
+	@Override
+	public Void visitBlockStmt(BlockStmt stmt, Object arg) {
+		if (walk.step() == 0) {
+			int numAllocated = allocateSpaceForLocals(stmt.sl);
+			walk.pushAll(stmt.sl, null);
+			walk.save(numAllocated);
+			return null;
+		}
+		int numAllocated = walk.<Integer> saved();
+		localDisplacement -= numAllocated;
+		code.emit(Op.POP, numAllocated);
+
+		return null;
+	}
+
+	@Override
+	public Void visitVardeclStmt(VarDeclStmt stmt, Object arg) {
+		// The space for this variable has already been allocated by
+		// allocateLocalVariables
+		// Store the value of the initializing expression in variable
+		if (walk.step() == 0) {
+			walk.push(stmt.initExp, FetchType.VALUE);
+			return null;
+		}
+		code.emit(Op.STORE, Reg.LB, stmt.varDecl.runtimeEntity.displacement);
+
+		return null;
+	}
+
+	@Override
+	public Void visitAssignStmt(AssignStmt stmt, Object arg) {
+		// The lhs of an assignment statement can be:
+		// 1. A local variable
+		// 2. An element of an array, like a[2]. Note that a.b[2] is not allowed
+		// 3. A field of an object or of this
+		if (walk.step() == 0) {
+			if (!(stmt.ref instanceof LocalRef))
+				walk.push(stmt.ref, FetchType.ADDRESS);
+			walk.push(stmt.val, null);
+			return null;
+		}
+
+		if (stmt.ref instanceof LocalRef) {
+			// local variable, stored on the stack
+			code.emit(Op.STORE, Reg.LB, getLocalRefDisplacement((LocalRef) stmt.ref));
+		} else {
+			if (stmt.ref instanceof IndexedRef) {
+				// array element
+				code.emit(Prim.arrayupd);
+			} else {
+				// field
+				code.emit(Prim.fieldupd);
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitCallStmt(CallStmt stmt, Object arg) {
+		switch (walk.step()) {
+		case 0:
+			// Get the arguments on the stack
+			walk.pushAll(stmt.argList, null);
+			return null;
+
+		case 1:
+			break;
+
+		default:
+			return null;
+		}
+
+		if (emitPrintln(stmt.methodRef))
+			return null;
+
+		if (stmt.methodRef instanceof MemberRef) {
+			// We are calling a method of the current class, so we need to place
+			// the current OB on stack. Otherwise, DeRef places the right
+			// instance on stack
+			code.emit(Op.LOADA, Reg.OB, 0);
+		}
+		// The methodRef generates a CALL statement
+		walk.push(stmt.methodRef, FetchType.METHOD);
+
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(IfStmt stmt, Object arg) {
+		/*
+		 * <jump to ELSE if condition is false> <then block> JUMP END ELSE:
+		 * <else block> END:
+		 */
+		switch (walk.step()) {
+		case 0:
+			List<Integer> elseJumps = new ArrayList<Integer>();
+			walk.push(stmt.cond, new Condition(false, false, elseJumps));
+			walk.push(stmt.thenStmt, null);
+			walk.save(elseJumps);
+			return null;
+
+		case 1:
+			if (stmt.elseStmt != null) {
+				int endJumpAddr = code.nextInstrAddr();
+				code.emit(Op.JUMP, Reg.CB, 0);
+				patch(walk.<List<Integer>> saved(), code.nextInstrAddr());
+				walk.push(stmt.elseStmt, null);
+				walk.save(endJumpAddr);
+			} else {
+				patch(walk.<List<Integer>> saved(), code.nextInstrAddr());
+			}
+			return null;
+
+		default:
+			code.patch(walk.<Integer> saved(), code.nextInstrAddr());
+			return null;
+		}
+	}
+
+	/**
+	 * The addresses a while statement is patched with
+	 */
+	private static class Loop {
+		int testJumpAddr;
+		int loopStartAddr;
+		final List<Integer> loopJumps = new ArrayList<Integer>();
+	}
+
+	@Override
+	public Void visitWhileStmt(WhileStmt stmt, Object arg) {
+		/*
+		 * JUMP TEST LOOP: <loop body> TEST: <jump to LOOP if condition is
+		 * true>
+		 */
+
+		Loop loop = walk.saved();
+		switch (walk.step()) {
+		case 0:
+			loop = new Loop();
+			// JUMP TEST
+			loop.testJumpAddr = code.nextInstrAddr();
+			code.emit(Op.JUMP, 0, Reg.CB, 0);
+			// LOOP:
+			loop.loopStartAddr = code.nextInstrAddr();
+			walk.push(stmt.body, null);
+			walk.save(loop);
+			return null;
+
+		case 1:
+			// TEST:
+			code.patch(loop.testJumpAddr, code.nextInstrAddr());
+			walk.push(stmt.cond, new Condition(true, false, loop.loopJumps));
+			return null;
+
+		default:
+			patch(loop.loopJumps, loop.loopStartAddr);
+			return null;
+		}
+	}
+
+	/**
+	 * The argument an expression is visited with to generate code that jumps
+	 * on it
+	 */
+	private static class Condition {
+		// the value the condition jumps on
+		final boolean value;
+		// whether the condition is an operand of !, && or ||. These take only
+		// 1 as true, as the not, and and or primitives do, while the
+		// condition of an if takes anything but 0 as true. The two only
+		// differ for booleans made by - (e.g. -true), which type checking lets
+		// through.
+		final boolean operand;
+		// addresses of the jumps, to be patched with their target
+		final List<Integer> jumps;
+
+		Condition(boolean value, boolean operand, List<Integer> jumps) {
+			this.value = value;
+			this.operand = operand;
+			this.jumps = jumps;
+		}
+	}
+
+	/**
+	 * Generates code that jumps if the condition evaluates to the given value
+	 * and falls through otherwise, leaving nothing on the stack. The right
+	 * operand of && and || is only evaluated if the left one does not decide
+	 * the condition, and ! only swaps the targets.
+	 */
+	private Void jumpIf(Expression cond, Condition c) {
+		if (cond instanceof UnaryExpr && ((UnaryExpr) cond).operator.operatorType == TokenType.BANG) {
+			if (walk.step() == 0)
+				walk.push(((UnaryExpr) cond).expr, new Condition(!c.value, true, c.jumps));
+			return null;
+		}
+		if (cond instanceof BinaryExpr) {
+			BinaryExpr expr = (BinaryExpr) cond;
+			TokenType operator = expr.operator.operatorType;
+			if (operator == TokenType.AMPERSAND_AMPERSAND || operator == TokenType.PIPE_PIPE) {
+				// the value of the left operand that decides the condition
+				boolean decides = operator == TokenType.PIPE_PIPE;
+				if (walk.step() == 0) {
+					if (c.value == decides) {
+						walk.push(expr.left, new Condition(c.value, true, c.jumps));
+						walk.push(expr.right, new Condition(c.value, true, c.jumps));
+					} else {
+						List<Integer> decided = new ArrayList<Integer>();
+						walk.push(expr.left, new Condition(decides, true, decided));
+						walk.push(expr.right, new Condition(c.value, true, c.jumps));
+						walk.save(decided);
+					}
+				} else if (c.value != decides) {
+					patch(walk.<List<Integer>> saved(), code.nextInstrAddr());
+				}
+				return null;
+			}
+		}
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).literal instanceof BooleanLiteral) {
+			// jump always or never
+			if (((LiteralExpr) cond).literal.spelling.equals("true") == c.value) {
+				c.jumps.add(code.nextInstrAddr());
+				code.emit(Op.JUMP, Reg.CB, 0);
+			}
+			return null;
+		}
+
+		if (walk.step() == 0) {
+			walk.push(cond, null);
+			return null;
+		}
+		boolean value = c.value;
+		if (c.operand && !value && !isComparison(cond)) {
+			// jump unless it is 1; a comparison leaves 0 or 1, so it needs no not
+			code.emit(Prim.not);
+			value = true;
+		}
+		c.jumps.add(code.nextInstrAddr());
+		code.emit(Op.JUMPIF, value ? 1 : 0, Reg.CB, 0);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(UnaryExpr expr, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.expr, null);
+			return null;
+		}
+
+		emitOperator(expr);
+
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(BinaryExpr expr, Object arg) {
+		TokenType operator = expr.operator.operatorType;
+		if (operator == TokenType.AMPERSAND_AMPERSAND || operator == TokenType.PIPE_PIPE) {
+			/*
+			 * <jump to FALSE if expr is false> LOADL 1 JUMP END FALSE: LOADL 0
+			 * END:
+			 */
+			if (walk.step() == 0) {
+				List<Integer> falseJumps = new ArrayList<Integer>();
+				walk.push(expr, new Condition(false, false, falseJumps));
+				walk.save(falseJumps);
+				return null;
+			}
+			code.emit(Op.LOADL, 1);
+			int endJumpAddr = code.nextInstrAddr();
+			code.emit(Op.JUMP, Reg.CB, 0);
+			patch(walk.<List<Integer>> saved(), code.nextInstrAddr());
+			code.emit(Op.LOADL, 0);
+			code.patch(endJumpAddr, code.nextInstrAddr());
+			return null;
+		}
+
+		if (walk.step() == 0) {
+			walk.push(expr.left, null);
+			walk.push(expr.right, null);
+			return null;
+		}
+
+		emitOperator(expr);
+
+		return null;
+	}
+
+	@Override
+	public Void visitRefExpr(RefExpr expr, Object arg) {
+		if (walk.step() == 0)
+			walk.push(expr.ref, FetchType.VALUE);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(CallExpr expr, Object arg) {
+		switch (walk.step()) {
+		case 0:
+			// Get the arguments on the stack
+			walk.pushAll(expr.argList, null);
+			return null;
+
+		case 1:
+			break;
+
+		default:
+			return null;
+		}
+
+		if (expr.functionRef instanceof MemberRef) {
+			// This is a call to a method of the current class, so we need to
+			// place the value of OB before CALL instruction is generated by the
+			// MemberRef
+			code.emit(Op.LOADA, Reg.OB, 0);
+		}
+		walk.push(expr.functionRef, FetchType.METHOD);
+		return null;
+	}
+
+	@Override
+	public Void visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.sizeExpr, null);
+			return null;
+		}
+		code.emit(Prim.newarr);
+		return null;
+	}
+
+	@Override
+	public Void visitDeRef(DeRef ref, Object arg) {
+		if (walk.step() == 0) {
+			walk.push(ref.classReference, FetchType.VALUE);
+			return null;
+		}
+
+		fetchMember(ref, arg);
+
+		return null;
+	}
+
+	@Override
+	public Void visitIndexedRef(IndexedRef ref, Object arg) {
+		switch ((FetchType) arg) {
+		case ADDRESS:
+			// The arrayupd primitive is called by the visitAssignStmt, we just
+			// place the arguments on the stack
+			if (walk.step() == 0) {
+				walk.push(ref.ref, FetchType.VALUE);
+				walk.push(ref.indexExpr, null);
+			}
+			break;
+
+		case VALUE:
+			if (walk.step() == 0) {
+				walk.push(ref.ref, FetchType.VALUE);
+				walk.push(ref.indexExpr, null);
+			} else {
+				code.emit(Prim.arrayref);
+			}
+		}
+
+		return null;
+	}
+
+	// visits statements and expressions without recursing. An expression
+	// visited with a Condition is a condition to jump on.
+	private final Traversal<Object, Void> walk = new Traversal<Object, Void>(this) {
+		@Override
+		protected Void dispatch(AST node, Object arg) {
+			if (arg instanceof Condition)
+				return jumpIf((Expression) node, (Condition) arg);
+			return super.dispatch(node, arg);
+		}
+	};
+}
@@ -0,0 +1,547 @@
+package miniJava.CodeGenerator;
+
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.AbstractSyntaxTrees.ArrayType;
+import miniJava.AbstractSyntaxTrees.AssignStmt;
+import miniJava.AbstractSyntaxTrees.BadRef;
+import miniJava.AbstractSyntaxTrees.BaseType;
+import miniJava.AbstractSyntaxTrees.BinaryExpr;
+import miniJava.AbstractSyntaxTrees.BlockStmt;
+import miniJava.AbstractSyntaxTrees.BooleanLiteral;
+import miniJava.AbstractSyntaxTrees.CallExpr;
+import miniJava.AbstractSyntaxTrees.CallStmt;
+import miniJava.AbstractSyntaxTrees.ClassDecl;
+import miniJava.AbstractSyntaxTrees.ClassRef;
+import miniJava.AbstractSyntaxTrees.ClassType;
+import miniJava.AbstractSyntaxTrees.DeRef;
+import miniJava.AbstractSyntaxTrees.ErrorType;
+import miniJava.AbstractSyntaxTrees.ExprList;
+import miniJava.AbstractSyntaxTrees.Expression;
+import miniJava.AbstractSyntaxTrees.FieldDecl;
+import miniJava.AbstractSyntaxTrees.Identifier;
+import miniJava.AbstractSyntaxTrees.IfStmt;
+import miniJava.AbstractSyntaxTrees.IndexedRef;
+import miniJava.AbstractSyntaxTrees.IntLiteral;
+import miniJava.AbstractSyntaxTrees.LiteralExpr;
+import miniJava.AbstractSyntaxTrees.LocalRef;
+import miniJava.AbstractSyntaxTrees.MemberRef;
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+import miniJava.AbstractSyntaxTrees.NewArrayExpr;
+import miniJava.AbstractSyntaxTrees.NewObjectExpr;
+import miniJava.AbstractSyntaxTrees.Operator;
+import miniJava.AbstractSyntaxTrees.OverloadedMethodDecl;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.AbstractSyntaxTrees.ParameterDecl;
+import miniJava.AbstractSyntaxTrees.QualifiedRef;
+import miniJava.AbstractSyntaxTrees.RefExpr;
+import miniJava.AbstractSyntaxTrees.Reference;
+import miniJava.AbstractSyntaxTrees.Statement;
+import miniJava.AbstractSyntaxTrees.StatementList;
+import miniJava.AbstractSyntaxTrees.StatementType;
+import miniJava.AbstractSyntaxTrees.StringLiteral;
+import miniJava.AbstractSyntaxTrees.ThisRef;
+import miniJava.AbstractSyntaxTrees.UnaryExpr;
+import miniJava.AbstractSyntaxTrees.UnsupportedType;
+import miniJava.AbstractSyntaxTrees.VarDecl;
+import miniJava.AbstractSyntaxTrees.VarDeclStmt;
+import miniJava.AbstractSyntaxTrees.Visitor;
+import miniJava.AbstractSyntaxTrees.WhileStmt;
+import miniJava.PhaseProfiler;
+import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.TokenType;
+
+/**
+ * Folds constant expressions and simplifies statements of a type checked
+ * program before code is generated for it. The visit of an expression,
+ * statement or reference returns the node that replaces it, and that of a
+ * statement that does nothing returns null.
+ *
+ * Operators on literals are evaluated as the interpreter evaluates them.
+ * Where it would fail, on overflow of +, - or * or on division by zero, the
+ * expression is left for the program to fail on when it runs. An identity
+ * (x + 0, 0 + x, x - 0, x * 1, 1 * x, x / 1, !!b, b && true, true && b,
+ * b || false, false || b) is replaced by its operand that is not a literal,
+ * and false && b and true || b by their left operand, as b would not be
+ * evaluated. An if or while with a literal condition is replaced by the
+ * branch that is taken, if there is one.
+ *
+ * Type checking lets ! and - through on operands of either type, so a
+ * boolean may hold a word other than 0 or 1 (e.g. -true), and ! turns any
+ * word but 1 into 1. The identities on booleans are therefore only used on
+ * operands that are computed as 0 or 1.
+ */
+public class ASTFoldConstants implements Visitor<Object, AST> {
+
+	// number of expressions replaced by a literal or an operand, and of if
+	// and while statements replaced by a branch or removed
+	public int foldedExpressions = 0;
+	public int removedStatements = 0;
+
+	private final PhaseProfiler profiler = PhaseProfiler.current();
+
+	public void fold(Package prog) {
+		prog.visit(this, null);
+	}
+
+	/**
+	 * Visits a statement, expression or reference, counting the visit if the
+	 * phases are profiled. ASTDeepFoldConstants visits them without
+	 * recursing.
+	 * 
+	 * @return the node that replaces it
+	 */
+	AST visit(AST node, Object arg) {
+		if (profiler != null)
+			profiler.nodesVisited(1);
+		return node.visit(this, arg);
+	}
+
+	private Expression fold(Expression expr) {
+		return (Expression) visit(expr, null);
+	}
+
+	private StatementList fold(StatementList sl) {
+		StatementList folded = new StatementList();
+		for (Statement s : sl) {
+			Statement f = (Statement) visit(s, null);
+			if (f != null)
+				folded.add(f);
+		}
+		return folded;
+	}
+
+	private ExprList fold(ExprList el) {
+		ExprList folded = new ExprList();
+		for (Expression e : el)
+			folded.add(fold(e));
+		return folded;
+	}
+
+	/**
+	 * Folds a statement that has to stay a statement, such as the branch of
+	 * an if, replacing it by an empty block if it does nothing
+	 */
+	private Statement foldBranch(Statement stmt) {
+		Statement folded = (Statement) visit(stmt, null);
+		return (folded != null) ? folded : new BlockStmt(new StatementList(), stmt.posn);
+	}
+
+	/**
+	 * @return the value of an int literal, or null if expr is not one
+	 */
+	private static Long intValue(Expression expr) {
+		if (!(expr instanceof LiteralExpr) || !(((LiteralExpr) expr).literal instanceof IntLiteral))
+			return null;
+		try {
+			return Long.parseLong(((LiteralExpr) expr).literal.spelling);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the value of a boolean literal, or null if expr is not one
+	 */
+	static Boolean booleanValue(Expression expr) {
+		if (!(expr instanceof LiteralExpr) || !(((LiteralExpr) expr).literal instanceof BooleanLiteral))
+			return null;
+		return ((LiteralExpr) expr).literal.spelling.equals("true");
+	}
+
+	/**
+	 * @return true if expr evaluates to 0 or 1 whatever its operands hold
+	 */
+	private static boolean isTruthValue(Expression expr) {
+		if (expr instanceof LiteralExpr)
+			return ((LiteralExpr) expr).literal instanceof BooleanLiteral;
+		if (expr instanceof UnaryExpr)
+			return ((UnaryExpr) expr).operator.operatorType == TokenType.BANG;
+		if (!(expr instanceof BinaryExpr))
+			return false;
+		switch (((BinaryExpr) expr).operator.operatorType) {
+		case LANGLE:
+		case RANGLE:
+		case LANGLE_EQUALTO:
+		case RANGLE_EQUALTO:
+		case EQUALTO_EQUALTO:
+		case BANG_EQUALTO:
+		case AMPERSAND_AMPERSAND:
+		case PIPE_PIPE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isInt(long value) {
+		return Integer.MIN_VALUE <= value && value <= Integer.MAX_VALUE;
+	}
+
+	private Expression intLiteral(long value, SourcePosition posn) {
+		foldedExpressions++;
+		return new LiteralExpr(new IntLiteral(Long.toString(value), posn), posn);
+	}
+
+	private Expression booleanLiteral(boolean value, SourcePosition posn) {
+		foldedExpressions++;
+		return new LiteralExpr(new BooleanLiteral(value ? "true" : "false", posn), posn);
+	}
+
+	private Expression operand(Expression expr) {
+		foldedExpressions++;
+		return expr;
+	}
+
+	@Override
+	public AST visitPackage(Package prog, Object arg) {
+		for (ClassDecl cd : prog.classDeclList)
+			cd.visit(this, null);
+		return null;
+	}
+
+	@Override
+	public AST visitClassDecl(ClassDecl cd, Object arg) {
+		for (OverloadedMethodDecl omd : cd.methodDeclList)
+			omd.visit(this, null);
+		return null;
+	}
+
+	@Override
+	public AST visitFieldDecl(FieldDecl fd, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitMethodDecl(MethodDecl md, Object arg) {
+		md.statementList = fold(md.statementList);
+		if (md.returnExp != null)
+			md.returnExp = fold(md.returnExp);
+		return null;
+	}
+
+	@Override
+	public AST visitOverloadedMethodDecl(OverloadedMethodDecl omd, Object arg) {
+		for (MethodDecl md : omd)
+			md.visit(this, null);
+		return null;
+	}
+
+	@Override
+	public AST visitParameterDecl(ParameterDecl pd, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitVarDecl(VarDecl decl, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitBaseType(BaseType type, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitClassType(ClassType type, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitArrayType(ArrayType type, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitStatementType(StatementType type, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitErrorType(ErrorType type, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitUnsupportedType(UnsupportedType type, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitBlockStmt(BlockStmt stmt, Object arg) {
+		stmt.sl = fold(stmt.sl);
+		return stmt;
+	}
+
+	@Override
+	public AST visitVardeclStmt(VarDeclStmt stmt, Object arg) {
+		stmt.initExp = fold(stmt.initExp);
+		return stmt;
+	}
+
+	@Override
+	public AST visitAssignStmt(AssignStmt stmt, Object arg) {
+		stmt.ref = (Reference) visit(stmt.ref, null);
+		stmt.val = fold(stmt.val);
+		return stmt;
+	}
+
+	@Override
+	public AST visitCallStmt(CallStmt stmt, Object arg) {
+		stmt.methodRef = (Reference) visit(stmt.methodRef, null);
+		stmt.argList = fold(stmt.argList);
+		return stmt;
+	}
+
+	@Override
+	public AST visitIfStmt(IfStmt stmt, Object arg) {
+		stmt.cond = fold(stmt.cond);
+		Boolean cond = booleanValue(stmt.cond);
+		if (cond != null) {
+			removedStatements++;
+			if (cond)
+				return visit(stmt.thenStmt, null);
+			return (stmt.elseStmt != null) ? visit(stmt.elseStmt, null) : null;
+		}
+
+		stmt.thenStmt = foldBranch(stmt.thenStmt);
+		if (stmt.elseStmt != null)
+			stmt.elseStmt = foldBranch(stmt.elseStmt);
+		return stmt;
+	}
+
+	@Override
+	public AST visitWhileStmt(WhileStmt stmt, Object arg) {
+		stmt.cond = fold(stmt.cond);
+		if (Boolean.FALSE.equals(booleanValue(stmt.cond))) {
+			removedStatements++;
+			return null;
+		}
+
+		stmt.body = foldBranch(stmt.body);
+		return stmt;
+	}
+
+	@Override
+	public AST visitUnaryExpr(UnaryExpr expr, Object arg) {
+		expr.expr = fold(expr.expr);
+		return foldOperator(expr);
+	}
+
+	/**
+	 * @return what replaces a unary expression whose operand is folded
+	 */
+	AST foldOperator(UnaryExpr expr) {
+		switch (expr.operator.operatorType) {
+		case BANG:
+			Boolean b = booleanValue(expr.expr);
+			if (b != null)
+				return booleanLiteral(!b, expr.posn);
+			if (expr.expr instanceof UnaryExpr && ((UnaryExpr) expr.expr).operator.operatorType == TokenType.BANG
+					&& isTruthValue(((UnaryExpr) expr.expr).expr))
+				return operand(((UnaryExpr) expr.expr).expr);
+			break;
+		case MINUS:
+			// the literal of -2147483648 is only an int once negated
+			Long n = intValue(expr.expr);
+			if (n != null && isInt(-n))
+				return intLiteral(-n, expr.posn);
+			break;
+		}
+
+		return expr;
+	}
+
+	@Override
+	public AST visitBinaryExpr(BinaryExpr expr, Object arg) {
+		expr.left = fold(expr.left);
+		expr.right = fold(expr.right);
+		return foldOperator(expr);
+	}
+
+	/**
+	 * @return what replaces a binary expression whose operands are folded
+	 */
+	AST foldOperator(BinaryExpr expr) {
+		Long l = intValue(expr.left), r = intValue(expr.right);
+		Boolean lb = booleanValue(expr.left), rb = booleanValue(expr.right);
+		if (l != null && !isInt(l))
+			l = null;
+		if (r != null && !isInt(r))
+			r = null;
+
+		switch (expr.operator.operatorType) {
+		case PLUS:
+			if (l != null && r != null && isInt(l + r))
+				return intLiteral(l + r, expr.posn);
+			if (r != null && r == 0)
+				return operand(expr.left);
+			if (l != null && l == 0)
+				return operand(expr.right);
+			break;
+		case MINUS:
+			if (l != null && r != null && isInt(l - r))
+				return intLiteral(l - r, expr.posn);
+			if (r != null && r == 0)
+				return operand(expr.left);
+			break;
+		case ASTERISK:
+			if (l != null && r != null && isInt(l * r))
+				return intLiteral(l * r, expr.posn);
+			if (r != null && r == 1)
+				return operand(expr.left);
+			if (l != null && l == 1)
+				return operand(expr.right);
+			break;
+		case SLASH:
+			// like div, which divides as longs and keeps the low word
+			if (l != null && r != null && r != 0)
+				return intLiteral((int) (l / r), expr.posn);
+			if (r != null && r == 1)
+				return operand(expr.left);
+			break;
+		case LANGLE:
+			if (l != null && r != null)
+				return booleanLiteral(l < r, expr.posn);
+			break;
+		case RANGLE:
+			if (l != null && r != null)
+				return booleanLiteral(l > r, expr.posn);
+			break;
+		case LANGLE_EQUALTO:
+			if (l != null && r != null)
+				return booleanLiteral(l <= r, expr.posn);
+			break;
+		case RANGLE_EQUALTO:
+			if (l != null && r != null)
+				return booleanLiteral(l >= r, expr.posn);
+			break;
+		case EQUALTO_EQUALTO:
+			if (l != null && r != null)
+				return booleanLiteral(l.longValue() == r.longValue(), expr.posn);
+			if (lb != null && rb != null)
+				return booleanLiteral(lb.booleanValue() == rb.booleanValue(), expr.posn);
+			break;
+		case BANG_EQUALTO:
+			if (l != null && r != null)
+				return booleanLiteral(l.longValue() != r.longValue(), expr.posn);
+			if (lb != null && rb != null)
+				return booleanLiteral(lb.booleanValue() != rb.booleanValue(), expr.posn);
+			break;
+		case AMPERSAND_AMPERSAND:
+			if (lb != null && !lb)
+				return operand(expr.left);
+			if (lb != null && isTruthValue(expr.right))
+				return operand(expr.right);
+			if (rb != null && rb && isTruthValue(expr.left))
+				return operand(expr.left);
+			break;
+		case PIPE_PIPE:
+			if (lb != null && lb)
+				return operand(expr.left);
+			if (lb != null && isTruthValue(expr.right))
+				return operand(expr.right);
+			if (rb != null && !rb && isTruthValue(expr.left))
+				return operand(expr.left);
+			break;
+		}
+
+		return expr;
+	}
+
+	@Override
+	public AST visitRefExpr(RefExpr expr, Object arg) {
+		expr.ref = (Reference) visit(expr.ref, null);
+		return expr;
+	}
+
+	@Override
+	public AST visitCallExpr(CallExpr expr, Object arg) {
+		expr.functionRef = (Reference) visit(expr.functionRef, null);
+		expr.argList = fold(expr.argList);
+		return expr;
+	}
+
+	@Override
+	public AST visitLiteralExpr(LiteralExpr expr, Object arg) {
+		return expr;
+	}
+
+	@Override
+	public AST visitNewObjectExpr(NewObjectExpr expr, Object arg) {
+		return expr;
+	}
+
+	@Override
+	public AST visitNewArrayExpr(NewArrayExpr expr, Object arg) {
+		expr.sizeExpr = fold(expr.sizeExpr);
+		return expr;
+	}
+
+	@Override
+	public AST visitQualifiedRef(QualifiedRef ref, Object arg) {
+		return ref;
+	}
+
+	@Override
+	public AST visitThisRef(ThisRef ref, Object arg) {
+		return ref;
+	}
+
+	@Override
+	public AST visitLocalRef(LocalRef ref, Object arg) {
+		return ref;
+	}
+
+	@Override
+	public AST visitClassRef(ClassRef ref, Object arg) {
+		return ref;
+	}
+
+	@Override
+	public AST visitMemberRef(MemberRef ref, Object arg) {
+		return ref;
+	}
+
+	@Override
+	public AST visitDeRef(DeRef ref, Object arg) {
+		ref.classReference = (Reference) visit(ref.classReference, null);
+		return ref;
+	}
+
+	@Override
+	public AST visitIndexedRef(IndexedRef ref, Object arg) {
+		ref.ref = (Reference) visit(ref.ref, null);
+		ref.indexExpr = fold(ref.indexExpr);
+		return ref;
+	}
+
+	@Override
+	public AST visitBadRef(BadRef ref, Object arg) {
+		return ref;
+	}
+
+	@Override
+	public AST visitIdentifier(Identifier id, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitOperator(Operator op, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitIntLiteral(IntLiteral num, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitBooleanLiteral(BooleanLiteral bool, Object arg) {
+		return null;
+	}
+
+	@Override
+	public AST visitStringLiteral(StringLiteral str, Object arg) {
+		return null;
+	}
+}
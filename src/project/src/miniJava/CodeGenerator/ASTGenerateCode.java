@@ -1,11 +1,15 @@
 package miniJava.CodeGenerator;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
+import mJAM.CodeStore;
 import mJAM.Machine;
 import mJAM.Machine.Op;
 import mJAM.Machine.Prim;
 import mJAM.Machine.Reg;
+import miniJava.AbstractSyntaxTrees.AST;
 import miniJava.AbstractSyntaxTrees.ArrayType;
 import miniJava.AbstractSyntaxTrees.AssignStmt;
 import miniJava.AbstractSyntaxTrees.BadRef;
@@ -39,6 +43,7 @@ import miniJava.AbstractSyntaxTrees.Package;
 import miniJava.AbstractSyntaxTrees.ParameterDecl;
 import miniJava.AbstractSyntaxTrees.QualifiedRef;
 import miniJava.AbstractSyntaxTrees.RefExpr;
+import miniJava.AbstractSyntaxTrees.Reference;
 import miniJava.AbstractSyntaxTrees.Statement;
 import miniJava.AbstractSyntaxTrees.StatementList;
 import miniJava.AbstractSyntaxTrees.StatementType;
@@ -52,6 +57,8 @@ import miniJava.AbstractSyntaxTrees.Visitor;
 import miniJava.AbstractSyntaxTrees.WhileStmt;
 import miniJava.ContextualAnalyzer.IdentificationTable;
 import miniJava.ContextualAnalyzer.Utilities;
+import miniJava.PhaseProfiler;
+import miniJava.SyntacticAnalyzer.TokenType;
 
 public class ASTGenerateCode implements Visitor<Object, Void> {
 
@@ -59,30 +66,57 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 		ADDRESS, VALUE, METHOD
 	};
 
+	// Code store the program is generated into
+	final CodeStore code;
+
 	// Displacement of local variables from LB
 	int localDisplacement;
 	HashMap<Integer, MethodRuntimeEntity> methodDisplacements = new HashMap<Integer, MethodRuntimeEntity>();
 
+	private final PhaseProfiler profiler = PhaseProfiler.current();
+
+	/**
+	 * Generates code into the store filled by the static emit methods of
+	 * Machine
+	 */
+	public ASTGenerateCode() {
+		this(Machine.codeStore());
+	}
+
+	public ASTGenerateCode(CodeStore code) {
+		this.code = code;
+	}
+
+	/**
+	 * Visits a statement, expression or reference, counting the visit if the
+	 * phases are profiled. ASTDeepGenerateCode visits them without recursing.
+	 */
+	Void visit(AST node, Object arg) {
+		if (profiler != null)
+			profiler.nodesVisited(1);
+		return node.visit(this, arg);
+	}
+
 	@Override
 	public Void visitPackage(Package prog, Object arg) {
-		Machine.initCodeGen();
+		code.initCodeGen();
 
-		Machine.emit(Op.LOADL, 0);
-		Machine.emit(Op.LOADL, -1);
-		int mainCallAddress = Machine.nextInstrAddr();
-		Machine.emit(Op.CALL, Reg.CB, 0);
-		Machine.emit(Op.HALT, 0, 0, 0);
+		code.emit(Op.LOADL, 0);
+		code.emit(Op.LOADL, -1);
+		int mainCallAddress = code.nextInstrAddr();
+		code.emit(Op.CALL, Reg.CB, 0);
+		code.emit(Op.HALT, 0, 0, 0);
 
 		for (ClassDecl cd : prog.classDeclList)
 			cd.visit(this, null);
 
 		// Patch method calls
 		for (Integer addr : methodDisplacements.keySet())
-			Machine.patch(addr, methodDisplacements.get(addr).displacement);
+			code.patch(addr, methodDisplacements.get(addr).displacement);
 
 		// Patch main method call
 		MethodDecl mainMethod = (MethodDecl) arg;
-		Machine.patch(mainCallAddress, mainMethod.runtimeEntity.displacement);
+		code.patch(mainCallAddress, mainMethod.runtimeEntity.displacement);
 
 		return null;
 	}
@@ -113,7 +147,7 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 		return null;
 	}
 
-	private int allocateSpaceForLocals(StatementList sl) {
+	int allocateSpaceForLocals(StatementList sl) {
 		int numAllocated = 0;
 
 		for (Statement s : sl) {
@@ -124,7 +158,7 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 			}
 		}
 
-		Machine.emit(Op.PUSH, numAllocated);
+		code.emit(Op.PUSH, numAllocated);
 		localDisplacement += numAllocated;
 
 		return numAllocated;
@@ -133,7 +167,7 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 	@Override
 	public Void visitMethodDecl(MethodDecl md, Object arg) {
 		localDisplacement = 3;
-		md.runtimeEntity.displacement = Machine.nextInstrAddr();
+		md.runtimeEntity.displacement = code.nextInstrAddr();
 
 		int d = -md.parameterDeclList.size();
 		for (ParameterDecl pd : md.parameterDeclList) {
@@ -143,20 +177,20 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 
 		int numAllocated = allocateSpaceForLocals(md.statementList);
 		for (Statement s : md.statementList) {
-			s.visit(this, null);
+			visit(s, null);
 		}
 		if (md.returnExp != null) {
-			md.returnExp.visit(this, null);
+			visit(md.returnExp, null);
 		}
 		localDisplacement -= numAllocated; // We don't POP because RETURN does
 											// that automatically
 
-		// Machine.emit(Op.HALT, 4, 0, 0);
+		// code.emit(Op.HALT, 4, 0, 0);
 
 		if (md.returnExp != null) {
-			Machine.emit(Op.RETURN, 1, 0, md.parameterDeclList.size());
+			code.emit(Op.RETURN, 1, 0, md.parameterDeclList.size());
 		} else {
-			Machine.emit(Op.RETURN, 0, 0, md.parameterDeclList.size());
+			code.emit(Op.RETURN, 0, 0, md.parameterDeclList.size());
 		}
 
 		return null;
@@ -166,9 +200,9 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 	public Void visitBlockStmt(BlockStmt stmt, Object arg) {
 		int numAllocated = allocateSpaceForLocals(stmt.sl);
 		for (Statement s : stmt.sl)
-			s.visit(this, null);
+			visit(s, null);
 		localDisplacement -= numAllocated;
-		Machine.emit(Op.POP, numAllocated);
+		code.emit(Op.POP, numAllocated);
 
 		return null;
 	}
@@ -188,8 +222,8 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 		// The space for this variable has already been allocated by
 		// allocateLocalVariables
 		// Store the value of the initializing expression in variable
-		stmt.initExp.visit(this, FetchType.VALUE);
-		Machine.emit(Op.STORE, Reg.LB, stmt.varDecl.runtimeEntity.displacement);
+		visit(stmt.initExp, FetchType.VALUE);
+		code.emit(Op.STORE, Reg.LB, stmt.varDecl.runtimeEntity.displacement);
 
 		return null;
 	}
@@ -202,18 +236,18 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 		// 3. A field of an object or of this
 		if (stmt.ref instanceof LocalRef) {
 			// local variable, stored on the stack
-			stmt.val.visit(this, null);
-			Machine.emit(Op.STORE, Reg.LB, getLocalRefDisplacement((LocalRef) stmt.ref));
+			visit(stmt.val, null);
+			code.emit(Op.STORE, Reg.LB, getLocalRefDisplacement((LocalRef) stmt.ref));
 		} else {
-			stmt.ref.visit(this, FetchType.ADDRESS);
-			stmt.val.visit(this, null);
+			visit(stmt.ref, FetchType.ADDRESS);
+			visit(stmt.val, null);
 
 			if (stmt.ref instanceof IndexedRef) {
 				// array element
-				Machine.emit(Prim.arrayupd);
+				code.emit(Prim.arrayupd);
 			} else {
 				// field
-				Machine.emit(Prim.fieldupd);
+				code.emit(Prim.fieldupd);
 			}
 		}
 
@@ -225,80 +259,63 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 	public Void visitCallStmt(CallStmt stmt, Object arg) {
 		// Get the arguments on the stack
 		for (Expression exp : stmt.argList)
-			exp.visit(this, null);
-
-		// Handle System.out.println(int x)
-		MethodDecl methodDecl = (MethodDecl) stmt.methodRef.getDeclaration();
-		if (methodDecl == IdentificationTable.PRINTLN_INT_DECL) {
-			Machine.emit(Prim.putint);
-			Machine.emit(Prim.puteol);
-			return null;
-		} else if (methodDecl == IdentificationTable.PRINTLN_STRING_DECL) {
-			// String's address is on stack
-			Machine.emit(Op.LOADL, 0); // Load counter = 0 on stack
-
-			int testJumpIntrAddr = Machine.nextInstrAddr();
-			Machine.emit(Op.JUMP, 0, Reg.CB, 0);
-
-			// LOOP:
-			// Stack has counter, base address
-			int loopStartAddress = Machine.nextInstrAddr();
-			Machine.emit(Op.LOAD, Reg.ST, -2); // Copy string base address
-			Machine.emit(Op.LOAD, Reg.ST, -2); // Copy the counter value
-			Machine.emit(Prim.arrayref);
-			Machine.emit(Prim.put);
-			Machine.emit(Prim.succ); // Increase the counter
-
-			Machine.patch(testJumpIntrAddr, Machine.nextInstrAddr());
-
-			Machine.emit(Op.LOAD, Reg.ST, -1); // Copy the counter value
-			Machine.emit(Op.LOAD, Reg.ST, -3); // Copy array base address
-			Machine.emit(Prim.pred); // Get address of length field
-			Machine.emit(Op.LOADI); // Load length of string on stack
-			Machine.emit(Prim.lt);
-			Machine.emit(Op.JUMPIF, 1, Reg.CB, loopStartAddress);
-
-			Machine.emit(Op.POP, 2); // Pop the string base address and counter
-										// value
-			Machine.emit(Prim.puteol);
+			visit(exp, null);
 
+		if (emitPrintln(stmt.methodRef))
 			return null;
-		}
 
 		if (stmt.methodRef instanceof MemberRef) {
 			// We are calling a method of the current class, so we need to place
 			// the current OB on stack. Otherwise, DeRef places the right
 			// instance on stack
-			Machine.emit(Op.LOADA, Reg.OB, 0);
+			code.emit(Op.LOADA, Reg.OB, 0);
 		}
 		// The methodRef generates a CALL statement
-		stmt.methodRef.visit(this, FetchType.METHOD);
+		visit(stmt.methodRef, FetchType.METHOD);
 
 		return null;
 	}
 
+	/**
+	 * Handles System.out.println, whose argument is on the stack
+	 * 
+	 * @return whether methodRef is println
+	 */
+	boolean emitPrintln(Reference methodRef) {
+		// Handle System.out.println(int x)
+		MethodDecl methodDecl = (MethodDecl) methodRef.getDeclaration();
+		if (methodDecl == IdentificationTable.PRINTLN_INT_DECL) {
+			code.emit(Prim.putint);
+			code.emit(Prim.puteol);
+			return true;
+		} else if (methodDecl == IdentificationTable.PRINTLN_STRING_DECL) {
+			// String's address is on stack
+			code.emit(Prim.putstr);
+			code.emit(Prim.puteol);
+
+			return true;
+		}
+
+		return false;
+	}
+
 	@Override
 	public Void visitIfStmt(IfStmt stmt, Object arg) {
 		/*
-		 * <evaluate condition> JUMPIF 0 ELSE <then block> JUMP END ELSE: <else
-		 * block> END:
+		 * <jump to ELSE if condition is false> <then block> JUMP END ELSE:
+		 * <else block> END:
 		 */
-
-		// visit to this expression leaves a boolean (0 or 1)
-		stmt.cond.visit(this, null);
-
-		int elseJumpAddr = Machine.nextInstrAddr();
-		Machine.emit(Op.JUMPIF, 0, Reg.CB, 0);
-		stmt.thenStmt.visit(this, null);
+		List<Integer> elseJumps = jumpIf(stmt.cond, false);
+		visit(stmt.thenStmt, null);
 
 		if (stmt.elseStmt != null) {
-			int endJumpAddr = Machine.nextInstrAddr();
-			Machine.emit(Op.JUMP, Reg.CB, 0);
-			Machine.patch(elseJumpAddr, Machine.nextInstrAddr());
-			stmt.elseStmt.visit(this, null);
-			Machine.patch(endJumpAddr, Machine.nextInstrAddr());
+			int endJumpAddr = code.nextInstrAddr();
+			code.emit(Op.JUMP, Reg.CB, 0);
+			patch(elseJumps, code.nextInstrAddr());
+			visit(stmt.elseStmt, null);
+			code.patch(endJumpAddr, code.nextInstrAddr());
 		} else {
-			Machine.patch(elseJumpAddr, Machine.nextInstrAddr());
+			patch(elseJumps, code.nextInstrAddr());
 		}
 
 		return null;
@@ -307,90 +324,199 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 	@Override
 	public Void visitWhileStmt(WhileStmt stmt, Object arg) {
 		/*
-		 * JUMP TEST LOOP: <loop body> TEST: <evaluate condition> JUMPIF 1 LOOP
+		 * JUMP TEST LOOP: <loop body> TEST: <jump to LOOP if condition is
+		 * true>
 		 */
 
 		// JUMP TEST
-		int testJumpAddr = Machine.nextInstrAddr();
-		Machine.emit(Op.JUMP, 0, Reg.CB, 0);
+		int testJumpAddr = code.nextInstrAddr();
+		code.emit(Op.JUMP, 0, Reg.CB, 0);
 		// LOOP:
-		int loopStartAddr = Machine.nextInstrAddr();
-		stmt.body.visit(this, null);
+		int loopStartAddr = code.nextInstrAddr();
+		visit(stmt.body, null);
 		// TEST:
-		int testStart = Machine.nextInstrAddr();
-		stmt.cond.visit(this, null);
-		Machine.emit(Op.JUMPIF, 1, Reg.CB, loopStartAddr);
-		Machine.patch(testJumpAddr, testStart);
+		int testStart = code.nextInstrAddr();
+		patch(jumpIf(stmt.cond, true), loopStartAddr);
+		code.patch(testJumpAddr, testStart);
+
+		return null;
+	}
+
+	/**
+	 * Generates code that jumps if the condition evaluates to the given value
+	 * and falls through otherwise, leaving nothing on the stack. The right
+	 * operand of && and || is only evaluated if the left one does not decide
+	 * the condition, and ! only swaps the targets.
+	 * 
+	 * @return addresses of the jumps, to be patched with their target
+	 */
+	private List<Integer> jumpIf(Expression cond, boolean value) {
+		List<Integer> jumps = new ArrayList<Integer>();
+		jumpIf(cond, value, false, jumps);
+		return jumps;
+	}
+
+	/**
+	 * @param operand
+	 *            whether cond is an operand of !, && or ||. These take only 1
+	 *            as true, as the not, and and or primitives do, while the
+	 *            condition of an if takes anything but 0 as true. The two only
+	 *            differ for booleans made by - (e.g. -true), which type
+	 *            checking lets through.
+	 */
+	private void jumpIf(Expression cond, boolean value, boolean operand, List<Integer> jumps) {
+		if (cond instanceof UnaryExpr && ((UnaryExpr) cond).operator.operatorType == TokenType.BANG) {
+			jumpIf(((UnaryExpr) cond).expr, !value, true, jumps);
+			return;
+		}
+		if (cond instanceof BinaryExpr) {
+			BinaryExpr expr = (BinaryExpr) cond;
+			TokenType operator = expr.operator.operatorType;
+			if (operator == TokenType.AMPERSAND_AMPERSAND || operator == TokenType.PIPE_PIPE) {
+				// the value of the left operand that decides the condition
+				boolean decides = operator == TokenType.PIPE_PIPE;
+				if (value == decides) {
+					jumpIf(expr.left, value, true, jumps);
+					jumpIf(expr.right, value, true, jumps);
+				} else {
+					List<Integer> decided = new ArrayList<Integer>();
+					jumpIf(expr.left, decides, true, decided);
+					jumpIf(expr.right, value, true, jumps);
+					patch(decided, code.nextInstrAddr());
+				}
+				return;
+			}
+		}
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).literal instanceof BooleanLiteral) {
+			// jump always or never
+			if (((LiteralExpr) cond).literal.spelling.equals("true") == value) {
+				jumps.add(code.nextInstrAddr());
+				code.emit(Op.JUMP, Reg.CB, 0);
+			}
+			return;
+		}
 
-		return null;
+		visit(cond, null);
+		if (operand && !value && !isComparison(cond)) {
+			// jump unless it is 1; a comparison leaves 0 or 1, so it needs no not
+			code.emit(Prim.not);
+			value = true;
+		}
+		jumps.add(code.nextInstrAddr());
+		code.emit(Op.JUMPIF, value ? 1 : 0, Reg.CB, 0);
+	}
+
+	static boolean isComparison(Expression expr) {
+		if (!(expr instanceof BinaryExpr))
+			return false;
+		switch (((BinaryExpr) expr).operator.operatorType) {
+		case LANGLE:
+		case RANGLE:
+		case LANGLE_EQUALTO:
+		case RANGLE_EQUALTO:
+		case EQUALTO_EQUALTO:
+		case BANG_EQUALTO:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	void patch(List<Integer> jumps, int target) {
+		for (int addr : jumps)
+			code.patch(addr, target);
 	}
 
 	@Override
 	public Void visitUnaryExpr(UnaryExpr expr, Object arg) {
-		expr.expr.visit(this, null);
+		visit(expr.expr, null);
+		emitOperator(expr);
 
+		return null;
+	}
+
+	/**
+	 * Generates the operator of a unary expression whose operand is on the
+	 * stack
+	 */
+	void emitOperator(UnaryExpr expr) {
 		switch (expr.operator.operatorType) {
 		case BANG:
-			Machine.emit(Prim.not);
+			code.emit(Prim.not);
 			break;
 		case MINUS:
-			Machine.emit(Prim.neg);
+			code.emit(Prim.neg);
 			break;
 		}
-
-		return null;
 	}
 
 	@Override
 	public Void visitBinaryExpr(BinaryExpr expr, Object arg) {
-		expr.left.visit(this, null);
-		expr.right.visit(this, null);
+		TokenType operator = expr.operator.operatorType;
+		if (operator == TokenType.AMPERSAND_AMPERSAND || operator == TokenType.PIPE_PIPE) {
+			/*
+			 * <jump to FALSE if expr is false> LOADL 1 JUMP END FALSE: LOADL 0
+			 * END:
+			 */
+			List<Integer> falseJumps = jumpIf(expr, false);
+			code.emit(Op.LOADL, 1);
+			int endJumpAddr = code.nextInstrAddr();
+			code.emit(Op.JUMP, Reg.CB, 0);
+			patch(falseJumps, code.nextInstrAddr());
+			code.emit(Op.LOADL, 0);
+			code.patch(endJumpAddr, code.nextInstrAddr());
+			return null;
+		}
+
+		visit(expr.left, null);
+		visit(expr.right, null);
+		emitOperator(expr);
 
+		return null;
+	}
+
+	/**
+	 * Generates the operator of a binary expression whose operands are on
+	 * the stack
+	 */
+	void emitOperator(BinaryExpr expr) {
 		switch (expr.operator.operatorType) {
 		case LANGLE:
-			Machine.emit(Prim.lt);
+			code.emit(Prim.lt);
 			break;
 		case RANGLE:
-			Machine.emit(Prim.gt);
+			code.emit(Prim.gt);
 			break;
 		case EQUALTO_EQUALTO:
-			Machine.emit(Prim.eq);
+			code.emit(Prim.eq);
 			break;
 		case LANGLE_EQUALTO:
-			Machine.emit(Prim.le);
+			code.emit(Prim.le);
 			break;
 		case RANGLE_EQUALTO:
-			Machine.emit(Prim.ge);
+			code.emit(Prim.ge);
 			break;
 		case BANG_EQUALTO:
-			Machine.emit(Prim.ne);
+			code.emit(Prim.ne);
 			break;
 		case PLUS:
-			Machine.emit(Prim.add);
+			code.emit(Prim.add);
 			break;
 		case MINUS:
-			Machine.emit(Prim.sub);
+			code.emit(Prim.sub);
 			break;
 		case ASTERISK:
-			Machine.emit(Prim.mult);
+			code.emit(Prim.mult);
 			break;
 		case SLASH:
-			Machine.emit(Prim.div);
-			break;
-		case PIPE_PIPE:
-			Machine.emit(Prim.or);
-			break;
-		case AMPERSAND_AMPERSAND:
-			Machine.emit(Prim.and);
+			code.emit(Prim.div);
 			break;
 		}
-
-		return null;
 	}
 
 	@Override
 	public Void visitRefExpr(RefExpr expr, Object arg) {
-		expr.ref.visit(this, FetchType.VALUE);
+		visit(expr.ref, FetchType.VALUE);
 		return null;
 	}
 
@@ -398,15 +524,15 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 	public Void visitCallExpr(CallExpr expr, Object arg) {
 		// Get the arguments on the stack
 		for (Expression exp : expr.argList)
-			exp.visit(this, null);
+			visit(exp, null);
 
 		if (expr.functionRef instanceof MemberRef) {
 			// This is a call to a method of the current class, so we need to
 			// place the value of OB before CALL instruction is generated by the
 			// MemberRef
-			Machine.emit(Op.LOADA, Reg.OB, 0);
+			code.emit(Op.LOADA, Reg.OB, 0);
 		}
-		expr.functionRef.visit(this, FetchType.METHOD);
+		visit(expr.functionRef, FetchType.METHOD);
 		return null;
 	}
 
@@ -418,45 +544,40 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 
 	@Override
 	public Void visitIntLiteral(IntLiteral num, Object arg) {
-		Machine.emit(Op.LOADL, Integer.parseInt(num.spelling));
+		code.emit(Op.LOADL, Integer.parseInt(num.spelling));
 		return null;
 	}
 
 	@Override
 	public Void visitBooleanLiteral(BooleanLiteral bool, Object arg) {
-		Machine.emit(Op.LOADL, bool.spelling.equals("true") ? 1 : 0);
+		code.emit(Op.LOADL, bool.spelling.equals("true") ? 1 : 0);
 		return null;
 	}
 
 	@Override
 	public Void visitStringLiteral(StringLiteral str, Object arg) {
-		Machine.emit(Op.LOADL, str.spelling.length());
-		Machine.emit(Prim.newarr);
-		for (int i = 0; i < str.spelling.length(); i++) {
-			Machine.emit(Op.LOAD, Reg.ST, -1); // Copy array base address
-			Machine.emit(Op.LOADL, i);
-			Machine.emit(Op.LOADL, str.spelling.charAt(i));
-			Machine.emit(Prim.arrayupd);
-		}
+		// Strings cannot be changed, so each is built once, in the data
+		// segment, and every evaluation shares it
+		code.emit(Op.LOADA, Reg.SB, code.stringConstant(str.spelling));
 		return null;
 	}
 
 	@Override
 	public Void visitNewObjectExpr(NewObjectExpr expr, Object arg) {
-		Machine.emit(Op.LOADL, -1);
-		Machine.emit(Op.LOADL, expr.classtype.declaration.runtimeEntity.size);
-		Machine.emit(Prim.newobj);
+		code.emit(Op.LOADL, -1);
+		code.emit(Op.LOADL, expr.classtype.declaration.runtimeEntity.size);
+		code.emit(Prim.newobj);
 		return null;
 	}
 
 	@Override
 	public Void visitNewArrayExpr(NewArrayExpr expr, Object arg) {
-		expr.sizeExpr.visit(this, null);
-		Machine.emit(Prim.newarr);
+		visit(expr.sizeExpr, null);
+		code.emit(Prim.newarr);
 		return null;
 	}
 
-	private int getLocalRefDisplacement(LocalRef ref) {
+	int getLocalRefDisplacement(LocalRef ref) {
 		Declaration decl = ref.identifier.declaration;
 		if (decl instanceof VarDecl) {
 			return ((VarDecl) decl).runtimeEntity.displacement;
@@ -475,7 +596,7 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 		if ((FetchType) arg != FetchType.VALUE)
 			throw new RuntimeException("visitLocalRef should only be called for VALUE");
 
-		Machine.emit(Op.LOAD, Reg.LB, getLocalRefDisplacement(ref));
+		code.emit(Op.LOAD, Reg.LB, getLocalRefDisplacement(ref));
 
 		return null;
 	}
@@ -483,7 +604,7 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 	@Override
 	public Void visitThisRef(ThisRef ref, Object arg) {
 		// 'this' should always be used to get the address of current instance
-		Machine.emit(Op.LOADA, Reg.OB, 0);
+		code.emit(Op.LOADA, Reg.OB, 0);
 		return null;
 	}
 
@@ -507,11 +628,11 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 			// So, we can assume that we are generating code for accessing a
 			// member of the current instance
 			int displacement = ((FieldDecl) decl).runtimeEntity.displacement;
-			Machine.emit(Op.LOADA, Reg.OB, 0);
-			Machine.emit(Op.LOADL, displacement);
+			code.emit(Op.LOADA, Reg.OB, 0);
+			code.emit(Op.LOADL, displacement);
 
 			if (((FetchType) arg) == FetchType.VALUE) {
-				Machine.emit(Prim.fieldref);
+				code.emit(Prim.fieldref);
 			}
 
 		} else if (decl instanceof MethodDecl) {
@@ -523,8 +644,8 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 			// of OB on the stack. Otherwise, DeRef will be used to place the
 			// right value of the instance address on the stack. So we assume
 			// that the right value is already on the stack.
-			int callInstrAddr = Machine.nextInstrAddr();
-			Machine.emit(Op.CALL, Reg.CB, 0);
+			int callInstrAddr = code.nextInstrAddr();
+			code.emit(Op.CALL, Reg.CB, 0);
 			methodDisplacements.put(callInstrAddr, ((MethodDecl) decl).runtimeEntity);
 		}
 
@@ -533,36 +654,43 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 
 	@Override
 	public Void visitDeRef(DeRef ref, Object arg) {
-		ref.classReference.visit(this, FetchType.VALUE);
+		visit(ref.classReference, FetchType.VALUE);
+		fetchMember(ref, arg);
+
+		return null;
+	}
 
+	/**
+	 * Generates the fetch of the member of a DeRef whose instance is on the
+	 * stack
+	 */
+	void fetchMember(DeRef ref, Object arg) {
 		// Special case for array.length
 		Declaration memberDecl = ref.memberReference.getDeclaration();
 		if (memberDecl == ArrayType.LENGTH_DECL) {
 			if ((FetchType) arg != FetchType.VALUE) {
 				Utilities.reportError("Cannot modify the length field of an array", ref.memberReference.posn);
-				return null;
+				return;
 			}
-			Machine.emit(Prim.pred);
-			Machine.emit(Op.LOADI);
-			return null;
+			code.emit(Prim.pred);
+			code.emit(Op.LOADI);
+			return;
 		}
 
 		switch ((FetchType) arg) {
 		case ADDRESS:
-			Machine.emit(Op.LOADL, ((FieldDecl) ref.memberReference.identifier.declaration).runtimeEntity.displacement);
+			code.emit(Op.LOADL, ((FieldDecl) ref.memberReference.identifier.declaration).runtimeEntity.displacement);
 			break;
 
 		case VALUE:
-			Machine.emit(Op.LOADL, ((FieldDecl) ref.memberReference.identifier.declaration).runtimeEntity.displacement);
-			Machine.emit(Prim.fieldref);
+			code.emit(Op.LOADL, ((FieldDecl) ref.memberReference.identifier.declaration).runtimeEntity.displacement);
+			code.emit(Prim.fieldref);
 			break;
 
 		case METHOD:
-			ref.memberReference.visit(this, FetchType.METHOD);
+			visit(ref.memberReference, FetchType.METHOD);
 			break;
 		}
-
-		return null;
 	}
 
 	@Override
@@ -571,14 +699,14 @@ public class ASTGenerateCode implements Visitor<Object, Void> {
 		case ADDRESS:
 			// The arrayupd primitive is called by the visitAssignStmt, we just
 			// place the arguments on the stack
-			ref.ref.visit(this, FetchType.VALUE);
-			ref.indexExpr.visit(this, null);
+			visit(ref.ref, FetchType.VALUE);
+			visit(ref.indexExpr, null);
 			break;
 
 		case VALUE:
-			ref.ref.visit(this, FetchType.VALUE);
-			ref.indexExpr.visit(this, null);
-			Machine.emit(Prim.arrayref);
+			visit(ref.ref, FetchType.VALUE);
+			visit(ref.indexExpr, null);
+			code.emit(Prim.arrayref);
 		}
 
 		return null;
@@ -0,0 +1,176 @@
+package miniJava;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.MessageDigest;
+
+/**
+ * Takes the command line of miniJava.Compiler and has a CompileServer carry
+ * it out, with the same output and exit status (0, or 4 on any error). File
+ * names are made absolute, since the server does not run in the client's
+ * directory, and show up that way in the compiler's messages. If no server
+ * is listening (on port 5520 unless set with -Dminijava.server.port), or if
+ * the one listening does not know the secret in the user's key file (see
+ * CompileServer), the client compiles in-process instead.
+ *
+ * Usage: java [-Dminijava.server.port=n] [-Dminijava.server.key=file] miniJava.CompileClient &lt;compiler arguments&gt;
+ */
+public class CompileClient {
+	private static final String[] fileOptions = { "--time-phases=", "-Xmjam-in=", "-Xmjam-out=" };
+
+	/**
+	 * Makes the file names in the arguments absolute
+	 */
+	static String[] absolute(String[] args) {
+		String[] result = new String[args.length];
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			result[i] = arg;
+			if (!arg.startsWith("-")) {
+				result[i] = new File(arg).getAbsolutePath();
+				continue;
+			}
+			for (String option : fileOptions) {
+				if (arg.startsWith(option) && arg.length() > option.length())
+					result[i] = option + new File(arg.substring(option.length())).getAbsolutePath();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sends the standard input to the server until it ends, or until the
+	 * client exits
+	 */
+	private static void sendInput(final DataOutputStream out) {
+		Thread sender = new Thread("standard input") {
+			@Override
+			public void run() {
+				byte[] buffer = new byte[8192];
+				try {
+					int n;
+					while ((n = System.in.read(buffer)) > 0) {
+						out.writeInt(n);
+						out.write(buffer, 0, n);
+						out.flush();
+					}
+					out.writeInt(-1);
+					out.flush();
+				} catch (IOException e) {
+					// the request is over
+				}
+			}
+		};
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	/**
+	 * @return a connection to the server, or null if none is listening
+	 */
+	static Socket connect(int port) {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), 1000);
+			return socket;
+		} catch (IOException e) {
+			try {
+				socket.close();
+			} catch (IOException e2) {
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Proves to the server that the client knows the secret, and checks that
+	 * the server does too
+	 *
+	 * @return true if the server knows the secret
+	 */
+	static boolean authenticate(DataInputStream in, DataOutputStream out) {
+		try {
+			byte[] key = CompileServer.readKey();
+			byte[] serverNonce = new byte[CompileServer.NONCE_BYTES];
+			in.readFully(serverNonce);
+			byte[] clientNonce = CompileServer.nonce();
+			out.write(clientNonce);
+			out.write(CompileServer.proof(key, CompileServer.CLIENT, serverNonce, clientNonce));
+			out.flush();
+			// the server hangs up if the proof is wrong
+			byte[] serverProof = new byte[CompileServer.PROOF_BYTES];
+			in.readFully(serverProof);
+			return MessageDigest.isEqual(serverProof,
+					CompileServer.proof(key, CompileServer.SERVER, serverNonce, clientNonce));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Has the server compile
+	 *
+	 * @return the exit status, or -1 if the server could not be
+	 *         authenticated, before anything was sent to it
+	 */
+	static int request(Socket socket, String[] args) {
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			socket.setSoTimeout(CompileServer.HANDSHAKE_TIMEOUT);
+			if (!authenticate(in, out))
+				return -1;
+			socket.setSoTimeout(0);
+			out.writeInt(args.length);
+			for (String arg : absolute(args))
+				out.writeUTF(arg);
+			out.flush();
+			sendInput(out);
+
+			byte[] buffer = new byte[8192];
+			while (true) {
+				int kind = in.readByte();
+				if (kind == CompileServer.EXIT)
+					return in.readInt();
+				PrintStream target = (kind == CompileServer.ERR) ? System.err : System.out;
+				for (int n = in.readInt(); n > 0;) {
+					int count = in.read(buffer, 0, Math.min(n, buffer.length));
+					if (count < 0)
+						throw new EOFException();
+					target.write(buffer, 0, count);
+					n -= count;
+				}
+				target.flush();
+			}
+		} catch (IOException e) {
+			System.err.println("Lost the connection to the compile server");
+			return 4;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		int port = CompileServer.port();
+		Socket socket = connect(port);
+		int status = (socket != null) ? request(socket, args) : Compiler.compile(args);
+		if (status == -1) {
+			System.err.println("Could not authenticate the compile server on port " + port + ", compiling here");
+			status = Compiler.compile(args);
+		}
+		if (status != 0)
+			System.exit(status);
+	}
+}
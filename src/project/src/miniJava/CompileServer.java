@@ -0,0 +1,461 @@
+package miniJava;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Keeps a JVM with a warm compiler running, so that compiling a file does not
+ * pay for JVM startup and JIT warmup each time. CompileClient sends it the
+ * command line of miniJava.Compiler; the server runs Compiler.compile on it
+ * and sends back what the compiler and the program write to System.out and
+ * System.err, and the exit status. What the client reads from its standard
+ * input is passed on to the program.
+ *
+ * The server listens on the loopback interface only, on port 5520 unless set
+ * with --port or -Dminijava.server.port. Requests are handled at the same
+ * time on a pool of threads, one per processor unless set with --threads.
+ * Unix domain sockets only came with Java 16, while the compiler needs Java 7
+ * (ForkJoinPool, java.nio.file), so other users can connect to the port too.
+ * As a request compiles, reads and writes files as the user running the
+ * server, the server only takes requests from clients that know the user's
+ * secret. The secret is kept in ~/.minijava-server.key (or the file given
+ * with -Dminijava.server.key), which the server creates readable by the user
+ * only, and refuses to use if anyone else may read it.
+ *
+ * The protocol: the server sends a random challenge (NONCE_BYTES). The client
+ * answers with a challenge of its own and its proof (an HMAC of both
+ * challenges with the secret). If the proof is right the server sends its
+ * own proof, so that the client does not send its request to a server that
+ * does not know the secret, and otherwise it closes the connection. The
+ * client then sends the number of arguments and the arguments (writeInt,
+ * writeUTF), then its standard input as chunks (writeInt length, bytes)
+ * ending with length -1. The server sends chunks of output (a byte OUT or
+ * ERR, writeInt length, bytes) and finally EXIT and the exit status.
+ *
+ * Usage: java miniJava.CompileServer [--port=<n>] [--threads=<n>]
+ */
+public class CompileServer {
+	public static final int DEFAULT_PORT = 5520;
+
+	static final int EXIT = 0, OUT = 1, ERR = 2;
+
+	// sizes of a challenge and of a proof (HMAC-SHA256), and what is proved
+	static final int NONCE_BYTES = 16, PROOF_BYTES = 32;
+	static final byte CLIENT = 'c', SERVER = 's';
+
+	// time a client has to authenticate, in milliseconds
+	static final int HANDSHAKE_TIMEOUT = 5000;
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final SecureRandom random = new SecureRandom();
+
+	/**
+	 * @return the port given with -Dminijava.server.port, or the default
+	 */
+	static int port() {
+		return Integer.getInteger("minijava.server.port", DEFAULT_PORT);
+	}
+
+	/**
+	 * @return the file given with -Dminijava.server.key, or
+	 *         ~/.minijava-server.key
+	 */
+	static Path keyFile() {
+		String name = System.getProperty("minijava.server.key");
+		if (name == null)
+			name = new File(System.getProperty("user.home"), ".minijava-server.key").getPath();
+		return new File(name).toPath();
+	}
+
+	/**
+	 * Reads the secret of the user
+	 *
+	 * @throws IOException
+	 *             if the key file cannot be read or is empty
+	 */
+	static byte[] readKey() throws IOException {
+		Path file = keyFile();
+		byte[] key = new String(Files.readAllBytes(file), ASCII).trim().getBytes(ASCII);
+		if (key.length == 0)
+			throw new IOException(file + " is empty");
+		return key;
+	}
+
+	/**
+	 * Reads the secret of the user, making a new one if there is none yet
+	 *
+	 * @throws IOException
+	 *             if the key file cannot be made or read, or if others than
+	 *             its owner may read or write it
+	 */
+	private static byte[] serverKey() throws IOException {
+		Path file = keyFile();
+		try {
+			Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rw-------");
+			try {
+				Files.createFile(file, PosixFilePermissions.asFileAttribute(ownerOnly));
+			} catch (UnsupportedOperationException e) {
+				// not a POSIX file system
+				Files.createFile(file);
+				File f = file.toFile();
+				f.setReadable(false, false);
+				f.setReadable(true, true);
+				f.setWritable(false, false);
+				f.setWritable(true, true);
+			}
+			byte[] secret = new byte[32];
+			random.nextBytes(secret);
+			StringBuilder hex = new StringBuilder();
+			for (byte b : secret)
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			hex.append('\n');
+			Files.write(file, hex.toString().getBytes(ASCII));
+		} catch (FileAlreadyExistsException e) {
+			// made by an earlier server
+		}
+
+		try {
+			Set<PosixFilePermission> open = EnumSet.complementOf(EnumSet.of(PosixFilePermission.OWNER_READ,
+					PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE));
+			open.retainAll(Files.getPosixFilePermissions(file));
+			if (!open.isEmpty())
+				throw new IOException(file + " must only be readable and writable by its owner");
+		} catch (UnsupportedOperationException e) {
+			// not a POSIX file system
+		}
+		return readKey();
+	}
+
+	/**
+	 * @return a random challenge
+	 */
+	static byte[] nonce() {
+		byte[] nonce = new byte[NONCE_BYTES];
+		random.nextBytes(nonce);
+		return nonce;
+	}
+
+	/**
+	 * @return the proof that the client or the server knows the secret, for
+	 *         the challenges of the server and of the client
+	 */
+	static byte[] proof(byte[] key, byte role, byte[] serverNonce, byte[] clientNonce) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			mac.update(role);
+			mac.update(serverNonce);
+			mac.update(clientNonce);
+			return mac.doFinal();
+		} catch (GeneralSecurityException e) {
+			// every Java platform has HmacSHA256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Stands in for System.out or System.err, and writes to the stream bound
+	 * to the calling thread, or else to the original stream
+	 */
+	static class ThreadOutputStream extends OutputStream {
+		private final OutputStream original;
+		final ThreadLocal<OutputStream> bound = new ThreadLocal<OutputStream>();
+
+		ThreadOutputStream(OutputStream original) {
+			this.original = original;
+		}
+
+		private OutputStream target() {
+			OutputStream out = bound.get();
+			return (out == null) ? original : out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			target().write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			target().write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			target().flush();
+		}
+	}
+
+	/**
+	 * Stands in for System.in, and reads from the stream bound to the calling
+	 * thread, or else from the original stream
+	 */
+	static class ThreadInputStream extends InputStream {
+		private final InputStream original;
+		final ThreadLocal<InputStream> bound = new ThreadLocal<InputStream>();
+
+		ThreadInputStream(InputStream original) {
+			this.original = original;
+		}
+
+		private InputStream source() {
+			InputStream in = bound.get();
+			return (in == null) ? original : in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return source().read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return source().read(b, off, len);
+		}
+
+		@Override
+		public int available() throws IOException {
+			return source().available();
+		}
+	}
+
+	/**
+	 * Sends what is written to it to the client as chunks of one kind
+	 */
+	static class ChunkOutputStream extends OutputStream {
+		private final DataOutputStream out;
+		private final int kind;
+
+		ChunkOutputStream(DataOutputStream out, int kind) {
+			this.out = out;
+			this.kind = kind;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return;
+			synchronized (out) {
+				out.writeByte(kind);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized (out) {
+				out.flush();
+			}
+		}
+	}
+
+	/**
+	 * Reads the standard input that the client sends in chunks
+	 */
+	static class ChunkInputStream extends InputStream {
+		private final DataInputStream in;
+		private int remaining = 0;
+		private boolean ended = false;
+
+		ChunkInputStream(DataInputStream in) {
+			this.in = in;
+		}
+
+		private boolean next() throws IOException {
+			while (remaining == 0 && !ended) {
+				remaining = in.readInt();
+				if (remaining < 0) {
+					remaining = 0;
+					ended = true;
+				}
+			}
+			return remaining > 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!next())
+				return -1;
+			int n = in.read(b, off, Math.min(len, remaining));
+			if (n < 0)
+				throw new IOException("client closed its standard input");
+			remaining -= n;
+			return n;
+		}
+	}
+
+	private final byte[] key;
+	private final ThreadOutputStream stdout, stderr;
+	private final ThreadInputStream stdin;
+
+	/**
+	 * Redirects System.out, System.err and System.in to the requests of the
+	 * threads serving them
+	 *
+	 * @param key
+	 *            the secret that clients must know
+	 */
+	private CompileServer(byte[] key) {
+		this.key = key;
+		stdout = new ThreadOutputStream(System.out);
+		stderr = new ThreadOutputStream(System.err);
+		stdin = new ThreadInputStream(System.in);
+		System.setOut(new PrintStream(stdout, true));
+		System.setErr(new PrintStream(stderr, true));
+		System.setIn(stdin);
+	}
+
+	/**
+	 * Checks that the client knows the secret, and proves to it that the
+	 * server does too
+	 *
+	 * @return true if the client knows the secret
+	 */
+	private boolean authenticate(DataInputStream in, DataOutputStream out) throws IOException {
+		byte[] serverNonce = nonce();
+		out.write(serverNonce);
+		out.flush();
+		byte[] clientNonce = new byte[NONCE_BYTES];
+		in.readFully(clientNonce);
+		byte[] clientProof = new byte[PROOF_BYTES];
+		in.readFully(clientProof);
+		if (!MessageDigest.isEqual(clientProof, proof(key, CLIENT, serverNonce, clientNonce)))
+			return false;
+		out.write(proof(key, SERVER, serverNonce, clientNonce));
+		out.flush();
+		return true;
+	}
+
+	/**
+	 * Compiles for one client, if it knows the secret
+	 */
+	private void serve(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+			if (!authenticate(in, out))
+				return;
+			// the program may wait for its input as long as it likes
+			socket.setSoTimeout(0);
+			String[] args = new String[in.readInt()];
+			for (int i = 0; i < args.length; i++)
+				args[i] = in.readUTF();
+
+			stdout.bound.set(new ChunkOutputStream(out, OUT));
+			stderr.bound.set(new ChunkOutputStream(out, ERR));
+			stdin.bound.set(new ChunkInputStream(in));
+			int status;
+			try {
+				status = Compiler.compile(args);
+			} catch (Throwable e) {
+				// as an uncaught exception would end the compiler
+				e.printStackTrace();
+				status = 1;
+			} finally {
+				System.out.flush();
+				System.err.flush();
+				stdout.bound.remove();
+				stderr.bound.remove();
+				stdin.bound.remove();
+			}
+			synchronized (out) {
+				out.writeByte(EXIT);
+				out.writeInt(status);
+				out.flush();
+			}
+		} catch (IOException e) {
+			// the client has gone away, or did not authenticate in time
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static void usage() {
+		System.out.println("Usage: java miniJava.CompileServer [--port=<n>] [--threads=<n>]");
+		System.exit(4);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = port();
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (String arg : args) {
+			try {
+				if (arg.startsWith("--port="))
+					port = Integer.parseInt(arg.substring("--port=".length()));
+				else if (arg.startsWith("--threads="))
+					threads = Integer.parseInt(arg.substring("--threads=".length()));
+				else
+					usage();
+			} catch (NumberFormatException e) {
+				usage();
+			}
+		}
+		if (threads < 1)
+			usage();
+
+		byte[] key = null;
+		try {
+			key = serverKey();
+		} catch (IOException e) {
+			System.out.println("Cannot use the key file: " + e);
+			System.exit(4);
+		}
+		ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName(null));
+		final CompileServer compileServer = new CompileServer(key);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		System.out.println("miniJava compile server listening on " + server.getLocalSocketAddress() + " with "
+				+ threads + " threads");
+		while (true) {
+			final Socket socket = server.accept();
+			pool.execute(new Runnable() {
+				public void run() {
+					compileServer.serve(socket);
+				}
+			});
+		}
+	}
+}
@@ -5,22 +5,39 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 
+import mJAM.CodeStore;
 import mJAM.Disassembler;
 import mJAM.Interpreter;
 import mJAM.ObjectFile;
-import miniJava.AbstractSyntaxTrees.AST;
-import miniJava.AbstractSyntaxTrees.MethodDecl;
-import miniJava.CodeGenerator.ASTGenerateCode;
-import miniJava.ContextualAnalyzer.ASTIdentifyMembers;
-import miniJava.ContextualAnalyzer.ASTReplaceReference;
-import miniJava.ContextualAnalyzer.ASTTypeCheck;
-import miniJava.ContextualAnalyzer.IdentificationTable;
-import miniJava.ContextualAnalyzer.Utilities;
-import miniJava.SyntacticAnalyzer.Parser;
+import mJAM.ProgramInput;
+import mJAM.ProgramOutput;
 import miniJava.SyntacticAnalyzer.SourcePosition;
-import miniJava.SyntacticAnalyzer.SyntaxErrorException;
 
+/**
+ * Command line compiler: compiles a program with a CompilerSession, writes
+ * the object and assembly files and runs the program. Each invocation has
+ * its own options, so compile can also be called by the compile server for
+ * several programs at the same time.
+ */
 public class Compiler {
+	private PhaseProfiler profiler = new PhaseProfiler(false);
+	private String phaseReportFile = null;
+	private boolean compactAst = false;
+	private boolean fusedAnalysis = false;
+	private boolean parallelTypeCheck = false;
+	private boolean foldConstants = false;
+	private boolean peephole = false;
+
+	// settings of the interpreter that runs the program, 0 or null for the
+	// defaults
+	private int dataStoreSize = 0;
+	private boolean gcStatistics = false;
+	private ProgramInput programInput = null;
+	private ProgramOutput programOutput = null;
+
+	private Compiler() {
+	}
+
 	private static void printOffendingLine(String fileName,
 			SourcePosition position) {
 		try {
@@ -37,21 +54,35 @@ public class Compiler {
 				}
 			}
 			System.err.println('^');
+			in.close();
 		} catch (IOException e) {
 		}
 	}
 
-	public static void generateAndExecute(AST ast, MethodDecl mainMethod,
-			String fileName) {
-		String prefix = fileName.substring(0, fileName.lastIndexOf('.'));
+	/**
+	 * Prints the --time-phases report to stderr, or writes it as JSON if a
+	 * report file was given
+	 */
+	private void reportPhases(String fileName) {
+		if (!profiler.isEnabled())
+			return;
+		if (phaseReportFile == null) {
+			profiler.printReport(System.err);
+			return;
+		}
+		try {
+			profiler.writeJson(phaseReportFile, fileName);
+		} catch (IOException e) {
+			System.err.println("Error writing " + phaseReportFile);
+		}
+	}
 
-		ASTGenerateCode generatecode = new ASTGenerateCode();
-		generatecode.visitPackage((miniJava.AbstractSyntaxTrees.Package) ast,
-				mainMethod);
+	private void writeAndExecute(CodeStore code, String fileName) {
+		String prefix = fileName.substring(0, fileName.lastIndexOf('.'));
 
 		/* write code as an object file */
 		String objectCodeFileName = prefix + ".mJAM";
-		ObjectFile objF = new ObjectFile(objectCodeFileName);
+		ObjectFile objF = new ObjectFile(objectCodeFileName, code);
 		System.out.print("Writing object code file " + objectCodeFileName
 				+ " ... ");
 		if (objF.write()) {
@@ -65,7 +96,7 @@ public class Compiler {
 
 		/* create asm file using disassembler */
 		System.out.print("Writing assembly file ... ");
-		Disassembler d = new Disassembler(objectCodeFileName);
+		Disassembler d = new Disassembler(objectCodeFileName, code);
 		if (d.disassemble()) {
 			System.out.println("FAILED!");
 			return;
@@ -75,65 +106,175 @@ public class Compiler {
 
 		/* run code */
 		System.out.println("Running code ... ");
-		Interpreter.interpret(objectCodeFileName);
+		Interpreter interpreter = new Interpreter(code);
+		if (dataStoreSize > 0)
+			interpreter.setDataStoreSize(dataStoreSize);
+		if (gcStatistics)
+			interpreter.gcStatistics = true;
+		interpreter.setInput(programInput);
+		interpreter.setOutput(programOutput);
+		interpreter.interpret(objectCodeFileName);
+		programInput = null;
+		programOutput = null;
+		try {
+			interpreter.getInput().close();
+			interpreter.getOutput().close();
+		} catch (IOException e) {
+			System.out.println("Error closing program input or output");
+		}
 
 		System.out.println("*** mJAM execution completed");
 	}
 
+	private static int usage() {
+		System.out.println("Usage: java miniJava.Compiler [--time-phases[=<report.json>]] [--compact-ast] [--fused-analysis] [--parallel-typecheck] [--fold-constants] [--peephole] [-Xmjam-mem=<words>[K|M]] [-Xmjam-gc-stats] [-Xmjam-in=<file>] [-Xmjam-out=<file>] <filename>");
+		return 4;
+	}
+
 	public static void main(String[] args) {
-		if (args.length < 1) {
-			System.out.println("Usage: java miniJava.Compiler <filename>");
-			System.exit(4);
-		}
+		int status = compile(args);
+		if (status != 0)
+			System.exit(status);
+	}
 
+	/**
+	 * Does what main does with the given command line, on System.out,
+	 * System.err and System.in, without exiting
+	 *
+	 * @return the exit status: 0 on success, 4 on any error
+	 */
+	public static int compile(String[] args) {
+		Compiler compiler = new Compiler();
 		try {
-			String fileName = args[0];
-			FileInputStream fileStream = new FileInputStream(fileName);
-
-			if (fileName.endsWith(".java") || fileName.endsWith(".mjava")) {
-
-				Parser parser = new Parser(fileStream);
-				AST ast = parser.parseProgram();
-
-				/* Identification */
-				ASTIdentifyMembers identify = new ASTIdentifyMembers();
-				IdentificationTable table = identify
-						.createIdentificationTable(ast);
-
-				/* AST modification for QualifiedRefs */
-				ASTReplaceReference replace = new ASTReplaceReference();
-				replace.visitPackage(
-						(miniJava.AbstractSyntaxTrees.Package) ast, table);
-
-				/* Type checking */
-				ASTTypeCheck typecheck = new ASTTypeCheck(table);
-				MethodDecl mainMethod = typecheck
-						.typeCheck((miniJava.AbstractSyntaxTrees.Package) ast);
-
-				Utilities.exitOnError();
+			return compiler.run(args);
+		} finally {
+			compiler.closeChannels();
+		}
+	}
 
-				generateAndExecute(ast, mainMethod, fileName);
+	/**
+	 * Closes program input and output that were opened for a run that did
+	 * not happen
+	 */
+	private void closeChannels() {
+		try {
+			if (programInput != null)
+				programInput.close();
+			if (programOutput != null)
+				programOutput.close();
+		} catch (IOException e) {
+		}
+	}
 
-				// table.display();
-				// ASTDisplay display = new ASTDisplay();
-				// display.showTree(ast);
+	private int run(String[] args) {
+		try {
+			dataStoreSize = Interpreter.dataStoreSizeProperty();
+		} catch (IllegalArgumentException e) {
+			System.out.println("-Dmjam.mem: " + e.getMessage());
+			return usage();
+		}
 
+		String fileName = null;
+		for (String arg : args) {
+			if (arg.equals("--time-phases")) {
+				profiler = new PhaseProfiler(true);
+			} else if (arg.startsWith("--time-phases=")) {
+				profiler = new PhaseProfiler(true);
+				phaseReportFile = arg.substring("--time-phases=".length());
+			} else if (arg.equals("--compact-ast")) {
+				compactAst = true;
+			} else if (arg.equals("--fused-analysis")) {
+				fusedAnalysis = true;
+			} else if (arg.equals("--parallel-typecheck")) {
+				parallelTypeCheck = true;
+			} else if (arg.equals("--fold-constants")) {
+				foldConstants = true;
+			} else if (arg.equals("--peephole")) {
+				peephole = true;
+			} else if (arg.startsWith("-Xmjam-mem=")) {
+				try {
+					dataStoreSize = Interpreter.parseSize(arg.substring("-Xmjam-mem=".length()));
+				} catch (IllegalArgumentException e) {
+					System.out.println(e.getMessage());
+					return usage();
+				}
+			} else if (arg.equals("-Xmjam-gc-stats")) {
+				gcStatistics = true;
+			} else if (arg.startsWith("-Xmjam-in=")) {
+				String inputFile = arg.substring("-Xmjam-in=".length());
+				try {
+					programInput = ProgramInput.fromFile(inputFile);
+				} catch (IOException e) {
+					System.out.println("Cannot read program input from " + inputFile);
+					return usage();
+				}
+			} else if (arg.startsWith("-Xmjam-out=")) {
+				String outputFile = arg.substring("-Xmjam-out=".length());
+				try {
+					programOutput = ProgramOutput.toFile(outputFile);
+				} catch (IOException e) {
+					System.out.println("Cannot write program output to " + outputFile);
+					return usage();
+				}
+			} else if (arg.startsWith("--") || fileName != null) {
+				return usage();
 			} else {
+				fileName = arg;
+			}
+		}
+		if (fileName == null)
+			return usage();
+
+		FileInputStream fileStream;
+		try {
+			fileStream = new FileInputStream(fileName);
+		} catch (IOException e) {
+			System.err.println("Error opening " + fileName);
+			return 4;
+		}
+		CompilerSession.Result result;
+		try {
+			if (!fileName.endsWith(".java") && !fileName.endsWith(".mjava")) {
 				System.err.println("The file extension is incorrect");
-				System.exit(4);
+				return 4;
 			}
 
-		} catch (SyntaxErrorException e) {
-			// e.printStackTrace();
-			if (e.token != null && e.token.position != null) {
-				printOffendingLine(args[0], e.token.position);
+			/* errors are printed as they are found */
+			CompilerSession session = new CompilerSession(profiler, true);
+			session.setCompactAst(compactAst);
+			session.setFusedAnalysis(fusedAnalysis);
+			session.setParallelTypeCheck(parallelTypeCheck);
+			session.setFoldConstants(foldConstants);
+			session.setPeephole(peephole);
+			result = session.compile(fileStream);
+		} finally {
+			try {
+				fileStream.close();
+			} catch (IOException e) {
 			}
+		}
+		reportPhases(fileName);
 
-			System.err.println(e.getMessage());
-			System.exit(4);
-		} catch (IOException e) {
-			System.err.println("Error opening " + args[0]);
-			System.exit(4);
+		if (result.syntaxError) {
+			if (result.syntaxErrorPosition != null)
+				printOffendingLine(fileName, result.syntaxErrorPosition);
+			System.err.println(result.errors.get(result.errors.size() - 1));
+			return result.exitStatus();
+		}
+		if (result.exitStatus() != 0) {
+			int errorCount = result.errors.size();
+			System.err.println(errorCount + (errorCount > 1 ? " errors" : " error"));
+			return result.exitStatus();
 		}
+		if (foldConstants)
+			System.err.println("Constant folding: " + result.foldedExpressions + " expressions folded, "
+					+ result.removedStatements + " statements removed"
+					+ (result.instructionsSaved >= 0 ? ", " + result.instructionsSaved + " instructions saved" : ""));
+		if (peephole)
+			System.err.println("Peephole optimization: " + result.peepholeRemoved + " of "
+					+ (result.code.CT + result.peepholeRemoved) + " instructions removed");
+
+		writeAndExecute(result.code, fileName);
+		return 0;
 	}
 }
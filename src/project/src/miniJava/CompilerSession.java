@@ -0,0 +1,329 @@
+package miniJava;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import mJAM.CodeStore;
+import mJAM.PeepholeOptimizer;
+import miniJava.AbstractSyntaxTrees.CompactAST;
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.CodeGenerator.ASTDeepFoldConstants;
+import miniJava.CodeGenerator.ASTDeepGenerateCode;
+import miniJava.CodeGenerator.ASTFoldConstants;
+import miniJava.CodeGenerator.ASTGenerateCode;
+import miniJava.ContextualAnalyzer.ASTAnalyze;
+import miniJava.ContextualAnalyzer.ASTDeepIdentifyMembers;
+import miniJava.ContextualAnalyzer.ASTDeepReplaceReference;
+import miniJava.ContextualAnalyzer.ASTDeepTypeCheck;
+import miniJava.ContextualAnalyzer.ASTIdentifyMembers;
+import miniJava.ContextualAnalyzer.ASTReplaceReference;
+import miniJava.ContextualAnalyzer.ASTTypeCheck;
+import miniJava.ContextualAnalyzer.IdentificationTable;
+import miniJava.SyntacticAnalyzer.CharSource;
+import miniJava.SyntacticAnalyzer.CompactParser;
+import miniJava.SyntacticAnalyzer.Parser;
+import miniJava.SyntacticAnalyzer.Scanner;
+import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SyntaxErrorException;
+import miniJava.SyntacticAnalyzer.TokenStream;
+
+/**
+ * Compiles miniJava programs to mJAM code and hands back the result instead
+ * of printing it and exiting. Every compilation reports its errors to
+ * diagnostics of its own and generates into a code store of its own, so
+ * sessions on different threads can compile at the same time. A session
+ * compiles one program at a time. The code can be run with
+ * <code>new Interpreter(result.code)</code>.
+ */
+public class CompilerSession {
+	/**
+	 * Outcome of compiling one program
+	 */
+	public static class Result {
+		// error messages, as the compiler prints them
+		public final List<String> errors = new ArrayList<String>();
+
+		// whether the program failed to parse; the position of the offending
+		// token, if known
+		public boolean syntaxError = false;
+		public SourcePosition syntaxErrorPosition = null;
+
+		// the program and its main method, once it has been analyzed
+		public Package ast = null;
+		public MethodDecl mainMethod = null;
+
+		// the generated code, or null if contextual analysis failed. Errors
+		// found while generating code are in errors, with the code.
+		public CodeStore code = null;
+
+		// with constant folding: the expressions folded, the if and while
+		// statements removed, and the instructions of code that saved, or -1
+		// if that was not measured
+		public int foldedExpressions = 0;
+		public int removedStatements = 0;
+		public int instructionsSaved = -1;
+
+		// with the peephole optimizer: the instructions it removed from the
+		// generated code
+		public int peepholeRemoved = 0;
+
+		/**
+		 * @return true if the program compiled without errors
+		 */
+		public boolean succeeded() {
+			return code != null && errors.isEmpty();
+		}
+
+		/**
+		 * @return the exit status of the compiler for this result: 4 if the
+		 *         program failed to parse or to analyze, else 0. Code is run
+		 *         even if generating it reported errors, as the compiler
+		 *         always has.
+		 */
+		public int exitStatus() {
+			return (code == null) ? 4 : 0;
+		}
+	}
+
+	private final PhaseProfiler profiler;
+	private final boolean echo;
+	private boolean compactAst = false;
+	private boolean fusedAnalysis = false;
+	private boolean parallelTypeCheck = false;
+	private boolean foldConstants = false;
+	private boolean peephole = false;
+
+	// runs the tasks of parallel type checking for all sessions, with a
+	// thread per processor
+	private static ForkJoinPool typeCheckPool = null;
+
+	// programs that nest deeper than this are visited by the ASTDeep passes,
+	// which do not recurse on statements and expressions. ASTAnalyze
+	// recurses, so such programs are analyzed by the passes.
+	static final int DEEP_NESTING = 256;
+
+	/**
+	 * A session that collects errors without printing them
+	 */
+	public CompilerSession() {
+		this(new PhaseProfiler(false), false);
+	}
+
+	/**
+	 * @param profiler
+	 *            measures the phases of the compilations
+	 * @param echo
+	 *            whether contextual errors are also printed to System.err as
+	 *            they are found
+	 */
+	public CompilerSession(PhaseProfiler profiler, boolean echo) {
+		this.profiler = profiler;
+		this.echo = echo;
+	}
+
+	public PhaseProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Sets whether programs are parsed by CompactParser into a CompactAST,
+	 * which builds the AST objects the passes run on. A program that nests
+	 * deeper than DEEP_NESTING is parsed by Parser instead.
+	 */
+	public void setCompactAst(boolean compactAst) {
+		this.compactAst = compactAst;
+	}
+
+	/**
+	 * Sets whether contextual analysis is done in one traversal by
+	 * ASTAnalyze, timed as the phase "analyze", instead of by the identify,
+	 * replace and typecheck passes. Programs that nest too deep for it are
+	 * still analyzed by the passes, which is noted on System.err if errors
+	 * are printed there.
+	 */
+	public void setFusedAnalysis(boolean fusedAnalysis) {
+		this.fusedAnalysis = fusedAnalysis;
+	}
+
+	/**
+	 * Sets whether the typecheck pass checks the methods in parallel. It has
+	 * no effect with fused analysis, which has no separate pass.
+	 */
+	public void setParallelTypeCheck(boolean parallelTypeCheck) {
+		this.parallelTypeCheck = parallelTypeCheck;
+	}
+
+	/**
+	 * Sets whether constant expressions are folded by ASTFoldConstants,
+	 * timed as the phase "fold", before code is generated. When the phases
+	 * are profiled, the result also tells how many instructions that saved,
+	 * for which the code is generated once more, untimed, before folding.
+	 */
+	public void setFoldConstants(boolean foldConstants) {
+		this.foldConstants = foldConstants;
+	}
+
+	/**
+	 * Sets whether the generated code is optimized by the PeepholeOptimizer,
+	 * timed as the phase "peephole"
+	 */
+	public void setPeephole(boolean peephole) {
+		this.peephole = peephole;
+	}
+
+	private static synchronized ForkJoinPool typeCheckPool() {
+		if (typeCheckPool == null)
+			typeCheckPool = new ForkJoinPool();
+		return typeCheckPool;
+	}
+
+	/**
+	 * Compiles the program in a file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public Result compile(String fileName) throws IOException {
+		InputStream in = new FileInputStream(fileName);
+		try {
+			return compile(new Scanner(in).tokenize());
+		} finally {
+			in.close();
+		}
+	}
+
+	public Result compile(InputStream in) {
+		return compile(new Scanner(in).tokenize());
+	}
+
+	public Result compile(CharSource in) {
+		return compile(new Scanner(in).tokenize());
+	}
+
+	private Result compile(TokenStream tokens) {
+		Result result = new Result();
+		Diagnostics diagnostics = new Diagnostics(echo);
+		Diagnostics previous = Diagnostics.bind(diagnostics);
+		PhaseProfiler previousProfiler = PhaseProfiler.bind(profiler);
+		try {
+			profiler.start("parse");
+			Package ast = compactAst ? parseCompact(tokens) : null;
+			boolean deep = false;
+			if (ast == null) {
+				Parser parser = new Parser(tokens);
+				ast = parser.parseProgram();
+				deep = parser.getNestingDepth() > DEEP_NESTING;
+			}
+			profiler.stop();
+			analyze(ast, result, diagnostics, deep);
+		} catch (SyntaxErrorException e) {
+			profiler.stop();
+			result.syntaxError = true;
+			if (e.token != null)
+				result.syntaxErrorPosition = e.token.position;
+			// the caller prints it, after the offending line
+			diagnostics.getErrors().add(e.getMessage());
+		} finally {
+			result.errors.addAll(diagnostics.getErrors());
+			Diagnostics.bind(previous);
+			PhaseProfiler.bind(previousProfiler);
+		}
+		return result;
+	}
+
+	/**
+	 * Parses a program into a CompactAST and builds the AST objects of its
+	 * Visitor adapter, which the passes run on
+	 *
+	 * @return the program, or null if it nests deeper than DEEP_NESTING
+	 */
+	private static Package parseCompact(TokenStream tokens) throws SyntaxErrorException {
+		CompactParser parser = new CompactParser(tokens);
+		parser.setMaxNestingDepth(DEEP_NESTING);
+		CompactAST compact = parser.parseProgram();
+		return (compact == null) ? null : compact.tree();
+	}
+
+	/**
+	 * Runs contextual analysis and, if it finds no errors, code generation
+	 *
+	 * @param deep
+	 *            whether the program nests deeper than DEEP_NESTING, so it
+	 *            is visited by the ASTDeep passes
+	 */
+	private void analyze(Package ast, Result result, Diagnostics diagnostics, boolean deep) {
+		MethodDecl mainMethod;
+		if (fusedAnalysis && deep && echo)
+			System.err.println("--fused-analysis is ignored, as the program nests deeper than " + DEEP_NESTING
+					+ " levels");
+		if (fusedAnalysis && !deep) {
+			profiler.start("analyze");
+			mainMethod = new ASTAnalyze().analyze(ast);
+		} else {
+			/* Identification */
+			profiler.start("identify");
+			ASTIdentifyMembers identify = deep ? new ASTDeepIdentifyMembers() : new ASTIdentifyMembers();
+			IdentificationTable table = identify.createIdentificationTable(ast);
+
+			/* AST modification for QualifiedRefs */
+			profiler.start("replace");
+			ASTReplaceReference replace = deep ? new ASTDeepReplaceReference() : new ASTReplaceReference();
+			replace.visitPackage(ast, table);
+
+			/* Type checking */
+			profiler.start("typecheck");
+			ASTTypeCheck typeCheck = deep ? new ASTDeepTypeCheck(table) : new ASTTypeCheck(table);
+			mainMethod = parallelTypeCheck ? typeCheck.typeCheck(ast, typeCheckPool()) : typeCheck.typeCheck(ast);
+		}
+		profiler.stop();
+		result.ast = ast;
+		result.mainMethod = mainMethod;
+		if (diagnostics.getErrorCount() > 0)
+			return;
+
+		CodeStore code = new CodeStore();
+		if (foldConstants) {
+			int unfolded = -1;
+			if (profiler.isEnabled()) {
+				// the code before folding is only measured, so its errors
+				// are dropped; generating the folded code reports them
+				Diagnostics previous = Diagnostics.bind(new Diagnostics(false));
+				try {
+					codeGenerator(code, deep).visitPackage(ast, mainMethod);
+				} finally {
+					Diagnostics.bind(previous);
+				}
+				unfolded = code.nextInstrAddr();
+			}
+
+			profiler.start("fold");
+			ASTFoldConstants fold = deep ? new ASTDeepFoldConstants() : new ASTFoldConstants();
+			fold.fold(ast);
+			result.foldedExpressions = fold.foldedExpressions;
+			result.removedStatements = fold.removedStatements;
+
+			profiler.start("codegen");
+			codeGenerator(code, deep).visitPackage(ast, mainMethod);
+			if (unfolded >= 0)
+				result.instructionsSaved = unfolded - code.nextInstrAddr();
+		} else {
+			profiler.start("codegen");
+			codeGenerator(code, deep).visitPackage(ast, mainMethod);
+		}
+		if (peephole) {
+			profiler.start("peephole");
+			result.peepholeRemoved = new PeepholeOptimizer(code).optimize();
+		}
+		profiler.stop();
+		result.code = code;
+	}
+
+	private static ASTGenerateCode codeGenerator(CodeStore code, boolean deep) {
+		return deep ? new ASTDeepGenerateCode(code) : new ASTGenerateCode(code);
+	}
+}
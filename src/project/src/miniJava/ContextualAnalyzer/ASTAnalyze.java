@@ -0,0 +1,940 @@
+package miniJava.ContextualAnalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.AbstractSyntaxTrees.ArrayType;
+import miniJava.AbstractSyntaxTrees.AssignStmt;
+import miniJava.AbstractSyntaxTrees.BadRef;
+import miniJava.AbstractSyntaxTrees.BaseType;
+import miniJava.AbstractSyntaxTrees.BinaryExpr;
+import miniJava.AbstractSyntaxTrees.BlockStmt;
+import miniJava.AbstractSyntaxTrees.BooleanLiteral;
+import miniJava.AbstractSyntaxTrees.CallExpr;
+import miniJava.AbstractSyntaxTrees.CallStmt;
+import miniJava.AbstractSyntaxTrees.ClassDecl;
+import miniJava.AbstractSyntaxTrees.ClassRef;
+import miniJava.AbstractSyntaxTrees.ClassType;
+import miniJava.AbstractSyntaxTrees.DeRef;
+import miniJava.AbstractSyntaxTrees.Declaration;
+import miniJava.AbstractSyntaxTrees.ErrorType;
+import miniJava.AbstractSyntaxTrees.ExprList;
+import miniJava.AbstractSyntaxTrees.Expression;
+import miniJava.AbstractSyntaxTrees.FieldDecl;
+import miniJava.AbstractSyntaxTrees.Identifier;
+import miniJava.AbstractSyntaxTrees.IfStmt;
+import miniJava.AbstractSyntaxTrees.IndexedRef;
+import miniJava.AbstractSyntaxTrees.IntLiteral;
+import miniJava.AbstractSyntaxTrees.LiteralExpr;
+import miniJava.AbstractSyntaxTrees.LocalDecl;
+import miniJava.AbstractSyntaxTrees.LocalRef;
+import miniJava.AbstractSyntaxTrees.MemberDecl;
+import miniJava.AbstractSyntaxTrees.MemberRef;
+import miniJava.AbstractSyntaxTrees.MethodDecl;
+import miniJava.AbstractSyntaxTrees.NewArrayExpr;
+import miniJava.AbstractSyntaxTrees.NewObjectExpr;
+import miniJava.AbstractSyntaxTrees.Operator;
+import miniJava.AbstractSyntaxTrees.OverloadedMethodDecl;
+import miniJava.AbstractSyntaxTrees.Package;
+import miniJava.AbstractSyntaxTrees.ParameterDecl;
+import miniJava.AbstractSyntaxTrees.QualifiedRef;
+import miniJava.AbstractSyntaxTrees.RefExpr;
+import miniJava.AbstractSyntaxTrees.Reference;
+import miniJava.AbstractSyntaxTrees.Statement;
+import miniJava.AbstractSyntaxTrees.StatementType;
+import miniJava.AbstractSyntaxTrees.StringLiteral;
+import miniJava.AbstractSyntaxTrees.ThisRef;
+import miniJava.AbstractSyntaxTrees.Type;
+import miniJava.AbstractSyntaxTrees.TypeKind;
+import miniJava.AbstractSyntaxTrees.UnaryExpr;
+import miniJava.AbstractSyntaxTrees.UnsupportedType;
+import miniJava.AbstractSyntaxTrees.VarDecl;
+import miniJava.AbstractSyntaxTrees.VarDeclStmt;
+import miniJava.AbstractSyntaxTrees.Visitor;
+import miniJava.AbstractSyntaxTrees.WhileStmt;
+import miniJava.Diagnostics;
+import miniJava.PhaseProfiler;
+import miniJava.SyntacticAnalyzer.SourcePosition;
+import miniJava.SyntacticAnalyzer.SyntaxErrorException;
+
+/**
+ * Does the work of ASTIdentifyMembers, ASTReplaceReference and ASTTypeCheck
+ * in one traversal of the method bodies: each node is identified, its
+ * QualifiedRefs are replaced and it is type checked while it is visited.
+ *
+ * Types in the member signatures of every class are resolved first, since
+ * type checking a class needs the signatures of the classes after it. The
+ * AST is decorated as by the three passes, and the same errors are reported
+ * in the same order: errors of reference replacement are held back until the
+ * end of their class, and type errors until the end of the program, which is
+ * where the passes report them. Where ASTTypeCheck skips a subtree (e.g. the
+ * branches of an if with a bad condition), its type errors are dropped.
+ */
+public class ASTAnalyze implements Visitor<IdentificationTable, Type> {
+	// errors of identification go straight to the diagnostics bound when
+	// analysis started
+	private Diagnostics identifyErrors;
+	private final Diagnostics replaceErrors = new Diagnostics(false);
+	private final Diagnostics typeErrors = new Diagnostics(false);
+	private final Diagnostics droppedErrors = new Diagnostics(false);
+	private int unchecked = 0;
+
+	// statements and expressions visited, for the phase profiler
+	private int visited = 0;
+
+	// ASTReplaceReference declares parameters and locals again, in a table
+	// of its own, and reports the clashes a second time. This table has only
+	// those declarations.
+	private IdentificationTable replaceTable;
+
+	// used for a variable declaration alone in a branch, which identification
+	// skips but the other passes visit
+	private final ASTReplaceReference replaceReference = new ASTReplaceReference();
+	private ASTTypeCheck typeCheck;
+
+	// the reference that replaced the last reference visited
+	private Reference resolved;
+
+	public ClassDecl currentClass;
+	public MethodDecl currentMethod;
+
+	/**
+	 * Analyzes the program and creates its identification table
+	 *
+	 * @return the main method, or null if there is none
+	 */
+	public MethodDecl analyze(Package prog) {
+		IdentificationTable table = new IdentificationTable();
+		identifyErrors = Diagnostics.current();
+		replaceTable = new IdentificationTable();
+		typeCheck = new ASTTypeCheck(table);
+
+		for (ClassDecl cd : prog.classDeclList)
+			Utilities.addDeclaration(table, cd);
+
+		// Resolve the signatures, reporting nothing yet
+		Diagnostics previous = Diagnostics.bind(new Diagnostics(false));
+		try {
+			for (ClassDecl cd : prog.classDeclList) {
+				currentClass = cd;
+				declareMembers(cd, table);
+				for (OverloadedMethodDecl omd : cd.methodDeclList) {
+					for (MethodDecl md : omd) {
+						visitSignature(md, table);
+						table.closeScope();
+					}
+				}
+				table.closeScope();
+			}
+		} finally {
+			Diagnostics.bind(previous);
+		}
+
+		visitPackage(prog, table);
+		MethodDecl mainMethod = findMainMethod(prog);
+
+		for (String error : typeErrors.getErrors())
+			identifyErrors.report(error);
+
+		PhaseProfiler profiler = PhaseProfiler.current();
+		if (profiler != null)
+			profiler.nodesVisited(visited);
+		return mainMethod;
+	}
+
+	/**
+	 * The only static method allowed is public static void main(String[])
+	 */
+	private MethodDecl findMainMethod(Package prog) {
+		MethodDecl mainMethod = null;
+		for (ClassDecl cd : prog.classDeclList) {
+			for (OverloadedMethodDecl omd : cd.methodDeclList) {
+				for (MethodDecl md : omd) {
+					if (md.isStatic) {
+						if (mainMethod == null && md.type.equals(BaseType.VOID_TYPE) && !md.isPrivate
+								&& md.id.spelling.equals("main") && md.parameterDeclList.size() == 1) {
+							ParameterDecl param = md.parameterDeclList.get(0);
+							if (Utilities.getTypeEquivalence(param.type, ArrayType.STRING_ARRAY_TYPE)) {
+								mainMethod = md;
+							}
+						} else {
+							typeErrors.reportError(md.id + " is not allowed to be a static method", md.posn);
+						}
+					}
+				}
+			}
+		}
+
+		if (mainMethod == null)
+			typeErrors.reportError("Did not find a method with signature public static void main(String[])",
+					prog.posn);
+
+		return mainMethod;
+	}
+
+	/**
+	 * Reports to the type errors, or drops the error if ASTTypeCheck would
+	 * not have visited this node
+	 */
+	private Diagnostics types() {
+		return (unchecked > 0) ? droppedErrors : typeErrors;
+	}
+
+	private boolean validateTypeEquivalence(Type type1, Type type2, SourcePosition pos) {
+		Diagnostics previous = Diagnostics.bind(types());
+		try {
+			return Utilities.validateTypeEquivalence(type1, type2, pos);
+		} finally {
+			Diagnostics.bind(previous);
+		}
+	}
+
+	/**
+	 * Declares a parameter or local again as ASTReplaceReference does
+	 */
+	private void redeclare(Declaration declaration) {
+		try {
+			replaceTable.set(declaration);
+		} catch (SyntaxErrorException e) {
+			replaceErrors.reportError(e.getMessage(), declaration.posn);
+		}
+	}
+
+	/**
+	 * Visits a statement or expression, counting it
+	 */
+	private Type visit(AST node, IdentificationTable table) {
+		visited++;
+		return node.visit(this, table);
+	}
+
+	/**
+	 * Visits a statement that type checking skips, without its type errors
+	 */
+	private void visitUnchecked(Statement stmt, IdentificationTable table) {
+		unchecked++;
+		visit(stmt, table);
+		if (--unchecked == 0)
+			droppedErrors.getErrors().clear();
+	}
+
+	/**
+	 * A variable declaration cannot be the only statement in a branch.
+	 * Identification reports it and skips it, while the other passes visit
+	 * it as usual, type checking only if the condition checked.
+	 */
+	private void visitLoneDeclaration(Statement stmt, String msg, boolean checked) {
+		Utilities.reportError(msg, stmt.posn);
+
+		Diagnostics previous = Diagnostics.bind(replaceErrors);
+		try {
+			stmt.visit(replaceReference, replaceTable);
+			if (checked && unchecked == 0) {
+				Diagnostics.bind(typeErrors);
+				stmt.visit(typeCheck, null);
+			}
+		} finally {
+			Diagnostics.bind(previous);
+		}
+	}
+
+	@Override
+	public Type visitPackage(Package prog, IdentificationTable table) {
+		for (ClassDecl cd : prog.classDeclList)
+			cd.visit(this, table);
+
+		return null;
+	}
+
+	/**
+	 * Adds the members of a class in a new scope and resolves the types of
+	 * the fields
+	 */
+	private void declareMembers(ClassDecl cd, IdentificationTable table) {
+		table.openScope();
+
+		for (FieldDecl fd : cd.fieldDeclList)
+			fd.visit(this, table);
+
+		for (OverloadedMethodDecl omd : cd.methodDeclList)
+			Utilities.addDeclaration(table, omd);
+
+		// Types must be visited only after declarations have been added
+		for (FieldDecl fd : cd.fieldDeclList)
+			fd.type.visit(this, table);
+	}
+
+	@Override
+	public Type visitClassDecl(ClassDecl cd, IdentificationTable table) {
+		cd.id.declaration = cd;
+		currentClass = cd;
+		replaceReference.currentClass = cd;
+
+		declareMembers(cd, table);
+		replaceTable.openScope();
+
+		for (OverloadedMethodDecl omd : cd.methodDeclList)
+			omd.visit(this, table);
+
+		replaceTable.closeScope();
+		table.closeScope();
+
+		for (String error : replaceErrors.getErrors())
+			identifyErrors.report(error);
+		replaceErrors.getErrors().clear();
+
+		return null;
+	}
+
+	@Override
+	public Type visitFieldDecl(FieldDecl fd, IdentificationTable table) {
+		fd.id.declaration = fd;
+
+		if (fd.isStatic) {
+			Utilities.reportError("Static fields are not allowed", fd.posn);
+		} else {
+			if (fd.type.typeKind == TypeKind.VOID) {
+				Utilities.reportError("void is an invalid type for the field " + fd.id.spelling, fd.posn);
+			} else {
+				Utilities.addDeclaration(table, fd);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Type visitOverloadedMethodDecl(OverloadedMethodDecl omd, IdentificationTable table) {
+		// Check for duplicates by creating a temporary overloaded method and
+		// asking for methods matching with each new method being added
+		OverloadedMethodDecl temp = new OverloadedMethodDecl(omd);
+		for (MethodDecl md : omd) {
+			List<Type> argTypes = new ArrayList<Type>();
+			for (ParameterDecl pd : md.parameterDeclList)
+				argTypes.add(pd.type);
+
+			MethodDecl otherMethod = temp.getMatchingMethodDecl(argTypes);
+			if (otherMethod != null) {
+				typeErrors.reportError("Duplicate method " + md.id + " at " + otherMethod.posn, md.posn);
+			}
+
+			temp.add(md);
+		}
+
+		for (MethodDecl md : omd)
+			md.visit(this, table);
+
+		return null;
+	}
+
+	/**
+	 * Resolves the return and parameter types of a method, leaving the scope
+	 * of its parameters open
+	 */
+	private void visitSignature(MethodDecl md, IdentificationTable table) {
+		md.id.declaration = md;
+		currentMethod = md;
+
+		md.type.visit(this, table);
+
+		// Parameter scope
+		table.openScope();
+
+		for (ParameterDecl pd : md.parameterDeclList) {
+			pd.visit(this, table);
+		}
+
+		// Types must be visited only after all the declarations have been added
+		for (ParameterDecl pd : md.parameterDeclList) {
+			pd.type.visit(this, table);
+		}
+	}
+
+	@Override
+	public Type visitMethodDecl(MethodDecl md, IdentificationTable table) {
+		visitSignature(md, table);
+
+		replaceTable.openScope();
+		for (ParameterDecl pd : md.parameterDeclList)
+			redeclare(pd);
+
+		// Scope of local variables
+		table.openScope();
+		replaceTable.openScope();
+
+		for (Statement st : md.statementList)
+			visit(st, table);
+
+		Type returnType = (md.returnExp == null) ? BaseType.VOID_TYPE : visit(md.returnExp, table);
+
+		if (!Utilities.getTypeEquivalence(returnType, md.type)) {
+			types().reportError("Method " + md.id.spelling + " must return a result of type " + md.type, md.posn);
+		}
+
+		replaceTable.closeScope();
+		table.closeScope();
+
+		replaceTable.closeScope();
+		table.closeScope();
+
+		return null;
+	}
+
+	@Override
+	public Type visitParameterDecl(ParameterDecl pd, IdentificationTable table) {
+		pd.id.declaration = pd;
+
+		if (pd.type.typeKind == TypeKind.VOID)
+			Utilities.reportError("void is an invalid type for the variable " + pd.id.spelling, pd.posn);
+
+		Utilities.addDeclaration(table, pd);
+
+		return null;
+	}
+
+	@Override
+	public Type visitVarDecl(VarDecl vd, IdentificationTable table) {
+		vd.id.declaration = vd;
+
+		return null;
+	}
+
+	@Override
+	public Type visitBaseType(BaseType type, IdentificationTable table) {
+		return null;
+	}
+
+	@Override
+	public Type visitClassType(ClassType type, IdentificationTable table) {
+		Declaration decl = table.get(type.spelling);
+
+		if (!(decl instanceof ClassDecl)) {
+			Utilities.reportError(type.spelling + " cannot be resolved to a type", type.posn);
+			return null;
+		}
+
+		type.declaration = (ClassDecl) decl;
+
+		return null;
+	}
+
+	@Override
+	public Type visitArrayType(ArrayType type, IdentificationTable table) {
+		type.eltType.visit(this, table);
+
+		return null;
+	}
+
+	@Override
+	public Type visitStatementType(StatementType type, IdentificationTable table) {
+		return null;
+	}
+
+	@Override
+	public Type visitErrorType(ErrorType type, IdentificationTable table) {
+		return null;
+	}
+
+	@Override
+	public Type visitUnsupportedType(UnsupportedType type, IdentificationTable table) {
+		return null;
+	}
+
+	@Override
+	public Type visitBlockStmt(BlockStmt stmt, IdentificationTable table) {
+		// nested scope
+		table.openScope();
+		replaceTable.openScope();
+
+		for (Statement s : stmt.sl)
+			visit(s, table);
+
+		replaceTable.closeScope();
+		table.closeScope();
+
+		return null;
+	}
+
+	@Override
+	public Type visitVardeclStmt(VarDeclStmt stmt, IdentificationTable table) {
+		if (stmt.varDecl.type.typeKind == TypeKind.VOID)
+			Utilities.reportError("void is an invalid type for the variable " + stmt.varDecl.id.spelling,
+					stmt.varDecl.posn);
+
+		stmt.varDecl.type.visit(this, table);
+		stmt.varDecl.visit(this, table);
+
+		// Add the declaration of this identifier at this point
+		// Catches the A A = d; case
+
+		Utilities.addDeclaration(table, stmt.varDecl);
+		redeclare(stmt.varDecl);
+		Type expType = visit(stmt.initExp, table);
+		stmt.varDecl.initialized = true;
+
+		validateTypeEquivalence(stmt.varDecl.type, expType, stmt.posn);
+
+		return null;
+	}
+
+	@Override
+	public Type visitAssignStmt(AssignStmt stmt, IdentificationTable table) {
+		Type refType = visit(stmt.ref, table);
+		stmt.ref = resolved;
+
+		Declaration lhs = stmt.ref.getDeclaration();
+		if (!(lhs instanceof FieldDecl || lhs instanceof LocalDecl)) {
+			types().reportError(stmt.ref + " cannot be resolved to a variable", stmt.posn);
+		}
+
+		Type valType = visit(stmt.val, table);
+		validateTypeEquivalence(refType, valType, stmt.posn);
+
+		return null;
+	}
+
+	/**
+	 * Resolves the method of a call and visits its arguments
+	 */
+	private Type visitCall(Reference methodRef, ExprList argList, IdentificationTable table) {
+		Declaration decl = methodRef.getDeclaration();
+
+		if (!(decl instanceof OverloadedMethodDecl)) {
+			types().reportError("Method " + methodRef + " is undefined", methodRef.posn);
+			unchecked++;
+			for (Expression e : argList)
+				visit(e, table);
+			if (--unchecked == 0)
+				droppedErrors.getErrors().clear();
+			return new ErrorType(methodRef.posn);
+		}
+
+		List<Type> argTypes = new ArrayList<Type>();
+		for (Expression e : argList) {
+			argTypes.add(visit(e, table));
+		}
+
+		MethodDecl methodDecl = ((OverloadedMethodDecl) decl).getMatchingMethodDecl(argTypes);
+
+		if (methodDecl == null) {
+			types().reportError("The method " + decl.id.spelling + " is not applicable to the arguments provided",
+					methodRef.posn);
+			return new ErrorType(methodRef.posn);
+		}
+
+		if (methodDecl.isStatic) {
+			// Static methods cannot be invoked
+			types().reportError("Static method " + methodDecl.id.spelling + " cannot be invoked", methodRef.posn);
+			return new ErrorType(methodRef.posn);
+		}
+
+		// ASTTypeCheck does not set it if it skipped the call
+		if (unchecked == 0)
+			methodRef.setDeclaration(methodDecl);
+
+		return Utilities.handleUnsupportedType(methodDecl.type, table);
+	}
+
+	@Override
+	public Type visitCallStmt(CallStmt stmt, IdentificationTable table) {
+		visit(stmt.methodRef, table);
+		stmt.methodRef = resolved;
+
+		return visitCall(stmt.methodRef, stmt.argList, table);
+	}
+
+	@Override
+	public Type visitIfStmt(IfStmt stmt, IdentificationTable table) {
+		Type conditionType = visit(stmt.cond, table);
+		boolean checked = Utilities.getTypeEquivalence(conditionType, BaseType.BOOLEAN_TYPE);
+		if (!checked) {
+			types().reportError("Type mismatch: Cannot convert " + conditionType + " to boolean", stmt.cond.posn);
+		}
+
+		if (stmt.thenStmt instanceof VarDeclStmt) {
+			visitLoneDeclaration(stmt.thenStmt,
+					"Variable declaration cannot be the only statement in a conditional statement", checked);
+		} else if (checked) {
+			visit(stmt.thenStmt, table);
+		} else {
+			visitUnchecked(stmt.thenStmt, table);
+		}
+
+		if (stmt.elseStmt != null) {
+			if (stmt.elseStmt instanceof VarDeclStmt) {
+				visitLoneDeclaration(stmt.elseStmt,
+						"Variable declaration cannot be the only statement in a conditional statement", checked);
+			} else if (checked) {
+				visit(stmt.elseStmt, table);
+			} else {
+				visitUnchecked(stmt.elseStmt, table);
+			}
+		}
+
+		if (!checked)
+			return new ErrorType(stmt.cond.posn);
+		return new StatementType(stmt.toString(), stmt.posn);
+	}
+
+	@Override
+	public Type visitWhileStmt(WhileStmt stmt, IdentificationTable table) {
+		boolean checked = visit(stmt.cond, table).typeKind == TypeKind.BOOLEAN;
+		if (!checked) {
+			types().reportError("Type mismatch: Cannot convert " + stmt.cond + " to boolean", stmt.cond.posn);
+		}
+
+		if (stmt.body instanceof VarDeclStmt) {
+			visitLoneDeclaration(stmt.body, "Variable declaration cannot be the only statement in a while statement",
+					checked);
+		} else if (checked) {
+			visit(stmt.body, table);
+		} else {
+			visitUnchecked(stmt.body, table);
+		}
+
+		if (!checked)
+			return new ErrorType(stmt.cond.posn);
+		return new StatementType(stmt.toString(), stmt.posn);
+	}
+
+	@Override
+	public Type visitUnaryExpr(UnaryExpr expr, IdentificationTable table) {
+		return visit(expr.expr, table);
+	}
+
+	@Override
+	public Type visitBinaryExpr(BinaryExpr expr, IdentificationTable table) {
+		Type leftType = visit(expr.left, table);
+		Type rightType = visit(expr.right, table);
+		Type resultType = null;
+
+		switch (expr.operator.operatorType) {
+
+		case EQUALTO_EQUALTO:
+		case BANG_EQUALTO:
+			if (!validateTypeEquivalence(leftType, rightType, expr.posn)) {
+				return new ErrorType(expr.posn);
+			}
+			resultType = new BaseType(TypeKind.BOOLEAN, "boolean", expr.posn);
+			break;
+
+		case PIPE_PIPE:
+		case AMPERSAND_AMPERSAND:
+			if (!validateTypeEquivalence(BaseType.BOOLEAN_TYPE, leftType, expr.left.posn)) {
+				return new ErrorType(expr.left.posn);
+			}
+			if (!validateTypeEquivalence(BaseType.BOOLEAN_TYPE, rightType, expr.right.posn)) {
+				return new ErrorType(expr.right.posn);
+			}
+			resultType = new BaseType(TypeKind.BOOLEAN, "boolean", expr.posn);
+			break;
+
+		case PLUS:
+		case MINUS:
+		case ASTERISK:
+		case SLASH:
+			if (!validateTypeEquivalence(BaseType.INT_TYPE, leftType, expr.left.posn)) {
+				return new ErrorType(expr.left.posn);
+			}
+			if (!validateTypeEquivalence(BaseType.INT_TYPE, rightType, expr.right.posn)) {
+				return new ErrorType(expr.right.posn);
+			}
+			resultType = new BaseType(TypeKind.INT, "int", expr.posn);
+			break;
+
+		case LANGLE_EQUALTO:
+		case RANGLE_EQUALTO:
+		case LANGLE:
+		case RANGLE:
+			if (!validateTypeEquivalence(BaseType.INT_TYPE, leftType, expr.left.posn)) {
+				return new ErrorType(expr.left.posn);
+			}
+			if (!validateTypeEquivalence(BaseType.INT_TYPE, rightType, expr.right.posn)) {
+				return new ErrorType(expr.right.posn);
+			}
+			resultType = new BaseType(TypeKind.BOOLEAN, "boolean", expr.posn);
+			break;
+
+		default:
+			return null;
+		}
+
+		return resultType;
+	}
+
+	@Override
+	public Type visitRefExpr(RefExpr expr, IdentificationTable table) {
+		Type type = visit(expr.ref, table);
+		expr.ref = resolved;
+
+		return Utilities.handleUnsupportedType(type, table);
+	}
+
+	@Override
+	public Type visitCallExpr(CallExpr expr, IdentificationTable table) {
+		visit(expr.functionRef, table);
+		expr.functionRef = resolved;
+
+		return visitCall(expr.functionRef, expr.argList, table);
+	}
+
+	@Override
+	public Type visitLiteralExpr(LiteralExpr expr, IdentificationTable table) {
+		return expr.literal.visit(this, table);
+	}
+
+	@Override
+	public Type visitNewObjectExpr(NewObjectExpr expr, IdentificationTable table) {
+		expr.classtype.visit(this, table);
+
+		return Utilities.handleUnsupportedType(expr.classtype, table);
+	}
+
+	@Override
+	public Type visitNewArrayExpr(NewArrayExpr expr, IdentificationTable table) {
+		expr.eltType.visit(this, table);
+
+		// Size should be an integer
+		Type sizeExprType = visit(expr.sizeExpr, table);
+		if (sizeExprType.typeKind != TypeKind.INT) {
+			types().reportError("Type mismatch: Cannot convert from " + sizeExprType + " to int",
+					expr.sizeExpr.posn);
+			return new ErrorType(expr.sizeExpr.posn);
+		}
+
+		return new ArrayType(expr.eltType, expr.eltType.spelling, expr.eltType.posn);
+	}
+
+	/**
+	 * Links the identifiers of a QualifiedRef to their declarations
+	 */
+	private void identify(QualifiedRef qRef, IdentificationTable table) {
+		Identifier id;
+		boolean isThisRef = false;
+
+		if (qRef.thisRelative) {
+			if (currentMethod.isStatic) {
+				Utilities.reportError("Cannot use this in static context", qRef.posn);
+				return;
+			}
+
+			if (qRef.qualifierList.size() == 0) {
+				// Just the 'this' identifier, returning here because no more
+				// identification is required and it breaks the last check otherwise
+				return;
+			}
+
+			isThisRef = true;
+			id = new Identifier("this", qRef.posn);
+			id.declaration = currentClass;
+		} else {
+			id = qRef.qualifierList.get(0);
+
+			int scope = table.linkDeclaration(id);
+
+			if (scope == IdentificationTable.INVALID_SCOPE) {
+				Utilities.reportError("Undeclared identifier '" + id + "'", id.posn);
+				return;
+			}
+
+			// Non-static members from static method
+			if (scope == IdentificationTable.MEMBER_SCOPE && currentMethod.isStatic
+					&& !((MemberDecl) id.declaration).isStatic) {
+				Utilities.reportError("Non-static member " + id + " cannot be accessed from static method "
+						+ currentMethod.id, id.posn);
+				return;
+			}
+
+			// Handle int x = x + 2; case
+			if (id.declaration instanceof VarDecl && !((VarDecl) id.declaration).initialized) {
+				Utilities.reportError("Local variable " + id + " may not have been initialized", id.posn);
+			}
+		}
+
+		// Handle subsequent Identifiers in the QualifiedRef list
+		for (int i = (isThisRef) ? 0 : 1; i < qRef.qualifierList.size(); i++) {
+			boolean currentIdentifierIsThis = (i == 0);
+			// Identifiers indexed > 0 in the QualifiedRef list are always
+			// Members of Class. Get the parent to which the
+			// current Identifier is a member of.
+			Identifier parentID = id;
+
+			ClassDecl parentClassDecl;
+
+			if (parentID.declaration.type instanceof ClassType) {
+				ClassType parentClassType = (ClassType) parentID.declaration.type;
+				parentClassType.visit(this, table);
+				if (!(parentClassType.declaration instanceof ClassDecl)) {
+					Utilities.reportError(parentClassType.spelling + " is not a valid type", parentID.posn);
+					return;
+				}
+				parentClassDecl = parentClassType.declaration;
+			} else if (parentID.declaration.type instanceof ArrayType) {
+				ArrayType parentArrayType = (ArrayType) parentID.declaration.type;
+				parentArrayType.visit(this, table);
+				parentClassDecl = parentArrayType.declaration;
+			} else {
+				Utilities.reportError(parentID + " is not an instance or a class", parentID.posn);
+				return;
+			}
+
+			// Can we access private members?
+			boolean hasPrivateAccess = (parentClassDecl == currentClass);
+			// Are we accessing static members?
+			boolean isStaticReference = (parentID.declaration instanceof ClassDecl) && !currentIdentifierIsThis;
+
+			id = qRef.qualifierList.get(i);
+			id.declaration = parentClassDecl.getFieldDeclaration(id, hasPrivateAccess, isStaticReference);
+
+			if (id.declaration == null) {
+				if (i == qRef.qualifierList.size() - 1) {
+					// Could be a method if this is the last qualifier
+					id.declaration = parentClassDecl.getMethodDeclaration(id, hasPrivateAccess, isStaticReference);
+					if (id.declaration == null) {
+						Utilities.reportError(id + " is not a member of " + parentClassDecl.id, id.posn);
+						return;
+					}
+				} else {
+					Utilities.reportError(id + " is not a field of " + parentClassDecl.id, id.posn);
+					return;
+				}
+			}
+		}
+
+		if (id.declaration instanceof ClassDecl) {
+			Utilities.reportError(id + " cannot be resolved to a variable", id.posn);
+		}
+	}
+
+	/**
+	 * Builds the tree of references that replaces a QualifiedRef
+	 */
+	private Reference replace(QualifiedRef qRef) {
+		Reference newRef = null;
+		Identifier id;
+		boolean isThisRef = false;
+
+		if (qRef.thisRelative) {
+			newRef = new ThisRef(currentClass.id, currentClass.id.posn);
+			isThisRef = true;
+		} else {
+			id = qRef.qualifierList.get(0);
+
+			if (id.declaration instanceof ClassDecl) {
+				newRef = new ClassRef(id, id.posn);
+			} else if (id.declaration instanceof MemberDecl) {
+				newRef = new MemberRef(id, id.posn);
+			} else if (id.declaration instanceof LocalDecl || id.declaration instanceof ParameterDecl) {
+				newRef = new LocalRef(id, id.posn);
+			} else {
+				replaceErrors.reportError("Undeclared identifier '" + id + "'", id.posn);
+				return new BadRef(id, id.posn);
+			}
+		}
+
+		// Handle subsequent Identifiers in the QualifiedRef list
+		for (int i = (isThisRef) ? 0 : 1; i < qRef.qualifierList.size(); i++) {
+			id = qRef.qualifierList.get(i);
+
+			// Identification failed on id, so it's a bad reference
+			if (id.declaration == null) {
+				return new BadRef(id, id.posn);
+			}
+
+			newRef = new DeRef(newRef, new MemberRef(id, id.posn), qRef.posn);
+		}
+
+		return newRef;
+	}
+
+	@Override
+	public Type visitQualifiedRef(QualifiedRef qRef, IdentificationTable table) {
+		identify(qRef, table);
+		return visit(replace(qRef), table);
+	}
+
+	@Override
+	public Type visitIndexedRef(IndexedRef ref, IdentificationTable table) {
+		Type refType = visit(ref.ref, table);
+		ref.ref = resolved;
+		Type indexType = visit(ref.indexExpr, table);
+		resolved = ref;
+
+		// Index should be an integer
+		if (indexType.typeKind != TypeKind.INT) {
+			types().reportError("Type mismatch: Cannot convert from " + indexType + " to int", ref.indexExpr.posn);
+			return new ErrorType(ref.indexExpr.posn);
+		}
+
+		// Reference must be an array type
+		if (!(refType instanceof ArrayType)) {
+			types().reportError("The type of " + ref.ref + " must be an array type but it resolved to " + refType,
+					ref.ref.posn);
+			return new ErrorType(ref.posn);
+		}
+
+		return Utilities.handleUnsupportedType(((ArrayType) refType).eltType, table);
+	}
+
+	@Override
+	public Type visitIdentifier(Identifier id, IdentificationTable table) {
+		return Utilities.handleUnsupportedType(id.declaration.type, table);
+	}
+
+	@Override
+	public Type visitOperator(Operator op, IdentificationTable table) {
+		return null;
+	}
+
+	@Override
+	public Type visitIntLiteral(IntLiteral num, IdentificationTable table) {
+		return new BaseType(TypeKind.INT, "int", num.posn);
+	}
+
+	@Override
+	public Type visitBooleanLiteral(BooleanLiteral bool, IdentificationTable table) {
+		return new BaseType(TypeKind.BOOLEAN, "boolean", bool.posn);
+	}
+
+	@Override
+	public Type visitStringLiteral(StringLiteral str, IdentificationTable table) {
+		return IdentificationTable.STRING_DECL.type;
+	}
+
+	@Override
+	public Type visitThisRef(ThisRef ref, IdentificationTable table) {
+		resolved = ref;
+		return Utilities.handleUnsupportedType(ref.identifier.declaration.type, table);
+	}
+
+	@Override
+	public Type visitLocalRef(LocalRef ref, IdentificationTable table) {
+		resolved = ref;
+		return Utilities.handleUnsupportedType(ref.identifier.declaration.type, table);
+	}
+
+	@Override
+	public Type visitClassRef(ClassRef ref, IdentificationTable table) {
+		resolved = ref;
+		return Utilities.handleUnsupportedType(ref.identifier.declaration.type, table);
+	}
+
+	@Override
+	public Type visitDeRef(DeRef ref, IdentificationTable table) {
+		Type type = visit(ref.memberReference, table);
+		resolved = ref;
+		return type;
+	}
+
+	@Override
+	public Type visitMemberRef(MemberRef ref, IdentificationTable table) {
+		resolved = ref;
+		return Utilities.handleUnsupportedType(ref.identifier.declaration.type, table);
+	}
+
+	@Override
+	public Type visitBadRef(BadRef ref, IdentificationTable table) {
+		resolved = ref;
+		return new ErrorType(ref.posn);
+	}
+}
@@ -0,0 +1,197 @@
+package miniJava.ContextualAnalyzer;
+
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.AbstractSyntaxTrees.AssignStmt;
+import miniJava.AbstractSyntaxTrees.BinaryExpr;
+import miniJava.AbstractSyntaxTrees.BlockStmt;
+import miniJava.AbstractSyntaxTrees.CallExpr;
+import miniJava.AbstractSyntaxTrees.CallStmt;
+import miniJava.AbstractSyntaxTrees.IfStmt;
+import miniJava.AbstractSyntaxTrees.IndexedRef;
+import miniJava.AbstractSyntaxTrees.NewArrayExpr;
+import miniJava.AbstractSyntaxTrees.RefExpr;
+import miniJava.AbstractSyntaxTrees.Statement;
+import miniJava.AbstractSyntaxTrees.Traversal;
+import miniJava.AbstractSyntaxTrees.TypeKind;
+import miniJava.AbstractSyntaxTrees.UnaryExpr;
+import miniJava.AbstractSyntaxTrees.VarDeclStmt;
+import miniJava.AbstractSyntaxTrees.WhileStmt;
+
+/**
+ * Identifies the members of a program whose statements or expressions nest
+ * too deeply to be visited recursively, by visiting them with a Traversal
+ */
+public class ASTDeepIdentifyMembers extends ASTIdentifyMembers {
+	@Override
+	Void visit(AST node, IdentificationTable table) {
+		return walk.visit(node, table);
+	}
+
+	@Override
+	public Void visitBlockStmt(BlockStmt stmt, IdentificationTable table) {
+		switch (walk.step()) {
+		case 0:
+			// nested scope
+			table.openScope();
+
+			walk.pushAll(stmt.sl, table);
+			return null;
+
+		default:
+			table.closeScope();
+
+			return null;
+		}
+	}
+
+	@Override
+	public Void visitVardeclStmt(VarDeclStmt stmt, IdentificationTable table) {
+		if (walk.step() == 0) {
+			if (stmt.varDecl.type.typeKind == TypeKind.VOID)
+				Utilities.reportError("void is an invalid type for the variable " + stmt.varDecl.id.spelling,
+						stmt.varDecl.posn);
+
+			stmt.varDecl.type.visit(this, table);
+			stmt.varDecl.visit(this, table);
+
+			// Add the declaration of this identifier at this point
+			// Catches the A A = d; case
+
+			Utilities.addDeclaration(table, stmt.varDecl);
+			walk.push(stmt.initExp, table);
+			return null;
+		}
+		stmt.varDecl.initialized = true;
+
+		return null;
+	}
+
+	@Override
+	public Void visitAssignStmt(AssignStmt stmt, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(stmt.ref, table);
+			walk.push(stmt.val, table);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitCallStmt(CallStmt stmt, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(stmt.methodRef, table);
+			walk.pushAll(stmt.argList, table);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Visits a branch of an if or while statement in the next step, or
+	 * reports it if it is a lone variable declaration
+	 */
+	private void pushBranch(Statement branch, IdentificationTable table, String statement) {
+		if (branch instanceof VarDeclStmt) {
+			Utilities.reportError("Variable declaration cannot be the only statement in a " + statement,
+					branch.posn);
+		} else {
+			walk.push(branch, table);
+		}
+		walk.resume();
+	}
+
+	@Override
+	public Void visitIfStmt(IfStmt stmt, IdentificationTable table) {
+		switch (walk.step()) {
+		case 0:
+			walk.push(stmt.cond, table);
+			break;
+
+		case 1:
+			pushBranch(stmt.thenStmt, table, "conditional statement");
+			break;
+
+		case 2:
+			if (stmt.elseStmt != null)
+				pushBranch(stmt.elseStmt, table, "conditional statement");
+			break;
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(WhileStmt stmt, IdentificationTable table) {
+		switch (walk.step()) {
+		case 0:
+			walk.push(stmt.cond, table);
+			break;
+
+		case 1:
+			pushBranch(stmt.body, table, "while statement");
+			break;
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(UnaryExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			expr.operator.visit(this, table);
+			walk.push(expr.expr, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(BinaryExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			expr.operator.visit(this, table);
+			walk.push(expr.left, table);
+			walk.push(expr.right, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitRefExpr(RefExpr expr, IdentificationTable table) {
+		if (walk.step() == 0)
+			walk.push(expr.ref, table);
+
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(CallExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(expr.functionRef, table);
+			walk.pushAll(expr.argList, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitNewArrayExpr(NewArrayExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			expr.eltType.visit(this, table);
+			walk.push(expr.sizeExpr, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public Void visitIndexedRef(IndexedRef ref, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(ref.ref, table);
+			walk.push(ref.indexExpr, table);
+		}
+
+		return null;
+	}
+
+	private final Traversal<IdentificationTable, Void> walk = new Traversal<IdentificationTable, Void>(this);
+}
@@ -0,0 +1,173 @@
+package miniJava.ContextualAnalyzer;
+
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.AbstractSyntaxTrees.AssignStmt;
+import miniJava.AbstractSyntaxTrees.BinaryExpr;
+import miniJava.AbstractSyntaxTrees.BlockStmt;
+import miniJava.AbstractSyntaxTrees.CallExpr;
+import miniJava.AbstractSyntaxTrees.CallStmt;
+import miniJava.AbstractSyntaxTrees.IfStmt;
+import miniJava.AbstractSyntaxTrees.IndexedRef;
+import miniJava.AbstractSyntaxTrees.NewArrayExpr;
+import miniJava.AbstractSyntaxTrees.RefExpr;
+import miniJava.AbstractSyntaxTrees.Reference;
+import miniJava.AbstractSyntaxTrees.Traversal;
+import miniJava.AbstractSyntaxTrees.UnaryExpr;
+import miniJava.AbstractSyntaxTrees.VarDeclStmt;
+import miniJava.AbstractSyntaxTrees.WhileStmt;
+
+/**
+ * Replaces the QualifiedRefs of a program whose statements or expressions
+ * nest too deeply to be visited recursively, by visiting them with a
+ * Traversal
+ */
+public class ASTDeepReplaceReference extends ASTReplaceReference {
+	@Override
+	AST visit(AST node, IdentificationTable table) {
+		return walk.visit(node, table);
+	}
+
+	@Override
+	ASTIdentifyMembers newIdentifier() {
+		return new ASTDeepIdentifyMembers();
+	}
+
+	@Override
+	public AST visitBlockStmt(BlockStmt stmt, IdentificationTable table) {
+		switch (walk.step()) {
+		case 0:
+			// nested scope
+			table.openScope();
+
+			walk.pushAll(stmt.sl, table);
+			return null;
+
+		default:
+			table.closeScope();
+
+			return null;
+		}
+	}
+
+	@Override
+	public AST visitVardeclStmt(VarDeclStmt stmt, IdentificationTable table) {
+		if (walk.step() == 0) {
+			stmt.varDecl.visit(this, table);
+			walk.push(stmt.initExp, table);
+		}
+		return null;
+	}
+
+	@Override
+	public AST visitAssignStmt(AssignStmt stmt, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(stmt.ref, table);
+			walk.push(stmt.val, table);
+			return null;
+		}
+		stmt.ref = (Reference) walk.result(0);
+		return null;
+	}
+
+	@Override
+	public AST visitCallStmt(CallStmt stmt, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(stmt.methodRef, table);
+			walk.pushAll(stmt.argList, table);
+			return null;
+		}
+		stmt.methodRef = (Reference) walk.result(0);
+
+		return null;
+	}
+
+	@Override
+	public AST visitIfStmt(IfStmt stmt, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(stmt.cond, table);
+			walk.push(stmt.thenStmt, table);
+			if (stmt.elseStmt != null)
+				walk.push(stmt.elseStmt, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public AST visitWhileStmt(WhileStmt stmt, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(stmt.cond, table);
+			walk.push(stmt.body, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public AST visitUnaryExpr(UnaryExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			expr.operator.visit(this, table);
+			walk.push(expr.expr, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public AST visitBinaryExpr(BinaryExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			expr.operator.visit(this, table);
+			walk.push(expr.left, table);
+			walk.push(expr.right, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public AST visitRefExpr(RefExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(expr.ref, table);
+			return null;
+		}
+		expr.ref = (Reference) walk.result(0);
+
+		return null;
+	}
+
+	@Override
+	public AST visitCallExpr(CallExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(expr.functionRef, table);
+			walk.pushAll(expr.argList, table);
+			return null;
+		}
+		expr.functionRef = (Reference) walk.result(0);
+
+		return null;
+	}
+
+	@Override
+	public AST visitNewArrayExpr(NewArrayExpr expr, IdentificationTable table) {
+		if (walk.step() == 0) {
+			expr.eltType.visit(this, table);
+			walk.push(expr.sizeExpr, table);
+		}
+
+		return null;
+	}
+
+	@Override
+	public AST visitIndexedRef(IndexedRef ref, IdentificationTable table) {
+		if (walk.step() == 0) {
+			walk.push(ref.ref, table);
+			walk.push(ref.indexExpr, table);
+			return null;
+		}
+		ref.ref = (Reference) walk.result(0);
+
+		return ref;
+	}
+
+	private final Traversal<IdentificationTable, AST> walk = new Traversal<IdentificationTable, AST>(this);
+}
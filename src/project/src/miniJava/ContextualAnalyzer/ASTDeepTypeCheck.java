@@ -0,0 +1,254 @@
+package miniJava.ContextualAnalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.AbstractSyntaxTrees.AST;
+import miniJava.AbstractSyntaxTrees.ArrayType;
+import miniJava.AbstractSyntaxTrees.AssignStmt;
+import miniJava.AbstractSyntaxTrees.BaseType;
+import miniJava.AbstractSyntaxTrees.BinaryExpr;
+import miniJava.AbstractSyntaxTrees.BlockStmt;
+import miniJava.AbstractSyntaxTrees.CallExpr;
+import miniJava.AbstractSyntaxTrees.CallStmt;
+import miniJava.AbstractSyntaxTrees.Declaration;
+import miniJava.AbstractSyntaxTrees.ErrorType;
+import miniJava.AbstractSyntaxTrees.ExprList;
+import miniJava.AbstractSyntaxTrees.FieldDecl;
+import miniJava.AbstractSyntaxTrees.IfStmt;
+import miniJava.AbstractSyntaxTrees.IndexedRef;
+import miniJava.AbstractSyntaxTrees.LocalDecl;
+import miniJava.AbstractSyntaxTrees.NewArrayExpr;
+import miniJava.AbstractSyntaxTrees.OverloadedMethodDecl;
+import miniJava.AbstractSyntaxTrees.RefExpr;
+import miniJava.AbstractSyntaxTrees.Reference;
+import miniJava.AbstractSyntaxTrees.StatementType;
+import miniJava.AbstractSyntaxTrees.Traversal;
+import miniJava.AbstractSyntaxTrees.Type;
+import miniJava.AbstractSyntaxTrees.TypeKind;
+import miniJava.AbstractSyntaxTrees.UnaryExpr;
+import miniJava.AbstractSyntaxTrees.VarDeclStmt;
+import miniJava.AbstractSyntaxTrees.WhileStmt;
+
+/**
+ * Type checks a program whose statements or expressions nest too deeply to
+ * be visited recursively, by visiting them with a Traversal
+ */
+public class ASTDeepTypeCheck extends ASTTypeCheck {
+	public ASTDeepTypeCheck(IdentificationTable table) {
+		super(table);
+	}
+
+	@Override
+	Type visit(AST node, Type arg) {
+		return walk.visit(node, arg);
+	}
+
+	@Override
+	ASTTypeCheck taskChecker() {
+		// a checker of its own, as a traversal is not shared
+		return new ASTDeepTypeCheck(table);
+	}
+
+	@Override
+	public Type visitBlockStmt(BlockStmt stmt, Type arg) {
+		if (walk.step() == 0)
+			walk.pushAll(stmt.sl, null);
+
+		return null;
+	}
+
+	@Override
+	public Type visitVardeclStmt(VarDeclStmt stmt, Type arg) {
+		if (stmt.initExp != null) {
+			if (walk.step() == 0) {
+				walk.push(stmt.initExp, null);
+				return null;
+			}
+			Type expType = walk.result(0);
+			Utilities.validateTypeEquivalence(stmt.varDecl.type, expType, stmt.posn);
+		}
+		return null;
+	}
+
+	@Override
+	public Type visitAssignStmt(AssignStmt stmt, Type arg) {
+		switch (walk.step()) {
+		case 0:
+			walk.push(stmt.ref, null);
+			return null;
+
+		case 1:
+			Declaration lhs = stmt.ref.getDeclaration();
+			if (!(lhs instanceof FieldDecl || lhs instanceof LocalDecl)) {
+				Utilities.reportError(stmt.ref + " cannot be resolved to a variable", stmt.posn);
+			}
+
+			walk.push(stmt.val, null);
+			return null;
+
+		default:
+			Type refType = walk.result(0);
+			Type valType = walk.result(1);
+			Utilities.validateTypeEquivalence(refType, valType, stmt.posn);
+
+			return null;
+		}
+	}
+
+	@Override
+	public Type visitIfStmt(IfStmt stmt, Type arg) {
+		switch (walk.step()) {
+		case 0:
+			walk.push(stmt.cond, null);
+			return null;
+
+		case 1:
+			Type conditionType = walk.result(0);
+			if (!Utilities.getTypeEquivalence(conditionType, BaseType.BOOLEAN_TYPE)) {
+				Utilities.reportError("Type mismatch: Cannot convert " + conditionType + " to boolean",
+						stmt.cond.posn);
+				return new ErrorType(stmt.cond.posn);
+			}
+			walk.push(stmt.thenStmt, null);
+			if (stmt.elseStmt != null)
+				walk.push(stmt.elseStmt, null);
+			return null;
+
+		default:
+			return new StatementType(stmt.toString(), stmt.posn);
+		}
+	}
+
+	@Override
+	public Type visitWhileStmt(WhileStmt stmt, Type arg) {
+		switch (walk.step()) {
+		case 0:
+			walk.push(stmt.cond, null);
+			return null;
+
+		case 1:
+			if (walk.result(0).typeKind != TypeKind.BOOLEAN) {
+				Utilities.reportError("Type mismatch: Cannot convert " + stmt.cond + " to boolean", stmt.cond.posn);
+				return new ErrorType(stmt.cond.posn);
+			}
+			walk.push(stmt.body, null);
+			return null;
+
+		default:
+			return new StatementType(stmt.toString(), stmt.posn);
+		}
+	}
+
+	@Override
+	public Type visitUnaryExpr(UnaryExpr expr, Type arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.expr, null);
+			return null;
+		}
+		return walk.result(0);
+	}
+
+	@Override
+	public Type visitBinaryExpr(BinaryExpr expr, Type arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.left, null);
+			walk.push(expr.right, null);
+			return null;
+		}
+
+		Type leftType = walk.result(0);
+		Type rightType = walk.result(1);
+		return checkOperands(expr, leftType, rightType);
+	}
+
+	@Override
+	public Type visitRefExpr(RefExpr expr, Type arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.ref, null);
+			return null;
+		}
+		return Utilities.handleUnsupportedType(walk.result(0), table);
+	}
+
+	private Type validateMethodReference(Reference methodRef, ExprList argList) {
+		Declaration decl = methodRef.getDeclaration();
+
+		if (walk.step() == 0) {
+			if (!(decl instanceof OverloadedMethodDecl)) {
+				Utilities.reportError("Method " + methodRef + " is undefined", methodRef.posn);
+				return new ErrorType(methodRef.posn);
+			}
+
+			walk.pushAll(argList, null);
+			return null;
+		}
+
+		List<Type> argTypes = new ArrayList<Type>();
+		for (int i = 0; i < walk.resultCount(); i++) {
+			argTypes.add(walk.result(i));
+		}
+
+		return validateArguments(methodRef, argTypes);
+	}
+
+	@Override
+	public Type visitCallStmt(CallStmt stmt, Type arg) {
+		return validateMethodReference(stmt.methodRef, stmt.argList);
+	}
+
+	@Override
+	public Type visitCallExpr(CallExpr expr, Type arg) {
+		return validateMethodReference(expr.functionRef, expr.argList);
+	}
+
+	@Override
+	public Type visitNewArrayExpr(NewArrayExpr expr, Type arg) {
+		if (walk.step() == 0) {
+			walk.push(expr.sizeExpr, null);
+			return null;
+		}
+
+		// Size should be an integer
+		Type sizeExprType = walk.result(0);
+		if (sizeExprType.typeKind != TypeKind.INT) {
+			Utilities.reportError("Type mismatch: Cannot convert from " + sizeExprType + " to int", expr.sizeExpr.posn);
+			return new ErrorType(expr.sizeExpr.posn);
+		}
+
+		return new ArrayType(expr.eltType, expr.eltType.spelling, expr.eltType.posn);
+	}
+
+	@Override
+	public Type visitIndexedRef(IndexedRef ref, Type arg) {
+		switch (walk.step()) {
+		case 0:
+			walk.push(ref.indexExpr, null);
+			return null;
+
+		case 1:
+			// Index should be an integer
+			Type indexType = walk.result(0);
+			if (indexType.typeKind != TypeKind.INT) {
+				Utilities.reportError("Type mismatch: Cannot convert from " + indexType + " to int",
+						ref.indexExpr.posn);
+				return new ErrorType(ref.indexExpr.posn);
+			}
+
+			walk.push(ref.ref, null);
+			return null;
+		}
+
+		// Reference must be an array type
+		Type refType = walk.result(1);
+		if (!(refType instanceof ArrayType)) {
+			Utilities.reportError("The type of " + ref.ref + " must be an array type but it resolved to " + refType,
+					ref.ref.posn);
+			return new ErrorType(ref.posn);
+		}
+
+		return Utilities.handleUnsupportedType(((ArrayType) refType).eltType, table);
+	}
+
+	private final Traversal<Type, Type> walk = new Traversal<Type, Type>(this);
+}
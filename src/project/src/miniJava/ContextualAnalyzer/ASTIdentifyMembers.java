@@ -46,6 +46,7 @@ import miniJava.AbstractSyntaxTrees.VarDecl;
 import miniJava.AbstractSyntaxTrees.VarDeclStmt;
 import miniJava.AbstractSyntaxTrees.Visitor;
 import miniJava.AbstractSyntaxTrees.WhileStmt;
+import miniJava.PhaseProfiler;
 
 public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 	/**
@@ -60,6 +61,16 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 		return table;
 	}
 
+	/**
+	 * Visits a statement or expression, counting the visit if the phases
+	 * are profiled. ASTDeepIdentifyMembers visits them without recursing.
+	 */
+	Void visit(AST node, IdentificationTable table) {
+		if (profiler != null)
+			profiler.nodesVisited(1);
+		return node.visit(this, table);
+	}
+
 	/**
 	 * When visiting a package, we just add the class declarations to the table,
 	 * check for the main method and exit. The member declarations are *NOT*
@@ -149,10 +160,10 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 		table.openScope();
 
 		for (Statement st : md.statementList)
-			st.visit(this, table);
+			visit(st, table);
 
 		if (md.returnExp != null)
-			md.returnExp.visit(this, table);
+			visit(md.returnExp, table);
 
 		table.closeScope();
 
@@ -227,7 +238,7 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 		table.openScope();
 
 		for (Statement s : stmt.sl)
-			s.visit(this, table);
+			visit(s, table);
 
 		table.closeScope();
 
@@ -247,7 +258,7 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 		// Catches the A A = d; case
 
 		Utilities.addDeclaration(table, stmt.varDecl);
-		stmt.initExp.visit(this, table);
+		visit(stmt.initExp, table);
 		stmt.varDecl.initialized = true;
 
 		return null;
@@ -255,28 +266,28 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 
 	@Override
 	public Void visitAssignStmt(AssignStmt stmt, IdentificationTable table) {
-		stmt.ref.visit(this, table);
-		stmt.val.visit(this, table);
+		visit(stmt.ref, table);
+		visit(stmt.val, table);
 		return null;
 	}
 
 	@Override
 	public Void visitCallStmt(CallStmt stmt, IdentificationTable table) {
-		stmt.methodRef.visit(this, table);
+		visit(stmt.methodRef, table);
 		for (Expression e : stmt.argList)
-			e.visit(this, table);
+			visit(e, table);
 
 		return null;
 	}
 
 	@Override
 	public Void visitIfStmt(IfStmt stmt, IdentificationTable table) {
-		stmt.cond.visit(this, table);
+		visit(stmt.cond, table);
 		if (stmt.thenStmt instanceof VarDeclStmt) {
 			Utilities.reportError("Variable declaration cannot be the only statement in a conditional statement",
 					stmt.thenStmt.posn);
 		} else {
-			stmt.thenStmt.visit(this, table);
+			visit(stmt.thenStmt, table);
 		}
 
 		if (stmt.elseStmt != null) {
@@ -284,7 +295,7 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 				Utilities.reportError("Variable declaration cannot be the only statement in a conditional statement",
 						stmt.elseStmt.posn);
 			} else {
-				stmt.elseStmt.visit(this, table);
+				visit(stmt.elseStmt, table);
 			}
 		}
 
@@ -293,13 +304,13 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 
 	@Override
 	public Void visitWhileStmt(WhileStmt stmt, IdentificationTable table) {
-		stmt.cond.visit(this, table);
+		visit(stmt.cond, table);
 
 		if (stmt.body instanceof VarDeclStmt) {
 			Utilities.reportError("Variable declaration cannot be the only statement in a while statement",
 					stmt.body.posn);
 		} else {
-			stmt.body.visit(this, table);
+			visit(stmt.body, table);
 		}
 
 		return null;
@@ -308,7 +319,7 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 	@Override
 	public Void visitUnaryExpr(UnaryExpr expr, IdentificationTable table) {
 		expr.operator.visit(this, table);
-		expr.expr.visit(this, table);
+		visit(expr.expr, table);
 
 		return null;
 	}
@@ -316,24 +327,24 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 	@Override
 	public Void visitBinaryExpr(BinaryExpr expr, IdentificationTable table) {
 		expr.operator.visit(this, table);
-		expr.left.visit(this, table);
-		expr.right.visit(this, table);
+		visit(expr.left, table);
+		visit(expr.right, table);
 
 		return null;
 	}
 
 	@Override
 	public Void visitRefExpr(RefExpr expr, IdentificationTable table) {
-		expr.ref.visit(this, table);
+		visit(expr.ref, table);
 
 		return null;
 	}
 
 	@Override
 	public Void visitCallExpr(CallExpr expr, IdentificationTable table) {
-		expr.functionRef.visit(this, table);
+		visit(expr.functionRef, table);
 		for (Expression e : expr.argList) {
-			e.visit(this, table);
+			visit(e, table);
 		}
 
 		return null;
@@ -354,7 +365,7 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 	@Override
 	public Void visitNewArrayExpr(NewArrayExpr expr, IdentificationTable table) {
 		expr.eltType.visit(this, table);
-		expr.sizeExpr.visit(this, table);
+		visit(expr.sizeExpr, table);
 
 		return null;
 	}
@@ -464,8 +475,8 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 
 	@Override
 	public Void visitIndexedRef(IndexedRef ref, IdentificationTable table) {
-		ref.ref.visit(this, table);
-		ref.indexExpr.visit(this, table);
+		visit(ref.ref, table);
+		visit(ref.indexExpr, table);
 
 		return null;
 	}
@@ -527,4 +538,6 @@ public class ASTIdentifyMembers implements Visitor<IdentificationTable, Void> {
 
 	public ClassDecl currentClass;
 	public MethodDecl currentMethod;
+
+	private final PhaseProfiler profiler = PhaseProfiler.current();
 }
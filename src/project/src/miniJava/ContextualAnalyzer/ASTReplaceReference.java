@@ -46,11 +46,31 @@ import miniJava.AbstractSyntaxTrees.VarDecl;
 import miniJava.AbstractSyntaxTrees.VarDeclStmt;
 import miniJava.AbstractSyntaxTrees.Visitor;
 import miniJava.AbstractSyntaxTrees.WhileStmt;
+import miniJava.PhaseProfiler;
 
 /**
  * Replaces QualifiedReference with a proper tree of references
  */
 public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
+	/**
+	 * Visits a statement or expression, counting the visit if the phases
+	 * are profiled. ASTDeepReplaceReference visits them without recursing.
+	 * 
+	 * @return the replacement, if the node is a reference
+	 */
+	AST visit(AST node, IdentificationTable table) {
+		if (profiler != null)
+			profiler.nodesVisited(1);
+		return node.visit(this, table);
+	}
+
+	/**
+	 * @return the visitor that identifies the members of a class
+	 */
+	ASTIdentifyMembers newIdentifier() {
+		return new ASTIdentifyMembers();
+	}
+
 	@Override
 	public AST visitPackage(Package prog, IdentificationTable table) {
 		for (ClassDecl cd : prog.classDeclList)
@@ -64,7 +84,7 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 		currentClass = cd;
 
 		// Populate the identification table with the members of this class
-		ASTIdentifyMembers identify = new ASTIdentifyMembers();
+		ASTIdentifyMembers identify = newIdentifier();
 		cd.visit(identify, table);
 
 		for (FieldDecl fd : cd.fieldDeclList)
@@ -103,10 +123,10 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 		table.openScope();
 
 		for (Statement st : md.statementList)
-			st.visit(this, table);
+			visit(st, table);
 
 		if (md.returnExp != null)
-			md.returnExp.visit(this, table);
+			visit(md.returnExp, table);
 
 		table.closeScope();
 
@@ -163,7 +183,7 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 		table.openScope();
 
 		for (Statement s : stmt.sl)
-			s.visit(this, table);
+			visit(s, table);
 
 		table.closeScope();
 
@@ -173,40 +193,40 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 	@Override
 	public AST visitVardeclStmt(VarDeclStmt stmt, IdentificationTable table) {
 		stmt.varDecl.visit(this, table);
-		stmt.initExp.visit(this, table);
+		visit(stmt.initExp, table);
 		return null;
 	}
 
 	@Override
 	public AST visitAssignStmt(AssignStmt stmt, IdentificationTable table) {
-		stmt.ref = (Reference) stmt.ref.visit(this, table);
-		stmt.val.visit(this, table);
+		stmt.ref = (Reference) visit(stmt.ref, table);
+		visit(stmt.val, table);
 		return null;
 	}
 
 	@Override
 	public AST visitCallStmt(CallStmt stmt, IdentificationTable table) {
-		stmt.methodRef = (Reference) stmt.methodRef.visit(this, table);
+		stmt.methodRef = (Reference) visit(stmt.methodRef, table);
 		for (Expression e : stmt.argList)
-			e.visit(this, table);
+			visit(e, table);
 
 		return null;
 	}
 
 	@Override
 	public AST visitIfStmt(IfStmt stmt, IdentificationTable table) {
-		stmt.cond.visit(this, table);
-		stmt.thenStmt.visit(this, table);
+		visit(stmt.cond, table);
+		visit(stmt.thenStmt, table);
 		if (stmt.elseStmt != null)
-			stmt.elseStmt.visit(this, table);
+			visit(stmt.elseStmt, table);
 
 		return null;
 	}
 
 	@Override
 	public AST visitWhileStmt(WhileStmt stmt, IdentificationTable table) {
-		stmt.cond.visit(this, table);
-		stmt.body.visit(this, table);
+		visit(stmt.cond, table);
+		visit(stmt.body, table);
 
 		return null;
 	}
@@ -214,7 +234,7 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 	@Override
 	public AST visitUnaryExpr(UnaryExpr expr, IdentificationTable table) {
 		expr.operator.visit(this, table);
-		expr.expr.visit(this, table);
+		visit(expr.expr, table);
 
 		return null;
 	}
@@ -222,24 +242,24 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 	@Override
 	public AST visitBinaryExpr(BinaryExpr expr, IdentificationTable table) {
 		expr.operator.visit(this, table);
-		expr.left.visit(this, table);
-		expr.right.visit(this, table);
+		visit(expr.left, table);
+		visit(expr.right, table);
 
 		return null;
 	}
 
 	@Override
 	public AST visitRefExpr(RefExpr expr, IdentificationTable table) {
-		expr.ref = (Reference) expr.ref.visit(this, table);
+		expr.ref = (Reference) visit(expr.ref, table);
 
 		return null;
 	}
 
 	@Override
 	public AST visitCallExpr(CallExpr expr, IdentificationTable table) {
-		expr.functionRef = (Reference) expr.functionRef.visit(this, table);
+		expr.functionRef = (Reference) visit(expr.functionRef, table);
 		for (Expression e : expr.argList)
-			e.visit(this, table);
+			visit(e, table);
 
 		return null;
 	}
@@ -260,7 +280,7 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 	@Override
 	public AST visitNewArrayExpr(NewArrayExpr expr, IdentificationTable table) {
 		expr.eltType.visit(this, table);
-		expr.sizeExpr.visit(this, table);
+		visit(expr.sizeExpr, table);
 
 		return null;
 	}
@@ -306,8 +326,8 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 
 	@Override
 	public AST visitIndexedRef(IndexedRef ref, IdentificationTable table) {
-		ref.ref = (Reference) ref.ref.visit(this, table);
-		ref.indexExpr.visit(this, table);
+		ref.ref = (Reference) visit(ref.ref, table);
+		visit(ref.indexExpr, table);
 
 		return ref;
 	}
@@ -368,4 +388,6 @@ public class ASTReplaceReference implements Visitor<IdentificationTable, AST> {
 	}
 
 	public ClassDecl currentClass;
+
+	private final PhaseProfiler profiler = PhaseProfiler.current();
 }
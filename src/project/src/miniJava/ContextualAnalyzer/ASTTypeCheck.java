@@ -3,7 +3,10 @@ package miniJava.ContextualAnalyzer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import miniJava.AbstractSyntaxTrees.AST;
 import miniJava.AbstractSyntaxTrees.ArrayType;
 import miniJava.AbstractSyntaxTrees.AssignStmt;
 import miniJava.AbstractSyntaxTrees.BadRef;
@@ -52,20 +55,123 @@ import miniJava.AbstractSyntaxTrees.VarDecl;
 import miniJava.AbstractSyntaxTrees.VarDeclStmt;
 import miniJava.AbstractSyntaxTrees.Visitor;
 import miniJava.AbstractSyntaxTrees.WhileStmt;
+import miniJava.Diagnostics;
+import miniJava.PhaseProfiler;
 
 public class ASTTypeCheck implements Visitor<Type, Type> {
 	// Table containing predefined and class level declarations
 	IdentificationTable table;
 
+	private final PhaseProfiler profiler = PhaseProfiler.current();
+
 	public ASTTypeCheck(IdentificationTable table) {
 		this.table = table;
 	}
 
 	public MethodDecl typeCheck(Package prog) {
-		MethodDecl mainMethod = null;
-
 		visitPackage(prog, null);
 
+		return checkMainMethod(prog);
+	}
+
+	/**
+	 * Visits a statement or expression, counting the visit if the phases
+	 * are profiled. ASTDeepTypeCheck visits them without recursing.
+	 * 
+	 * @return its type
+	 */
+	Type visit(AST node, Type arg) {
+		if (profiler != null)
+			profiler.nodesVisited(1);
+		return node.visit(this, arg);
+	}
+
+	/**
+	 * @return the checker a CheckMethods task checks its methods with, which
+	 *         can be this one as it keeps no state of its own
+	 */
+	ASTTypeCheck taskChecker() {
+		return this;
+	}
+
+	/**
+	 * Type checks the program like typeCheck(prog), with the methods checked
+	 * in parallel. Once the members of all classes are identified the method
+	 * bodies can be checked independently, so each overloaded method is
+	 * checked in a task of its own, which collects its errors apart. The
+	 * errors are then reported in source order, as typeCheck(prog) reports
+	 * them.
+	 * 
+	 * @param pool
+	 *            runs the tasks
+	 */
+	public MethodDecl typeCheck(Package prog, ForkJoinPool pool) {
+		List<OverloadedMethodDecl> methods = new ArrayList<OverloadedMethodDecl>();
+		for (ClassDecl cd : prog.classDeclList) {
+			for (OverloadedMethodDecl omd : cd.methodDeclList)
+				methods.add(omd);
+		}
+
+		Diagnostics[] errors = new Diagnostics[methods.size()];
+		pool.invoke(new CheckMethods(methods, errors, PhaseProfiler.current(), 0, methods.size()));
+
+		Diagnostics diagnostics = Diagnostics.current();
+		for (Diagnostics d : errors) {
+			for (String error : d.getErrors())
+				diagnostics.report(error);
+		}
+
+		return checkMainMethod(prog);
+	}
+
+	/**
+	 * Checks a range of overloaded methods, splitting it until each task
+	 * checks one
+	 */
+	private class CheckMethods extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<OverloadedMethodDecl> methods;
+		private final Diagnostics[] errors;
+		// counts the nodes visited in the tasks, as in the calling thread
+		private final PhaseProfiler profiler;
+		private final int start, end;
+
+		CheckMethods(List<OverloadedMethodDecl> methods, Diagnostics[] errors, PhaseProfiler profiler, int start,
+				int end) {
+			this.methods = methods;
+			this.errors = errors;
+			this.profiler = profiler;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new CheckMethods(methods, errors, profiler, start, middle), new CheckMethods(methods,
+						errors, profiler, middle, end));
+				return;
+			}
+			if (end == start)
+				return;
+
+			errors[start] = new Diagnostics(false);
+			Diagnostics previous = Diagnostics.bind(errors[start]);
+			PhaseProfiler previousProfiler = PhaseProfiler.bind(profiler);
+			try {
+				methods.get(start).visit(taskChecker(), null);
+			} finally {
+				Diagnostics.bind(previous);
+				PhaseProfiler.bind(previousProfiler);
+			}
+		}
+	}
+
+	private MethodDecl checkMainMethod(Package prog) {
+		MethodDecl mainMethod = null;
+
 		// The only static method allowed is
 		// public static void main(String[])
 		for (ClassDecl cd : prog.classDeclList) {
@@ -150,9 +256,9 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 			pd.visit(this, null);
 
 		for (Statement s : md.statementList)
-			s.visit(this, null);
+			visit(s, null);
 
-		Type returnType = (md.returnExp == null) ? BaseType.VOID_TYPE : md.returnExp.visit(this, null);
+		Type returnType = (md.returnExp == null) ? BaseType.VOID_TYPE : visit(md.returnExp, null);
 
 		if (!Utilities.getTypeEquivalence(returnType, md.type)) {
 			Utilities.reportError("Method " + md.id.spelling + " must return a result of type " + md.type, md.posn);
@@ -205,7 +311,7 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 	public Type visitBlockStmt(BlockStmt stmt, Type arg) {
 		Iterator<Statement> it = stmt.sl.iterator();
 		while (it.hasNext())
-			it.next().visit(this, null);
+			visit(it.next(), null);
 
 		return null;
 	}
@@ -213,7 +319,7 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 	@Override
 	public Type visitVardeclStmt(VarDeclStmt stmt, Type arg) {
 		if (stmt.initExp != null) {
-			Type expType = stmt.initExp.visit(this, null);
+			Type expType = visit(stmt.initExp, null);
 			Utilities.validateTypeEquivalence(stmt.varDecl.type, expType, stmt.posn);
 		}
 		return null;
@@ -221,14 +327,14 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 
 	@Override
 	public Type visitAssignStmt(AssignStmt stmt, Type arg) {
-		Type refType = stmt.ref.visit(this, null);
+		Type refType = visit(stmt.ref, null);
 
 		Declaration lhs = stmt.ref.getDeclaration();
 		if (!(lhs instanceof FieldDecl || lhs instanceof LocalDecl)) {
 			Utilities.reportError(stmt.ref + " cannot be resolved to a variable", stmt.posn);
 		}
 
-		Type valType = stmt.val.visit(this, null);
+		Type valType = visit(stmt.val, null);
 		Utilities.validateTypeEquivalence(refType, valType, stmt.posn);
 
 		return null;
@@ -236,38 +342,45 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 
 	@Override
 	public Type visitIfStmt(IfStmt stmt, Type arg) {
-		Type conditionType = stmt.cond.visit(this, null);
+		Type conditionType = visit(stmt.cond, null);
 		if (!Utilities.getTypeEquivalence(conditionType, BaseType.BOOLEAN_TYPE)) {
 			Utilities.reportError("Type mismatch: Cannot convert " + conditionType + " to boolean", stmt.cond.posn);
 			return new ErrorType(stmt.cond.posn);
 		}
-		stmt.thenStmt.visit(this, null);
+		visit(stmt.thenStmt, null);
 		if (stmt.elseStmt != null)
-			stmt.elseStmt.visit(this, null);
+			visit(stmt.elseStmt, null);
 		return new StatementType(stmt.toString(), stmt.posn);
 	}
 
 	@Override
 	public Type visitWhileStmt(WhileStmt stmt, Type arg) {
-		if (stmt.cond.visit(this, null).typeKind != TypeKind.BOOLEAN) {
+		if (visit(stmt.cond, null).typeKind != TypeKind.BOOLEAN) {
 			Utilities.reportError("Type mismatch: Cannot convert " + stmt.cond + " to boolean", stmt.cond.posn);
 			return new ErrorType(stmt.cond.posn);
 		}
-		stmt.body.visit(this, null);
+		visit(stmt.body, null);
 
 		return new StatementType(stmt.toString(), stmt.posn);
 	}
 
 	@Override
 	public Type visitUnaryExpr(UnaryExpr expr, Type arg) {
-		return expr.expr.visit(this, null);
+		return visit(expr.expr, null);
 	}
 
 	@Override
 	public Type visitBinaryExpr(BinaryExpr expr, Type arg) {
 
-		Type leftType = expr.left.visit(this, null);
-		Type rightType = expr.right.visit(this, null);
+		Type leftType = visit(expr.left, null);
+		Type rightType = visit(expr.right, null);
+		return checkOperands(expr, leftType, rightType);
+	}
+
+	/**
+	 * @return the type of a binary expression with operands of these types
+	 */
+	Type checkOperands(BinaryExpr expr, Type leftType, Type rightType) {
 		Type resultType = null;
 
 		switch (expr.operator.operatorType) {
@@ -328,7 +441,7 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 
 	@Override
 	public Type visitRefExpr(RefExpr expr, Type arg) {
-		return Utilities.handleUnsupportedType(expr.ref.visit(this, null), table);
+		return Utilities.handleUnsupportedType(visit(expr.ref, null), table);
 	}
 
 	private Type validateMethodReference(Reference methodRef, ExprList argList) {
@@ -341,9 +454,18 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 
 		List<Type> argTypes = new ArrayList<Type>();
 		for (Expression e : argList) {
-			argTypes.add(e.visit(this, null));
+			argTypes.add(visit(e, null));
 		}
 
+		return validateArguments(methodRef, argTypes);
+	}
+
+	/**
+	 * @return the type of a call of the overloaded method methodRef refers
+	 *         to, with arguments of these types
+	 */
+	Type validateArguments(Reference methodRef, List<Type> argTypes) {
+		Declaration decl = methodRef.getDeclaration();
 		MethodDecl methodDecl = ((OverloadedMethodDecl) decl).getMatchingMethodDecl(argTypes);
 
 		if (methodDecl == null) {
@@ -386,7 +508,7 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 	@Override
 	public Type visitNewArrayExpr(NewArrayExpr expr, Type arg) {
 		// Size should be an integer
-		Type sizeExprType = expr.sizeExpr.visit(this, null);
+		Type sizeExprType = visit(expr.sizeExpr, null);
 		if (sizeExprType.typeKind != TypeKind.INT) {
 			Utilities.reportError("Type mismatch: Cannot convert from " + sizeExprType + " to int", expr.sizeExpr.posn);
 			return new ErrorType(expr.sizeExpr.posn);
@@ -405,14 +527,14 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 	@Override
 	public Type visitIndexedRef(IndexedRef ref, Type arg) {
 		// Index should be an integer
-		Type indexType = ref.indexExpr.visit(this, null);
+		Type indexType = visit(ref.indexExpr, null);
 		if (indexType.typeKind != TypeKind.INT) {
 			Utilities.reportError("Type mismatch: Cannot convert from " + indexType + " to int", ref.indexExpr.posn);
 			return new ErrorType(ref.indexExpr.posn);
 		}
 
 		// Reference must be an array type
-		Type refType = ref.ref.visit(this, null);
+		Type refType = visit(ref.ref, null);
 		if (!(refType instanceof ArrayType)) {
 			Utilities.reportError("The type of " + ref.ref + " must be an array type but it resolved to " + refType,
 					ref.ref.posn);
@@ -464,7 +586,7 @@ public class ASTTypeCheck implements Visitor<Type, Type> {
 
 	@Override
 	public Type visitDeRef(DeRef ref, Type arg) {
-		return ref.memberReference.visit(this, null);
+		return visit(ref.memberReference, null);
 	}
 
 	@Override
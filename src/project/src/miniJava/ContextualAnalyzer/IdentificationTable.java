@@ -1,9 +1,8 @@
 package miniJava.ContextualAnalyzer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 
 import miniJava.AbstractSyntaxTrees.BaseType;
 import miniJava.AbstractSyntaxTrees.ClassDecl;
@@ -16,11 +15,18 @@ import miniJava.AbstractSyntaxTrees.MethodDecl;
 import miniJava.AbstractSyntaxTrees.MethodDeclList;
 import miniJava.AbstractSyntaxTrees.ParameterDecl;
 import miniJava.AbstractSyntaxTrees.ParameterDeclList;
+import miniJava.AbstractSyntaxTrees.Type;
 import miniJava.SyntacticAnalyzer.SyntaxErrorException;
 
 /**
  * A data-structure for managing identifiers in scope. Scoping rules of miniJava
  * are implemented by methods of this class.
+ *
+ * All scopes share one map from each name to its innermost declaration, which
+ * links to the declarations of the name it hides, so a name is resolved with
+ * one lookup however deeply the scopes are nested. The names declared in each
+ * scope are logged, so that closing a scope puts back what its declarations
+ * hid.
  */
 public class IdentificationTable {
 	public static final int PREDEFINED_SCOPE = 0, CLASS_SCOPE = 1, MEMBER_SCOPE = 2, PARAMETER_SCOPE = 3,
@@ -37,10 +43,45 @@ public class IdentificationTable {
 	public static final ClassDecl STRING_DECL = new ClassDecl(new Identifier("String", null), new FieldDeclList(),
 			new MethodDeclList(), null);
 
-	public static MethodDecl PRINTLN_INT_DECL, PRINTLN_STRING_DECL;
+	// The println methods of _PrintStream, which the code generator
+	// recognizes. Like STRING_DECL they are shared by all tables.
+	public static final MethodDecl PRINTLN_INT_DECL = printlnDecl(BaseType.INT_TYPE, "n");
+	public static final MethodDecl PRINTLN_STRING_DECL = printlnDecl(STRING_DECL.type, "str");
 
-	// A stack of tables for each scope
-	List<HashMap<String, Declaration>> scopes = new ArrayList<HashMap<String, Declaration>>();
+	/**
+	 * A declaration of a name in a scope, with the declaration of the same
+	 * name in an outer scope that it hides
+	 */
+	private static class Entry {
+		final int scope;
+		final Declaration declaration;
+		final Entry hidden;
+
+		Entry(int scope, Declaration declaration, Entry hidden) {
+			this.scope = scope;
+			this.declaration = declaration;
+			this.hidden = hidden;
+		}
+	}
+
+	// The innermost declaration of each name in scope
+	private final HashMap<String, Entry> names = new HashMap<String, Entry>();
+
+	// The names declared in the open scopes, outermost first, and the index
+	// in it of the first name of each scope
+	private final ArrayList<String> declared = new ArrayList<String>();
+	private int[] scopeStart = new int[16];
+	private int scopeCount = 0;
+
+	/**
+	 * Returns the declaration of <code>public void println(type name)</code>
+	 */
+	private static MethodDecl printlnDecl(Type type, String name) {
+		ParameterDeclList param = new ParameterDeclList();
+		param.add(new ParameterDecl(type, new Identifier(name, null), null));
+		FieldDecl fd = new FieldDecl(false, false, BaseType.VOID_TYPE, new Identifier(PRINTSTREAM_PRINTLN, null), null);
+		return new MethodDecl(fd, param, null, null, null);
+	}
 
 	public IdentificationTable() {
 		openScope();
@@ -49,20 +90,9 @@ public class IdentificationTable {
 		 * _PrintStream class and methods
 		 */
 		MethodDeclList printStreamMethods = new MethodDeclList();
-		ParameterDeclList intParam = new ParameterDeclList();
-		intParam.add(new ParameterDecl(BaseType.INT_TYPE, new Identifier("n", null), null));
-
 		// public void println(int n);
-		FieldDecl fd = new FieldDecl(false, false, BaseType.VOID_TYPE, new Identifier(PRINTSTREAM_PRINTLN, null), null);
-		PRINTLN_INT_DECL = new MethodDecl(fd, intParam, null, null, null);
 		printStreamMethods.add(PRINTLN_INT_DECL);
-
-		ParameterDeclList stringParam = new ParameterDeclList();
-		stringParam.add(new ParameterDecl(STRING_DECL.type, new Identifier("str", null), null));
-
 		// public void println(String str);
-		fd = new FieldDecl(false, false, BaseType.VOID_TYPE, new Identifier(PRINTSTREAM_PRINTLN, null), null);
-		PRINTLN_STRING_DECL = new MethodDecl(fd, stringParam, null, null, null);
 		printStreamMethods.add(PRINTLN_STRING_DECL);
 
 		// class _PrintStream
@@ -106,13 +136,8 @@ public class IdentificationTable {
 	 *         <code>null</code> otherwise
 	 */
 	public Declaration get(String name) {
-		Declaration decl = null;
-		for (int i = scopes.size() - 1; i >= 0; i--) {
-			decl = scopes.get(i).get(name);
-			if (decl != null)
-				break;
-		}
-		return decl;
+		Entry entry = names.get(name);
+		return (entry == null) ? null : entry.declaration;
 	}
 
 	/**
@@ -123,11 +148,8 @@ public class IdentificationTable {
 	 * @return <code>scope</code> of the identifier if in scope,
 	 */
 	public int getScope(String name) {
-		for (int i = scopes.size() - 1; i >= 0; i--) {
-			if (scopes.get(i).containsKey(name))
-				return i;
-		}
-		return INVALID_SCOPE;
+		Entry entry = names.get(name);
+		return (entry == null) ? INVALID_SCOPE : entry.scope;
 	}
 
 	/**
@@ -140,38 +162,43 @@ public class IdentificationTable {
 	 */
 	public void set(Declaration declaration) throws SyntaxErrorException {
 		String name = declaration.id.spelling;
+		int current = scopeCount - 1;
 		// An identifier in parameter or local scope cannot be re-declared in
-		// deeper scopes
-		for (int i = PARAMETER_SCOPE; i < scopes.size(); i++) {
-			Declaration decl = scopes.get(i).get(name);
-			if (decl != null)
-				throw new SyntaxErrorException(name + " was already declared at " + decl.posn);
-		}
-
-		// Re-declaration in current scope not allowed
-		HashMap<String, Declaration> scope = scopes.get(scopes.size() - 1);
-		Declaration decl = scope.get(name);
-		if (decl != null)
-			throw new SyntaxErrorException(name + " was already declared at " + decl.posn);
+		// deeper scopes, and re-declaration in current scope is not allowed.
+		// Any such declaration is the innermost one of the name.
+		Entry entry = names.get(name);
+		if (entry != null && (entry.scope >= PARAMETER_SCOPE || entry.scope == current))
+			throw new SyntaxErrorException(name + " was already declared at " + entry.declaration.posn);
 
 		// Add to current scope
-		scope.put(name, declaration);
+		names.put(name, new Entry(current, declaration, entry));
+		declared.add(name);
 	}
 
 	/**
 	 * Starts a new scope
 	 */
 	public void openScope() {
-		scopes.add(new HashMap<String, Declaration>());
+		if (scopeCount == scopeStart.length)
+			scopeStart = Arrays.copyOf(scopeStart, 2 * scopeCount);
+		scopeStart[scopeCount++] = declared.size();
 	}
 
 	/**
 	 * Closes the deepest level of scope
 	 */
 	public void closeScope() {
-		if (scopes.size() <= 1)
+		if (scopeCount <= 1)
 			throw new RuntimeException("IdentificationTable.closeScope() called too many times!");
-		scopes.remove(scopes.size() - 1);
+		int start = scopeStart[--scopeCount];
+		for (int i = declared.size() - 1; i >= start; i--) {
+			String name = declared.remove(i);
+			Entry hidden = names.get(name).hidden;
+			if (hidden == null)
+				names.remove(name);
+			else
+				names.put(name, hidden);
+		}
 	}
 
 	/**
@@ -181,50 +208,57 @@ public class IdentificationTable {
 	 * @return the scope of this identifier
 	 */
 	public int linkDeclaration(Identifier id) {
-		Declaration decl;
-		for (int i = scopes.size() - 1; i >= 0; i--) {
-			decl = scopes.get(i).get(id.spelling);
-			if (decl != null) {
-				id.declaration = decl;
-				if (i >= LOCAL_SCOPE) {
-					return LOCAL_SCOPE;
-				}
-				return i;
-			}
+		Entry entry = names.get(id.spelling);
+		if (entry == null)
+			return INVALID_SCOPE;
+		id.declaration = entry.declaration;
+		if (entry.scope >= LOCAL_SCOPE) {
+			return LOCAL_SCOPE;
+		}
+		return entry.scope;
+	}
+
+	/**
+	 * Returns the declarations of a scope, or null if it is not open
+	 */
+	private HashMap<String, Declaration> declarations(int scope) {
+		if (scope >= scopeCount)
+			return null;
+		HashMap<String, Declaration> declarations = new HashMap<String, Declaration>();
+		int end = (scope + 1 < scopeCount) ? scopeStart[scope + 1] : declared.size();
+		for (int i = scopeStart[scope]; i < end; i++) {
+			String name = declared.get(i);
+			Entry entry = names.get(name);
+			while (entry.scope != scope)
+				entry = entry.hidden;
+			declarations.put(name, entry.declaration);
 		}
-		return INVALID_SCOPE;
+		return declarations;
 	}
 
 	/**
-	 * Returns only class declarations
+	 * Returns only class declarations, as a copy
 	 */
 	public HashMap<String, Declaration> getClasses() {
-		if (scopes.size() - 1 >= IdentificationTable.CLASS_SCOPE)
-			return scopes.get(IdentificationTable.CLASS_SCOPE);
-		return null;
+		return declarations(IdentificationTable.CLASS_SCOPE);
 	}
 
 	/**
-	 * Returns elements at the class member scope
+	 * Returns elements at the class member scope, as a copy
 	 * 
 	 * @return HashMap<String, Declaration>
 	 */
 	public HashMap<String, Declaration> getClassMembers() {
-		if (scopes.size() - 1 >= IdentificationTable.MEMBER_SCOPE)
-			return scopes.get(IdentificationTable.MEMBER_SCOPE);
-		return null;
+		return declarations(IdentificationTable.MEMBER_SCOPE);
 	}
 
 	public void display() {
-		Iterator<HashMap<String, Declaration>> it = scopes.iterator();
 		String padding = "";
 
-		while (it.hasNext()) {
-			HashMap<String, Declaration> scope = it.next();
+		for (int i = 0; i < scopeCount; i++) {
+			HashMap<String, Declaration> scope = declarations(i);
 
-			Iterator<String> its = scope.keySet().iterator();
-			while (its.hasNext()) {
-				String id = its.next();
+			for (String id : scope.keySet()) {
 				System.out.println(padding + "\"" + id + "\"" + ": " + scope.get(id));
 			}
 
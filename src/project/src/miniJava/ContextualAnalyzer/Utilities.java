@@ -6,11 +6,11 @@ import miniJava.AbstractSyntaxTrees.Declaration;
 import miniJava.AbstractSyntaxTrees.ErrorType;
 import miniJava.AbstractSyntaxTrees.Type;
 import miniJava.AbstractSyntaxTrees.UnsupportedType;
+import miniJava.Diagnostics;
 import miniJava.SyntacticAnalyzer.SourcePosition;
 import miniJava.SyntacticAnalyzer.SyntaxErrorException;
 
 public abstract class Utilities {
-	private static int errorCount = 0;
 
 	/**
 	 * Add a declaration to the identification table and check if the declared
@@ -96,14 +96,21 @@ public abstract class Utilities {
 		return type;
 	}
 
+	/**
+	 * Reports an error to the diagnostics of the compiling thread
+	 */
 	public static void reportError(String msg, SourcePosition pos) {
-		errorCount++;
-		System.err.println("*** " + msg + " at " + pos);
+		Diagnostics.current().reportError(msg, pos);
+	}
+
+	public static int getErrorCount() {
+		return Diagnostics.current().getErrorCount();
 	}
 
 	public static void exitOnError() {
-		if (errorCount > 0) {
-			System.err.println(errorCount + (errorCount > 1 ? " errors" : " error"));
+		Diagnostics diagnostics = Diagnostics.current();
+		if (diagnostics.getErrorCount() > 0) {
+			System.err.println(diagnostics.summary());
 			System.exit(4);
 		}
 	}
@@ -0,0 +1,81 @@
+package miniJava;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import miniJava.SyntacticAnalyzer.SourcePosition;
+
+/**
+ * Collects the errors reported while compiling a program. The contextual
+ * analyzer reports through Utilities.reportError to the diagnostics bound to
+ * the compiling thread, so compilations on different threads keep their
+ * errors apart. A thread that has not bound any gets diagnostics that print
+ * each error to System.err, as the compiler always has.
+ */
+public class Diagnostics {
+	private static final ThreadLocal<Diagnostics> current = new ThreadLocal<Diagnostics>() {
+		@Override
+		protected Diagnostics initialValue() {
+			return new Diagnostics(true);
+		}
+	};
+
+	private final boolean echo;
+	private final List<String> errors = new ArrayList<String>();
+
+	/**
+	 * @param echo
+	 *            whether each error is also printed to System.err
+	 */
+	public Diagnostics(boolean echo) {
+		this.echo = echo;
+	}
+
+	/**
+	 * @return the diagnostics bound to the calling thread
+	 */
+	public static Diagnostics current() {
+		return current.get();
+	}
+
+	/**
+	 * Binds diagnostics to the calling thread
+	 *
+	 * @return the diagnostics bound before, to be restored with bind when the
+	 *         compilation is over
+	 */
+	public static Diagnostics bind(Diagnostics diagnostics) {
+		Diagnostics previous = current.get();
+		current.set(diagnostics);
+		return previous;
+	}
+
+	public void reportError(String msg, SourcePosition pos) {
+		report("*** " + msg + " at " + pos);
+	}
+
+	/**
+	 * Records an error message as it is
+	 */
+	public void report(String message) {
+		errors.add(message);
+		if (echo)
+			System.err.println(message);
+	}
+
+	public int getErrorCount() {
+		return errors.size();
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return "1 error" or "n errors"
+	 */
+	public String summary() {
+		int count = errors.size();
+		return count + (count > 1 ? " errors" : " error");
+	}
+}
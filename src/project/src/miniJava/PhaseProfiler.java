@@ -0,0 +1,230 @@
+package miniJava;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the phases of a compilation for --time-phases. For each phase it
+ * records the wall time, the CPU time and bytes allocated by the compiling
+ * thread (from the JMX thread counters), and how many AST nodes were created
+ * and visited. A disabled profiler does nothing. The CPU time and allocations
+ * of other threads are not measured, so those of the tasks of
+ * --parallel-typecheck, which run on a shared ForkJoinPool, are missing from
+ * the report.
+ *
+ * Nodes are counted by the profiler bound to the thread creating or visiting
+ * them, so compilations on different threads keep their counts apart, and a
+ * thread that has none bound counts nothing. The visits counted are those of
+ * statements, expressions and references, by the passes or by ASTAnalyze.
+ */
+public class PhaseProfiler {
+	// only enabled profilers are bound
+	private static final ThreadLocal<PhaseProfiler> bound = new ThreadLocal<PhaseProfiler>();
+
+	/**
+	 * Measurements of one phase
+	 */
+	public static class Phase {
+		public final String name;
+		public long wallNanos, cpuNanos, allocatedBytes;
+		public long nodesCreated, nodesVisited;
+
+		public Phase(String name) {
+			this.name = name;
+		}
+	}
+
+	private final boolean enabled;
+	private final ThreadMXBean threads;
+	private final List<Phase> phases = new ArrayList<Phase>();
+	private Phase current = null;
+
+	// updated by every thread the profiler is bound to
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong visited = new AtomicLong();
+
+	public PhaseProfiler(boolean enabled) {
+		this.enabled = enabled;
+		this.threads = enabled ? ManagementFactory.getThreadMXBean() : null;
+	}
+
+	/**
+	 * @return the profiler counting the nodes of the calling thread, or null
+	 *         if there is none
+	 */
+	public static PhaseProfiler current() {
+		return bound.get();
+	}
+
+	/**
+	 * Has the profiler count the nodes the calling thread creates and visits,
+	 * if it is enabled
+	 *
+	 * @return the profiler bound before, to be restored with bind when the
+	 *         compilation is over
+	 */
+	public static PhaseProfiler bind(PhaseProfiler profiler) {
+		PhaseProfiler previous = bound.get();
+		bound.set(profiler != null && profiler.enabled ? profiler : null);
+		return previous;
+	}
+
+	public void nodeCreated() {
+		created.incrementAndGet();
+	}
+
+	public void nodesVisited(int count) {
+		visited.addAndGet(count);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public List<Phase> getPhases() {
+		return phases;
+	}
+
+	/**
+	 * Starts measuring a phase, ending the current one if there is one
+	 *
+	 * @param name
+	 */
+	public void start(String name) {
+		if (!enabled)
+			return;
+		stop();
+		current = new Phase(name);
+		current.nodesCreated = created.get();
+		current.nodesVisited = visited.get();
+		current.allocatedBytes = allocatedBytes();
+		current.cpuNanos = cpuNanos();
+		current.wallNanos = System.nanoTime();
+	}
+
+	/**
+	 * Ends the current phase
+	 */
+	public void stop() {
+		if (!enabled || current == null)
+			return;
+		current.wallNanos = System.nanoTime() - current.wallNanos;
+		current.cpuNanos = cpuNanos() - current.cpuNanos;
+		current.allocatedBytes = allocatedBytes() - current.allocatedBytes;
+		current.nodesCreated = created.get() - current.nodesCreated;
+		current.nodesVisited = visited.get() - current.nodesVisited;
+		phases.add(current);
+		current = null;
+	}
+
+	private long cpuNanos() {
+		if (!threads.isCurrentThreadCpuTimeSupported())
+			return 0;
+		return threads.getCurrentThreadCpuTime();
+	}
+
+	private long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+			if (t.isThreadAllocatedMemorySupported())
+				return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private Phase total() {
+		Phase total = new Phase("total");
+		for (Phase p : phases) {
+			total.wallNanos += p.wallNanos;
+			total.cpuNanos += p.cpuNanos;
+			total.allocatedBytes += p.allocatedBytes;
+			total.nodesCreated += p.nodesCreated;
+			total.nodesVisited += p.nodesVisited;
+		}
+		return total;
+	}
+
+	/**
+	 * Prints the phases as a table
+	 *
+	 * @param out
+	 */
+	public void printReport(PrintStream out) {
+		stop();
+		out.println(String.format("%-12s %10s %10s %12s %10s %10s", "phase", "wall ms", "cpu ms", "alloc KB",
+				"created", "visited"));
+		List<Phase> rows = new ArrayList<Phase>(phases);
+		rows.add(total());
+		for (Phase p : rows) {
+			out.println(String.format("%-12s %10.3f %10.3f %12.1f %10d %10d", p.name, p.wallNanos / 1e6,
+					p.cpuNanos / 1e6, p.allocatedBytes / 1024.0, p.nodesCreated, p.nodesVisited));
+		}
+	}
+
+	/**
+	 * Returns the phases as a JSON document
+	 *
+	 * @param fileName
+	 *            the compiled file, recorded in the report
+	 */
+	public String toJson(String fileName) {
+		stop();
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"file\": ").append(quote(fileName)).append(",\n  \"phases\": [");
+		for (int i = 0; i < phases.size(); i++) {
+			json.append(i == 0 ? "\n    " : ",\n    ");
+			appendPhase(json, phases.get(i));
+		}
+		json.append("\n  ],\n  \"total\": ");
+		appendPhase(json, total());
+		json.append("\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Writes the JSON report to a file
+	 *
+	 * @param reportFileName
+	 * @param fileName
+	 *            the compiled file
+	 * @throws IOException
+	 */
+	public void writeJson(String reportFileName, String fileName) throws IOException {
+		FileWriter out = new FileWriter(reportFileName);
+		try {
+			out.write(toJson(fileName));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void appendPhase(StringBuilder json, Phase p) {
+		json.append("{\"name\": ").append(quote(p.name));
+		json.append(", \"wallNanos\": ").append(p.wallNanos);
+		json.append(", \"cpuNanos\": ").append(p.cpuNanos);
+		json.append(", \"allocatedBytes\": ").append(p.allocatedBytes);
+		json.append(", \"nodesCreated\": ").append(p.nodesCreated);
+		json.append(", \"nodesVisited\": ").append(p.nodesVisited);
+		json.append('}');
+	}
+
+	private static String quote(String s) {
+		StringBuilder q = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				q.append('\\').append(c);
+			else if (c < ' ')
+				q.append(String.format("\\u%04x", (int) c));
+			else
+				q.append(c);
+		}
+		return q.append('"').toString();
+	}
+}
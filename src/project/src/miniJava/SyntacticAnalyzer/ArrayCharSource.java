@@ -0,0 +1,34 @@
+package miniJava.SyntacticAnalyzer;
+
+/**
+ * Reads characters from an in-memory array
+ */
+public class ArrayCharSource implements CharSource {
+	private char[] chars;
+	private int position, limit;
+
+	public ArrayCharSource(char[] chars) {
+		this(chars, 0, chars.length);
+	}
+
+	public ArrayCharSource(char[] chars, int offset, int length) {
+		this.chars = chars;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	public ArrayCharSource(String text) {
+		this(text.toCharArray());
+	}
+
+	@Override
+	public int read() {
+		if (position == limit)
+			return -1;
+		return chars[position++];
+	}
+
+	@Override
+	public void close() {
+	}
+}
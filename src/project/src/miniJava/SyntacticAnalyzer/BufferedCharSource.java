@@ -0,0 +1,43 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads characters from an InputStream a block at a time, so that the Scanner
+ * does not pay for a call into the stream for every character
+ */
+public class BufferedCharSource implements CharSource {
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+	private InputStream in;
+	private byte[] block;
+	private int position = 0, limit = 0;
+
+	public BufferedCharSource(InputStream in) {
+		this(in, DEFAULT_BLOCK_SIZE);
+	}
+
+	public BufferedCharSource(InputStream in, int blockSize) {
+		this.in = in;
+		this.block = new byte[blockSize];
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position == limit) {
+			limit = in.read(block, 0, block.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return block[position++] & 0xff;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,24 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.io.IOException;
+
+/**
+ * A source of characters for the Scanner. Implementations decide how the
+ * underlying input is read, but must hand out one character per call.
+ */
+public interface CharSource {
+	/**
+	 * Returns the next character of input
+	 * 
+	 * @return the next character, or -1 on end of input
+	 * @throws IOException
+	 */
+	public int read() throws IOException;
+
+	/**
+	 * Releases any resources held by this source
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+}
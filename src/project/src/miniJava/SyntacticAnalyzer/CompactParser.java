@@ -0,0 +1,806 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.io.InputStream;
+
+import miniJava.AbstractSyntaxTrees.CompactAST;
+import miniJava.AbstractSyntaxTrees.CompactAST.Kind;
+import miniJava.AbstractSyntaxTrees.TypeKind;
+
+/**
+ * Parses the same grammar as Parser, with the same errors, into a CompactAST
+ * instead of AST objects. A node is added to the arrays of the CompactAST
+ * once its children are parsed; the items of a list being parsed wait on a
+ * stack until the list is complete.
+ */
+public class CompactParser {
+	private TokenStream tokens;
+	private CompactAST ast;
+
+	private int current = -1;
+	private TokenType currentType = null;
+
+	// Items of the lists being parsed, innermost list last
+	private int[] pending = new int[64];
+	private int pendingSize = 0;
+
+	// How deep parseStatement and parseExpression recurse, and how deep the
+	// program may nest before it is left to Parser
+	private int depth = 0;
+	private int maxDepth = Integer.MAX_VALUE;
+
+	/**
+	 * Ends the parse of a program that nests deeper than maxDepth
+	 */
+	@SuppressWarnings("serial")
+	private static class NestingTooDeepException extends RuntimeException {
+	}
+
+	public CompactParser(InputStream in) {
+		this(new Scanner(in).tokenize());
+	}
+
+	public CompactParser(CharSource in) {
+		this(new Scanner(in).tokenize());
+	}
+
+	public CompactParser(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	/**
+	 * Sets how deep the statements and expressions of a program may nest.
+	 * CompactParser and CompactAST recurse on them, so a program that nests
+	 * deeper is left to Parser, which does not.
+	 */
+	public void setMaxNestingDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	private void enter() {
+		if (++depth > maxDepth)
+			throw new NestingTooDeepException();
+	}
+
+	/**
+	 * Consumes the current token silently
+	 *
+	 * @throws ScannerException
+	 *             If a token cannot be constructed
+	 */
+	private void consume() throws SyntaxErrorException {
+		if (current + 1 == tokens.size()) {
+			ScannerException e = tokens.getError();
+			if (e != null)
+				throw new SyntaxErrorException(e.getMessage());
+		} else {
+			// Stay on EOT once it is reached
+			current++;
+		}
+		currentType = tokens.type(current);
+	}
+
+	private long currentPosition() {
+		return CompactAST.position(tokens.line(current), tokens.column(current));
+	}
+
+	private int currentSpelling() {
+		int symbol = tokens.symbol(current);
+		return (symbol >= 0) ? symbol : CompactAST.keyword(currentType);
+	}
+
+	private Token currentToken() {
+		return tokens.token(current);
+	}
+
+	/**
+	 * Consumes a token of expected type or throws an exception
+	 *
+	 * @param type
+	 *            expected token type
+	 * @throws SyntaxErrorException
+	 *             If an unexpected type is found
+	 * @throws ScannerException
+	 *             If a token cannot be constructed
+	 */
+	private void expect(TokenType type) throws SyntaxErrorException {
+		if (currentType != type)
+			if (type.spelling != null) {
+				throw new SyntaxErrorException("expected " + type.spelling + " but found", currentToken());
+			} else {
+				throw new SyntaxErrorException("expected " + type.toString() + " but found", currentToken());
+			}
+
+		consume();
+	}
+
+	private void push(int item) {
+		if (pendingSize == pending.length)
+			pending = java.util.Arrays.copyOf(pending, pendingSize * 2);
+		pending[pendingSize++] = item;
+	}
+
+	/**
+	 * Adds the items pushed since mark as a list
+	 */
+	private int list(int mark) {
+		int list = ast.addList(pending, mark, pendingSize - mark);
+		pendingSize = mark;
+		return list;
+	}
+
+	private int identifier() {
+		return ast.add(Kind.IDENTIFIER, currentPosition(), currentSpelling(), 0, 0);
+	}
+
+	private int operator() {
+		return ast.add(Kind.OPERATOR, currentPosition(), currentSpelling(), 0, 0);
+	}
+
+	/**
+	 * A reference made of one identifier
+	 */
+	private int qualifiedRef(int id) {
+		int mark = pendingSize;
+		push(id);
+		return ast.add(Kind.QUALIFIED_REF, ast.position(id), 0, list(mark), 0);
+	}
+
+	/**
+	 * Parses the <i>Program</i> non-terminal, as Parser.parseProgram
+	 *
+	 * @return the program, or null if it nests deeper than the maximum
+	 *         nesting depth
+	 * @throws SyntaxErrorException
+	 */
+	public CompactAST parseProgram() throws SyntaxErrorException {
+		ast = new CompactAST(tokens.symbolTable);
+		try {
+			consume();
+			long packagePos = currentPosition();
+			int mark = pendingSize;
+			while (currentType != TokenType.EOT) {
+				push(parseClassDeclaration());
+			}
+			ast.setRoot(ast.add(Kind.PACKAGE, packagePos, list(mark), 0, 0));
+		} catch (NestingTooDeepException e) {
+			return null;
+		}
+		if (maxDepth < Integer.MAX_VALUE && ast.height() > maxDepth)
+			return null;
+		return ast;
+	}
+
+	/**
+	 * Parses the <i>ClassDeclaration</i> non-terminal, as
+	 * Parser.parseClassDeclaration
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseClassDeclaration() throws SyntaxErrorException {
+		long classPos = currentPosition();
+		expect(TokenType.CLASS);
+		int classId = identifier();
+		expect(TokenType.IDENTIFIER);
+		expect(TokenType.LCURL);
+		int mark = pendingSize;
+
+		while (currentType != TokenType.RCURL) {
+			// Left factorize the Declarators and id
+			int memberDecl = parseDeclarators();
+			expect(TokenType.IDENTIFIER);
+
+			if (currentType == TokenType.LPAREN) {
+				// MethodDeclaration
+				consume();
+				int pList = (currentType != TokenType.RPAREN) ? parseParameterList() : list(pendingSize);
+				expect(TokenType.RPAREN);
+
+				// Method body
+				expect(TokenType.LCURL);
+				int stmtMark = pendingSize;
+				int returnExpr = CompactAST.NONE;
+				while (currentType != TokenType.RCURL) {
+					if (currentType == TokenType.RETURN) {
+						consume();
+						returnExpr = parseExpression();
+						expect(TokenType.SEMICOLON);
+						break;
+					} else {
+						push(parseStatement());
+					}
+				}
+				expect(TokenType.RCURL);
+				long memberPos = ast.position(memberDecl);
+				int body = ast.add(Kind.BODY, memberPos, list(stmtMark), returnExpr, 0);
+				push(ast.add(Kind.METHOD, memberPos, memberDecl, pList, body));
+			} else {
+				push(memberDecl);
+				expect(TokenType.SEMICOLON);
+			}
+		}
+		expect(TokenType.RCURL);
+		return ast.add(Kind.CLASS, classPos, classId, list(mark), 0);
+	}
+
+	/**
+	 * Parses the <i>Declarators</i> non-terminal and the id after it
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseDeclarators() throws SyntaxErrorException {
+		int flags = 0;
+		long currPos = currentPosition();
+		if (currentType == TokenType.PUBLIC || currentType == TokenType.PRIVATE) {
+			if (currentType == TokenType.PRIVATE)
+				flags |= CompactAST.PRIVATE;
+			consume();
+		}
+		if (currentType == TokenType.STATIC) {
+			flags |= CompactAST.STATIC;
+			consume();
+		}
+		int memberType = parseType();
+		return ast.add(Kind.FIELD, currPos, flags, memberType, identifier());
+	}
+
+	/**
+	 * Parses the <i>Type</i> non-terminal
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseType() throws SyntaxErrorException {
+		int type;
+		long typePos = currentPosition();
+
+		switch (currentType) {
+		case INT:
+		case IDENTIFIER:
+			if (currentType == TokenType.INT)
+				type = ast.add(Kind.BASE_TYPE, typePos, TypeKind.INT.ordinal(), currentSpelling(), 0);
+			else
+				type = ast.add(Kind.CLASS_TYPE, typePos, currentSpelling(), 0, 0);
+			consume();
+			if (currentType == TokenType.LSQUARE) {
+				// ArrayType, spelled as the token after it, as in Parser
+				consume();
+				expect(TokenType.RSQUARE);
+				type = ast.add(Kind.ARRAY_TYPE, typePos, type, currentSpelling(), 0);
+			}
+			break;
+
+		case BOOLEAN:
+		case VOID:
+			TypeKind kind = (currentType == TokenType.BOOLEAN) ? TypeKind.BOOLEAN : TypeKind.VOID;
+			type = ast.add(Kind.BASE_TYPE, typePos, kind.ordinal(), currentSpelling(), 0);
+			consume();
+			break;
+
+		default:
+			throw new SyntaxErrorException("expected a Type, found ", currentToken());
+		}
+
+		return type;
+	}
+
+	/**
+	 * Parses the <i>ParameterList</i> non-terminal
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseParameterList() throws SyntaxErrorException {
+		int mark = pendingSize;
+		int type = parseType();
+		push(ast.add(Kind.PARAMETER, ast.position(type), type, identifier(), 0));
+		expect(TokenType.IDENTIFIER);
+		while (currentType == TokenType.COMMA) {
+			consume();
+			type = parseType();
+			push(ast.add(Kind.PARAMETER, ast.position(type), type, identifier(), 0));
+			expect(TokenType.IDENTIFIER);
+		}
+		return list(mark);
+	}
+
+	/**
+	 * Parses the <i>ArgumentList</i> non-terminal
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseArgumentList() throws SyntaxErrorException {
+		int mark = pendingSize;
+		push(parseExpression());
+		while (currentType == TokenType.COMMA) {
+			consume();
+			push(parseExpression());
+		}
+		return list(mark);
+	}
+
+	/**
+	 * An ArgumentList in parentheses, which may be empty
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseArguments() throws SyntaxErrorException {
+		consume();
+		int args = (currentType != TokenType.RPAREN) ? parseArgumentList() : list(pendingSize);
+		expect(TokenType.RPAREN);
+		return args;
+	}
+
+	/**
+	 * Parses the members of a <i>Reference</i>
+	 *
+	 * @param id
+	 *            the identifier the reference starts with, or NONE after this
+	 * @throws SyntaxErrorException
+	 */
+	private int parseReferenceMember(int id) throws SyntaxErrorException {
+		int mark = pendingSize;
+		if (id != CompactAST.NONE)
+			push(id);
+		while (currentType == TokenType.DOT) {
+			consume();
+			push(identifier());
+			expect(TokenType.IDENTIFIER);
+		}
+		return list(mark);
+	}
+
+	/**
+	 * Parses the <i>Reference</i> non-terminal
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseReference() throws SyntaxErrorException {
+		long referencePos = currentPosition();
+
+		if (currentType == TokenType.THIS || currentType == TokenType.IDENTIFIER) {
+			boolean isThis = (currentType == TokenType.THIS);
+			int id = isThis ? CompactAST.NONE : identifier();
+			consume();
+			int idList = parseReferenceMember(id);
+			return ast.add(Kind.QUALIFIED_REF, referencePos, isThis ? 1 : 0, idList, 0);
+		} else {
+			throw new SyntaxErrorException(currentToken());
+		}
+	}
+
+	/**
+	 * Parses what follows the Reference at the start of a statement:
+	 *
+	 * <pre>
+	 *     = Expression <b>;</b>
+	 *     | <b>[</b> Expression <b>]</b> = Expression <b>;</b>
+	 *     | <b>(</b> ArgumentList? <b>)</b> <b>;</b>
+	 * </pre>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseReferenceStatement(int ref, long stmtPos) throws SyntaxErrorException {
+		int stmt;
+		switch (currentType) {
+		case EQUALTO:
+			consume();
+			int expr = parseExpression();
+			expect(TokenType.SEMICOLON);
+			stmt = ast.add(Kind.ASSIGN_STMT, stmtPos, ref, expr, 0);
+			break;
+
+		case LSQUARE:
+			consume();
+			stmt = parseIndexedAssignment(ref, stmtPos);
+			break;
+
+		case LPAREN:
+			int args = parseArguments();
+			expect(TokenType.SEMICOLON);
+			stmt = ast.add(Kind.CALL_STMT, stmtPos, ref, args, 0);
+			break;
+
+		default:
+			throw new SyntaxErrorException(currentToken());
+		}
+		return stmt;
+	}
+
+	/**
+	 * The rest of an AssignStmt to an array element, after the <b>[</b>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseIndexedAssignment(int ref, long stmtPos) throws SyntaxErrorException {
+		int indexExpr = parseExpression();
+		int indexedRef = ast.add(Kind.INDEXED_REF, stmtPos, ref, indexExpr, 0);
+		expect(TokenType.RSQUARE);
+		expect(TokenType.EQUALTO);
+		int val = parseExpression();
+		expect(TokenType.SEMICOLON);
+		return ast.add(Kind.ASSIGN_STMT, stmtPos, indexedRef, val, 0);
+	}
+
+	/**
+	 * The rest of a VarDeclStmt, from = on
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseVarDeclStmt(int type, int id, long stmtPos) throws SyntaxErrorException {
+		expect(TokenType.EQUALTO);
+		int initExpr = parseExpression();
+		expect(TokenType.SEMICOLON);
+		int varDecl = ast.add(Kind.VAR, stmtPos, type, id, 0);
+		return ast.add(Kind.VARDECL_STMT, stmtPos, varDecl, initExpr, 0);
+	}
+
+	/**
+	 * Parses the <i>Statement</i> non-terminal
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseStatement() throws SyntaxErrorException {
+		enter();
+		int stmt;
+		long stmtPos = currentPosition();
+		switch (currentType) {
+		case LCURL:
+			consume();
+			int mark = pendingSize;
+			while (currentType != TokenType.RCURL) {
+				push(parseStatement());
+			}
+			expect(TokenType.RCURL);
+			stmt = ast.add(Kind.BLOCK_STMT, stmtPos, list(mark), 0, 0);
+			break;
+
+		case BOOLEAN:
+		case VOID:
+			int varDeclType = parseType();
+			int varDeclId = identifier();
+			expect(TokenType.IDENTIFIER);
+			stmt = parseVarDeclStmt(varDeclType, varDeclId, stmtPos);
+			break;
+
+		case INT:
+			int intSpelling = currentSpelling();
+			int intVarDeclType = ast.add(Kind.BASE_TYPE, stmtPos, TypeKind.INT.ordinal(), intSpelling, 0);
+			consume();
+			// int[] id = Expression;
+			if (currentType == TokenType.LSQUARE) {
+				consume();
+				intVarDeclType = ast.add(Kind.ARRAY_TYPE, stmtPos, intVarDeclType, intSpelling, 0);
+				expect(TokenType.RSQUARE);
+			}
+			int intVarDeclId = identifier();
+			expect(TokenType.IDENTIFIER);
+			stmt = parseVarDeclStmt(intVarDeclType, intVarDeclId, stmtPos);
+			break;
+
+		case THIS:
+			consume();
+			int thisRef = ast.add(Kind.QUALIFIED_REF, stmtPos, 1, parseReferenceMember(CompactAST.NONE), 0);
+			stmt = parseReferenceStatement(thisRef, stmtPos);
+			break;
+
+		case IDENTIFIER:
+			int id1 = identifier();
+			consume();
+
+			switch (currentType) {
+			case LSQUARE:
+				consume();
+
+				if (currentType == TokenType.RSQUARE) {
+					// id[] id = Expression; //VarDeclStmt
+					int id1Spelling = ast.operand(id1, 0);
+					int idType = ast.add(Kind.CLASS_TYPE, stmtPos, id1Spelling, 0, 0);
+					int idArrType = ast.add(Kind.ARRAY_TYPE, stmtPos, idType, id1Spelling, 0);
+					consume();
+					int id2 = identifier();
+					expect(TokenType.IDENTIFIER);
+					stmt = parseVarDeclStmt(idArrType, id2, stmtPos);
+				} else {
+					// id[Expression] = Expression; //AssignStmt
+					stmt = parseIndexedAssignment(qualifiedRef(id1), stmtPos);
+				}
+				break;
+
+			case DOT:
+				// id(.id)* ... //AssignStmt or CallStmt
+				int idRef = ast.add(Kind.QUALIFIED_REF, stmtPos, 0, parseReferenceMember(id1), 0);
+				stmt = parseReferenceStatement(idRef, stmtPos);
+				break;
+
+			case IDENTIFIER:
+				// id id = Expression; //VarDeclStmt
+				int id2 = identifier();
+				int id1Class = ast.add(Kind.CLASS_TYPE, stmtPos, ast.operand(id1, 0), 0, 0);
+				consume();
+				stmt = parseVarDeclStmt(id1Class, id2, stmtPos);
+				break;
+
+			default:
+				// id = Expression; | id (ArgumentList?);
+				stmt = parseReferenceStatement(qualifiedRef(id1), stmtPos);
+				break;
+			}
+			break;
+
+		case IF:
+			consume();
+			expect(TokenType.LPAREN);
+			int ifExpr = parseExpression();
+			expect(TokenType.RPAREN);
+			int ifBlock = parseStatement();
+			int elseBlock = CompactAST.NONE;
+			if (currentType == TokenType.ELSE) {
+				consume();
+				elseBlock = parseStatement();
+			}
+			stmt = ast.add(Kind.IF_STMT, stmtPos, ifExpr, ifBlock, elseBlock);
+			break;
+
+		case WHILE:
+			consume();
+			expect(TokenType.LPAREN);
+			int whileExpr = parseExpression();
+			expect(TokenType.RPAREN);
+			stmt = ast.add(Kind.WHILE_STMT, stmtPos, whileExpr, parseStatement(), 0);
+			break;
+
+		default:
+			throw new SyntaxErrorException(currentToken());
+		}
+		depth--;
+		return stmt;
+	}
+
+	/**
+	 * Makes a BinaryExpr, placed at the token after its right operand as in
+	 * Parser
+	 */
+	private int binary(int op, int left, int right) {
+		return ast.add(Kind.BINARY_EXPR, currentPosition(), op, left, right);
+	}
+
+	/**
+	 * Parses the <i>Expression</i> non-terminal
+	 *
+	 * <pre>
+	 * Expression ::=  Conjunction ( <b>||</b> Conjunction )*
+	 * </pre>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseExpression() throws SyntaxErrorException {
+		enter();
+		int expr = parseConjunction();
+		while (currentType == TokenType.PIPE_PIPE) {
+			int op = operator();
+			consume();
+			expr = binary(op, expr, parseConjunction());
+		}
+		depth--;
+		return expr;
+	}
+
+	/**
+	 * Parses the <i>Conjunction</i> non-terminal
+	 *
+	 * <pre>
+	 * Conjunction ::= Equality ( <b>&&</b> Equality )*
+	 * </pre>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseConjunction() throws SyntaxErrorException {
+		int expr = parseEquality();
+		while (currentType == TokenType.AMPERSAND_AMPERSAND) {
+			int op = operator();
+			consume();
+			expr = binary(op, expr, parseEquality());
+		}
+		return expr;
+	}
+
+	/**
+	 * Parses the <i>Equality</i> non-terminal
+	 *
+	 * <pre>
+	 * Equality ::= Relational ( ( <b>==</b> | <b>!=</b> ) Relational )*
+	 * </pre>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseEquality() throws SyntaxErrorException {
+		int expr = parseRelational();
+		while (currentType == TokenType.EQUALTO_EQUALTO || currentType == TokenType.BANG_EQUALTO) {
+			int op = operator();
+			consume();
+			expr = binary(op, expr, parseRelational());
+		}
+		return expr;
+	}
+
+	/**
+	 * Parses the <i>Relational</i> non-terminal
+	 *
+	 * <pre>
+	 * Relational ::= Additive ( ( <b>&lt;=</b> | <b>&lt;</b> | <b>&gt;</b> | <b>&gt;=</b> ) Additive )*
+	 * </pre>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseRelational() throws SyntaxErrorException {
+		int expr = parseAdditive();
+		while (currentType == TokenType.LANGLE_EQUALTO || currentType == TokenType.LANGLE
+				|| currentType == TokenType.RANGLE || currentType == TokenType.RANGLE_EQUALTO) {
+			int op = operator();
+			consume();
+			expr = binary(op, expr, parseAdditive());
+		}
+		return expr;
+	}
+
+	/**
+	 * Parses the <i>Additive</i> non-terminal
+	 *
+	 * <pre>
+	 * Additive ::= Multiplicative ( ( <b>+</b> | <b>&minus;</b> ) Multiplicative )*
+	 * </pre>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseAdditive() throws SyntaxErrorException {
+		int expr = parseMultiplicative();
+		while (currentType == TokenType.PLUS || currentType == TokenType.MINUS) {
+			int op = operator();
+			consume();
+			expr = binary(op, expr, parseMultiplicative());
+		}
+		return expr;
+	}
+
+	/**
+	 * Parses the <i>Multiplicative</i> non-terminal
+	 *
+	 * <pre>
+	 * Multiplicative ::= Unary ( ( <b>*</b> | <b>/</b> ) Unary )*
+	 * </pre>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseMultiplicative() throws SyntaxErrorException {
+		int expr = parseUnary();
+		while (currentType == TokenType.ASTERISK || currentType == TokenType.SLASH) {
+			int op = operator();
+			consume();
+			expr = binary(op, expr, parseUnary());
+		}
+		return expr;
+	}
+
+	/**
+	 * Parses the <i>Unary</i> non-terminal
+	 *
+	 * <pre>
+	 * Unary ::= ( <b>&minus;</b> | <b>!</b> )* Term
+	 * </pre>
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseUnary() throws SyntaxErrorException {
+		int mark = pendingSize;
+		while (currentType == TokenType.MINUS || currentType == TokenType.BANG) {
+			push(operator());
+			consume();
+		}
+		int expr = parseTerm();
+		while (pendingSize > mark) {
+			int op = pending[--pendingSize];
+			expr = ast.add(Kind.UNARY_EXPR, ast.position(op), op, expr, 0);
+		}
+		return expr;
+	}
+
+	/**
+	 * Parses the <i>Term</i> non-terminal
+	 *
+	 * @throws SyntaxErrorException
+	 */
+	private int parseTerm() throws SyntaxErrorException {
+		int expr = CompactAST.NONE;
+		long exprPos = currentPosition();
+
+		switch (currentType) {
+		case NEW:
+			consume();
+			int newType;
+			int arrayExpr;
+
+			switch (currentType) {
+			case INT:
+				// new int [ Expression ]
+				newType = ast.add(Kind.BASE_TYPE, currentPosition(), TypeKind.INT.ordinal(), currentSpelling(), 0);
+				consume();
+				expect(TokenType.LSQUARE);
+				arrayExpr = parseExpression();
+				expect(TokenType.RSQUARE);
+				expr = ast.add(Kind.NEW_ARRAY_EXPR, exprPos, newType, arrayExpr, 0);
+				break;
+
+			case IDENTIFIER:
+				newType = ast.add(Kind.CLASS_TYPE, currentPosition(), currentSpelling(), 0, 0);
+				consume();
+				switch (currentType) {
+				case LPAREN:
+					// new id ( )
+					consume();
+					expect(TokenType.RPAREN);
+					expr = ast.add(Kind.NEW_OBJECT_EXPR, exprPos, newType, 0, 0);
+					break;
+
+				case LSQUARE:
+					// new id [ Expression ]
+					consume();
+					arrayExpr = parseExpression();
+					expect(TokenType.RSQUARE);
+					expr = ast.add(Kind.NEW_ARRAY_EXPR, exprPos, newType, arrayExpr, 0);
+					break;
+
+				default:
+					throw new SyntaxErrorException(currentToken());
+				}
+			}
+			break;
+
+		case THIS:
+		case IDENTIFIER:
+			int idRef = parseReference();
+
+			switch (currentType) {
+			case LSQUARE:
+				// Reference[Expression]
+				consume();
+				int idExpr = parseExpression();
+				expect(TokenType.RSQUARE);
+				int indexedRef = ast.add(Kind.INDEXED_REF, ast.position(idRef), idRef, idExpr, 0);
+				expr = ast.add(Kind.REF_EXPR, exprPos, indexedRef, 0, 0);
+				break;
+
+			case LPAREN:
+				// Reference(Expression)
+				expr = ast.add(Kind.CALL_EXPR, exprPos, idRef, parseArguments(), 0);
+				break;
+
+			default:
+				// Reference
+				expr = ast.add(Kind.REF_EXPR, exprPos, idRef, 0, 0);
+				break;
+			}
+			break;
+
+		case NUMBER:
+		case TRUE:
+		case FALSE:
+		case STRING:
+			Kind literalKind = (currentType == TokenType.NUMBER) ? Kind.INT_LITERAL
+					: (currentType == TokenType.STRING) ? Kind.STRING_LITERAL : Kind.BOOLEAN_LITERAL;
+			int literal = ast.add(literalKind, currentPosition(), currentSpelling(), 0, 0);
+			consume();
+			expr = ast.add(Kind.LITERAL_EXPR, exprPos, literal, 0, 0);
+			break;
+
+		case LPAREN:
+			// ( Expression )
+			consume();
+			expr = parseExpression();
+			expect(TokenType.RPAREN);
+			break;
+
+		default:
+			throw new SyntaxErrorException(currentToken());
+		}
+
+		return expr;
+	}
+}
@@ -0,0 +1,40 @@
+package miniJava.SyntacticAnalyzer;
+
+/**
+ * A reusable buffer holding the lexeme being scanned. It is a CharSequence so
+ * that TokenType.lookup can classify it without a String being made.
+ */
+class Lexeme implements CharSequence {
+	char[] chars = new char[64];
+	int length;
+
+	void clear() {
+		length = 0;
+	}
+
+	void append(char c) {
+		if (length == chars.length)
+			chars = java.util.Arrays.copyOf(chars, length * 2);
+		chars[length++] = c;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return chars[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new String(chars, start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+}
@@ -0,0 +1,33 @@
+package miniJava.SyntacticAnalyzer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads characters from a memory-mapped file. The whole file is mapped at
+ * once, so it must be smaller than 2GB.
+ */
+public class MappedCharSource implements CharSource {
+	private RandomAccessFile file;
+	private MappedByteBuffer buffer;
+
+	public MappedCharSource(String fileName) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		FileChannel channel = file.getChannel();
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining())
+			return -1;
+		return buffer.get() & 0xff;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -1,7 +1,8 @@
 package miniJava.SyntacticAnalyzer;
 
 import java.io.InputStream;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.List;
 
 import miniJava.AbstractSyntaxTrees.ArrayType;
 import miniJava.AbstractSyntaxTrees.AssignStmt;
@@ -47,11 +48,86 @@ import miniJava.AbstractSyntaxTrees.VarDeclStmt;
 import miniJava.AbstractSyntaxTrees.WhileStmt;
 
 public class Parser {
-	private Scanner scanner;
-	private Token currentToken = null;
+	private TokenStream tokens;
+
+	// Cursor into the token stream. The position of the current token is made
+	// on first use, and a whole Token only when an error is reported.
+	private int current = -1;
+	private TokenType currentType = null;
+	private String currentSpelling = null;
+	private SourcePosition currentPosition = null;
+
+	// Statements and expressions whose inner parts are being parsed, and the
+	// operands and operators of the expressions, innermost last. Keeping them
+	// here rather than on the Java stack lets programs nest as deep as the
+	// heap allows.
+	private final List<OpenStatement> openStatements = new ArrayList<OpenStatement>();
+	private final List<OpenExpression> openExpressions = new ArrayList<OpenExpression>();
+	private final List<Operator> operators = new ArrayList<Operator>();
+	private final List<Expression> operands = new ArrayList<Expression>();
+	private int[] heights = new int[16];
+
+	// how deep the statements and expressions parsed so far nest
+	private int depth = 0;
+
+	/**
+	 * A block, if or while statement whose inner statements are being parsed
+	 */
+	private static class OpenStatement {
+		// LCURL, IF, ELSE once the then statement is parsed, or WHILE
+		TokenType kind;
+		final Expression cond;
+		final SourcePosition posn;
+		final StatementList stmtList;
+		Statement thenStmt;
+
+		OpenStatement(TokenType kind, Expression cond, SourcePosition posn) {
+			this.kind = kind;
+			this.cond = cond;
+			this.posn = posn;
+			stmtList = (kind == TokenType.LCURL) ? new StatementList() : null;
+		}
+	}
+
+	// Kinds of OpenExpression
+	private static final int EXPRESSION = 0, PARENTHESIZED = 1, INDEX = 2, ARGUMENTS = 3, ARRAY_SIZE = 4;
+
+	/**
+	 * An Expression being parsed: a whole one, or one inside a Term, which
+	 * is completed when the Expression is
+	 */
+	private static class OpenExpression {
+		final int kind;
+		final SourcePosition exprPos;
+		// size of the operator stack when the Expression started, and where
+		// the unary operators of the Term start on it
+		final int operators;
+		final int unary;
+		// the indexed or called Reference, the arguments so far and the
+		// height of the tallest, or the element type of a new array
+		Reference ref;
+		ExprList argList;
+		int height;
+		Type newType;
+
+		OpenExpression(int kind, SourcePosition exprPos, int operators, int unary) {
+			this.kind = kind;
+			this.exprPos = exprPos;
+			this.operators = operators;
+			this.unary = unary;
+		}
+	}
 
 	public Parser(InputStream in) {
-		scanner = new Scanner(in);
+		this(new Scanner(in).tokenize());
+	}
+
+	public Parser(CharSource in) {
+		this(new Scanner(in).tokenize());
+	}
+
+	public Parser(TokenStream tokens) {
+		this.tokens = tokens;
 	}
 
 	/**
@@ -61,15 +137,35 @@ public class Parser {
 	 *             If a token cannot be constructed
 	 */
 	private void consume() throws SyntaxErrorException {
-		try {
-			currentToken = scanner.nextToken();
-		} catch (ScannerException e) {
-			// throw new SyntaxErrorException("unrecognized token ", new
-			// Token(e.spelling, e.position));
-			throw new SyntaxErrorException(e.getMessage());// , new
-															// Token(e.spelling,
-															// e.position));
+		if (current + 1 == tokens.size()) {
+			ScannerException e = tokens.getError();
+			if (e != null)
+				throw new SyntaxErrorException(e.getMessage());
+		} else {
+			// Stay on EOT once it is reached
+			current++;
 		}
+		currentType = tokens.type(current);
+		currentSpelling = tokens.spelling(current);
+		currentPosition = null;
+	}
+
+	private SourcePosition currentPosition() {
+		if (currentPosition == null)
+			currentPosition = new SourcePosition(tokens.line(current), tokens.column(current));
+		return currentPosition;
+	}
+
+	/**
+	 * @return how deep the statements and expressions parsed nest, which is
+	 *         about how deep the passes over the tree will recurse
+	 */
+	public int getNestingDepth() {
+		return depth;
+	}
+
+	private Token currentToken() {
+		return tokens.token(current);
 	}
 
 	/**
@@ -83,11 +179,11 @@ public class Parser {
 	 *             If a token cannot be constructed
 	 */
 	private void expect(TokenType type) throws SyntaxErrorException {
-		if (currentToken.type != type)
+		if (currentType != type)
 			if (type.spelling != null) {
-				throw new SyntaxErrorException("expected " + type.spelling + " but found", currentToken);
+				throw new SyntaxErrorException("expected " + type.spelling + " but found", currentToken());
 			} else {
-				throw new SyntaxErrorException("expected " + type.toString() + " but found", currentToken);
+				throw new SyntaxErrorException("expected " + type.toString() + " but found", currentToken());
 			}
 
 		consume();
@@ -105,9 +201,9 @@ public class Parser {
 	 */
 	public miniJava.AbstractSyntaxTrees.Package parseProgram() throws SyntaxErrorException {
 		consume();
-		SourcePosition packagePos = currentToken.position;
+		SourcePosition packagePos = currentPosition();
 		ClassDeclList packageClassList = new ClassDeclList();
-		while (currentToken.type != TokenType.EOT) {
+		while (currentType != TokenType.EOT) {
 			packageClassList.add(parseClassDeclaration());
 		}
 		return new miniJava.AbstractSyntaxTrees.Package(packageClassList, packagePos);
@@ -134,24 +230,24 @@ public class Parser {
 	 * @throws SyntaxErrorException
 	 */
 	private ClassDecl parseClassDeclaration() throws SyntaxErrorException {
-		SourcePosition classPos = currentToken.position;
+		SourcePosition classPos = currentPosition();
 		expect(TokenType.CLASS);
-		Identifier classId = new Identifier(currentToken.spelling, currentToken.position);
+		Identifier classId = new Identifier(currentSpelling, currentPosition());
 		expect(TokenType.IDENTIFIER);
 		expect(TokenType.LCURL);
 		FieldDeclList fieldList = new FieldDeclList();
 		MethodDeclList methodList = new MethodDeclList();
 
-		while (currentToken.type != TokenType.RCURL) {
+		while (currentType != TokenType.RCURL) {
 			// Left factorize the Declarators and id
 			MemberDecl memberDecl = parseDeclarators();
 			expect(TokenType.IDENTIFIER);
 
-			if (currentToken.type == TokenType.LPAREN) {
+			if (currentType == TokenType.LPAREN) {
 				// MethodDeclaration
 				consume();
 				ParameterDeclList pList = new ParameterDeclList();
-				if (currentToken.type != TokenType.RPAREN)
+				if (currentType != TokenType.RPAREN)
 					pList = parseParameterList();
 				expect(TokenType.RPAREN);
 
@@ -159,8 +255,8 @@ public class Parser {
 				expect(TokenType.LCURL);
 				StatementList methodStmtList = new StatementList();
 				Expression returnExpr = null;
-				while (currentToken.type != TokenType.RCURL) {
-					if (currentToken.type == TokenType.RETURN) {
+				while (currentType != TokenType.RCURL) {
+					if (currentType == TokenType.RETURN) {
 						consume();
 						returnExpr = parseExpression();
 						expect(TokenType.SEMICOLON);
@@ -194,17 +290,17 @@ public class Parser {
 	private FieldDecl parseDeclarators() throws SyntaxErrorException {
 		boolean isPrivate = false;
 		boolean isStatic = false;
-		SourcePosition currPos = currentToken.position;
-		if (currentToken.type == TokenType.PUBLIC || currentToken.type == TokenType.PRIVATE) {
-			isPrivate = (currentToken.type == TokenType.PRIVATE);
+		SourcePosition currPos = currentPosition();
+		if (currentType == TokenType.PUBLIC || currentType == TokenType.PRIVATE) {
+			isPrivate = (currentType == TokenType.PRIVATE);
 			consume();
 		}
-		if (currentToken.type == TokenType.STATIC) {
+		if (currentType == TokenType.STATIC) {
 			isStatic = true;
 			consume();
 		}
 		Type memberType = parseType();
-		Identifier memberId = new Identifier(currentToken.spelling, currentToken.position);
+		Identifier memberId = new Identifier(currentSpelling, currentPosition());
 		return new FieldDecl(isPrivate, isStatic, memberType, memberId, currPos);
 	}
 
@@ -228,50 +324,50 @@ public class Parser {
 	 */
 	private Type parseType() throws SyntaxErrorException {
 		Type type;
-		SourcePosition typePos = currentToken.position;
+		SourcePosition typePos = currentPosition();
 
-		switch (currentToken.type) {
+		switch (currentType) {
 		case INT:
 		case IDENTIFIER:
-			switch (currentToken.type) {
+			switch (currentType) {
 			case INT:
-				type = new BaseType(TypeKind.INT, currentToken.spelling, typePos);
+				type = new BaseType(TypeKind.INT, currentSpelling, typePos);
 				break;
 
 			case IDENTIFIER:
-				Identifier typeId = new Identifier(currentToken.spelling, typePos);
+				Identifier typeId = new Identifier(currentSpelling, typePos);
 				type = new ClassType(typeId.spelling, typeId.posn);
 				break;
 
 			default:
-				throw new SyntaxErrorException(currentToken);
+				throw new SyntaxErrorException(currentToken());
 			}
 			consume();
-			if (currentToken.type == TokenType.LSQUARE) {
+			if (currentType == TokenType.LSQUARE) {
 				// ArrayType
 				consume();
 				expect(TokenType.RSQUARE);
-				type = new ArrayType(type, currentToken.spelling, typePos);
+				type = new ArrayType(type, currentSpelling, typePos);
 			}
 			break;
 
 		case BOOLEAN:
 		case VOID:
-			switch (currentToken.type) {
+			switch (currentType) {
 			case BOOLEAN:
-				type = new BaseType(TypeKind.BOOLEAN, currentToken.spelling, typePos);
+				type = new BaseType(TypeKind.BOOLEAN, currentSpelling, typePos);
 				break;
 			case VOID:
-				type = new BaseType(TypeKind.VOID, currentToken.spelling, typePos);
+				type = new BaseType(TypeKind.VOID, currentSpelling, typePos);
 				break;
 			default:
-				throw new SyntaxErrorException(currentToken);
+				throw new SyntaxErrorException(currentToken());
 			}
 			consume();
 			break;
 
 		default:
-			throw new SyntaxErrorException("expected a Type, found ", currentToken);
+			throw new SyntaxErrorException("expected a Type, found ", currentToken());
 		}
 
 		return type;
@@ -289,14 +385,14 @@ public class Parser {
 	private ParameterDeclList parseParameterList() throws SyntaxErrorException {
 		ParameterDeclList pList = new ParameterDeclList();
 		Type type = parseType();
-		Identifier id = new Identifier(currentToken.spelling, currentToken.position);
+		Identifier id = new Identifier(currentSpelling, currentPosition());
 		pList.add(new ParameterDecl(type, id, type.posn));
 
 		expect(TokenType.IDENTIFIER);
-		while (currentToken.type == TokenType.COMMA) {
+		while (currentType == TokenType.COMMA) {
 			consume();
 			type = parseType();
-			id = new Identifier(currentToken.spelling, currentToken.position);
+			id = new Identifier(currentSpelling, currentPosition());
 			pList.add(new ParameterDecl(type, id, type.posn));
 			expect(TokenType.IDENTIFIER);
 		}
@@ -317,7 +413,7 @@ public class Parser {
 		Expression expr;
 		expr = parseExpression();
 		exprs.add(expr);
-		while (currentToken.type == TokenType.COMMA) {
+		while (currentType == TokenType.COMMA) {
 			consume();
 			expr = parseExpression();
 			exprs.add(expr);
@@ -339,9 +435,9 @@ public class Parser {
 		IdentifierList idList = new IdentifierList();
 		if (id != null) // if reference starts with an id instead of this
 			idList.add(id);
-		while (currentToken.type == TokenType.DOT) {
+		while (currentType == TokenType.DOT) {
 			consume();
-			idList.add(new Identifier(currentToken.spelling, currentToken.position));
+			idList.add(new Identifier(currentSpelling, currentPosition()));
 			expect(TokenType.IDENTIFIER);
 		}
 		return idList;
@@ -359,16 +455,16 @@ public class Parser {
 	 */
 	private Reference parseReference() throws SyntaxErrorException {
 		Reference reference = null;
-		SourcePosition referencePos = currentToken.position;
+		SourcePosition referencePos = currentPosition();
 
-		if (currentToken.type == TokenType.THIS || currentToken.type == TokenType.IDENTIFIER) {
-			boolean isThis = (currentToken.type == TokenType.THIS);
-			Identifier id = isThis ? null : new Identifier(currentToken.spelling, currentToken.position);
+		if (currentType == TokenType.THIS || currentType == TokenType.IDENTIFIER) {
+			boolean isThis = (currentType == TokenType.THIS);
+			Identifier id = isThis ? null : new Identifier(currentSpelling, currentPosition());
 			consume();
 			IdentifierList idList = parseReferenceMember(id);
 			reference = new QualifiedRef(isThis, idList, referencePos);
 		} else {
-			throw new SyntaxErrorException(currentToken);
+			throw new SyntaxErrorException(currentToken());
 		}
 		return reference;
 	}
@@ -390,23 +486,80 @@ public class Parser {
 	 */
 	private Statement parseStatement() throws SyntaxErrorException {
 		// Starters(Statement) = {, int, boolean, void, this, <id>, if, while
-		Statement stmt;
-		SourcePosition stmtPos = currentToken.position;
-		switch (currentToken.type) {
-		case LCURL:
-			consume();
-			StatementList stmtList = new StatementList();
-			while (currentToken.type != TokenType.RCURL) {
-				stmtList.add(parseStatement());
+		// Blocks, ifs and whiles stay open on a stack while the statements in
+		// them are parsed
+		int bottom = openStatements.size();
+		while (true) {
+			SourcePosition stmtPos = currentPosition();
+			Statement stmt = null;
+			switch (currentType) {
+			case LCURL:
+				consume();
+				open(new OpenStatement(TokenType.LCURL, null, stmtPos));
+				break;
+
+			case IF:
+			case WHILE:
+				TokenType kind = currentType;
+				consume();
+				expect(TokenType.LPAREN);
+				Expression cond = parseExpression();
+				expect(TokenType.RPAREN);
+				open(new OpenStatement(kind, cond, stmtPos));
+				continue;
+
+			default:
+				stmt = parseSimpleStatement(stmtPos);
+				break;
 			}
-			expect(TokenType.RCURL);
-			stmt = new BlockStmt(stmtList, stmtPos);
-			break;
 
+			// Close the statements that stmt completes
+			while (openStatements.size() > bottom) {
+				OpenStatement open = openStatements.get(openStatements.size() - 1);
+				if (open.kind == TokenType.LCURL) {
+					if (stmt != null)
+						open.stmtList.add(stmt);
+					if (currentType != TokenType.RCURL)
+						break;
+					expect(TokenType.RCURL);
+					stmt = new BlockStmt(open.stmtList, open.posn);
+				} else if (open.kind == TokenType.IF) {
+					if (currentType == TokenType.ELSE) {
+						consume();
+						open.kind = TokenType.ELSE;
+						open.thenStmt = stmt;
+						break;
+					}
+					stmt = new IfStmt(open.cond, stmt, open.posn);
+				} else if (open.kind == TokenType.ELSE) {
+					stmt = new IfStmt(open.cond, open.thenStmt, stmt, open.posn);
+				} else {
+					stmt = new WhileStmt(open.cond, stmt, open.posn);
+				}
+				openStatements.remove(openStatements.size() - 1);
+			}
+			if (openStatements.size() == bottom)
+				return stmt;
+		}
+	}
+
+	private void open(OpenStatement open) {
+		openStatements.add(open);
+		depth = Math.max(depth, openStatements.size());
+	}
+
+	/**
+	 * Parses a <i>Statement</i> that holds no other statement
+	 * 
+	 * @throws SyntaxErrorException
+	 */
+	private Statement parseSimpleStatement(SourcePosition stmtPos) throws SyntaxErrorException {
+		Statement stmt;
+		switch (currentType) {
 		case BOOLEAN:
 		case VOID:
 			Type varDeclType = parseType();
-			Identifier varDeclId = new Identifier(currentToken.spelling, currentToken.position);
+			Identifier varDeclId = new Identifier(currentSpelling, currentPosition());
 			expect(TokenType.IDENTIFIER);
 			expect(TokenType.EQUALTO);
 			Expression varDeclExpr = parseExpression();
@@ -416,15 +569,15 @@ public class Parser {
 			break;
 
 		case INT:
-			Type intVarDeclType = new BaseType(TypeKind.INT, currentToken.spelling, currentToken.position);
+			Type intVarDeclType = new BaseType(TypeKind.INT, currentSpelling, currentPosition());
 			consume();
 			// int[] id = Expression;
-			if (currentToken.type == TokenType.LSQUARE) {
+			if (currentType == TokenType.LSQUARE) {
 				consume();
 				intVarDeclType = new ArrayType(intVarDeclType, intVarDeclType.spelling, intVarDeclType.posn);
 				expect(TokenType.RSQUARE);
 			}
-			Identifier intVarDeclId = new Identifier(currentToken.spelling, currentToken.position);
+			Identifier intVarDeclId = new Identifier(currentSpelling, currentPosition());
 			expect(TokenType.IDENTIFIER);
 			expect(TokenType.EQUALTO);
 			Expression intVarDeclExpr = parseExpression();
@@ -439,7 +592,7 @@ public class Parser {
 			// this.
 			IdentifierList thisRefList = parseReferenceMember(null);
 			Reference thisRef = new QualifiedRef(true, thisRefList, stmtPos);
-			switch (currentToken.type) {
+			switch (currentType) {
 			// this = Expression;
 			case EQUALTO:
 				consume();
@@ -464,7 +617,7 @@ public class Parser {
 			case LPAREN:
 				consume();
 				ExprList thisRefExprList = new ExprList();
-				if (currentToken.type != TokenType.RPAREN) {
+				if (currentType != TokenType.RPAREN) {
 					thisRefExprList = parseArgumentList();
 				}
 				expect(TokenType.RPAREN);
@@ -473,16 +626,16 @@ public class Parser {
 				break;
 
 			default:
-				throw new SyntaxErrorException(currentToken);
+				throw new SyntaxErrorException(currentToken());
 			}
 			break;
 
 		case IDENTIFIER:
-			Identifier id1 = new Identifier(currentToken.spelling, currentToken.position);
+			Identifier id1 = new Identifier(currentSpelling, currentPosition());
 			Reference idRef1 = new QualifiedRef(id1);
 			consume();
 
-			switch (currentToken.type) {
+			switch (currentType) {
 			case EQUALTO:
 				// id = Expression; //AssignStmt
 				consume();
@@ -494,12 +647,12 @@ public class Parser {
 			case LSQUARE:
 				consume();
 
-				if (currentToken.type == TokenType.RSQUARE) {
+				if (currentType == TokenType.RSQUARE) {
 					// id[] id = Expression; //VarDeclStmt
 					Type idType = new ClassType(id1.spelling, id1.posn);
 					Type idArrType = new ArrayType(idType, idType.spelling, idType.posn);
 					consume();
-					Identifier id2 = new Identifier(currentToken.spelling, currentToken.position);
+					Identifier id2 = new Identifier(currentSpelling, currentPosition());
 					expect(TokenType.IDENTIFIER);
 					VarDecl idVarDecl = new VarDecl(idArrType, id2, stmtPos);
 					expect(TokenType.EQUALTO);
@@ -523,7 +676,7 @@ public class Parser {
 				IdentifierList idList1 = parseReferenceMember(id1); // id(.id)*
 				idRef1 = new QualifiedRef(false, idList1, stmtPos);
 
-				switch (currentToken.type) {
+				switch (currentType) {
 
 				case EQUALTO:
 					// id(.id)* = Expression //AssignStmt
@@ -549,7 +702,7 @@ public class Parser {
 					// id(.id)*(ArgumentList?); //CallStmt
 					consume();
 					ExprList idRefExprList = new ExprList();
-					if (currentToken.type != TokenType.RPAREN) {
+					if (currentType != TokenType.RPAREN) {
 						idRefExprList = parseArgumentList();
 					}
 					expect(TokenType.RPAREN);
@@ -558,13 +711,13 @@ public class Parser {
 					break;
 
 				default:
-					throw new SyntaxErrorException(currentToken);
+					throw new SyntaxErrorException(currentToken());
 				}
 				break;
 
 			case IDENTIFIER:
 				// id id = Expression; //VarDeclStmt
-				Identifier id2 = new Identifier(currentToken.spelling, currentToken.position);
+				Identifier id2 = new Identifier(currentSpelling, currentPosition());
 				Type id1Class = new ClassType(id1.spelling, id1.posn);
 				consume();
 				expect(TokenType.EQUALTO);
@@ -578,7 +731,7 @@ public class Parser {
 				// id (ArgumentList?); //Callstmt
 				consume();
 				ExprList idIdExprList = new ExprList();
-				if (currentToken.type != TokenType.RPAREN) {
+				if (currentType != TokenType.RPAREN) {
 					idIdExprList = parseArgumentList();
 				}
 				expect(TokenType.RPAREN);
@@ -587,180 +740,69 @@ public class Parser {
 				break;
 
 			default:
-				throw new SyntaxErrorException(currentToken);
-			}
-			break;
-
-		case IF:
-			consume();
-			expect(TokenType.LPAREN);
-			Expression ifExpr = parseExpression();
-			expect(TokenType.RPAREN);
-			Statement ifBlock = parseStatement();
-			if (currentToken.type == TokenType.ELSE) {
-				consume();
-				stmt = new IfStmt(ifExpr, ifBlock, parseStatement(), stmtPos);
-			} else {
-				stmt = new IfStmt(ifExpr, ifBlock, stmtPos);
+				throw new SyntaxErrorException(currentToken());
 			}
 			break;
 
-		case WHILE:
-			consume();
-			expect(TokenType.LPAREN);
-			Expression whileExpr = parseExpression();
-			expect(TokenType.RPAREN);
-			stmt = new WhileStmt(whileExpr, parseStatement(), stmtPos);
-			break;
-
 		default:
-			throw new SyntaxErrorException(currentToken);
+			throw new SyntaxErrorException(currentToken());
 		}
 		return stmt;
 	}
 
 	/**
-	 * Parses the <i>Expression</i> non-terminal
-	 * 
-	 * <pre>
-	 * Expression ::=  Conjunction ( <b>||</b> Conjunction )*
-	 * </pre>
-	 * 
-	 * @throws SyntaxErrorException
+	 * Precedence of a binary operator, from <b>||</b> (1) up to <b>*</b> and
+	 * <b>/</b> (6), or 0 for a token that is not one
 	 */
-	private Expression parseExpression() throws SyntaxErrorException {
-		Expression expr = parseConjunction();
-		while (currentToken.type == TokenType.PIPE_PIPE) {
-			Operator op = new Operator(currentToken.spelling, currentToken.position);
-			consume();
-			expr = new BinaryExpr(op, expr, parseConjunction(), currentToken.position);
+	private static int precedence(TokenType type) {
+		switch (type) {
+		case PIPE_PIPE:
+			return 1;
+		case AMPERSAND_AMPERSAND:
+			return 2;
+		case EQUALTO_EQUALTO:
+		case BANG_EQUALTO:
+			return 3;
+		case LANGLE_EQUALTO:
+		case LANGLE:
+		case RANGLE:
+		case RANGLE_EQUALTO:
+			return 4;
+		case PLUS:
+		case MINUS:
+			return 5;
+		case ASTERISK:
+		case SLASH:
+			return 6;
+		default:
+			return 0;
 		}
-		return expr;
 	}
 
-	/**
-	 * Parses the <i>Conjunction</i> non-terminal
-	 * 
-	 * <pre>
-	 * Conjunction ::= Equality ( <b>&&</b> Equality )*
-	 * </pre>
-	 * 
-	 * @throws SyntaxErrorException
-	 */
-	private Expression parseConjunction() throws SyntaxErrorException {
-		Expression expr = parseEquality();
-		while (currentToken.type == TokenType.AMPERSAND_AMPERSAND) {
-			Operator op = new Operator(currentToken.spelling, currentToken.position);
-			consume();
-			expr = new BinaryExpr(op, expr, parseEquality(), currentToken.position);
-		}
-		return expr;
+	private OpenExpression open(int kind, SourcePosition exprPos, int unary) {
+		OpenExpression open = new OpenExpression(kind, exprPos, operators.size(), unary);
+		openExpressions.add(open);
+		return open;
 	}
 
-	/**
-	 * Parses the <i>Equality</i> non-terminal
-	 * 
-	 * <pre>
-	 * Equality ::= Relational ( ( <b>==</b> | <b>!=</b> ) Relational )*
-	 * </pre>
-	 * 
-	 * @throws SyntaxErrorException
-	 */
-	private Expression parseEquality() throws SyntaxErrorException {
-		Expression expr = parseRelational();
-		while (currentToken.type == TokenType.EQUALTO_EQUALTO || currentToken.type == TokenType.BANG_EQUALTO) {
-			Operator op = new Operator(currentToken.spelling, currentToken.position);
-			consume();
-			expr = new BinaryExpr(op, expr, parseRelational(), currentToken.position);
-		}
-		return expr;
+	private void pushOperand(Expression expr, int height) {
+		if (operands.size() == heights.length)
+			heights = java.util.Arrays.copyOf(heights, heights.length * 2);
+		heights[operands.size()] = height;
+		operands.add(expr);
 	}
 
 	/**
-	 * Parses the <i>Relational</i> non-terminal
+	 * Parses the <i>Expression</i> non-terminal
 	 * 
 	 * <pre>
+	 * Expression ::=  Conjunction ( <b>||</b> Conjunction )*
+	 * Conjunction ::= Equality ( <b>&&</b> Equality )*
+	 * Equality ::= Relational ( ( <b>==</b> | <b>!=</b> ) Relational )*
 	 * Relational ::= Additive ( ( <b>&lt;=</b> | <b>&lt;</b> | <b>&gt;</b> | <b>&gt;=</b> ) Additive )*
-	 * </pre>
-	 * 
-	 * @throws SyntaxErrorException
-	 */
-	private Expression parseRelational() throws SyntaxErrorException {
-		Expression expr = parseAdditive();
-		while (currentToken.type == TokenType.LANGLE_EQUALTO || currentToken.type == TokenType.LANGLE
-				|| currentToken.type == TokenType.RANGLE || currentToken.type == TokenType.RANGLE_EQUALTO) {
-			Operator op = new Operator(currentToken.spelling, currentToken.position);
-			consume();
-			expr = new BinaryExpr(op, expr, parseAdditive(), currentToken.position);
-		}
-		return expr;
-	}
-
-	/**
-	 * Parses the <i>Additive</i> non-terminal
-	 * 
-	 * <pre>
 	 * Additive ::= Multiplicative ( ( <b>+</b> | <b>&minus;</b> ) Multiplicative )*
-	 * </pre>
-	 * 
-	 * @throws SyntaxErrorException
-	 */
-	private Expression parseAdditive() throws SyntaxErrorException {
-		Expression expr = parseMultiplicative();
-		while (currentToken.type == TokenType.PLUS || currentToken.type == TokenType.MINUS) {
-			Operator op = new Operator(currentToken.spelling, currentToken.position);
-			consume();
-			expr = new BinaryExpr(op, expr, parseMultiplicative(), currentToken.position);
-		}
-		return expr;
-	}
-
-	/**
-	 * Parses the <i>Multiplicative</i> non-terminal
-	 * 
-	 * <pre>
 	 * Multiplicative ::= Unary ( ( <b>*</b> | <b>/</b> ) Unary )*
-	 * </pre>
-	 * 
-	 * @throws SyntaxErrorException
-	 */
-	private Expression parseMultiplicative() throws SyntaxErrorException {
-		Expression expr = parseUnary();
-		while (currentToken.type == TokenType.ASTERISK || currentToken.type == TokenType.SLASH) {
-			Operator op = new Operator(currentToken.spelling, currentToken.position);
-			consume();
-			expr = new BinaryExpr(op, expr, parseUnary(), currentToken.position);
-		}
-		return expr;
-	}
-
-	/**
-	 * Parses the <i>Unary</i> non-terminal
-	 * 
-	 * <pre>
 	 * Unary ::= ( <b>&minus;</b> | <b>!</b> )* Term
-	 * </pre>
-	 * 
-	 * @throws SyntaxErrorException
-	 */
-	private Expression parseUnary() throws SyntaxErrorException {
-		Stack<Operator> operators = new Stack<Operator>();
-		while (currentToken.type == TokenType.MINUS || currentToken.type == TokenType.BANG) {
-			operators.push(new Operator(currentToken.spelling, currentToken.position));
-			consume();
-		}
-		Expression expr = parseTerm();
-		while (!operators.empty()) {
-			Operator op = operators.pop();
-			expr = new UnaryExpr(op, expr, op.posn);
-		}
-		return expr;
-	}
-
-	/**
-	 * Parses the <i>Term</i> non-terminal
-	 * 
-	 * <pre>
 	 * Term ::= <b>(</b> Expression <b>)</b>                 // Expression
 	 *       | <b>num</b> | <b>true</b> | <b>false</b>  | <b>string</b>    // LiteralExpr
 	 *       | Reference ( <b>[</b> Expression <b>]</b> )?   // RefExpr
@@ -768,118 +810,191 @@ public class Parser {
 	 *       | <b>new</b> (id <b>( )</b> | <b>int [</b> Expression <b>]</b> | id <b>[</b> Expression <b>]</b> )  // NewObjectExpr, NewArrayExpr
 	 * </pre>
 	 * 
+	 * The binary operators are all left associative. Operands wait on a
+	 * stack until an operator of the same or lower precedence shows up, and
+	 * a Term that holds an Expression leaves itself open on a stack while
+	 * that Expression is parsed. The tree is the one the grammar above gives,
+	 * with a BinaryExpr placed at the token after its right operand.
+	 * 
 	 * @throws SyntaxErrorException
 	 */
-	private Expression parseTerm() throws SyntaxErrorException {
-		Expression expr = null;
-		SourcePosition exprPos = currentToken.position;
+	private Expression parseExpression() throws SyntaxErrorException {
+		OpenExpression open = open(EXPRESSION, null, operators.size());
 
-		switch (currentToken.type) {
-		case NEW:
-			consume();
-			Type newType;
-			Expression arrayExpr;
+		parse: while (true) {
+			// Unary operators wait on the operator stack for their Term
+			int unary = operators.size();
+			while (currentType == TokenType.MINUS || currentType == TokenType.BANG) {
+				operators.add(new Operator(currentSpelling, currentPosition()));
+				consume();
+			}
 
-			switch (currentToken.type) {
-			case INT:
-				// new int [ Expression ]
-				newType = new BaseType(TypeKind.INT, currentToken.spelling, currentToken.position);
+			// Term, or the start of a Term that holds an Expression
+			Expression expr = null;
+			int height = 1;
+			SourcePosition exprPos = currentPosition();
+
+			switch (currentType) {
+			case NEW:
 				consume();
-				expect(TokenType.LSQUARE);
-				arrayExpr = parseExpression();
-				expect(TokenType.RSQUARE);
-				expr = new NewArrayExpr(newType, arrayExpr, exprPos);
+
+				switch (currentType) {
+				case INT:
+					// new int [ Expression ]
+					Type intType = new BaseType(TypeKind.INT, currentSpelling, currentPosition());
+					consume();
+					expect(TokenType.LSQUARE);
+					open(ARRAY_SIZE, exprPos, unary).newType = intType;
+					continue parse;
+
+				case IDENTIFIER:
+					ClassType classType = new ClassType(currentSpelling, currentPosition());
+					consume();
+					switch (currentType) {
+					case LPAREN:
+						// new id ( )
+						consume();
+						expect(TokenType.RPAREN);
+						expr = new NewObjectExpr(classType, exprPos);
+						break;
+
+					case LSQUARE:
+						// new id [ Expression ]
+						consume();
+						open(ARRAY_SIZE, exprPos, unary).newType = classType;
+						continue parse;
+
+					default:
+						throw new SyntaxErrorException(currentToken());
+					}
+				}
 				break;
 
+			case THIS:
 			case IDENTIFIER:
-				newType = new ClassType(currentToken.spelling, currentToken.position);
-				consume();
-				switch (currentToken.type) {
-				case LPAREN:
-					// new id ( )
-					consume();
-					expect(TokenType.RPAREN);
-					expr = new NewObjectExpr((ClassType) newType, exprPos);
-					break;
+				Reference idRef = parseReference();
 
+				switch (currentType) {
 				case LSQUARE:
-					// new id [ Expression ]
+					// Reference[Expression]
 					consume();
-					arrayExpr = parseExpression();
-					expect(TokenType.RSQUARE);
-					expr = new NewArrayExpr(newType, arrayExpr, exprPos);
+					open(INDEX, exprPos, unary).ref = idRef;
+					continue parse;
+
+				case LPAREN:
+					// Reference(Expression)
+					consume();
+					if (currentType != TokenType.RPAREN) {
+						OpenExpression call = open(ARGUMENTS, exprPos, unary);
+						call.ref = idRef;
+						call.argList = new ExprList();
+						continue parse;
+					}
+					expect(TokenType.RPAREN);
+					expr = new CallExpr(idRef, new ExprList(), exprPos);
 					break;
 
 				default:
-					throw new SyntaxErrorException(currentToken);
+					// Reference
+					expr = new RefExpr(idRef, exprPos);
+					break;
 				}
-			}
-			break;
-
-		case THIS:
-		case IDENTIFIER:
-			Reference idRef = parseReference();
-			Expression idExpr;
+				break;
 
-			switch (currentToken.type) {
-			case LSQUARE:
-				// Reference[Expression]
+			case NUMBER:
+			case TRUE:
+			case FALSE:
+			case STRING:
+				Literal literal = null;
+				switch (currentType) {
+				case NUMBER:
+					literal = new IntLiteral(currentSpelling, currentPosition());
+					break;
+				case TRUE:
+				case FALSE:
+					literal = new BooleanLiteral(currentSpelling, currentPosition());
+					break;
+				case STRING:
+					literal = new StringLiteral(currentSpelling, currentPosition());
+					break;
+				}
 				consume();
-				idExpr = parseExpression();
-				expect(TokenType.RSQUARE);
-				IndexedRef indexedRef1 = new IndexedRef(idRef, idExpr, idRef.posn);
-				expr = new RefExpr(indexedRef1, exprPos);
+				expr = new LiteralExpr(literal, exprPos);
 				break;
 
 			case LPAREN:
-				// Reference(Expression)
+				// ( Expression )
 				consume();
-				ExprList argList = new ExprList();
-				if (currentToken.type != TokenType.RPAREN)
-					argList = parseArgumentList();
-				expect(TokenType.RPAREN);
-				expr = new CallExpr(idRef, argList, exprPos);
-				break;
+				open(PARENTHESIZED, exprPos, unary);
+				continue parse;
 
 			default:
-				// Reference
-				expr = new RefExpr(idRef, exprPos);
-				break;
+				throw new SyntaxErrorException(currentToken());
 			}
-			break;
 
-		case NUMBER:
-		case TRUE:
-		case FALSE:
-		case STRING:
-			Literal literal = null;
-			switch (currentToken.type) {
-			case NUMBER:
-				literal = new IntLiteral(currentToken.spelling, currentToken.position);
-				break;
-			case TRUE:
-			case FALSE:
-				literal = new BooleanLiteral(currentToken.spelling, currentToken.position);
-				break;
-			case STRING:
-				literal = new StringLiteral(currentToken.spelling, currentToken.position);
-				break;
-			}
-			consume();
-			expr = new LiteralExpr(literal, exprPos);
-			break;
+			// The Term is complete, and so may be the expressions that end
+			// with it
+			while (true) {
+				while (operators.size() > unary) {
+					Operator op = operators.remove(operators.size() - 1);
+					expr = new UnaryExpr(op, expr, op.posn);
+					height++;
+				}
 
-		case LPAREN:
-			// ( Expression )
-			consume();
-			expr = parseExpression();
-			expect(TokenType.RPAREN);
-			break;
+				open = openExpressions.get(openExpressions.size() - 1);
+				int precedence = precedence(currentType);
+				while (operators.size() > open.operators
+						&& precedence(operators.get(operators.size() - 1).operatorType) >= precedence) {
+					Operator op = operators.remove(operators.size() - 1);
+					int left = operands.size() - 1;
+					height = 1 + Math.max(heights[left], height);
+					expr = new BinaryExpr(op, operands.remove(left), expr, currentPosition());
+				}
+				if (precedence > 0) {
+					pushOperand(expr, height);
+					operators.add(new Operator(currentSpelling, currentPosition()));
+					consume();
+					continue parse;
+				}
 
-		default:
-			throw new SyntaxErrorException(currentToken);
-		}
+				openExpressions.remove(openExpressions.size() - 1);
+				switch (open.kind) {
+				case PARENTHESIZED:
+					expect(TokenType.RPAREN);
+					break;
+
+				case INDEX:
+					expect(TokenType.RSQUARE);
+					IndexedRef indexedRef = new IndexedRef(open.ref, expr, open.ref.posn);
+					expr = new RefExpr(indexedRef, open.exprPos);
+					height += 2;
+					break;
+
+				case ARGUMENTS:
+					open.argList.add(expr);
+					open.height = Math.max(open.height, height);
+					if (currentType == TokenType.COMMA) {
+						consume();
+						openExpressions.add(open);
+						continue parse;
+					}
+					expect(TokenType.RPAREN);
+					expr = new CallExpr(open.ref, open.argList, open.exprPos);
+					height = open.height + 1;
+					break;
 
-		return expr;
+				case ARRAY_SIZE:
+					expect(TokenType.RSQUARE);
+					expr = new NewArrayExpr(open.newType, expr, open.exprPos);
+					height++;
+					break;
+
+				default:
+					depth = Math.max(depth, openStatements.size() + height);
+					return expr;
+				}
+				unary = open.unary;
+			}
+		}
 	}
 }
@@ -7,18 +7,32 @@ import java.io.InputStream;
  * Converts the input stream into tokens for the miniJava language
  */
 public class Scanner {
-	private InputStream in;
+	private CharSource in;
 	private char currentChar;
-	private StringBuilder currentString;
 	private SourcePosition position;
 
+	// Source offset of currentChar and number of characters read so far
+	private int currentOffset;
+	private int charsRead;
+
+	// The last lexeme scanned by scan()
+	private Lexeme lexeme;
+	private SourcePosition tokenPosition;
+	private int tokenStart, tokenLength;
+
 	final static char EOT = '\u0000';
 
 	public Scanner(InputStream in) {
+		this(new BufferedCharSource(in));
+	}
+
+	public Scanner(CharSource in) {
 		this.in = in;
 		this.currentChar = ' ';
-		this.currentString = new StringBuilder();
 		this.position = new SourcePosition(1, 0);
+		this.currentOffset = -1;
+		this.lexeme = new Lexeme();
+		this.tokenPosition = new SourcePosition(1, 0);
 	}
 
 	private void skipLine() throws IOException {
@@ -54,112 +68,195 @@ public class Scanner {
 	 *             if an unknown column is encountered
 	 */
 	public Token nextToken() throws ScannerException {
+		TokenType type = scan();
+		String spelling;
+		switch (type) {
+		case IDENTIFIER:
+		case NUMBER:
+		case STRING:
+			spelling = lexeme.toString();
+			break;
+		case EOT:
+			spelling = "";
+			break;
+		default:
+			spelling = type.spelling;
+		}
+		return new Token(type, spelling, tokenPosition);
+	}
+
+	/**
+	 * Scans the whole input into a packed TokenStream, without creating a
+	 * Token per lexeme. Identifier, number and string spellings are interned
+	 * in the stream's SymbolTable. A lexical error ends the stream and is
+	 * kept in it, to be reported when the Parser reaches it.
+	 * 
+	 * @return TokenStream ending with EOT, unless scanning failed
+	 */
+	public TokenStream tokenize() {
+		return tokenize(new TokenStream());
+	}
+
+	public TokenStream tokenize(TokenStream tokens) {
 		try {
-			skipWhitespace();
-
-			switch (currentChar) {
-
-			// Binary operators
-			case ';':
-			case ',':
-			case '.':
-			case '(':
-			case ')':
-			case '[':
-			case ']':
-			case '{':
-			case '}':
-			case '+':
-			case '*':
-				Token token = new Token(Character.toString(currentChar), position);
-				nextChar();
-				return token;
+			TokenType type;
+			do {
+				type = scan();
+				int symbol = -1;
+				if (type == TokenType.IDENTIFIER || type == TokenType.NUMBER || type == TokenType.STRING)
+					symbol = tokens.symbolTable.intern(lexeme.chars, 0, lexeme.length);
+				tokens.add(type, tokenStart, tokenLength, tokenPosition.line, tokenPosition.column, symbol);
+			} while (type != TokenType.EOT);
+		} catch (ScannerException e) {
+			tokens.setError(e);
+		}
+		return tokens;
+	}
 
-			case '-':
-				nextChar();
-				if(currentChar == '-')
-					throw new ScannerException("--", position, "-- is not supported");
-				return new Token("-", position);
+	/**
+	 * Scans the next lexeme into the lexeme buffer. Its start, length and
+	 * position are left in tokenStart, tokenLength and tokenPosition; as with
+	 * Token, the position is where the scanner was when the lexeme was
+	 * recognized.
+	 * 
+	 * @return type of the lexeme
+	 * @throws ScannerException
+	 */
+	private TokenType scan() throws ScannerException {
+		try {
+			while (true) {
+				skipWhitespace();
+				tokenStart = currentOffset;
+				lexeme.clear();
 
-			case '|':
-				nextChar();
-				expect('|');
-				return new Token("||", position);
+				switch (currentChar) {
 
-			case '&':
-				nextChar();
-				expect('&');
-				return new Token("&&", position);
-
-			case '<':
-			case '>':
-			case '=':
-			case '!':
-				String spelling = Character.toString(currentChar);
-				nextChar();
-				// Account for >=, <=, == and !=
-				if(currentChar == '=') {
-					spelling = spelling + currentChar;
+				// Binary operators
+				case ';':
+				case ',':
+				case '.':
+				case '(':
+				case ')':
+				case '[':
+				case ']':
+				case '{':
+				case '}':
+				case '+':
+				case '*':
+					lexeme.append(currentChar);
+					markToken();
 					nextChar();
-				}
-				return new Token(spelling, position);
+					tokenLength = 1;
+					return TokenType.lookup(lexeme);
 
-			case '/':
-				nextChar();
-				if (currentChar == '/') {
-					// Single line comment
-					skipLine();
-					return nextToken();
-				} else if (currentChar == '*') {
+				case '-':
 					nextChar();
-					skipMultiLineComment();
-					return nextToken();
-				}
-				return new Token(TokenType.SLASH, "/", position);
+					if(currentChar == '-')
+						throw new ScannerException("--", position, "-- is not supported");
+					return token(TokenType.MINUS);
 
-			case '"':
-				nextChar();
-				StringBuilder str = new StringBuilder();
-				while(currentChar != '"' && currentChar != EOT) {
-					str.append(currentChar);
+				case '|':
 					nextChar();
-				}
-				expect('"');
-				return new Token(TokenType.STRING, str.toString(), position);
+					expect('|');
+					return token(TokenType.PIPE_PIPE);
 
-			case EOT:
-				return new Token(TokenType.EOT, "", position);
+				case '&':
+					nextChar();
+					expect('&');
+					return token(TokenType.AMPERSAND_AMPERSAND);
 
-			default:
-				currentString.setLength(0);
-				currentString.append(currentChar);
+				case '<':
+				case '>':
+				case '=':
+				case '!':
+					lexeme.append(currentChar);
+					nextChar();
+					// Account for >=, <=, == and !=
+					if(currentChar == '=') {
+						lexeme.append(currentChar);
+						nextChar();
+					}
+					return token(TokenType.lookup(lexeme));
 
-				if (StringUtils.isAlpha(currentChar)) {
-					// Identifier
+				case '/':
 					nextChar();
-					while (StringUtils.isAlnum(currentChar) || currentChar == '_') {
-						currentString.append(currentChar);
+					if (currentChar == '/') {
+						// Single line comment
+						skipLine();
+						continue;
+					} else if (currentChar == '*') {
 						nextChar();
+						skipMultiLineComment();
+						continue;
 					}
-					return new Token(currentString.toString(), position);
-				} else if (StringUtils.isDigit(currentChar)) {
-					// Number
+					return token(TokenType.SLASH);
+
+				case '"':
 					nextChar();
-					while (StringUtils.isDigit(currentChar)) {
-						currentString.append(currentChar);
+					while(currentChar != '"' && currentChar != EOT) {
+						lexeme.append(currentChar);
 						nextChar();
 					}
-					return new Token(TokenType.NUMBER, currentString.toString(), position);
-				}
+					expect('"');
+					return token(TokenType.STRING);
+
+				case EOT:
+					return token(TokenType.EOT);
+
+				default:
+					lexeme.append(currentChar);
+
+					if (StringUtils.isAlpha(currentChar)) {
+						// Identifier
+						nextChar();
+						while (StringUtils.isAlnum(currentChar) || currentChar == '_') {
+							lexeme.append(currentChar);
+							nextChar();
+						}
+						TokenType keyword = TokenType.lookup(lexeme);
+						return token(keyword != null ? keyword : TokenType.IDENTIFIER);
+					} else if (StringUtils.isDigit(currentChar)) {
+						// Number
+						nextChar();
+						while (StringUtils.isDigit(currentChar)) {
+							lexeme.append(currentChar);
+							nextChar();
+						}
+						return token(TokenType.NUMBER);
+					}
 
-				// Unknown character
-				throw new ScannerException(Character.toString(currentChar), position);
+					// Unknown character
+					throw new ScannerException(Character.toString(currentChar), position);
+				}
 			}
 		} catch (IOException e) {
-			return new Token(TokenType.EOT, "", position);
+			lexeme.clear();
+			tokenLength = 0;
+			markToken();
+			return TokenType.EOT;
 		}
 	}
 
+	/**
+	 * Records the current position as the position of the lexeme
+	 */
+	private void markToken() {
+		tokenPosition.line = position.line;
+		tokenPosition.column = position.column;
+	}
+
+	/**
+	 * Ends a lexeme at the current character
+	 * 
+	 * @param type
+	 * @return type
+	 */
+	private TokenType token(TokenType type) {
+		markToken();
+		tokenLength = currentOffset - tokenStart;
+		return type;
+	}
+
 	/**
 	 * Consumes expected character if found
 	 * 
@@ -174,21 +271,25 @@ public class Scanner {
 	}
 
 	/**
-	 * Reads the next character from stream
+	 * Reads the next character from stream. The position is updated in place,
+	 * so nothing is allocated per character.
 	 * 
 	 * @return the next character from input or EOT on end-of-file
 	 * @throws IOException
 	 */
 	private char nextChar() throws IOException {
-		int c = in.read();
+		int c;
+		do {
+			c = in.read();
+			charsRead++;
+		} while (c == '\r');
 
 		if (c == -1) {
 			currentChar = EOT;
+			currentOffset = --charsRead;
 		} else {
 			currentChar = (char) c;
-			if (currentChar == '\r') {
-				return nextChar();
-			}
+			currentOffset = charsRead - 1;
 			if(currentChar == '\n') {
 				position.column = 0;
 				position.line++;
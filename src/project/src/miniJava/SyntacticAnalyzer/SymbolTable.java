@@ -0,0 +1,96 @@
+package miniJava.SyntacticAnalyzer;
+
+/**
+ * Interns the spellings of identifiers, numbers and strings. Each distinct
+ * spelling is turned into a String once and is afterwards referred to by an
+ * int symbol, so scanning a name a second time allocates nothing.
+ */
+public class SymbolTable {
+	private String[] spellings;
+	private int[] hashes;
+	private int[] table;
+	private int count;
+
+	public SymbolTable() {
+		spellings = new String[256];
+		hashes = new int[256];
+		table = new int[512];
+		java.util.Arrays.fill(table, -1);
+	}
+
+	/**
+	 * Returns the symbol for the given characters, adding it if it is not
+	 * already in the table
+	 *
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 * @return symbol
+	 */
+	public int intern(char[] chars, int offset, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+			hash = 31 * hash + chars[offset + i];
+
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		while (table[slot] != -1) {
+			int symbol = table[slot];
+			if (hashes[symbol] == hash && matches(spellings[symbol], chars, offset, length))
+				return symbol;
+			slot = (slot + 1) & mask;
+		}
+
+		if (count == spellings.length) {
+			spellings = java.util.Arrays.copyOf(spellings, count * 2);
+			hashes = java.util.Arrays.copyOf(hashes, count * 2);
+		}
+		int symbol = count++;
+		spellings[symbol] = new String(chars, offset, length);
+		hashes[symbol] = hash;
+		table[slot] = symbol;
+
+		// Keep the load factor under one half
+		if (count * 2 > table.length)
+			rehash();
+		return symbol;
+	}
+
+	public int intern(String s) {
+		return intern(s.toCharArray(), 0, s.length());
+	}
+
+	/**
+	 * @param symbol
+	 * @return the spelling of a symbol returned by intern
+	 */
+	public String spelling(int symbol) {
+		return spellings[symbol];
+	}
+
+	public int size() {
+		return count;
+	}
+
+	private static boolean matches(String s, char[] chars, int offset, int length) {
+		if (s.length() != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (s.charAt(i) != chars[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		java.util.Arrays.fill(table, -1);
+		int mask = table.length - 1;
+		for (int symbol = 0; symbol < count; symbol++) {
+			int slot = hashes[symbol] & mask;
+			while (table[slot] != -1)
+				slot = (slot + 1) & mask;
+			table[slot] = symbol;
+		}
+	}
+}
@@ -24,18 +24,9 @@ public class Token {
 	 * @param position
 	 */
 	public Token(String spelling, SourcePosition position) {
-		boolean matched = false;
+		type = TokenType.lookup(spelling);
 
-		// Use Enum.values() method to get all token types
-		for (TokenType t : TokenType.values()) {
-			if (t.spelling != null && (t.spelling.compareTo(spelling) == 0)) {
-				this.type = t;
-				matched = true;
-				break;
-			}
-		}
-
-		if (!matched)
+		if (type == null)
 			type = TokenType.IDENTIFIER;
 
 		this.spelling = spelling;
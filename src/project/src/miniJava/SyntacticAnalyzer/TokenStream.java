@@ -0,0 +1,150 @@
+package miniJava.SyntacticAnalyzer;
+
+/**
+ * The tokens of a source file, stored column-wise in parallel primitive
+ * arrays instead of one Token object per lexeme. Identifier, number and
+ * string spellings are interned in a SymbolTable; keywords and operators
+ * take their spelling from their TokenType.
+ *
+ * If the Scanner failed, the stream holds the tokens before the error along
+ * with the ScannerException, which the Parser raises once it gets there.
+ */
+public class TokenStream {
+	private static final TokenType[] TYPES = TokenType.values();
+
+	// Tokens are kept in fixed-size chunks, so that growing the stream never
+	// copies (and throws away) the arrays filled so far
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private byte[][] types;
+	private int[][] starts;
+	private int[][] lengths;
+	private int[][] lines;
+	private int[][] columns;
+	private int[][] symbols;
+	private int size;
+
+	public final SymbolTable symbolTable;
+	private ScannerException error;
+
+	public TokenStream() {
+		this(new SymbolTable());
+	}
+
+	public TokenStream(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
+		types = new byte[4][];
+		starts = new int[4][];
+		lengths = new int[4][];
+		lines = new int[4][];
+		columns = new int[4][];
+		symbols = new int[4][];
+	}
+
+	/**
+	 * Appends a token
+	 *
+	 * @param type
+	 * @param start
+	 *            offset of the first character of the lexeme in the source
+	 * @param length
+	 *            number of source characters in the lexeme
+	 * @param line
+	 * @param column
+	 * @param symbol
+	 *            interned spelling, or -1 for keywords and operators
+	 */
+	public void add(TokenType type, int start, int length, int line, int column, int symbol) {
+		int chunk = size >>> CHUNK_BITS;
+		int i = size & CHUNK_MASK;
+		if (i == 0) {
+			if (chunk == types.length) {
+				int capacity = chunk * 2;
+				types = java.util.Arrays.copyOf(types, capacity);
+				starts = java.util.Arrays.copyOf(starts, capacity);
+				lengths = java.util.Arrays.copyOf(lengths, capacity);
+				lines = java.util.Arrays.copyOf(lines, capacity);
+				columns = java.util.Arrays.copyOf(columns, capacity);
+				symbols = java.util.Arrays.copyOf(symbols, capacity);
+			}
+			types[chunk] = new byte[CHUNK_SIZE];
+			starts[chunk] = new int[CHUNK_SIZE];
+			lengths[chunk] = new int[CHUNK_SIZE];
+			lines[chunk] = new int[CHUNK_SIZE];
+			columns[chunk] = new int[CHUNK_SIZE];
+			symbols[chunk] = new int[CHUNK_SIZE];
+		}
+		types[chunk][i] = (byte) type.ordinal();
+		starts[chunk][i] = start;
+		lengths[chunk][i] = length;
+		lines[chunk][i] = line;
+		columns[chunk][i] = column;
+		symbols[chunk][i] = symbol;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public TokenType type(int i) {
+		return TYPES[types[i >>> CHUNK_BITS][i & CHUNK_MASK]];
+	}
+
+	public int start(int i) {
+		return starts[i >>> CHUNK_BITS][i & CHUNK_MASK];
+	}
+
+	public int length(int i) {
+		return lengths[i >>> CHUNK_BITS][i & CHUNK_MASK];
+	}
+
+	public int line(int i) {
+		return lines[i >>> CHUNK_BITS][i & CHUNK_MASK];
+	}
+
+	public int column(int i) {
+		return columns[i >>> CHUNK_BITS][i & CHUNK_MASK];
+	}
+
+	/**
+	 * @param i
+	 * @return the interned spelling of token i, or -1 for keywords and
+	 *         operators
+	 */
+	public int symbol(int i) {
+		return symbols[i >>> CHUNK_BITS][i & CHUNK_MASK];
+	}
+
+	/**
+	 * @param i
+	 * @return the spelling of token i, the same as Token would have
+	 */
+	public String spelling(int i) {
+		int symbol = symbols[i >>> CHUNK_BITS][i & CHUNK_MASK];
+		if (symbol >= 0)
+			return symbolTable.spelling(symbol);
+		TokenType type = type(i);
+		return (type == TokenType.EOT) ? "" : type.spelling;
+	}
+
+	/**
+	 * Builds a Token object for token i, for error reporting
+	 */
+	public Token token(int i) {
+		return new Token(type(i), spelling(i), new SourcePosition(line(i), column(i)));
+	}
+
+	void setError(ScannerException error) {
+		this.error = error;
+	}
+
+	/**
+	 * @return the error that ended scanning after the last token, or null
+	 */
+	public ScannerException getError() {
+		return error;
+	}
+}
@@ -56,4 +56,102 @@ public enum TokenType {
 	TokenType(String spelling) {
 		this.spelling = spelling;
 	}
+
+	/**
+	 * Finds the keyword or operator with the given spelling. The candidate is
+	 * picked by a switch on the length and first character, so at most one
+	 * spelling is compared and nothing is allocated.
+	 * 
+	 * @param s
+	 *            spelling to classify
+	 * @return the matching TokenType, or <code>null</code> if the spelling is
+	 *         neither a keyword nor an operator
+	 */
+	public static TokenType lookup(CharSequence s) {
+		TokenType candidate = null;
+
+		switch (s.length()) {
+		case 1:
+			switch (s.charAt(0)) {
+			case ';': return SEMICOLON;
+			case ',': return COMMA;
+			case '(': return LPAREN;
+			case ')': return RPAREN;
+			case '[': return LSQUARE;
+			case ']': return RSQUARE;
+			case '{': return LCURL;
+			case '}': return RCURL;
+			case '<': return LANGLE;
+			case '>': return RANGLE;
+			case '=': return EQUALTO;
+			case '+': return PLUS;
+			case '-': return MINUS;
+			case '*': return ASTERISK;
+			case '/': return SLASH;
+			case '!': return BANG;
+			case '.': return DOT;
+			}
+			return null;
+
+		case 2:
+			switch (s.charAt(0)) {
+			case '=': candidate = EQUALTO_EQUALTO; break;
+			case '<': candidate = LANGLE_EQUALTO; break;
+			case '>': candidate = RANGLE_EQUALTO; break;
+			case '!': candidate = BANG_EQUALTO; break;
+			case '|': candidate = PIPE_PIPE; break;
+			case '&': candidate = AMPERSAND_AMPERSAND; break;
+			case 'i': candidate = IF; break;
+			}
+			break;
+
+		case 3:
+			switch (s.charAt(0)) {
+			case 'i': candidate = INT; break;
+			case 'n': candidate = NEW; break;
+			}
+			break;
+
+		case 4:
+			switch (s.charAt(0)) {
+			case 'v': candidate = VOID; break;
+			case 'e': candidate = ELSE; break;
+			case 't': candidate = (s.charAt(1) == 'h') ? THIS : TRUE; break;
+			}
+			break;
+
+		case 5:
+			switch (s.charAt(0)) {
+			case 'c': candidate = CLASS; break;
+			case 'w': candidate = WHILE; break;
+			case 'f': candidate = FALSE; break;
+			}
+			break;
+
+		case 6:
+			switch (s.charAt(0)) {
+			case 'p': candidate = PUBLIC; break;
+			case 'r': candidate = RETURN; break;
+			case 's': candidate = STATIC; break;
+			}
+			break;
+
+		case 7:
+			switch (s.charAt(0)) {
+			case 'p': candidate = PRIVATE; break;
+			case 'b': candidate = BOOLEAN; break;
+			}
+			break;
+		}
+
+		if (candidate == null)
+			return null;
+
+		String spelling = candidate.spelling;
+		for (int i = 1; i < spelling.length(); i++) {
+			if (spelling.charAt(i) != s.charAt(i))
+				return null;
+		}
+		return candidate;
+	}
 }
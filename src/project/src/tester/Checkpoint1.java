@@ -10,8 +10,10 @@ import java.util.concurrent.Executors;
 /* Automated regression tester for Checkpoint 1 tests
  * Created by Max Beckman-Harned
  * Put your tests in "tests/1" folder in your Eclipse workspace directory
+ * Run with -Dtester.compiler=miniJava.CompileClient to compile through a running miniJava.CompileServer
  */
 public class Checkpoint1 {
+	static final String COMPILER = System.getProperty("tester.compiler", "miniJava.Compiler");
 
 	static ExecutorService threadPool = Executors.newCachedThreadPool();
 
@@ -44,7 +46,7 @@ public class Checkpoint1 {
 	}
 
 	private static int runTest(File x) throws IOException, InterruptedException {
-		ProcessBuilder pb = new ProcessBuilder("java", "miniJava.Compiler",
+		ProcessBuilder pb = new ProcessBuilder("java", COMPILER,
 				x.getPath()).directory(new File(System
 				.getProperty("java.class.path")));
 		Process p = pb.start();
@@ -10,9 +10,11 @@ import java.util.Scanner;
  * Created by Max Beckman-Harned
  * Put your tests in "tests/2" folder in your Eclipse workspace directory
  * If you preface your error messages / exceptions with ERROR or *** then they will be displayed if they appear during processing
+ * Run with -Dtester.compiler=miniJava.CompileClient to compile through a running miniJava.CompileServer
  */
 
 public class Checkpoint2 {
+	static final String COMPILER = System.getProperty("tester.compiler", "miniJava.Compiler");
 
 	private static class ReturnInfo {
 		int returnCode;
@@ -59,7 +61,7 @@ public class Checkpoint2 {
 	}
 
 	private static ReturnInfo runTest(File x) throws IOException, InterruptedException {
-		ProcessBuilder pb = new ProcessBuilder("java", "miniJava.Compiler", x.getPath()).directory(new File(System
+		ProcessBuilder pb = new ProcessBuilder("java", COMPILER, x.getPath()).directory(new File(System
 				.getProperty("java.class.path")));
 		pb.redirectErrorStream(true);
 		Process p = pb.start();
@@ -9,9 +9,11 @@ import java.util.Scanner;
  * Created by Max Beckman-Harned
  * Put your tests in "tests/3" folder in your Eclipse workspace directory
  * If you preface your error messages / exceptions with ERROR or *** then they will be displayed if they appear during processing
+ * Run with -Dtester.compiler=miniJava.CompileClient to compile through a running miniJava.CompileServer
  */
 
 public class Checkpoint3 {
+	static final String COMPILER = System.getProperty("tester.compiler", "miniJava.Compiler");
 
 	public static void main(String[] args) throws IOException, InterruptedException {
 		File testDir = new File(System.getProperty("java.class.path") + "/../tests/3");
@@ -41,7 +43,7 @@ public class Checkpoint3 {
 	}
 
 	private static int runTest(File x) throws IOException, InterruptedException {
-		ProcessBuilder pb = new ProcessBuilder("java", "miniJava.Compiler", x.getPath()).directory(new File(System
+		ProcessBuilder pb = new ProcessBuilder("java", COMPILER, x.getPath()).directory(new File(System
 				.getProperty("java.class.path")));
 		pb.redirectErrorStream(true);
 		Process p = pb.start();
@@ -0,0 +1,140 @@
+package tester;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mJAM.Interpreter;
+import mJAM.ProgramInput;
+import mJAM.ProgramOutput;
+import miniJava.CompilerSession;
+
+/* Differential tester of the optimizations of the compiler
+ * Each test that compiles is compiled twice with a CompilerSession, once as it is and once
+ * with the peephole optimizer (and constant folding with --fold-constants), and both codes
+ * are run by an mJAM Interpreter on the same input. A test passes if both runs stop with
+ * the same status and print the same output. Tests that do not compile are skipped. The
+ * instructions generated and executed are summed over the tests, to show what the
+ * optimizations saved.
+ * Usage: java tester.OptimizationChecker [--fold-constants] [--input=<file>] [<test directory>]
+ * The test directory defaults to "tests/3", next to the class path as for Checkpoint3
+ */
+
+public class OptimizationChecker {
+	/**
+	 * One compilation and run of a test
+	 */
+	static class Run {
+		int instructions;
+		long executed;
+		int status;
+		String output;
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean foldConstants = false;
+		byte[] input = new byte[0];
+		File testDir = new File(System.getProperty("java.class.path") + "/../tests/3");
+		for (String arg : args) {
+			if (arg.equals("--fold-constants"))
+				foldConstants = true;
+			else if (arg.startsWith("--input="))
+				input = Files.readAllBytes(Paths.get(arg.substring("--input=".length())));
+			else if (arg.startsWith("--"))
+				usage();
+			else
+				testDir = new File(arg);
+		}
+		if (!testDir.isDirectory())
+			usage();
+
+		List<File> tests = new ArrayList<File>();
+		File[] files = testDir.listFiles();
+		Arrays.sort(files);
+		for (File x : files) {
+			if (x.getName().endsWith(".java") || x.getName().endsWith(".mjava"))
+				tests.add(x);
+		}
+
+		int compared = 0, failures = 0;
+		long instructions = 0, optimizedInstructions = 0, executed = 0, optimizedExecuted = 0;
+		for (File test : tests) {
+			String name = test.getName();
+			Run plain, optimized;
+			try {
+				plain = run(test, new CompilerSession(), input);
+				if (plain == null)
+					continue;
+				CompilerSession session = new CompilerSession();
+				session.setFoldConstants(foldConstants);
+				session.setPeephole(true);
+				optimized = run(test, session, input);
+			} catch (Throwable e) {
+				// as an uncaught exception would end the compiler
+				System.err.println("ERROR " + name + ": " + e);
+				failures++;
+				continue;
+			}
+			compared++;
+			if (optimized == null) {
+				System.err.println(name + " does not compile when optimized!");
+				failures++;
+				continue;
+			}
+			instructions += plain.instructions;
+			optimizedInstructions += optimized.instructions;
+			executed += plain.executed;
+			optimizedExecuted += optimized.executed;
+			if (plain.status != optimized.status || !plain.output.equals(optimized.output)) {
+				System.err.println(name + " runs differently when optimized! (status " + plain.status + ", "
+						+ optimized.status + " optimized)");
+				failures++;
+			} else {
+				System.out.println(name + " runs the same optimized (" + plain.instructions + " -> "
+						+ optimized.instructions + " instructions, " + plain.executed + " -> "
+						+ optimized.executed + " executed)");
+			}
+		}
+		System.out.println(failures + " failures in all.");
+		System.out.println(compared + " tests compared, " + (tests.size() - compared) + " did not compile");
+		System.out.println(String.format("instructions generated: %d -> %d (%s), executed: %d -> %d (%s)",
+				instructions, optimizedInstructions, percent(instructions, optimizedInstructions), executed,
+				optimizedExecuted, percent(executed, optimizedExecuted)));
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Compiles and runs a test with a session
+	 * @return the run, or null if the test does not compile
+	 */
+	static Run run(File test, CompilerSession session, byte[] input) throws Exception {
+		CompilerSession.Result result = session.compile(test.getPath());
+		if (!result.succeeded())
+			return null;
+
+		Run run = new Run();
+		run.instructions = result.code.CT;
+		Interpreter interpreter = new Interpreter(result.code);
+		StringBuilder output = new StringBuilder();
+		interpreter.setInput(ProgramInput.fromBytes(input));
+		interpreter.setOutput(new ProgramOutput(output));
+		interpreter.run();
+		run.status = interpreter.runStatus();
+		run.executed = interpreter.instructionCount();
+		run.output = output.toString();
+		return run;
+	}
+
+	private static String percent(long before, long after) {
+		return before == 0 ? "-" : String.format("%+.1f%%", 100.0 * (after - before) / before);
+	}
+
+	private static void usage() {
+		System.out.println("Usage: java tester.OptimizationChecker [--fold-constants] [--input=<file>] [<test directory>]");
+		System.exit(4);
+	}
+}
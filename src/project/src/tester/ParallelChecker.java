@@ -0,0 +1,190 @@
+package tester;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mJAM.Interpreter;
+import mJAM.ProgramInput;
+import mJAM.ProgramOutput;
+import miniJava.CompilerSession;
+
+/* Automated regression tester that runs the tests in this JVM, on a pool of threads
+ * Each test is compiled with a CompilerSession and, if it compiles, run by an mJAM
+ * Interpreter, as miniJava.Compiler would, but without starting a JVM per test and
+ * without writing the object and assembly files. A test passes under the same rules
+ * as in Checkpoint3: files named pass* must compile, the others must fail with 4.
+ * Errors that start with *** or ERROR are displayed, as in Checkpoint3. Programs read
+ * no input and their output is discarded.
+ * Usage: java tester.ParallelChecker [--threads=<n>] [--slowest=<n>] [<test directory>]
+ * The test directory defaults to "tests/3", next to the class path as for Checkpoint3
+ */
+
+public class ParallelChecker {
+	/**
+	 * Outcome of one test
+	 */
+	static class Test {
+		final File file;
+		int returnCode;
+		boolean halted;
+		List<String> messages = new ArrayList<String>();
+		long compileNanos, runNanos;
+
+		Test(File file) {
+			this.file = file;
+		}
+
+		boolean shouldPass() {
+			return file.getName().indexOf("pass") != -1;
+		}
+
+		boolean passed() {
+			return shouldPass() ? returnCode == 0 : returnCode == 4;
+		}
+
+		long nanos() {
+			return compileNanos + runNanos;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int slowest = 10;
+		File testDir = new File(System.getProperty("java.class.path") + "/../tests/3");
+		for (String arg : args) {
+			try {
+				if (arg.startsWith("--threads="))
+					threads = Integer.parseInt(arg.substring("--threads=".length()));
+				else if (arg.startsWith("--slowest="))
+					slowest = Integer.parseInt(arg.substring("--slowest=".length()));
+				else if (arg.startsWith("--"))
+					usage();
+				else
+					testDir = new File(arg);
+			} catch (NumberFormatException e) {
+				usage();
+			}
+		}
+		if (threads < 1 || !testDir.isDirectory())
+			usage();
+
+		List<Test> tests = new ArrayList<Test>();
+		File[] files = testDir.listFiles();
+		Arrays.sort(files);
+		for (File x : files) {
+			if (x.getName().endsWith("out") || x.getName().startsWith(".") || x.getName().endsWith("mJAM")
+					|| x.getName().endsWith("asm"))
+				continue;
+			tests.add(new Test(x));
+		}
+
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final Test test : tests) {
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					runTest(test);
+				}
+			}));
+		}
+		for (Future<?> future : futures)
+			future.get();
+		pool.shutdown();
+		long wallNanos = System.nanoTime() - start;
+
+		int failures = 0;
+		long totalNanos = 0;
+		for (Test test : tests) {
+			String name = test.file.getName();
+			String time = " (" + millis(test.nanos()) + ")";
+			for (String message : test.messages)
+				System.out.println(message);
+			if (test.shouldPass()) {
+				if (test.passed()) {
+					System.out.println(name + " processed successfully!" + time);
+					if (!test.halted)
+						System.out.println("  the program did not halt normally");
+				} else
+					System.err.println(name + " failed to be processed!" + time);
+			} else {
+				if (test.passed())
+					System.out.println(name + " failed successfully!" + time);
+				else
+					System.err.println(name + " did not fail properly!" + time);
+			}
+			if (!test.passed())
+				failures++;
+			totalNanos += test.nanos();
+		}
+		System.out.println(failures + " failures in all.");
+		System.out.println(tests.size() + " tests in " + millis(wallNanos) + " on " + threads + " threads ("
+				+ millis(totalNanos) + " of compiling and running)");
+
+		List<Test> byTime = new ArrayList<Test>(tests);
+		Collections.sort(byTime, new Comparator<Test>() {
+			public int compare(Test a, Test b) {
+				return a.nanos() < b.nanos() ? 1 : a.nanos() > b.nanos() ? -1 : 0;
+			}
+		});
+		if (slowest > 0 && !byTime.isEmpty()) {
+			System.out.println("Slowest tests:");
+			for (Test test : byTime.subList(0, Math.min(slowest, byTime.size())))
+				System.out.println(String.format("  %-24s %10s  (compile %s, run %s)", test.file.getName(),
+						millis(test.nanos()), millis(test.compileNanos), millis(test.runNanos)));
+		}
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Compiles and runs a test, and records its outcome with the return code
+	 * the compiler would have exited with
+	 */
+	static void runTest(Test test) {
+		long start = System.nanoTime();
+		try {
+			CompilerSession.Result result = new CompilerSession().compile(test.file.getPath());
+			test.compileNanos = System.nanoTime() - start;
+			for (String error : result.errors) {
+				if (error.startsWith("*** ") || error.startsWith("ERROR"))
+					test.messages.add(error);
+			}
+			test.returnCode = result.exitStatus();
+			// the compiler runs the code even if generating it reported errors
+			if (test.returnCode != 0)
+				return;
+
+			start = System.nanoTime();
+			Interpreter interpreter = new Interpreter(result.code);
+			interpreter.setInput(ProgramInput.fromBytes(new byte[0]));
+			interpreter.setOutput(new ProgramOutput(new StringBuilder()));
+			test.halted = interpreter.run();
+			test.runNanos = System.nanoTime() - start;
+		} catch (Throwable e) {
+			// as an uncaught exception would end the compiler
+			test.messages.add("ERROR " + test.file.getName() + ": " + e);
+			test.returnCode = 1;
+			if (test.compileNanos == 0)
+				test.compileNanos = System.nanoTime() - start;
+			else
+				test.runNanos = System.nanoTime() - start;
+		}
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.1f ms", nanos / 1e6);
+	}
+
+	private static void usage() {
+		System.out.println("Usage: java tester.ParallelChecker [--threads=<n>] [--slowest=<n>] [<test directory>]");
+		System.exit(4);
+	}
+}
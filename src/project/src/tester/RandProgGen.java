@@ -10,6 +10,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 
 class Symbol {
@@ -44,7 +45,7 @@ class NonTerminal extends Symbol {
 	}
 
 	List<Symbol> substitute() {
-		return rules.get((int) (rules.size() * Math.random())).symbols;
+		return rules.get((int) (rules.size() * RandProgGen.random.nextDouble())).symbols;
 	}
 }
 
@@ -54,14 +55,14 @@ class Number extends NonTerminal {
 	}
 
 	int randomDigit() {
-		return (int) (Math.random() * 10);
+		return (int) (RandProgGen.random.nextDouble() * 10);
 	}
 
 	@Override
 	List<Symbol> substitute() {
 		String s = randomDigit() + "";
 
-		while (Math.random() > 0.5)
+		while (RandProgGen.random.nextDouble() > 0.5)
 			s = s + randomDigit();
 
 		List<Symbol> symbols = new LinkedList<Symbol>();
@@ -77,12 +78,12 @@ class Identifier extends NonTerminal {
 	}
 
 	int randomDigit() {
-		return (int) (Math.random() * 10);
+		return (int) (RandProgGen.random.nextDouble() * 10);
 	}
 
 	char randomAlphabet() {
-		char c = (char) (65 + Math.random() * 26);
-		if (Math.random() > 0.5)
+		char c = (char) (65 + RandProgGen.random.nextDouble() * 26);
+		if (RandProgGen.random.nextDouble() > 0.5)
 			c += 32;
 		return c;
 	}
@@ -91,8 +92,8 @@ class Identifier extends NonTerminal {
 	List<Symbol> substitute() {
 		String s = randomAlphabet() + "";
 
-		while (Math.random() > 0.5) {
-			if (Math.random() > 0.5)
+		while (RandProgGen.random.nextDouble() > 0.5) {
+			if (RandProgGen.random.nextDouble() > 0.5)
 				s = s + randomDigit();
 			else
 				s = s + randomAlphabet();
@@ -124,7 +125,7 @@ class Derivation {
 		if (count == 0)
 			return false;
 
-		int i = (int) (Math.random() * count);
+		int i = (int) (RandProgGen.random.nextDouble() * count);
 		int j = 0;
 		for (Symbol s : symbols) {
 			if (s instanceof NonTerminal) {
@@ -268,11 +269,29 @@ class Grammar {
 }
 
 public class RandProgGen {
+	static Random random = new Random();
 
 	/**
 	 * @param args
 	 */
 	public static void main(String[] args) {
+		writeTestfiles(miniJavaGrammar(), 100);
+	}
+
+	/**
+	 * Generates a random program from the miniJava grammar. The same seed
+	 * always gives the same program.
+	 * 
+	 * @param seed
+	 * @param maxIter
+	 *            maximum number of expansions, which bounds the size
+	 */
+	public static String generate(long seed, int maxIter) {
+		random = new Random(seed);
+		return miniJavaGrammar().getRandomString(maxIter);
+	}
+
+	static Grammar miniJavaGrammar() {
 		Grammar g = new Grammar(
 				"Program ClassDeclaration MemberDeclaration FieldDeclaration MethodDeclaration Statement Declarators Type PrimType ClassType ArrType ParameterList ParameterListTail ArgumentList ArgumentListTail Reference ReferenceTail Expression binop unop",
 				"Program");
@@ -319,7 +338,7 @@ public class RandProgGen {
 		g.addRule("Expression", "num | true | false");
 		g.addRule("Expression", "new id ( ) | new int [ Expression ] | new id [ Expression ]");
 
-		writeTestfiles(g, 100);
+		return g;
 	}
 
 	static void writeTestfiles(Grammar g, int nFiles) {